@@ -7,6 +7,8 @@ import {useNotificationsStore} from '../store/notifications';
 class NotificationsClient {
     constructor() {
         this.since = 0;
+        // курсоры топиков персонала из прошлого ответа: {"brand:5:staff": 40}
+        this.cursors = {};
         this.running = false;
         this.subscribers = new Set();
         this.toast = null;
@@ -48,10 +50,11 @@ class NotificationsClient {
         // Сервер по умолчанию ждёт до 60 секунд, можно не передавать timeoutMs
         while (this.running) {
             try {
-                // Сервер сам управляет таймаутом/пакетированием. Клиент передаёт только 'since'.
-                const resp = await apiClient.get('/notifications/longpoll', {
-                    params: {since: this.since},
-                });
+                // Сервер сам управляет таймаутом/пакетированием. Клиент передаёт 'since' и курсоры топиков
+                // (cursor=brand:5:staff=40); после пустого ответа сервер продолжит с запомненных курсоров.
+                const params = new URLSearchParams({since: String(this.since)});
+                for (const [topic, id] of Object.entries(this.cursors)) params.append('cursor', `${topic}=${id}`);
+                const resp = await apiClient.get('/notifications/longpoll', {params});
                 // Любой успешный ответ — сбрасываем бэкофф
                 this.backoffMs = this.initialBackoffMs;
                 // Обновляем индикатор непрочитанных, если сервер прислал значение
@@ -71,6 +74,9 @@ class NotificationsClient {
                 const events = Array.isArray(data?.events) ? data.events : [];
                 const nextSince = Number(data?.nextSince ?? this.since) || this.since;
                 const hasMore = !!data?.hasMore;
+                if (data?.cursors && typeof data.cursors === 'object') {
+                    this.cursors = {...this.cursors, ...data.cursors};
+                }
                 // Ещё раз обновим непрочитанные из полезной нагрузки, если есть
                 try {
                     const authStore = useAuthStore();
@@ -137,7 +143,8 @@ class NotificationsClient {
                     }
                     // ack
                     try {
-                        await apiClient.post('/notifications/longpoll/ack', {lastReceivedId: nextSince});
+                        // курсоры топиков персонала отмечают прочитанное для счётчика непрочитанного
+                        await apiClient.post('/notifications/longpoll/ack', {lastReceivedId: nextSince, cursors: this.cursors});
                         this.since = nextSince;
                         try {
                             localStorage.setItem('lp_since', String(this.since));
@@ -1,6 +1,23 @@
 import apiClient from './api';
 
+// Счётчики непрочитанного: {total, byType, byOrder}. Эндпоинт только для аутентифицированных:
+// анониму или после неудачного refresh приходит 401 — считаем, что непрочитанного нет
+export async function getUnreadCounters() {
+    let resp;
+    try {
+        resp = await apiClient.get('/notifications/longpoll/unreadCount');
+    } catch (e) {
+        if (e?.response?.status === 401) return {total: 0, byType: {}, byOrder: {}};
+        throw e;
+    }
+    const data = resp?.data;
+    return {
+        total: typeof data?.total === 'number' ? data.total : 0,
+        byType: data?.byType && typeof data.byType === 'object' ? data.byType : {},
+        byOrder: data?.byOrder && typeof data.byOrder === 'object' ? data.byOrder : {},
+    };
+}
+
 export async function getUnreadCount() {
-    const resp = await apiClient.get('/notifications/longpoll/unreadCount');
-    return typeof resp?.data === 'number' ? resp.data : 0;
+    return (await getUnreadCounters()).total;
 }
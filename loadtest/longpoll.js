@@ -0,0 +1,55 @@
+// Нагрузочный сценарий: CONNECTIONS одновременных long-poll плюс поток обычных запросов к меню.
+// Запуск: k6 run -e CONNECTIONS=2000 -e ACCESS_TOKEN=... loadtest/longpoll.js (см. docs/backend/load-testing.md)
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:9900';
+const CONNECTIONS = parseInt(__ENV.CONNECTIONS || '2000', 10);
+const RATE = parseInt(__ENV.RATE || '500', 10);
+const DURATION = __ENV.DURATION || '5m';
+const BRAND_ID = __ENV.BRAND_ID || '1';
+const ACCESS_TOKEN = __ENV.ACCESS_TOKEN || '';
+
+export const options = {
+  scenarios: {
+    // держат соединения: long-poll с серверным таймаутом 30 с
+    longpoll: {
+      executor: 'constant-vus',
+      vus: CONNECTIONS,
+      duration: DURATION,
+      exec: 'longpoll',
+    },
+    // пропускная способность и задержка обычных запросов (JPA) под этой нагрузкой
+    menu: {
+      executor: 'constant-arrival-rate',
+      rate: RATE,
+      timeUnit: '1s',
+      duration: DURATION,
+      preAllocatedVUs: 200,
+      maxVUs: 2000,
+      exec: 'menu',
+    },
+  },
+  thresholds: {
+    'http_req_duration{scenario:menu}': ['p(99)<1000'],
+    'http_req_failed{scenario:menu}': ['rate<0.01'],
+    'http_req_failed{scenario:longpoll}': ['rate<0.01'],
+  },
+  summaryTrendStats: ['avg', 'p(50)', 'p(95)', 'p(99)', 'max'],
+};
+
+const authParams = {
+  headers: { Cookie: `accessToken=${ACCESS_TOKEN}` },
+  timeout: '45s',
+  tags: { name: 'longpoll' },
+};
+
+export function longpoll() {
+  const res = http.get(`${BASE_URL}/notifications/longpoll?timeoutMs=30000`, authParams);
+  check(res, { 'longpoll 200/204': (r) => r.status === 200 || r.status === 204 });
+}
+
+export function menu() {
+  const res = http.get(`${BASE_URL}/menu/v1/brands/${BRAND_ID}/products`, { tags: { name: 'menu' } });
+  check(res, { 'menu 200': (r) => r.status === 200 });
+}
@@ -0,0 +1,16 @@
+#!/usr/bin/env bash
+# Прогоняет сценарий на 2k и 10k соединений против уже запущенного сервиса и сохраняет сводки k6.
+# MODE — метка прогона (platform / virtual), должна совпадать с SPRING_THREADS_VIRTUAL сервиса.
+set -euo pipefail
+
+MODE="${MODE:?set MODE=platform|virtual}"
+OUT_DIR="$(dirname "$0")/results"
+mkdir -p "$OUT_DIR"
+
+for connections in 2000 10000; do
+  echo "== ${MODE}: ${connections} connections"
+  k6 run \
+    -e CONNECTIONS="$connections" \
+    --summary-export "$OUT_DIR/${MODE}-${connections}.json" \
+    "$(dirname "$0")/longpoll.js"
+done
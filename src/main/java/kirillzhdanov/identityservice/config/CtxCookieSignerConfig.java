@@ -0,0 +1,18 @@
+package kirillzhdanov.identityservice.config;
+
+import kirillzhdanov.identityservice.util.HmacSigner;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Единый {@link HmacSigner} для cookie "ctx": им подписывает {@code ContextController} и проверяет {@code CtxCookieFilter}.
+ */
+@Configuration
+public class CtxCookieSignerConfig {
+
+    @Bean
+    public HmacSigner ctxCookieSigner(@Value("${ctx.cookie.secret:change-me}") String secret) {
+        return new HmacSigner(secret);
+    }
+}
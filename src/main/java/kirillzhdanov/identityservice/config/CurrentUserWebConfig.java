@@ -0,0 +1,25 @@
+package kirillzhdanov.identityservice.config;
+
+import kirillzhdanov.identityservice.security.CurrentUserArgumentResolver;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+/**
+ * Регистрирует резолвер аргумента {@code CurrentUser} для контроллеров.
+ */
+@Configuration
+@RequiredArgsConstructor
+public class CurrentUserWebConfig implements WebMvcConfigurer {
+
+    private final CurrentUserProvider currentUserProvider;
+
+    @Override
+    public void addArgumentResolvers(List<HandlerMethodArgumentResolver> resolvers) {
+        resolvers.add(new CurrentUserArgumentResolver(currentUserProvider));
+    }
+}
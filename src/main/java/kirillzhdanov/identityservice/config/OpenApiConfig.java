@@ -1,7 +1,9 @@
 package kirillzhdanov.identityservice.config;
 
+import kirillzhdanov.identityservice.security.CurrentUser;
 import org.springdoc.core.customizers.OpenApiCustomizer;
 import org.springdoc.core.models.GroupedOpenApi;
+import org.springdoc.core.utils.SpringDocUtils;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -18,6 +20,11 @@ import io.swagger.v3.oas.models.servers.Server;
 @Configuration
 public class OpenApiConfig {
 
+    static {
+        // CurrentUser подставляется резолвером из SecurityContext, а не из параметров запроса
+        SpringDocUtils.getConfig().addRequestWrapperToIgnore(CurrentUser.class);
+    }
+
     @Bean
     public OpenAPI identityServiceOpenAPI() {
         // Security scheme: Bearer JWT
@@ -55,6 +62,7 @@ public class OpenApiConfig {
                         "/public/**",
                         "/menu/**",
                         "/notifications/longpoll",
+                        "/notifications/longpoll/unreadCount",
                         "/auth/v1/login",
                         "/auth/v1/register",
                         "/auth/v1/refresh",
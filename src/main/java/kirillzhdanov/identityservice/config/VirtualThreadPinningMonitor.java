@@ -0,0 +1,88 @@
+package kirillzhdanov.identityservice.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Диагностика закрепления (pinning) виртуальных потоков в режиме {@code spring.threads.virtual.enabled=true}.
+ * <p>
+ * Виртуальный поток, заблокированный внутри {@code synchronized} или нативного вызова, держит свой поток-носитель;
+ * при нехватке носителей встают все запросы. Монитор слушает JFR-событие {@code jdk.VirtualThreadPinned}
+ * дольше {@code app.virtual-threads.pinned-threshold}, считает их в метрике {@code jvm.threads.virtual.pinned}
+ * и пишет в лог стек: первое появление места — WARN, повторы — DEBUG.
+ */
+@Slf4j
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnProperty(prefix = "app.virtual-threads", name = "pinning-monitor", havingValue = "true", matchIfMissing = true)
+public class VirtualThreadPinningMonitor {
+
+    private static final String EVENT = "jdk.VirtualThreadPinned";
+
+    private static final int STACK_DEPTH = 8;
+
+    private final Duration threshold;
+
+    private final Counter pinned;
+
+    // места закрепления, о которых уже предупредили (верхний кадр стека)
+    private final Set<String> reported = ConcurrentHashMap.newKeySet();
+
+    private RecordingStream stream;
+
+    public VirtualThreadPinningMonitor(@Value("${app.virtual-threads.pinned-threshold:20ms}") Duration threshold,
+                                       ObjectProvider<MeterRegistry> meterRegistry) {
+        this.threshold = threshold;
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        this.pinned = registry == null ? null : Counter.builder("jvm.threads.virtual.pinned")
+                .description("Закрепления виртуальных потоков дольше порога")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void start() {
+        stream = new RecordingStream();
+        stream.enable(EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(EVENT, this::onPinned);
+        stream.startAsync();
+        log.info("[VT] pinning monitor started, threshold={}", threshold);
+    }
+
+    private void onPinned(RecordedEvent event) {
+        if (pinned != null) pinned.increment();
+        List<RecordedFrame> frames = event.getStackTrace() != null ? event.getStackTrace().getFrames() : List.of();
+        String stack = frames.stream()
+                .limit(STACK_DEPTH)
+                .map(f -> f.getMethod().getType().getName() + "." + f.getMethod().getName() + ":" + f.getLineNumber())
+                .collect(Collectors.joining(" <- "));
+        String site = frames.isEmpty() ? "?" : stack.split(" <- ", 2)[0];
+        if (reported.add(site)) {
+            log.warn("[VT] virtual thread pinned for {} ms: {}", event.getDuration().toMillis(), stack);
+        } else if (log.isDebugEnabled()) {
+            log.debug("[VT] virtual thread pinned for {} ms: {}", event.getDuration().toMillis(), stack);
+        }
+    }
+
+    @PreDestroy
+    void stop() {
+        if (stream != null) stream.close();
+    }
+}
@@ -5,20 +5,17 @@ import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import kirillzhdanov.identityservice.model.Brand;
-import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.model.cart.CartItem;
 import kirillzhdanov.identityservice.model.product.Product;
 import kirillzhdanov.identityservice.repository.BrandRepository;
 import kirillzhdanov.identityservice.repository.ProductRepository;
 import kirillzhdanov.identityservice.repository.UserRepository;
 import kirillzhdanov.identityservice.repository.cart.CartItemRepository;
+import kirillzhdanov.identityservice.security.CurrentUser;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.authentication.AnonymousAuthenticationToken;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
 
@@ -58,14 +55,14 @@ public class CartController {
     @GetMapping
     @Transactional(readOnly = true)
     @Operation(summary = "Текущая корзина", description = "Публично (гость/пользователь). Возвращает корзину по userId или по cart_token (cookie).")
-    public ResponseEntity<?> getCart(HttpServletRequest request, HttpServletResponse response) {
+    public ResponseEntity<?> getCart(CurrentUser currentUser, HttpServletRequest request, HttpServletResponse response) {
         try {
-            Optional<User> userOpt = getCurrentUser();
+            Optional<CurrentUser> userOpt = Optional.ofNullable(currentUser);
             String cartToken = getOrCreateCartToken(request, response);
 
             // Do not validate identifiers on GET; only return canonical identifiers back to the client
 
-            List<CartItem> items = userOpt.map(u -> cartRepo.findByUser_Id(u.getId()))
+            List<CartItem> items = userOpt.map(u -> cartRepo.findByUser_Id(u.id()))
                     .orElseGet(() -> cartRepo.findByCartToken(cartToken));
 
             Map<String, Object> body = toCartResponse(items);
@@ -87,6 +84,7 @@ public class CartController {
     @Transactional
     @Operation(summary = "Добавить в корзину", description = "Публично (гость/пользователь). Создаёт/использует cart_token для гостя. Возвращает обновлённую корзину или 409 при конфликте бренда.")
     public ResponseEntity<?> addToCart(@RequestBody Map<String, Object> payload,
+                                       CurrentUser currentUser,
                                        HttpServletRequest request,
                                        HttpServletResponse response) {
         try {
@@ -113,10 +111,10 @@ public class CartController {
 
             Long newBrandId = productBrand != null ? productBrand.getId() : null;
 
-            Optional<User> userOpt = getCurrentUser();
+            Optional<CurrentUser> userOpt = Optional.ofNullable(currentUser);
             String cartToken = getOrCreateCartToken(request, response);
 
-            List<CartItem> current = userOpt.map(u -> cartRepo.findByUser_Id(u.getId()))
+            List<CartItem> current = userOpt.map(u -> cartRepo.findByUser_Id(u.id()))
                     .orElseGet(() -> cartRepo.findByCartToken(cartToken));
 
             // Проверка на конфликт бренда
@@ -136,7 +134,7 @@ public class CartController {
                     .findFirst().orElse(null);
             if (target == null) {
                 target = CartItem.builder()
-                        .user(userOpt.orElse(null))
+                        .user(userOpt.map(u -> userRepo.getReferenceById(u.id())).orElse(null))
                         .cartToken(userOpt.isPresent() ? null : cartToken)
                         .brand(productBrand)
                         .product(product)
@@ -148,7 +146,7 @@ public class CartController {
             cartRepo.save(target);
 
             // Вернём актуальную корзину
-            List<CartItem> updated = userOpt.map(u -> cartRepo.findByUser_Id(u.getId()))
+            List<CartItem> updated = userOpt.map(u -> cartRepo.findByUser_Id(u.id()))
                     .orElseGet(() -> cartRepo.findByCartToken(cartToken));
             Map<String, Object> resp = toCartResponse(updated);
             return ResponseEntity.ok(resp);
@@ -166,9 +164,10 @@ public class CartController {
     @Transactional
     @Operation(summary = "Удалить позицию из корзины", description = "Публично (гость/пользователь). Разрешено владельцу userId или владельцу cart_token.")
     public ResponseEntity<?> removeFromCart(@PathVariable("id") Long cartItemId,
+                                            CurrentUser currentUser,
                                             HttpServletRequest request,
                                             HttpServletResponse response) {
-        Optional<User> userOpt = getCurrentUser();
+        Optional<CurrentUser> userOpt = Optional.ofNullable(currentUser);
         String cartToken = getOrCreateCartToken(request, response);
 
         Optional<CartItem> found = cartRepo.findById(cartItemId);
@@ -179,7 +178,7 @@ public class CartController {
         if (userOpt.isEmpty() && ci.getUser() == null && !Objects.equals(cartToken, ci.getCartToken())) {
             return ResponseEntity.status(403).body(Map.of("message", "Недостаточно прав для удаления элемента корзины"));
         }
-        boolean allowed = (userOpt.isPresent() && ci.getUser() != null && Objects.equals(ci.getUser().getId(), userOpt.get().getId()))
+        boolean allowed = (userOpt.isPresent() && ci.getUser() != null && Objects.equals(ci.getUser().getId(), userOpt.get().id()))
                 || (userOpt.isEmpty() && Objects.equals(cartToken, ci.getCartToken()));
         if (!allowed) {
             return ResponseEntity.status(403).body(Map.of("message", "Недостаточно прав для удаления элемента корзины"));
@@ -187,7 +186,7 @@ public class CartController {
         cartRepo.delete(ci);
 
         // Вернём актуальную корзину
-        List<CartItem> updated = userOpt.map(u -> cartRepo.findByUser_Id(u.getId()))
+        List<CartItem> updated = userOpt.map(u -> cartRepo.findByUser_Id(u.id()))
                 .orElseGet(() -> cartRepo.findByCartToken(cartToken));
         if (updated.isEmpty()) return ResponseEntity.noContent().build();
         return ResponseEntity.ok(toCartResponse(updated));
@@ -201,17 +200,18 @@ public class CartController {
     @Transactional
     @Operation(summary = "Изменить количество позиции", description = "Публично (гость/пользователь). Разрешено владельцу userId или владельцу cart_token. qty<=0 удаляет позицию.")
     public ResponseEntity<?> updateQuantity(@PathVariable("id") Long cartItemId,
+                                            CurrentUser currentUser,
                                             @RequestBody Map<String, Object> payload,
                                             HttpServletRequest request,
                                             HttpServletResponse response) {
-        Optional<User> userOpt = getCurrentUser();
+        Optional<CurrentUser> userOpt = Optional.ofNullable(currentUser);
         String cartToken = getOrCreateCartToken(request, response);
 
         Optional<CartItem> found = cartRepo.findById(cartItemId);
         if (found.isEmpty()) return ResponseEntity.noContent().build();
 
         CartItem ci = found.get();
-        boolean allowed = (userOpt.isPresent() && ci.getUser() != null && Objects.equals(ci.getUser().getId(), userOpt.get().getId()))
+        boolean allowed = (userOpt.isPresent() && ci.getUser() != null && Objects.equals(ci.getUser().getId(), userOpt.get().id()))
                 || (userOpt.isEmpty() && Objects.equals(cartToken, ci.getCartToken()));
         if (!allowed) {
             return ResponseEntity.status(403).body(Map.of("message", "Недостаточно прав для изменения элемента корзины"));
@@ -231,7 +231,7 @@ public class CartController {
             cartRepo.save(ci);
         }
 
-        List<CartItem> updated = userOpt.map(u -> cartRepo.findByUser_Id(u.getId()))
+        List<CartItem> updated = userOpt.map(u -> cartRepo.findByUser_Id(u.id()))
                 .orElseGet(() -> cartRepo.findByCartToken(cartToken));
         if (updated.isEmpty()) return ResponseEntity.noContent().build();
         return ResponseEntity.ok(toCartResponse(updated));
@@ -242,33 +242,14 @@ public class CartController {
      */
     @DeleteMapping("/clear")
     @Operation(summary = "Очистить корзину", description = "Публично (гость/пользователь). Очищает корзину пользователя или гостевую по cart_token.")
-    public ResponseEntity<?> clearCart(HttpServletRequest request, HttpServletResponse response) {
-        Optional<User> userOpt = getCurrentUser();
+    public ResponseEntity<?> clearCart(CurrentUser currentUser, HttpServletRequest request, HttpServletResponse response) {
+        Optional<CurrentUser> userOpt = Optional.ofNullable(currentUser);
         String cartToken = getOrCreateCartToken(request, response);
-        if (userOpt.isPresent()) cartRepo.deleteByUser_Id(userOpt.get().getId());
+        if (userOpt.isPresent()) cartRepo.deleteByUser_Id(userOpt.get().id());
         else cartRepo.deleteByCartToken(cartToken);
         return ResponseEntity.noContent().build();
     }
 
-    private Optional<User> getCurrentUser() {
-        try {
-            Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-            if (auth == null || !auth.isAuthenticated() || auth instanceof AnonymousAuthenticationToken)
-                return Optional.empty();
-            String username;
-            Object principal = auth.getPrincipal();
-            // Поддержка любых реализаций UserDetails (например, CustomUserDetails)
-            if (principal instanceof org.springframework.security.core.userdetails.UserDetails u) {
-                username = u.getUsername();
-            } else {
-                username = String.valueOf(principal);
-            }
-            return userRepo.findByUsername(username);
-        } catch (Exception e) {
-            return Optional.empty();
-        }
-    }
-
     private String getOrCreateCartToken(HttpServletRequest request, HttpServletResponse response) {
         String token = null;
         if (request.getCookies() != null) {
@@ -15,6 +15,7 @@ import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
 import kirillzhdanov.identityservice.security.CustomUserDetails;
 import kirillzhdanov.identityservice.security.JwtUtils;
 import kirillzhdanov.identityservice.service.TokenService;
+import kirillzhdanov.identityservice.tenant.CtxCookieCodec;
 import kirillzhdanov.identityservice.util.HmacSigner;
 import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
@@ -24,8 +25,6 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
-import java.nio.charset.StandardCharsets;
-import java.util.Base64;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -43,9 +42,8 @@ public class ContextController {
     private final UserRepository userRepository;
     private final JwtUtils jwtUtils;
     private final TokenService tokenService;
+    private final HmacSigner ctxCookieSigner;
 
-    @Value("${ctx.cookie.secret:change-me}")
-    private String ctxSecret;
     @Value("${ctx.cookie.maxAgeSeconds:604800}") // 7 days by default
     private int ctxMaxAge;
 
@@ -94,17 +92,7 @@ public class ContextController {
 
         // Дополнительно: устанавливаем HttpOnly cookie "ctx", чтобы ContextEnforcementFilter видел контекст без JWT-клейм
         try {
-            long issuedAt = System.currentTimeMillis();
-            String json = "{" +
-                    (masterId != null ? "\"masterId\":" + masterId + "," : "") +
-                    (brandId != null ? "\"brandId\":" + brandId + "," : "") +
-                    (locationId != null ? "\"pickupPointId\":" + locationId + "," : "") +
-                    "\"issuedAt\":" + issuedAt +
-                    "}";
-            String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
-            HmacSigner signer = new HmacSigner(ctxSecret);
-            String sig = signer.signBase64Url(payload);
-            String value = payload + "." + sig;
+            String value = CtxCookieCodec.encode(ctxCookieSigner, masterId, brandId, locationId, System.currentTimeMillis());
             boolean secure = httpReq.isSecure();
             ResponseCookie cookie = ResponseCookie.from("ctx", value)
                     .httpOnly(true)
@@ -167,17 +155,7 @@ public class ContextController {
         }
 
         // Build signed cookie value
-        long issuedAt = System.currentTimeMillis();
-        String json = "{" +
-                (masterId != null ? "\"masterId\":" + masterId + "," : "") +
-                (brandId != null ? "\"brandId\":" + brandId + "," : "") +
-                (pickupId != null ? "\"pickupPointId\":" + pickupId + "," : "") +
-                "\"issuedAt\":" + issuedAt +
-                "}";
-        String payload = Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
-        HmacSigner signer = new HmacSigner(ctxSecret);
-        String sig = signer.signBase64Url(payload);
-        String value = payload + "." + sig;
+        String value = CtxCookieCodec.encode(ctxCookieSigner, masterId, brandId, pickupId, System.currentTimeMillis());
 
         boolean secure = request.isSecure();
         ResponseCookie cookie = ResponseCookie.from("ctx", value)
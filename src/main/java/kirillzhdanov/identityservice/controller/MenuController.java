@@ -2,20 +2,21 @@ package kirillzhdanov.identityservice.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import kirillzhdanov.identityservice.dto.BrandDto;
-import kirillzhdanov.identityservice.dto.group.GroupTagResponse;
 import kirillzhdanov.identityservice.dto.menu.PublicBrandResponse;
 import kirillzhdanov.identityservice.dto.menu.PublicBrandMinResponse;
 import kirillzhdanov.identityservice.dto.menu.PublicGroupTagResponse;
+import kirillzhdanov.identityservice.dto.menu.PublicMenuResponse;
 import kirillzhdanov.identityservice.dto.menu.PublicProductResponse;
-import kirillzhdanov.identityservice.dto.product.ProductResponse;
 import kirillzhdanov.identityservice.service.BrandService;
-import kirillzhdanov.identityservice.service.GroupTagService;
-import kirillzhdanov.identityservice.service.ProductService;
+import kirillzhdanov.identityservice.service.menu.MenuSnapshot;
+import kirillzhdanov.identityservice.service.menu.MenuSnapshotService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @RestController
@@ -24,8 +25,7 @@ import java.util.stream.Collectors;
 public class MenuController {
 
     private final BrandService brandService;
-    private final GroupTagService groupTagService;
-    private final ProductService productService;
+    private final MenuSnapshotService menuSnapshots;
 
     // 1) Публичный список брендов (минимум данных)
     @GetMapping("/brands")
@@ -55,34 +55,45 @@ public class MenuController {
 
     // 3) Публичные теги бренда по родителю (parentId=0 -> корневые)
     @GetMapping("/brands/{brandId}/tags")
-    @Operation(summary = "Публичные теги бренда", description = "Публично. Скрывает пустые группы.")
+    @Operation(summary = "Публичные теги бренда", description = "Публично. Скрывает пустые группы. ETag/Last-Modified, 304 без изменений.")
     public ResponseEntity<List<PublicGroupTagResponse>> getBrandTags(
             @PathVariable Long brandId,
             @RequestParam(required = false, defaultValue = "0") Long parentId
     ) {
-        // ВАЖНО: публичный вариант без tenant-контекста
-        List<GroupTagResponse> tags = groupTagService.getPublicGroupTagsByBrandAndParent(brandId, parentId);
-        // Публичное меню: скрываем пустые группы (нет видимых товаров ни в самой группе, ни глубже)
-        List<PublicGroupTagResponse> response = tags.stream()
-                .filter(t -> groupTagService.hasVisibleProductsInSubtree(brandId, t.getId()))
-                .map(t -> new PublicGroupTagResponse(t.getId(), t.getName(), t.getParentId(), t.getLevel()))
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+        // ВАЖНО: публичный вариант без tenant-контекста; пустые группы (нет видимых товаров ни в самой группе, ни глубже)
+        // отброшены при сборке снимка
+        return fromSnapshot(brandId, snapshot -> snapshot.tags(parentId));
     }
 
     // 4) Публичные товары бренда по группе (groupTagId=0 -> корневые). Всегда только видимые.
     @GetMapping("/brands/{brandId}/products")
-    @Operation(summary = "Публичные товары бренда", description = "Публично. Всегда только видимые товары.")
+    @Operation(summary = "Публичные товары бренда", description = "Публично. Всегда только видимые товары. ETag/Last-Modified, 304 без изменений.")
     public ResponseEntity<List<PublicProductResponse>> getBrandProducts(
             @PathVariable Long brandId,
             @RequestParam(required = false, defaultValue = "0") Long groupTagId
     ) {
-        // ВАЖНО: используем публичный метод без проверок tenant-контекста
-        List<ProductResponse> products = productService.getPublicByBrandAndGroup(brandId, groupTagId);
-        List<PublicProductResponse> response = products.stream()
-                .map(p -> new PublicProductResponse(p.getId(), p.getName(), p.getDescription(), p.getPrice(), p.getPromoPrice(), p.isVisible(), p.getImageUrl()))
-                .collect(Collectors.toList());
-        return ResponseEntity.ok(response);
+        // ВАЖНО: снимок собирается без проверок tenant-контекста
+        return fromSnapshot(brandId, snapshot -> snapshot.products(groupTagId));
+    }
+
+    // 5) Всё публичное меню бренда одним ответом: непустые группы и видимые товары по группам
+    @GetMapping("/brands/{brandId}/menu")
+    @Operation(summary = "Публичное меню бренда", description = "Публично. Группы и видимые товары одним ответом. ETag/Last-Modified, 304 без изменений.")
+    public ResponseEntity<PublicMenuResponse> getBrandMenu(@PathVariable Long brandId) {
+        return fromSnapshot(brandId, snapshot ->
+                new PublicMenuResponse(snapshot.brandId(), snapshot.version(), snapshot.tags(), snapshot.productsByGroup()));
+    }
+
+    // Ответ из снимка меню: ETag и Last-Modified общие для всех ручек бренда, на совпавший If-None-Match
+    // Spring MVC сам отвечает 304 без тела. no-cache — браузер хранит ответ, но перепроверяет его каждый раз.
+    private <T> ResponseEntity<T> fromSnapshot(Long brandId, Function<MenuSnapshot, T> body) {
+        MenuSnapshot snapshot = menuSnapshots.get(brandId);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(snapshot.etag());
+        // у меню без товаров нет времени изменения — только ETag
+        if (snapshot.lastModified() != null) response.lastModified(snapshot.lastModified());
+        return response.body(body.apply(snapshot));
     }
 
     // ALIAS: совместимость с путём вида /menu/v1/products/by-brand/{brandId}
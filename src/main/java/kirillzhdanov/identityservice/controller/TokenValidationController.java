@@ -1,8 +1,10 @@
 package kirillzhdanov.identityservice.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
+import jakarta.servlet.http.HttpServletRequest;
 import kirillzhdanov.identityservice.dto.JwtUserDetailsResponse;
 import kirillzhdanov.identityservice.security.JwtUtils;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
 import kirillzhdanov.identityservice.service.TokenService;
 import kirillzhdanov.identityservice.service.UserService;
 import lombok.RequiredArgsConstructor;
@@ -36,14 +38,15 @@ public class TokenValidationController {
 	 * <p>Проверяет наличие и корректность заголовка Authorization, подпись токена и отсутствие токена в списке отозванных.</p>
 	 *
 	 * @param authHeader заголовок Authorization, содержащий Bearer токен
+	 * @param request    HTTP запрос (для переиспользования уже разобранного фильтром токена)
 	 * @return {@code ResponseEntity} с HTTP статусом:
 	 * {@code 200 OK} - токен валиден;
 	 * {@code 403 Forbidden} - токен невалиден (некорректный заголовок, неверная подпись, отозванный токен).
 	 */
 	@PostMapping
 	@Operation(summary = "Валидация JWT", description = "Публично. Принимает Authorization: Bearer <token>. Возвращает 200 если токен валиден, 403 иначе.")
-	public ResponseEntity<Void> validateToken(@RequestHeader("Authorization") String authHeader) {
-		ResponseEntity<JwtUserDetailsResponse> status = validateTokenAndGetUserDetails(authHeader);
+	public ResponseEntity<Void> validateToken(@RequestHeader("Authorization") String authHeader, HttpServletRequest request) {
+		ResponseEntity<JwtUserDetailsResponse> status = validateTokenAndGetUserDetails(authHeader, request);
 		log.info("Токен успешно валидирован");
 		return ResponseEntity.status(status.getStatusCode()).build();
 	}
@@ -55,13 +58,15 @@ public class TokenValidationController {
 	 * При успешной валидации возвращает данные пользователя.</p>
 	 *
 	 * @param authHeader заголовок Authorization, содержащий Bearer токен
+	 * @param request    HTTP запрос (для переиспользования уже разобранного фильтром токена)
 	 * @return {@code ResponseEntity} с HTTP статусом:
 	 * {@code 200 OK} - токен валиден, в теле ответа содержатся данные пользователя;
 	 * {@code 403 Forbidden} - токен невалиден (некорректный заголовок, неверная подпись, отозванный токен) или пользователь не найден.
 	 */
 	@PostMapping("/details")
 	@Operation(summary = "Валидация JWT + данные пользователя", description = "Публично. Принимает Authorization: Bearer <token>. Возвращает 200 и информацию о пользователе, 403 при ошибке.")
-	public ResponseEntity<JwtUserDetailsResponse> validateTokenAndGetUserDetails(@RequestHeader("Authorization") String authHeader) {
+	public ResponseEntity<JwtUserDetailsResponse> validateTokenAndGetUserDetails(@RequestHeader("Authorization") String authHeader,
+																				 HttpServletRequest request) {
 
 		if (authHeader == null || !authHeader.startsWith("Bearer ")) {
 			log.warn("Получен запрос с некорректным заголовком Authorization");
@@ -71,16 +76,23 @@ public class TokenValidationController {
 
 		String token = authHeader.substring(7);
 
-		// Проверяем подпись токена
-		boolean isSignatureValid = jwtUtils.validateTokenSignature(token);
-		if (!isSignatureValid) {
+		// Проверяем подпись и срок действия токена (разбор переиспользуется, если фильтр уже сделал его)
+		ParsedAccessToken parsed;
+		try {
+			parsed = jwtUtils.resolveParsedToken(request, token);
+		} catch (Exception e) {
 			log.warn("Токен имеет недействительную подпись");
 			return ResponseEntity.status(403)
 								 .build();
 		}
+		if (parsed == null || parsed.isExpired()) {
+			log.warn("Токен истек");
+			return ResponseEntity.status(403)
+								 .build();
+		}
 
 		// Проверяем, не отозван ли токен
-		boolean isTokenValid = tokenService.isTokenValid(token);
+		boolean isTokenValid = tokenService.isTokenValid(parsed);
 		if (!isTokenValid) {
 			log.warn("Токен отозван или не найден в базе данных");
 			return ResponseEntity.status(403)
@@ -88,7 +100,7 @@ public class TokenValidationController {
 		}
 
 		// Получаем ID пользователя из токена
-		Long userId = jwtUtils.extractUserId(token);
+		Long userId = parsed.userId();
 		if (userId == null) {
 			log.warn("Не удалось извлечь ID пользователя из токена");
 			return ResponseEntity.status(403)
@@ -11,12 +11,12 @@ import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.model.order.Order;
 import kirillzhdanov.identityservice.model.order.OrderMessage;
 import kirillzhdanov.identityservice.model.order.OrderStatus;
-import kirillzhdanov.identityservice.notification.longpoll.LongPollService;
-import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.notification.longpoll.NotificationDispatcher;
 import kirillzhdanov.identityservice.repository.order.OrderMessageRepository;
 import kirillzhdanov.identityservice.repository.order.OrderRepository;
 import kirillzhdanov.identityservice.repository.order.OrderReviewRepository;
 import kirillzhdanov.identityservice.repository.userbrand.UserBrandMembershipRepository;
+import kirillzhdanov.identityservice.security.CurrentUser;
 import kirillzhdanov.identityservice.service.admin.OrderAdminService;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -45,9 +45,8 @@ public class OrderController {
     private final OrderRepository orderRepository;
     private final OrderMessageRepository orderMessageRepository;
     private final OrderReviewRepository orderReviewRepository;
-    private final UserRepository userRepository;
     private final UserBrandMembershipRepository membershipRepository;
-    private final LongPollService longPollService;
+    private final NotificationDispatcher notifications;
 
     private static String safe(String s) {
         return s == null ? "" : s;
@@ -59,11 +58,10 @@ public class OrderController {
     @GetMapping("/my")
     @Transactional(readOnly = true)
     @Operation(summary = "Мои заказы", description = "Требуется аутентификация. Возвращает заказы текущего пользователя.")
-    public ResponseEntity<?> myOrders(Authentication authentication) {
+    public ResponseEntity<?> myOrders(Authentication authentication, CurrentUser currentUser) {
         if (!isAuthenticated(authentication)) return ResponseEntity.status(401).build();
-        User user = resolveUser(authentication);
-        if (user == null) return ResponseEntity.status(401).build();
-        var list = orderRepository.findByClient_IdOrderByIdDesc(user.getId());
+        if (currentUser == null) return ResponseEntity.status(401).build();
+        var list = orderRepository.findByClient_IdOrderByIdDesc(currentUser.id());
         var dtos = list.stream().map(o -> {
             java.util.List<OrderItemDto> items = new java.util.ArrayList<>();
             if (o.getItems() != null) {
@@ -87,7 +85,7 @@ public class OrderController {
             }
             return OrderDto.builder()
                     .id(o.getId())
-                    .clientId(user.getId())
+                    .clientId(currentUser.id())
                     .clientName(((o.getClient() != null ? (safe(o.getClient().getLastName()) + " " + safe(o.getClient().getFirstName())) : "")).trim())
                     .clientPhone(o.getClient() != null ? o.getClient().getPhone() : null)
                     .clientEmail(o.getClient() != null ? o.getClient().getEmail() : null)
@@ -114,13 +112,13 @@ public class OrderController {
     @Operation(summary = "Доступные заказы (по membership)", description = "Требуется аутентификация. Возвращает заказы по брендам, где у пользователя есть membership.")
     public ResponseEntity<Page<OrderDto>> getAccessibleOrders(Pageable pageable,
                                                               Authentication authentication,
+                                                              CurrentUser currentUser,
                                                               @RequestParam(required = false) String search,
                                                               @RequestParam(required = false) String dateFrom,
                                                               @RequestParam(required = false) String dateTo) {
         if (!isAuthenticated(authentication)) return ResponseEntity.status(401).build();
-        User user = resolveUser(authentication);
-        if (user == null) return ResponseEntity.status(401).build();
-        var brandIds = membershipRepository.findBrandIdsByUserId(user.getId());
+        if (currentUser == null) return ResponseEntity.status(401).build();
+        var brandIds = membershipRepository.findBrandIdsByUserId(currentUser.id());
         if (brandIds == null || brandIds.isEmpty()) {
             return ResponseEntity.ok(Page.empty(pageable));
         }
@@ -135,12 +133,12 @@ public class OrderController {
     @Operation(summary = "Заказы бренда", description = "Требуется аутентификация. Доступ только при наличии membership у бренда; иначе 403.")
     public ResponseEntity<Page<OrderDto>> getBrandOrders(@PathVariable Long brandId,
                                                          Pageable pageable,
-                                                         Authentication authentication) {
+                                                         Authentication authentication,
+                                                         CurrentUser currentUser) {
         if (!isAuthenticated(authentication)) return ResponseEntity.status(401).build();
-        User user = resolveUser(authentication);
-        if (user == null) return ResponseEntity.status(401).build();
+        if (currentUser == null) return ResponseEntity.status(401).build();
         // check membership
-        boolean allowed = membershipRepository.findByUser_IdAndBrand_Id(user.getId(), brandId).isPresent();
+        boolean allowed = membershipRepository.findByUser_IdAndBrand_Id(currentUser.id(), brandId).isPresent();
         if (!allowed) return ResponseEntity.status(403).build();
         Page<OrderDto> page = orderAdminService.findOrders(pageable, null, brandId, null, null);
         return ResponseEntity.ok(page);
@@ -151,20 +149,21 @@ public class OrderController {
      * Список допустимых переходов валидируется сервером.
      */
     @PatchMapping("/orders/{id}/status")
+    @Transactional
     @Operation(summary = "Смена статуса заказа", description = "Требуется аутентификация и membership у бренда заказа. Рекомендовано ограничить ролями (CASHIER/COOK/ADMIN/OWNER).")
     public ResponseEntity<Void> updateStatus(@PathVariable Long id,
                                              @Valid @RequestBody UpdateOrderStatusRequest req,
-                                             Authentication authentication) {
+                                             Authentication authentication,
+                                             CurrentUser currentUser) {
         if (!isAuthenticated(authentication)) return ResponseEntity.status(401).build();
         Optional<Order> opt = orderRepository.findById(id);
         if (opt.isEmpty()) return ResponseEntity.notFound().build();
         Order order = opt.get();
-        User user = resolveUser(authentication);
-        if (user == null) return ResponseEntity.status(401).build();
+        if (currentUser == null) return ResponseEntity.status(401).build();
         // check membership for order's brand
         Long brandId = Optional.ofNullable(order.getBrand()).map(Brand::getId).orElse(null);
         if (brandId == null) return ResponseEntity.status(409).build();
-        boolean allowed = membershipRepository.findByUser_IdAndBrand_Id(user.getId(), brandId).isPresent();
+        boolean allowed = membershipRepository.findByUser_IdAndBrand_Id(currentUser.id(), brandId).isPresent();
         if (!allowed) return ResponseEntity.status(403).build();
         // validate transition
         OrderStatus oldStatus = order.getStatus();
@@ -174,8 +173,8 @@ public class OrderController {
         }
         order.setStatus(newStatus);
         orderRepository.save(order);
-        // publish user notification
-        Optional.ofNullable(order.getClient()).map(User::getId).ifPresent(clientId -> longPollService.publishStatusChanged(clientId, order.getId(), oldStatus.name(), newStatus.name()));
+        // уведомление клиенту уйдёт после коммита смены статуса
+        Optional.ofNullable(order.getClient()).map(User::getId).ifPresent(clientId -> notifications.publishStatusChanged(clientId, order.getId(), oldStatus.name(), newStatus.name()));
         return ResponseEntity.noContent().build();
     }
 
@@ -186,16 +185,16 @@ public class OrderController {
     @Operation(summary = "Сообщение курьера/персонала клиенту", description = "Требуется аутентификация и membership у бренда заказа.")
     public ResponseEntity<Void> sendCourierMessage(@PathVariable Long id,
                                                    @Valid @RequestBody CourierMessageRequest req,
-                                                   Authentication authentication) {
+                                                   Authentication authentication,
+                                                   CurrentUser currentUser) {
         if (!isAuthenticated(authentication)) return ResponseEntity.status(401).build();
         Optional<Order> opt = orderRepository.findById(id);
         if (opt.isEmpty()) return ResponseEntity.notFound().build();
         Order order = opt.get();
-        User user = resolveUser(authentication);
-        if (user == null) return ResponseEntity.status(401).build();
+        if (currentUser == null) return ResponseEntity.status(401).build();
         Long brandId = Optional.ofNullable(order.getBrand()).map(Brand::getId).orElse(null);
         if (brandId == null) return ResponseEntity.status(409).build();
-        boolean allowed = membershipRepository.findByUser_IdAndBrand_Id(user.getId(), brandId).isPresent();
+        boolean allowed = membershipRepository.findByUser_IdAndBrand_Id(currentUser.id(), brandId).isPresent();
         if (!allowed) return ResponseEntity.status(403).build();
         Long clientId = Optional.ofNullable(order.getClient()).map(User::getId).orElse(null);
         if (clientId != null) {
@@ -204,10 +203,10 @@ public class OrderController {
                     .order(order)
                     .fromClient(false)
                     .text(req.getText())
-                    .senderUserId(user.getId())
+                    .senderUserId(currentUser.id())
                     .build());
             Long msgId = Optional.of(saved).map(OrderMessage::getId).orElse(null);
-            longPollService.publishCourierMessage(clientId, order.getId(), req.getText(), msgId);
+            notifications.publishCourierMessage(clientId, order.getId(), req.getText(), msgId);
         }
         return ResponseEntity.noContent().build();
     }
@@ -219,16 +218,16 @@ public class OrderController {
     @Operation(summary = "Сообщение клиента персоналу", description = "Требуется аутентификация. Разрешено только клиенту данного заказа.")
     public ResponseEntity<Void> sendClientMessage(@PathVariable Long id,
                                                   @Valid @RequestBody CourierMessageRequest req, // reuse dto with 'text'
-                                                  Authentication authentication) {
+                                                  Authentication authentication,
+                                                  CurrentUser currentUser) {
         if (!isAuthenticated(authentication)) return ResponseEntity.status(401).build();
         Optional<Order> opt = orderRepository.findById(id);
         if (opt.isEmpty()) return ResponseEntity.notFound().build();
         Order order = opt.get();
-        User user = resolveUser(authentication);
-        if (user == null) return ResponseEntity.status(401).build();
+        if (currentUser == null) return ResponseEntity.status(401).build();
         // проверяем, что это клиент заказа
         Long clientId = Optional.ofNullable(order.getClient()).map(User::getId).orElse(null);
-        if (clientId == null || !clientId.equals(user.getId())) return ResponseEntity.status(403).build();
+        if (clientId == null || !clientId.equals(currentUser.id())) return ResponseEntity.status(403).build();
         // заказ не должен быть завершён/отменён
         if (order.getStatus() != null) {
             switch (order.getStatus()) {
@@ -243,22 +242,12 @@ public class OrderController {
                 .order(order)
                 .fromClient(true)
                 .text(req.getText())
-                .senderUserId(user.getId())
+                .senderUserId(currentUser.id())
                 .build());
         Long msgId = Optional.of(saved).map(OrderMessage::getId).orElse(null);
-        // Оповестим персонал бренда: всем участникам membership по brandId
+        // Оповестим персонал бренда: одно событие в топике бренда
         if (brandId != null) {
-            var userIds = membershipRepository.findUserIdsByBrandId(brandId);
-            if (userIds != null) {
-                java.util.Set<Long> unique = new java.util.HashSet<>();
-                for (Long uid : userIds) {
-                    if (uid == null) continue;
-                    if (uid.equals(clientId)) continue; // не уведомляем отправителя (клиента)
-                    if (unique.add(uid)) { // только первый раз
-                        longPollService.publishClientMessage(uid, order.getId(), req.getText(), msgId);
-                    }
-                }
-            }
+            notifications.publishBrandClientMessage(brandId, order.getId(), req.getText(), msgId);
         }
         return ResponseEntity.noContent().build();
     }
@@ -270,7 +259,8 @@ public class OrderController {
     @Operation(summary = "Отправить отзыв по заказу", description = "Требуется аутентификация. Разрешено клиенту заказа после статуса COMPLETED. Повторная отправка запрещена.")
     public ResponseEntity<Void> submitReview(@PathVariable Long id,
                                              @Valid @RequestBody ReviewRequest req,
-                                             Authentication authentication) {
+                                             Authentication authentication,
+                                             CurrentUser currentUser) {
         if (!isAuthenticated(authentication)) return ResponseEntity.status(401).build();
         if (req == null || req.getRating() == null || req.getRating() < 1 || req.getRating() > 5) {
             return ResponseEntity.badRequest().build();
@@ -278,11 +268,10 @@ public class OrderController {
         Optional<Order> opt = orderRepository.findById(id);
         if (opt.isEmpty()) return ResponseEntity.notFound().build();
         Order order = opt.get();
-        User user = resolveUser(authentication);
-        if (user == null) return ResponseEntity.status(401).build();
+        if (currentUser == null) return ResponseEntity.status(401).build();
         // Только клиент этого заказа может оставлять отзыв
         Long clientId = Optional.ofNullable(order.getClient()).map(User::getId).orElse(null);
-        if (clientId == null || !clientId.equals(user.getId())) return ResponseEntity.status(403).build();
+        if (clientId == null || !clientId.equals(currentUser.id())) return ResponseEntity.status(403).build();
         // Отзыв разрешён только после завершения заказа
         if (order.getStatus() == null || order.getStatus() != OrderStatus.COMPLETED) {
             return ResponseEntity.status(409).build();
@@ -293,7 +282,7 @@ public class OrderController {
 
         orderReviewRepository.save(kirillzhdanov.identityservice.model.order.OrderReview.builder()
                 .order(order)
-                .client(user)
+                .client(order.getClient())
                 .rating(req.getRating())
                 .comment(req.getComment())
                 .createdAt(java.time.LocalDateTime.now())
@@ -307,18 +296,18 @@ public class OrderController {
     @GetMapping("/orders/{id}/messages")
     @Operation(summary = "Сообщения заказа", description = "Требуется аутентификация. Доступ клиенту заказа и сотрудникам бренда (membership).")
     public ResponseEntity<?> getOrderMessages(@PathVariable Long id,
-                                              Authentication authentication) {
+                                              Authentication authentication,
+                                              CurrentUser currentUser) {
         if (!isAuthenticated(authentication)) return ResponseEntity.status(401).build();
         Optional<Order> opt = orderRepository.findById(id);
         if (opt.isEmpty()) return ResponseEntity.notFound().build();
         Order order = opt.get();
-        User user = resolveUser(authentication);
-        if (user == null) return ResponseEntity.status(401).build();
+        if (currentUser == null) return ResponseEntity.status(401).build();
         // Разрешаем: клиент своего заказа или сотрудник бренда
         Long clientId = Optional.ofNullable(order.getClient()).map(User::getId).orElse(null);
         Long brandId = Optional.ofNullable(order.getBrand()).map(Brand::getId).orElse(null);
-        boolean allowed = (clientId != null && clientId.equals(user.getId()))
-                || (brandId != null && membershipRepository.findByUser_IdAndBrand_Id(user.getId(), brandId).isPresent());
+        boolean allowed = (clientId != null && clientId.equals(currentUser.id()))
+                || (brandId != null && membershipRepository.findByUser_IdAndBrand_Id(currentUser.id(), brandId).isPresent());
         if (!allowed) return ResponseEntity.status(403).build();
         return ResponseEntity.ok(orderMessageRepository.findByOrder_IdOrderByIdAsc(id));
     }
@@ -343,15 +332,6 @@ public class OrderController {
                 && authentication.isAuthenticated();
     }
 
-    private User resolveUser(Authentication authentication) {
-        try {
-            String username = authentication.getName();
-            return userRepository.findByUsername(username).orElse(null);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
     @Data
     public static class ReviewRequest {
         private Integer rating; // 1..5
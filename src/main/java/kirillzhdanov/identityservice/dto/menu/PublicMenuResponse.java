@@ -0,0 +1,18 @@
+package kirillzhdanov.identityservice.dto.menu;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PublicMenuResponse {
+    private Long brandId;
+    private long version;
+    private List<PublicGroupTagResponse> tags;                  // только непустые группы, по уровню
+    private Map<Long, List<PublicProductResponse>> products;    // по groupTagId, 0 — корневые товары
+}
@@ -20,7 +20,16 @@ public class Token {
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
 	private Long id;
 
-	@Column(unique = true, length = 1024)
+	/**
+	 * SHA-256 от строки JWT — ключ поиска токена (см. {@code TokenFingerprint}).
+	 */
+	@Column(name = "token_hash", unique = true, nullable = false, length = 32)
+	private byte[] tokenHash;
+
+	/**
+	 * Исходная строка JWT; заполняется только при {@code jwt.token-storage.store-raw=true}.
+	 */
+	@Column(length = 1024)
 	private String token;
 
 	@Enumerated(EnumType.STRING)
@@ -54,6 +54,10 @@ public class User {
     @Column(name = "master_id")
     private Long masterId;
 
+    // Эпоха токенов: инкремент отзывает все stateless access-токены пользователя
+    @Column(name = "token_epoch", nullable = false)
+    private long tokenEpoch;
+
     // Отдел (many-to-one)
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "department_id")
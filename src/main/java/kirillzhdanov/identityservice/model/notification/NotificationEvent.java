@@ -0,0 +1,46 @@
+package kirillzhdanov.identityservice.model.notification;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись outbox уведомлений: событие long-poll/SSE с порядковым номером в пределах топика
+ * ({@code user:{id}}, {@code brand:{id}:staff}).
+ * Пишется в бизнес-транзакции без номера; {@code seq} назначает ретранслятор после коммита, в порядке {@code id}.
+ * {@code seq} совпадает с id события, который видит клиент.
+ */
+@Entity
+@Table(name = "notification_events")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class NotificationEvent {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "topic", nullable = false, length = 128)
+    private String topic;
+
+    // null, пока ретранслятор не назначил номер
+    @Column(name = "seq")
+    private Long seq;
+
+    @Column(name = "type", nullable = false, length = 64)
+    private String type;
+
+    // LongPollEvent в JSON
+    @Column(name = "payload", nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    public void onCreate() {
+        if (createdAt == null) createdAt = LocalDateTime.now();
+    }
+}
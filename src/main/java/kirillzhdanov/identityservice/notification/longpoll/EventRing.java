@@ -0,0 +1,164 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Кольцевой буфер событий одного пользователя.
+ * <p>
+ * Идентификаторы событий плотные и монотонные ({@code 1, 2, 3, ...}), поэтому событие с id {@code x}
+ * лежит в ячейке {@code x & mask}: выборка «после since» — O(1) на поиск начала плюс O(batch) на копирование,
+ * ACK и вытеснение при переполнении лишь сдвигают начало окна. Ёмкость растёт степенями двойки до {@code maxSize}.
+ * <p>
+ * Не потокобезопасен: вызывается под монитором очереди пользователя. Если заданы {@link UnreadCounters},
+ * они отражают каждое добавленное и удалённое событие.
+ */
+final class EventRing {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final int maxSize;
+
+    private final UnreadCounters counters;
+
+    private LongPollEvent[] slots = new LongPollEvent[INITIAL_CAPACITY];
+
+    private int mask = INITIAL_CAPACITY - 1;
+
+    /**
+     * id последнего добавленного события (0 — событий ещё не было).
+     */
+    private long lastId;
+
+    private int size;
+
+    EventRing(int maxSize) {
+        this(maxSize, null);
+    }
+
+    EventRing(int maxSize, UnreadCounters counters) {
+        if (maxSize <= 0) throw new IllegalArgumentException("maxSize must be positive");
+        this.maxSize = maxSize;
+        this.counters = counters;
+    }
+
+    long lastId() {
+        return lastId;
+    }
+
+    /**
+     * id самого старого хранимого события (при пустом буфере — {@code lastId + 1}).
+     */
+    long firstId() {
+        return lastId - size + 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Присваивает событию следующий id и добавляет его; при достижении {@code maxSize} вытесняет самое старое.
+     *
+     * @return присвоенный id
+     */
+    long append(LongPollEvent event) {
+        if (size == maxSize) {
+            int oldest = (int) (firstId() & mask);
+            if (counters != null) counters.removed(slots[oldest]);
+            slots[oldest] = null;
+            size--;
+        } else if (size == slots.length) {
+            grow();
+        }
+        long id = ++lastId;
+        event.setId(id);
+        slots[(int) (id & mask)] = event;
+        size++;
+        if (counters != null) counters.added(event);
+        return id;
+    }
+
+    /**
+     * До {@code maxBatch} событий с id больше {@code since}, по возрастанию id.
+     */
+    List<LongPollEvent> after(long since, int maxBatch) {
+        long from = Math.max(since + 1, firstId());
+        if (from > lastId || maxBatch <= 0) return List.of();
+        long to = Math.min(lastId, from + maxBatch - 1);
+        return copy(from, to);
+    }
+
+    /**
+     * Последние {@code n} событий.
+     */
+    List<LongPollEvent> tail(int n) {
+        if (size == 0 || n <= 0) return List.of();
+        return copy(Math.max(firstId(), lastId - n + 1), lastId);
+    }
+
+    /**
+     * Есть ли хранимые события с id больше {@code id}.
+     */
+    boolean hasAfter(long id) {
+        return size > 0 && id < lastId;
+    }
+
+    /**
+     * Число хранимых событий с id больше {@code id}.
+     */
+    int countAfter(long id) {
+        return (int) Math.max(0, lastId - Math.max(id, firstId() - 1));
+    }
+
+    /**
+     * Удаляет все события с id не больше {@code lastReceivedId}.
+     *
+     * @return число удалённых событий
+     */
+    int dropUpTo(long lastReceivedId) {
+        long newFirst = Math.min(lastReceivedId, lastId) + 1;
+        long first = firstId();
+        if (newFirst <= first) return 0;
+        for (long id = first; id < newFirst; id++) {
+            int slot = (int) (id & mask);
+            if (counters != null) counters.removed(slots[slot]);
+            slots[slot] = null;
+        }
+        int dropped = (int) (newFirst - first);
+        size -= dropped;
+        return dropped;
+    }
+
+    /**
+     * Очищает буфер; следующее событие получит id {@code lastId + 1}.
+     */
+    void reset(long lastId) {
+        dropUpTo(this.lastId);
+        this.lastId = lastId;
+    }
+
+    private List<LongPollEvent> copy(long from, long to) {
+        LongPollEvent[] out = new LongPollEvent[(int) (to - from + 1)];
+        for (long id = from; id <= to; id++) {
+            out[(int) (id - from)] = slots[(int) (id & mask)];
+        }
+        return Collections.unmodifiableList(Arrays.asList(out));
+    }
+
+    private void grow() {
+        int capacity = Math.min(slots.length << 1, Integer.highestOneBit(maxSize - 1) << 1);
+        LongPollEvent[] next = new LongPollEvent[capacity];
+        int nextMask = capacity - 1;
+        for (long id = firstId(); id <= lastId; id++) {
+            next[(int) (id & nextMask)] = slots[(int) (id & mask)];
+        }
+        slots = next;
+        mask = nextMask;
+    }
+}
@@ -0,0 +1,53 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Рассылка новых событий outbox через Kafka-топик {@code notifications.broker.kafka.topic}.
+ * <p>
+ * Ключ — топик, поэтому события одного топика идут по порядку. У каждой реплики своя consumer group
+ * (случайный суффикс): событие получают все узлы; читаем только новые сообщения — старые дочитываются из outbox.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnExpression("'${notifications.broker.type:memory}' == 'outbox' && '${notifications.broker.transport:none}' == 'kafka'")
+public class KafkaNotificationTransport implements NotificationTransport {
+
+    static final String LISTENER_ID = "notificationOutboxListener";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    private final NotificationBrokerProperties properties;
+
+    private final OutboxNotificationBroker broker;
+
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void send(NotificationMessage message) {
+        try {
+            kafkaTemplate.send(properties.getKafka().getTopic(), message.topic(), objectMapper.writeValueAsString(message));
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось отправить событие уведомления в Kafka", e);
+        }
+    }
+
+    @KafkaListener(id = LISTENER_ID,
+            topics = "${notifications.broker.kafka.topic:identity.notifications}",
+            groupId = "${notifications.broker.kafka.group-prefix:identity-notifications}-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    void onMessage(String payload) {
+        try {
+            broker.onMessage(objectMapper.readValue(payload, NotificationMessage.class));
+        } catch (Exception e) {
+            log.warn("Некорректное событие уведомления из Kafka: {}", e.getClass().getSimpleName());
+        }
+    }
+}
@@ -5,10 +5,14 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 public class LongPollAckRequest {
     private long lastReceivedId; // client acknowledges having received all events up to and including this id
+    // курсоры топиков персонала, до которых клиент обработал события: {"brand:5:staff": 40}
+    private Map<String, Long> cursors;
 }
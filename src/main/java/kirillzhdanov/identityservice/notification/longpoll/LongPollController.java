@@ -7,9 +7,12 @@ import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.CrossOrigin;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
-import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.security.CurrentUser;
 import lombok.extern.slf4j.Slf4j;
 
 @RestController
@@ -19,15 +22,19 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class LongPollController {
 
-    private final LongPollService longPollService;
-    private final UserRepository userRepository;
+    private final NotificationBroker longPollService;
+
+    private final NotificationSubscriptions subscriptions;
 
     @GetMapping
     public CompletableFuture<ResponseEntity<?>> poll(
             @RequestParam(name = "since", required = false, defaultValue = "0") long since,
             @RequestParam(name = "timeoutMs", required = false, defaultValue = "60000") long timeoutMs,
             @RequestParam(name = "maxBatch", required = false, defaultValue = "50") int maxBatch,
-            Authentication authentication
+            // курсоры топиков персонала из прошлого ответа: cursor=brand:5:staff=40
+            @RequestParam(name = "cursor", required = false) List<String> cursors,
+            Authentication authentication,
+            CurrentUser currentUser
     ) {
         try {
             log.info("[LP] controller poll ENTER since={} timeoutMs={} maxBatch={} principal={} isAuth={}",
@@ -39,9 +46,15 @@ public class LongPollController {
                 log.info("[LP] controller poll UNAUTH since={} -> 204", since);
                 return CompletableFuture.completedFuture(ResponseEntity.noContent().build());
             }
-            Long userId = resolveUserId(authentication);
-            return longPollService.poll(userId, since, timeoutMs, maxBatch)
+            Long userId = resolveUserId(authentication, currentUser);
+            Map<String, Long> topics = subscriptions.topics(userId, cursors);
+            CompletableFuture<LongPollEnvelope> result = topics == null || topics.isEmpty()
+                    ? longPollService.poll(userId, since, timeoutMs, maxBatch)
+                    : longPollService.poll(userId, since, topics, timeoutMs, maxBatch);
+            return result
                     .thenApply(envelope -> {
+                        // курсоры топиков нужны и после пустого ответа: иначе следующий poll начнёт с текущего конца
+                        if (envelope != null) subscriptions.remember(userId, envelope.getCursors());
                         if (envelope == null || envelope.getEvents() == null || envelope.getEvents().isEmpty()) {
                             // idle-ответ: 204 No Content
                             log.info("[LP] controller poll OK idle userId={} since={} -> 204", userId, since);
@@ -62,15 +75,15 @@ public class LongPollController {
     }
 
     @PostMapping("/ack")
-    public ResponseEntity<Void> ack(@RequestBody LongPollAckRequest req, Authentication authentication) {
+    public ResponseEntity<Void> ack(@RequestBody LongPollAckRequest req, Authentication authentication, CurrentUser currentUser) {
         try {
             if (authentication == null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken) {
                 // Открытый доступ: без аутентификации просто no-op, чтобы не получать 401 на фронте
                 log.info("[LP] controller ack UNAUTH lastReceivedId={} -> 204", req != null ? req.getLastReceivedId() : null);
                 return ResponseEntity.noContent().build();
             }
-            Long userId = resolveUserId(authentication);
-            longPollService.ack(userId, req.getLastReceivedId());
+            Long userId = resolveUserId(authentication, currentUser);
+            longPollService.ack(userId, req.getLastReceivedId(), readCursors(userId, req.getCursors()));
             log.info("[LP] controller ack OK userId={} lastReceivedId={} -> 204", userId, req.getLastReceivedId());
             return ResponseEntity.noContent().build();
         } catch (Exception ex) {
@@ -79,24 +92,40 @@ public class LongPollController {
         }
     }
 
-    private Long resolveUserId(Authentication authentication) {
-        // Корректно резолвим числовой userId по username, чтобы он совпадал с publish(userId,...)
+    /**
+     * Счётчики неподтверждённых событий для бейджа: без long-poll и без ожидания. События топиков персонала
+     * считаются после курсоров, переданных в ACK.
+     */
+    @GetMapping("/unreadCount")
+    public ResponseEntity<LongPollUnreadCount> unreadCount(Authentication authentication, CurrentUser currentUser) {
+        Long userId = resolveUserId(authentication, currentUser);
+        return ResponseEntity.ok(longPollService.unreadCount(userId, subscriptions.topics(userId, null).keySet()));
+    }
+
+    /**
+     * Курсоры прочитанного из ACK только по топикам, на которые пользователь подписан.
+     */
+    private Map<String, Long> readCursors(Long userId, Map<String, Long> cursors) {
+        if (cursors == null || cursors.isEmpty()) return Map.of();
+        Map<String, Long> allowed = new HashMap<>(cursors);
+        allowed.keySet().retainAll(subscriptions.topics(userId, null).keySet());
+        return allowed;
+    }
+
+    static Long resolveUserId(Authentication authentication, CurrentUser currentUser) {
+        // userId должен совпадать с publish(userId,...): берём его из CurrentUser, собранного по principal фильтра
         try {
+            if (currentUser != null && currentUser.id() != null) return currentUser.id();
             if (authentication == null) return 0L;
             String name = authentication.getName();
             if (name == null) return 0L;
-            // сначала пробуем как id
+            // пользователь не найден — пробуем имя как id
             try {
                 return Long.parseLong(name);
             } catch (NumberFormatException ignore) {
             }
-            // иначе ищем по username
-            return userRepository.findByUsername(name)
-                    .map(u -> u.getId())
-                    .orElseGet(() -> {
-                        log.warn("LongPoll: cannot resolve userId by username='{}', fallback to hash queue", name);
-                        return (long) name.hashCode();
-                    });
+            log.warn("LongPoll: cannot resolve userId by username='{}', fallback to hash queue", name);
+            return (long) name.hashCode();
         } catch (Exception ex) {
             log.error("LongPoll: resolveUserId failed", ex);
             try {
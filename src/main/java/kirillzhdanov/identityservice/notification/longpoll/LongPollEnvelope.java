@@ -1,11 +1,13 @@
 package kirillzhdanov.identityservice.notification.longpoll;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
 @Builder
@@ -16,4 +18,7 @@ public class LongPollEnvelope {
     private long nextSince;   // client should pass this value as 'since' in the next poll
     private boolean hasMore;  // there are more events buffered server-side beyond this page
     private int unreadCount;  // approximate unread count for badge
+    // курсоры дополнительных топиков (топик → id последнего события); клиент передаёт их в следующем запросе
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, Long> cursors;
 }
@@ -1,5 +1,6 @@
 package kirillzhdanov.identityservice.notification.longpoll;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -14,6 +15,9 @@ import java.time.Instant;
 public class LongPollEvent {
     private long id; // monotonically increasing per user
     private LongPollEventType type;
+    // топик события, если это не личный топик получателя (id считаются в пределах топика)
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String topic;
 
     // Common context
     private Long orderId;
@@ -0,0 +1,58 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "notifications.longpoll")
+public class LongPollProperties {
+
+    /**
+     * Период сборщика простаивающих очередей и общего предела буферов ({@link LongPollService#sweep()}).
+     */
+    private Duration sweepInterval = Duration.ofMinutes(1);
+
+    /**
+     * Очередь без событий и ждущих запросов удаляется, если к ней не обращались дольше этого времени.
+     */
+    private Duration idleTtl = Duration.ofMinutes(10);
+
+    /**
+     * Очередь с недоставленными событиями удаляется, если клиент не возвращался дольше этого времени.
+     */
+    private Duration abandonedTtl = Duration.ofHours(24);
+
+    /**
+     * Общий предел событий в буферах всех пользователей. При превышении самые длинные буферы
+     * усекаются до справедливой доли ({@code maxBufferedEvents / число очередей}).
+     */
+    private long maxBufferedEvents = 200_000;
+
+    /**
+     * Нижняя граница справедливой доли: столько последних событий пользователя не вытесняются общим пределом.
+     */
+    private int minEventsPerUser = 20;
+
+    /**
+     * Интервал heartbeat-комментария в SSE-потоке {@code /notifications/stream} при отсутствии событий.
+     */
+    private Duration streamHeartbeat = Duration.ofSeconds(15);
+
+    /**
+     * Время жизни SSE-подключения (не больше оставшегося срока access-токена); после него браузер
+     * переподключается с {@code Last-Event-ID}.
+     */
+    private Duration streamTimeout = Duration.ofMinutes(30);
+
+    /**
+     * Сколько кешируются бренды, на топики персонала которых подписан пользователь: смена роли
+     * доходит до long-poll не позже этого срока.
+     */
+    private Duration staffTopicsTtl = Duration.ofMinutes(1);
+}
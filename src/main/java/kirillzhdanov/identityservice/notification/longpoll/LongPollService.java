@@ -1,181 +1,333 @@
 package kirillzhdanov.identityservice.notification.longpoll;
 
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
-import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * In-memory long-poll broker per user.
- * - Stores events with monotonically increasing IDs per user
+ * In-memory long-poll broker per topic ({@link NotificationTopic}).
+ * - Stores events with monotonically increasing IDs per topic
+ * - Pollers subscribe to their own topic plus extra topics (brand staff); a brand event is stored once
  * - Supports long-poll with timeout and pagination (maxBatch)
  * - Supports ACK to trim delivered events
+ * - Evicts idle queues and bounds the total number of buffered events ({@code notifications.longpoll.*})
  * <p>
- * Important: This is an in-memory implementation intended for MVP and tests.
- * It can be extracted behind an interface and replaced by a persistent broker later.
+ * Сам по себе — брокер одного узла: события живут только в памяти. В режиме {@code notifications.broker.type=outbox}
+ * служит локальным кешем {@link OutboxNotificationBroker}: события с уже присвоенными id приходят через
+ * {@link #deliver(String, LongPollEvent)}, а запросы, которые буфер не покрывает, брокер дочитывает из БД.
  */
 @Service
 @Slf4j
-public class LongPollService {
+public class LongPollService implements NotificationBroker {
 
     private static final int MAX_BUFFER_PER_USER = 1000; // safety cap
-    private final Map<Long, UserQueue> queues = new ConcurrentHashMap<>();
-    // Планировщик для таймаутов long-poll (легковесный пул)
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1, r -> {
-        Thread t = new Thread(r, "longpoll-timeout");
-        t.setDaemon(true);
-        return t;
-    });
-
-    private UserQueue q(Long userId) {
-        return queues.computeIfAbsent(userId, k -> new UserQueue());
-    }
-
-    public void publishStatusChanged(Long userId, Long orderId, String oldStatus, String newStatus) {
-        LongPollEvent evt = LongPollEvent.builder()
-                .type(LongPollEventType.ORDER_STATUS_CHANGED)
-                .orderId(orderId)
-                .oldStatus(oldStatus)
-                .newStatus(newStatus)
-                .at(Instant.now())
-                .build();
-        log.debug("[LP] publishStatusChanged userId={} orderId={} {}->{}", userId, orderId, oldStatus, newStatus);
-        enqueue(userId, evt);
-    }
-
-    public void publishCourierMessage(Long userId, Long orderId, String text, Long messageId) {
-        LongPollEvent evt = LongPollEvent.builder()
-                .type(LongPollEventType.COURIER_MESSAGE)
-                .orderId(orderId)
-                .messageId(messageId)
-                .text(text)
-                .at(Instant.now())
-                .build();
-        log.debug("[LP] publishCourierMessage userId={} orderId={} text='{}'", userId, orderId, text);
-        enqueue(userId, evt);
-    }
-
-    public void publishClientMessage(Long userId, Long orderId, String text, Long messageId) {
-        LongPollEvent evt = LongPollEvent.builder()
-                .type(LongPollEventType.CLIENT_MESSAGE)
-                .orderId(orderId)
-                .messageId(messageId)
-                .text(text)
-                .at(Instant.now())
-                .build();
-        log.debug("[LP] publishClientMessage userId={} orderId={} text='{}'", userId, orderId, text);
-        enqueue(userId, evt);
-    }
-
-    public void publishNewOrder(Long userId, Long orderId) {
-        LongPollEvent evt = LongPollEvent.builder()
-                .type(LongPollEventType.NEW_ORDER)
-                .orderId(orderId)
-                .at(Instant.now())
-                .build();
-        log.debug("[LP] publishNewOrder userId={} orderId={}", userId, orderId);
-        enqueue(userId, evt);
-    }
-
-    private void enqueue(Long userId, LongPollEvent evt) {
-        UserQueue uq = q(userId);
-        synchronized (uq) {
-            long id = ++uq.lastId;
-            evt.setId(id);
-            uq.buffer.add(evt);
-            // trim if exceeds cap
-            int overflow = uq.buffer.size() - MAX_BUFFER_PER_USER;
-            if (overflow > 0) {
-                uq.buffer.subList(0, overflow).clear();
-            }
-            // wake waiters
-            if (log.isDebugEnabled()) {
-                log.debug("[LP] enqueue userId={} id={} type={} bufferSize={} waiters={}", userId, id, evt.getType(), uq.buffer.size(), uq.waiters.size());
+    // Окно склейки пробуждений: пачка событий за это время уходит ждущему клиенту одним ответом
+    private static final long WAKE_COALESCE_MS = 20;
+    private final Map<String, UserQueue> queues = new ConcurrentHashMap<>();
+    // события во всех буферах; меняется под монитором соответствующей очереди
+    private final AtomicLong bufferedEvents = new AtomicLong();
+    private final LongPollProperties properties;
+    // Таймауты ждущих запросов: колесо с тиком 100 мс, оборот ~102 с покрывает таймаут по умолчанию (60 с)
+    private final TimeoutWheel timeouts = new TimeoutWheel("longpoll-timeout", 100, 1024);
+    // Планировщик отложенных пробуждений (одна задача на пачку событий очереди, а не на запрос)
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * @param environment при {@code spring.threads.virtual.enabled=true} задачи планировщика идут на виртуальных потоках
+     */
+    public LongPollService(LongPollProperties properties, ObjectProvider<MeterRegistry> meterRegistry, Environment environment) {
+        this.properties = properties;
+        ThreadFactory threads = environment != null && Threading.VIRTUAL.isActive(environment)
+                ? Thread.ofVirtual().name("longpoll-wake-", 0).factory()
+                : Thread.ofPlatform().name("longpoll-wake").daemon().factory();
+        this.scheduler = Executors.newScheduledThreadPool(1, threads);
+        MeterRegistry registry = meterRegistry != null ? meterRegistry.getIfAvailable() : null;
+        if (registry != null) {
+            Gauge.builder("longpoll.queues", queues, Map::size)
+                    .description("Очереди long-poll в памяти")
+                    .register(registry);
+            Gauge.builder("longpoll.buffered.events", bufferedEvents, AtomicLong::get)
+                    .description("Недоставленные события во всех буферах long-poll")
+                    .register(registry);
+            Gauge.builder("longpoll.waiters", this, LongPollService::parkedWaiters)
+                    .description("Ждущие long-poll запросы")
+                    .register(registry);
+            Gauge.builder("longpoll.timeouts.pending", timeouts, TimeoutWheel::pendingCount)
+                    .description("Таймауты long-poll в колесе таймеров")
+                    .register(registry);
+        }
+    }
+
+    /**
+     * Очередь топика с отметкой обращения. Вызывающий обязан взять монитор очереди и проверить
+     * {@link UserQueue#evicted}: удалённую сборщиком очередь нужно запросить заново.
+     */
+    private UserQueue q(String topic) {
+        UserQueue uq = queues.computeIfAbsent(topic, k -> new UserQueue(NotificationTopic.isUser(k)));
+        uq.lastAccessNanos = System.nanoTime();
+        return uq;
+    }
+
+    private void enqueue(String topic, LongPollEvent evt) {
+        while (true) {
+            UserQueue uq = q(topic);
+            synchronized (uq) {
+                if (uq.evicted) continue; // очередь удалена сборщиком — берём новую
+                appendAndWake(topic, uq, evt);
+                return;
             }
-            if (!uq.waiters.isEmpty()) {
-                List<CompletableFuture<LongPollEnvelope>> copy = new ArrayList<>(uq.waiters);
-                uq.waiters.clear();
-                for (CompletableFuture<LongPollEnvelope> w : copy) {
-                    safeCompleteNow(uq, w, 0, 50);
+        }
+    }
+
+    private void appendAndWake(String topic, UserQueue uq, LongPollEvent evt) {
+        // id присваивает буфер; при переполнении самое старое событие вытесняется
+        int sizeBefore = uq.buffer.size();
+        long id = uq.buffer.append(evt);
+        bufferedEvents.addAndGet(uq.buffer.size() - sizeBefore);
+        // общий предел: сверх справедливой доли усекается только собственный буфер
+        if (bufferedEvents.get() > properties.getMaxBufferedEvents()) {
+            trimToFairShare(uq);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("[LP] enqueue topic={} id={} type={} bufferSize={} waiters={}", topic, id, evt.getType(), uq.buffer.size(), uq.waiters.size());
+        }
+        // wake waiters: одно отложенное пробуждение на всю пачку событий
+        if (!uq.waiters.isEmpty() && !uq.wakeScheduled) {
+            uq.wakeScheduled = true;
+            scheduler.schedule(() -> wakeWaiters(uq), WAKE_COALESCE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Завершает ждущие запросы, для которых появились события после их {@code since}.
+     * Остальные продолжают ждать.
+     */
+    private void wakeWaiters(UserQueue uq) {
+        try {
+            List<Subscription> ready = null;
+            synchronized (uq) {
+                uq.wakeScheduled = false;
+                Iterator<Waiter> it = uq.waiters.iterator();
+                while (it.hasNext()) {
+                    Waiter w = it.next();
+                    if (w.promise().isDone()) {
+                        it.remove();
+                    } else if (uq.buffer.hasAfter(w.since())) {
+                        it.remove();
+                        if (w.subscription() == null) {
+                            completeWithEvents(uq, w);
+                        } else {
+                            if (ready == null) ready = new ArrayList<>();
+                            ready.add(w.subscription());
+                        }
+                    }
                 }
             }
+            // подписка на несколько топиков собирает ответ по всем очередям — уже без монитора этой
+            if (ready != null) {
+                for (Subscription sub : ready) {
+                    sub.fire();
+                }
+            }
+        } catch (Exception e) {
+            log.error("[LP] wake waiters failed: {}", e.toString());
         }
     }
 
-    public void publish(Long userId, LongPollEvent evt) {
-        enqueue(userId, evt);
+    @Override
+    public void publish(String topic, LongPollEvent evt) {
+        log.debug("[LP] publish topic={} type={} orderId={}", topic, evt.getType(), evt.getOrderId());
+        if (!NotificationTopic.isUser(topic)) evt.setTopic(topic);
+        enqueue(topic, evt);
+    }
+
+    /**
+     * Пачка событий топика — под одним монитором очереди и с одним пробуждением ждущих.
+     */
+    @Override
+    public void publishAll(String topic, List<LongPollEvent> events) {
+        if (events.isEmpty()) return;
+        log.debug("[LP] publish topic={} batch={}", topic, events.size());
+        if (!NotificationTopic.isUser(topic)) events.forEach(evt -> evt.setTopic(topic));
+        while (true) {
+            UserQueue uq = q(topic);
+            synchronized (uq) {
+                if (uq.evicted) continue; // очередь удалена сборщиком — берём новую
+                for (LongPollEvent evt : events) {
+                    appendAndWake(topic, uq, evt);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Принимает событие с id, присвоенным внешним хранилищем. Повторы отбрасываются; при разрыве в id
+     * (пропущенная рассылка) буфер начинается заново с этого события, а ждущие с курсором до разрыва
+     * получают пустой ответ и перезапрашивают пропуск у брокера.
+     */
+    void deliver(String topic, LongPollEvent evt) {
+        long id = evt.getId();
+        while (true) {
+            UserQueue uq = q(topic);
+            synchronized (uq) {
+                if (uq.evicted) continue; // очередь удалена сборщиком — берём новую
+                if (uq.primed && id <= uq.buffer.lastId()) return; // повтор
+                if (!uq.primed || id > uq.buffer.lastId() + 1) {
+                    bufferedEvents.addAndGet(-uq.buffer.size());
+                    uq.buffer.reset(id - 1);
+                    uq.primed = true;
+                    releaseUncovered(uq);
+                }
+                appendAndWake(topic, uq, evt);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Для внешнего хранилища: задаёт последний id топика, если очередь ещё не знает своей базы.
+     */
+    void prime(String topic, long lastId) {
+        while (true) {
+            UserQueue uq = q(topic);
+            synchronized (uq) {
+                if (uq.evicted) continue;
+                if (!uq.primed) {
+                    bufferedEvents.addAndGet(-uq.buffer.size());
+                    uq.buffer.reset(lastId);
+                    uq.primed = true;
+                }
+                return;
+            }
+        }
+    }
+
+    boolean isPrimed(String topic) {
+        UserQueue uq = queues.get(topic);
+        return uq != null && uq.primed && !uq.evicted;
+    }
+
+    /**
+     * Все события после {@code since} либо есть в буфере, либо ещё не опубликованы.
+     */
+    boolean covers(String topic, long since) {
+        UserQueue uq = queues.get(topic);
+        if (uq == null) return false;
+        synchronized (uq) {
+            return uq.primed && !uq.evicted && since >= uq.buffer.firstId() - 1;
+        }
+    }
+
+    private void releaseUncovered(UserQueue uq) {
+        long firstId = uq.buffer.firstId();
+        Iterator<Waiter> it = uq.waiters.iterator();
+        while (it.hasNext()) {
+            Waiter w = it.next();
+            if (w.since() < firstId - 1) {
+                it.remove();
+                if (w.subscription() != null) {
+                    w.subscription().release();
+                    continue;
+                }
+                w.promise().complete(LongPollEnvelope.builder()
+                        .events(List.of())
+                        .nextSince(w.since())
+                        .hasMore(true)
+                        .unreadCount(uq.buffer.size())
+                        .build());
+            }
+        }
     }
 
     /**
      * Long poll for events after 'since' (exclusive). If none, wait up to timeoutMs.
      */
+    @Override
     public CompletableFuture<LongPollEnvelope> poll(Long userId, long since, long timeoutMs, int maxBatch) {
+        return poll(userId, since, Map.of(), timeoutMs, maxBatch);
+    }
+
+    /**
+     * Long poll по личному топику и дополнительным топикам. Без дополнительных топиков — прежний путь
+     * с одной очередью; иначе ожидание регистрируется во всех очередях, а ответ собирается по всем сразу.
+     */
+    @Override
+    public CompletableFuture<LongPollEnvelope> poll(Long userId, long since, Map<String, Long> topics, long timeoutMs, int maxBatch) {
 //        log.info("[LP] poll enter userId={} since={} timeoutMs={} maxBatch={}", userId, since, timeoutMs, maxBatch);
         Objects.requireNonNull(userId, "userId");
         if (timeoutMs <= 0) timeoutMs = 60000; // default 60s
         if (maxBatch <= 0 || maxBatch > 200) maxBatch = 50;
-        UserQueue uq = q(userId);
+        if (topics != null && !topics.isEmpty()) {
+            return new Subscription(userId, since, topics, maxBatch).start(timeoutMs);
+        }
         CompletableFuture<LongPollEnvelope> promise = new CompletableFuture<>();
-        synchronized (uq) {
-            // If we already have events beyond 'since', return immediately
-            List<LongPollEvent> events;
-            try {
-                events = uq.buffer.stream()
-                        .filter(e -> e.getId() > since)
-                        .limit(maxBatch)
-                        .toList();
-            } catch (Exception ex) {
-                // На всякий случай — не даём исключению уйти наружу
-                events = List.of();
-            }
-            // Special case: initial connect (since<=0) — return last up to 10 events to provide context
-            if ((since <= 0) && events.isEmpty() && !uq.buffer.isEmpty()) {
-                int fromIdx = Math.max(0, uq.buffer.size() - 10);
-                events = new ArrayList<>(uq.buffer.subList(fromIdx, uq.buffer.size()));
-            }
-            if (!events.isEmpty()) {
-                long nextSince = events.getLast().getId();
-                boolean hasMore = uq.buffer.stream().anyMatch(e -> e.getId() > nextSince);
-                log.info("[LP] poll immediate userId={} since={} -> nextSince={} events={} hasMore={} bufferSize={} waiters={}",
-                        userId, since, nextSince, events.size(), hasMore, uq.buffer.size(), uq.waiters.size());
-                promise.complete(LongPollEnvelope.builder()
-                        .events(Collections.unmodifiableList(events))
-                        .nextSince(nextSince)
-                        .hasMore(hasMore)
-                        .unreadCount(uq.buffer.size())
-                        .build());
-                return promise;
+        String topic = NotificationTopic.user(userId);
+        UserQueue uq;
+        while (true) {
+            uq = q(topic);
+            synchronized (uq) {
+                if (uq.evicted) continue; // очередь удалена сборщиком — берём новую
+                // If we already have events beyond 'since', return immediately
+                List<LongPollEvent> events = uq.buffer.after(since, maxBatch);
+                // Special case: initial connect (since<=0) — return last up to 10 events to provide context
+                if ((since <= 0) && events.isEmpty() && !uq.buffer.isEmpty()) {
+                    events = uq.buffer.tail(10);
+                }
+                if (!events.isEmpty()) {
+                    long nextSince = events.getLast().getId();
+                    boolean hasMore = uq.buffer.hasAfter(nextSince);
+                    log.info("[LP] poll immediate userId={} since={} -> nextSince={} events={} hasMore={} bufferSize={} waiters={}",
+                            userId, since, nextSince, events.size(), hasMore, uq.buffer.size(), uq.waiters.size());
+                    promise.complete(LongPollEnvelope.builder()
+                            .events(events)
+                            .nextSince(nextSince)
+                            .hasMore(hasMore)
+                            .unreadCount(uq.buffer.size())
+                            .build());
+                    return promise;
+                }
+                // Otherwise, park waiter and set a timeout fallback
+                // since из будущего (id сбросились после рестарта) — ждём любые новые события
+                long waitSince = since > uq.buffer.lastId() ? 0 : since;
+                uq.waiters.add(new Waiter(promise, waitSince, maxBatch, null));
+//                log.info("[LP] poll parked userId={} since={} waitersNow={}", userId, since, uq.waiters.size());
+                break;
             }
-            // Otherwise, park waiter and set a timeout fallback
-            uq.waiters.add(promise);
-//            log.info("[LP] poll parked userId={} since={} waitersNow={}", userId, since, uq.waiters.size());
         }
-        // timeout: complete with empty envelope keeping same 'since' (через планировщик)
-        long finalTimeoutMs = timeoutMs;
-        final ScheduledFuture<?> timeoutTask = scheduler.schedule(() -> {
+        final UserQueue parked = uq;
+        // timeout: complete with empty envelope keeping same 'since' (через колесо таймеров)
+        final TimeoutWheel.Timeout timeoutTask = timeouts.schedule(() -> {
             try {
-                UserQueue uq2 = q(userId);
-                synchronized (uq2) {
+                synchronized (parked) {
                     if (promise.isDone()) return;
-                    uq2.waiters.remove(promise);
-//                    log.info("[LP] poll timeout userId={} since={} waitersAfterRm={} bufferSize={}", userId, since, uq2.waiters.size(), uq2.buffer.size());
+                    parked.waiters.removeIf(w -> w.promise() == promise);
+//                    log.info("[LP] poll timeout userId={} since={} waitersAfterRm={} bufferSize={}", userId, since, parked.waiters.size(), parked.buffer.size());
                     promise.complete(LongPollEnvelope.builder()
                             .events(List.of())
                             .nextSince(since)
                             .hasMore(false)
-                            .unreadCount(uq2.buffer.size())
+                            .unreadCount(parked.buffer.size())
                             .build());
                 }
             } catch (Exception ignored) {
             }
-        }, finalTimeoutMs, TimeUnit.MILLISECONDS);
+        }, timeoutMs);
 
         // Если промис завершится раньше — отменяем таймаут
         promise.whenComplete((res, err) -> {
             try {
-                timeoutTask.cancel(false);
+                timeoutTask.cancel();
             } catch (Exception ignored) {
             }
             if (err != null) {
@@ -190,34 +342,146 @@ public class LongPollService {
         return promise;
     }
 
-    public void ack(Long userId, long lastReceivedId) {
+    @Override
+    public void ack(Long userId, long lastReceivedId, Map<String, Long> cursors) {
         Objects.requireNonNull(userId, "userId");
-        UserQueue uq = q(userId);
+        // ACK не создаёт очередь: без неё подтверждать нечего. Удаляются только события личного топика:
+        // общие топики вытесняются по пределам буфера, для них запоминается курсор прочитанного
+        String personal = NotificationTopic.user(userId);
+        UserQueue uq = queues.get(personal);
+        if (uq == null) return;
+        uq.lastAccessNanos = System.nanoTime();
+        if (cursors != null) {
+            cursors.forEach((topic, id) -> {
+                if (topic != null && id != null && !topic.equals(personal)) uq.readCursors.merge(topic, id, Math::max);
+            });
+        }
         synchronized (uq) {
             // drop all <= lastReceivedId
-            int idx = -1;
-            for (int i = uq.buffer.size() - 1; i >= 0; i--) {
-                if (uq.buffer.get(i).getId() <= lastReceivedId) {
-                    idx = i;
-                    break;
+            int dropped = uq.buffer.dropUpTo(lastReceivedId);
+            if (dropped > 0) {
+                bufferedEvents.addAndGet(-dropped);
+                log.debug("[LP] ack userId={} lastReceivedId={} newBufferSize={}", userId, lastReceivedId, uq.buffer.size());
+            }
+        }
+    }
+
+    /**
+     * Личный топик читается из счётчиков очереди без её монитора; общие — из префиксных сумм топика
+     * под его монитором: разность на курсоре прочитанного, без перебора событий.
+     * При отсутствии личной очереди — нули.
+     */
+    @Override
+    public LongPollUnreadCount unreadCount(Long userId, Collection<String> topics) {
+        Objects.requireNonNull(userId, "userId");
+        UserQueue uq = queues.get(NotificationTopic.user(userId));
+        if (uq == null || uq.evicted) return LongPollUnreadCount.empty();
+        uq.lastAccessNanos = System.nanoTime();
+        LongPollUnreadCount personal = uq.unread.snapshot();
+        if (topics == null || topics.isEmpty() || uq.readCursors.isEmpty()) return personal;
+        LongPollUnreadCount total = personal;
+        for (String topic : topics) {
+            Long read = uq.readCursors.get(topic);
+            UserQueue tq = read != null ? queues.get(topic) : null;
+            if (tq == null) continue;
+            LongPollUnreadCount shared;
+            synchronized (tq) {
+                shared = tq.unread.after(read);
+            }
+            total = total.plus(shared);
+        }
+        return total;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        timeouts.stop();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Удаляет очереди, к которым давно не обращались: пустые — через {@code idleTtl},
+     * с недоставленными событиями — через {@code abandonedTtl}. Затем, если общий предел превышен,
+     * усекает буферы сверх справедливой доли.
+     */
+    @Scheduled(fixedDelayString = "${notifications.longpoll.sweep-interval:PT1M}",
+            initialDelayString = "${notifications.longpoll.sweep-interval:PT1M}")
+    public void sweep() {
+        int evicted = evictIdle(System.nanoTime());
+        int trimmed = 0;
+        if (bufferedEvents.get() > properties.getMaxBufferedEvents()) {
+            for (UserQueue uq : queues.values()) {
+                synchronized (uq) {
+                    trimmed += trimToFairShare(uq);
                 }
             }
-            if (idx >= 0) {
-                uq.buffer.subList(0, idx + 1).clear();
-                log.debug("[LP] ack userId={} lastReceivedId={} newBufferSize={}", userId, lastReceivedId, uq.buffer.size());
+        }
+        if (evicted > 0 || trimmed > 0) {
+            log.info("[LP] sweep evictedQueues={} trimmedEvents={} queues={} bufferedEvents={}",
+                    evicted, trimmed, queues.size(), bufferedEvents.get());
+        }
+    }
+
+    /**
+     * @return число удалённых очередей
+     */
+    int evictIdle(long nowNanos) {
+        long idleTtl = properties.getIdleTtl().toNanos();
+        long abandonedTtl = properties.getAbandonedTtl().toNanos();
+        int evicted = 0;
+        for (Map.Entry<String, UserQueue> e : queues.entrySet()) {
+            UserQueue uq = e.getValue();
+            long idle = nowNanos - uq.lastAccessNanos;
+            if (idle < idleTtl) continue;
+            synchronized (uq) {
+                uq.waiters.removeIf(w -> w.promise().isDone());
+                if (!uq.waiters.isEmpty()) continue;
+                if (!uq.buffer.isEmpty() && idle < abandonedTtl) continue;
+                uq.evicted = true;
+                bufferedEvents.addAndGet(-uq.buffer.dropUpTo(Long.MAX_VALUE));
+                queues.remove(e.getKey(), uq);
+                evicted++;
             }
         }
+        return evicted;
     }
 
-    private void safeCompleteNow(UserQueue uq, CompletableFuture<LongPollEnvelope> w, long since, int maxBatch) {
-        if (w.isDone()) return;
-        List<LongPollEvent> events = uq.buffer.stream()
-                .filter(e -> e.getId() > since)
-                .limit(maxBatch)
-                .toList();
-        long nextSince = events.isEmpty() ? since : events.getLast().getId();
-        boolean hasMore = !events.isEmpty() && uq.buffer.stream().anyMatch(e -> e.getId() > nextSince);
-        w.complete(LongPollEnvelope.builder()
+    /**
+     * Усекает буфер до справедливой доли общего предела, отбрасывая самые старые события. Под монитором очереди.
+     *
+     * @return число отброшенных событий
+     */
+    private int trimToFairShare(UserQueue uq) {
+        long share = properties.getMaxBufferedEvents() / Math.max(1, queues.size());
+        int fair = (int) Math.min(MAX_BUFFER_PER_USER, Math.max(properties.getMinEventsPerUser(), share));
+        int excess = uq.buffer.size() - fair;
+        if (excess <= 0) return 0;
+        int dropped = uq.buffer.dropUpTo(uq.buffer.firstId() + excess - 1);
+        bufferedEvents.addAndGet(-dropped);
+        return dropped;
+    }
+
+    int queueCount() {
+        return queues.size();
+    }
+
+    long bufferedEventCount() {
+        return bufferedEvents.get();
+    }
+
+    private double parkedWaiters() {
+        long n = 0;
+        for (UserQueue uq : queues.values()) {
+            n += uq.waiters.size();
+        }
+        return n;
+    }
+
+    private void completeWithEvents(UserQueue uq, Waiter w) {
+        List<LongPollEvent> events = uq.buffer.after(w.since(), w.maxBatch());
+        long nextSince = events.isEmpty() ? w.since() : events.getLast().getId();
+        boolean hasMore = !events.isEmpty() && uq.buffer.hasAfter(nextSince);
+        w.promise().complete(LongPollEnvelope.builder()
                 .events(events)
                 .nextSince(nextSince)
                 .hasMore(hasMore)
@@ -226,10 +490,202 @@ public class LongPollService {
     }
 
     private static class UserQueue {
-        // sorted by id ascending
-        final List<LongPollEvent> buffer = new ArrayList<>();
-        // pending waiters
-        final List<CompletableFuture<LongPollEnvelope>> waiters = new CopyOnWriteArrayList<>();
-        long lastId = 0L;
+        // непрочитанное (до ACK) по типу и заказу у личного топика; у общего — с индексом по id для курсоров читателей
+        final UnreadCounters unread;
+        // курсоры прочитанного в общих топиках из ACK (топик → id) — только у личного топика
+        final Map<String, Long> readCursors;
+        // события топика по возрастанию id, не больше MAX_BUFFER_PER_USER
+        final EventRing buffer;
+        // pending waiters (под монитором очереди)
+        final List<Waiter> waiters = new ArrayList<>();
+        // пробуждение уже запланировано — новые события попадут в тот же ответ
+        boolean wakeScheduled;
+        // последнее обращение клиента или публикация (System.nanoTime)
+        volatile long lastAccessNanos = System.nanoTime();
+        // удалена сборщиком; держатель ссылки должен запросить очередь заново
+        boolean evicted;
+        // база id известна внешнему хранилищу (режим outbox); в памяти не используется
+        boolean primed;
+
+        UserQueue(boolean personal) {
+            this.unread = personal ? new UnreadCounters() : UnreadCounters.indexed();
+            this.readCursors = personal ? new ConcurrentHashMap<>() : null;
+            this.buffer = new EventRing(MAX_BUFFER_PER_USER, unread);
+        }
+    }
+
+    /**
+     * Ждущий запрос со своими параметрами выборки. У запроса по нескольким топикам — общая {@code subscription},
+     * по записи в каждой очереди.
+     */
+    private record Waiter(CompletableFuture<LongPollEnvelope> promise, long since, int maxBatch, Subscription subscription) {
+    }
+
+    /**
+     * Запрос по личному топику и дополнительным. Ответ собирается по очередям поочерёдно, под монитором одной очереди
+     * за раз: завершение никогда не держит два монитора.
+     */
+    private final class Subscription {
+
+        private final Long userId;
+
+        private final String personal;
+
+        private final int maxBatch;
+
+        // топик → курсор; личный топик первым
+        private final Map<String, Long> cursors = new LinkedHashMap<>();
+
+        // дополнительные топики без курсора: читаются с текущего конца буфера
+        private final Set<String> fromNow = new HashSet<>();
+
+        private final List<UserQueue> parked = new ArrayList<>();
+
+        private final CompletableFuture<LongPollEnvelope> promise = new CompletableFuture<>();
+
+        // курсоры разрешены во всех очередях; пробуждение до этого момента откладывается до start
+        private volatile boolean started;
+
+        Subscription(Long userId, long since, Map<String, Long> topics, int maxBatch) {
+            this.userId = userId;
+            this.personal = NotificationTopic.user(userId);
+            this.maxBatch = maxBatch;
+            cursors.put(personal, since);
+            topics.forEach((topic, cursor) -> {
+                if (topic == null || topic.equals(personal)) return;
+                cursors.put(topic, cursor != null ? cursor : 0L);
+                if (cursor == null) fromNow.add(topic);
+            });
+        }
+
+        CompletableFuture<LongPollEnvelope> start(long timeoutMs) {
+            for (Map.Entry<String, Long> e : cursors.entrySet()) {
+                park(e);
+            }
+            started = true;
+            // события могли прийти до регистрации или во время неё (такое пробуждение пропущено) — собираем сразу
+            fire();
+            if (!promise.isDone()) {
+                TimeoutWheel.Timeout timeoutTask = timeouts.schedule(this::expire, timeoutMs);
+                promise.whenComplete((res, err) -> timeoutTask.cancel());
+            }
+            // записи в остальных очередях убираются вне потока, завершившего запрос (он может держать монитор)
+            promise.whenComplete((res, err) -> {
+                try {
+                    scheduler.execute(this::unpark);
+                } catch (RejectedExecutionException ignored) {
+                }
+            });
+            return promise;
+        }
+
+        /**
+         * Регистрирует ожидание в очереди топика и фиксирует курсор.
+         */
+        private void park(Map.Entry<String, Long> entry) {
+            String topic = entry.getKey();
+            while (true) {
+                UserQueue uq = q(topic);
+                synchronized (uq) {
+                    if (uq.evicted) continue;
+                    long cursor = fromNow.contains(topic) ? uq.buffer.lastId() : entry.getValue();
+                    // курсор из будущего (id сбросились после рестарта) — ждём любые новые события
+                    if (cursor > uq.buffer.lastId()) cursor = 0;
+                    entry.setValue(cursor);
+                    uq.waiters.removeIf(w -> w.promise().isDone());
+                    uq.waiters.add(new Waiter(promise, cursor, maxBatch, this));
+                    parked.add(uq);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Собирает события всех топиков после их курсоров и завершает запрос; пустой сбор ничего не завершает.
+         */
+        void fire() {
+            if (!started || promise.isDone()) return;
+            List<LongPollEvent> events = new ArrayList<>();
+            Map<String, Long> next = new LinkedHashMap<>();
+            long nextSince = cursors.get(personal);
+            boolean hasMore = false;
+            int unread = 0;
+            // курсоры прочитанного из личной очереди: она первая в cursors
+            Map<String, Long> reads = null;
+            for (Map.Entry<String, Long> e : cursors.entrySet()) {
+                String topic = e.getKey();
+                long cursor = e.getValue();
+                UserQueue uq = queues.get(topic);
+                long advanced = cursor;
+                if (uq != null) {
+                    synchronized (uq) {
+                        int room = maxBatch - events.size();
+                        List<LongPollEvent> part = room > 0 ? uq.buffer.after(cursor, room) : List.of();
+                        boolean personalTopic = topic.equals(personal);
+                        if (personalTopic && room > 0 && cursor <= 0 && part.isEmpty() && !uq.buffer.isEmpty()) {
+                            part = uq.buffer.tail(Math.min(10, room));
+                        }
+                        if (!part.isEmpty()) {
+                            events.addAll(part);
+                            advanced = part.getLast().getId();
+                        }
+                        hasMore |= uq.buffer.hasAfter(advanced);
+                        if (personalTopic) {
+                            unread += uq.buffer.size();
+                            reads = uq.readCursors;
+                        } else {
+                            Long read = reads != null ? reads.get(topic) : null;
+                            if (read != null) unread += uq.buffer.countAfter(read);
+                        }
+                    }
+                }
+                if (topic.equals(personal)) {
+                    nextSince = advanced;
+                } else {
+                    next.put(topic, advanced);
+                }
+            }
+            if (events.isEmpty()) return;
+            promise.complete(LongPollEnvelope.builder()
+                    .events(events)
+                    .nextSince(nextSince)
+                    .hasMore(hasMore)
+                    .unreadCount(unread)
+                    .cursors(next)
+                    .build());
+        }
+
+        /**
+         * Буфер топика начался заново после пропуска: клиент перезапрашивает с прежними курсорами.
+         */
+        void release() {
+            complete(true);
+        }
+
+        private void expire() {
+            complete(false);
+        }
+
+        private void complete(boolean hasMore) {
+            Map<String, Long> next = new LinkedHashMap<>(cursors);
+            long nextSince = next.remove(personal);
+            promise.complete(LongPollEnvelope.builder()
+                    .events(List.of())
+                    .nextSince(nextSince)
+                    .hasMore(hasMore)
+                    .cursors(next)
+                    .build());
+        }
+
+        private void unpark() {
+            for (UserQueue uq : parked) {
+                synchronized (uq) {
+                    uq.waiters.removeIf(w -> w.promise() == promise);
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("[LP] subscription done userId={} topics={}", userId, cursors.keySet());
+            }
+        }
     }
 }
@@ -0,0 +1,49 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Неподтверждённые (не прошедшие ACK) события личного топика и непрочитанные события топиков персонала —
+ * для бейджа на фронте.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LongPollUnreadCount {
+    private int total;
+    // только типы и заказы с ненулевым числом событий
+    private Map<LongPollEventType, Integer> byType;
+    private Map<Long, Integer> byOrder;
+
+    /**
+     * Сумма счётчиков: личного топика и общих.
+     */
+    LongPollUnreadCount plus(LongPollUnreadCount other) {
+        Map<LongPollEventType, Integer> types = new EnumMap<>(LongPollEventType.class);
+        types.putAll(byType);
+        other.byType.forEach((type, n) -> types.merge(type, n, Integer::sum));
+        Map<Long, Integer> orders = new HashMap<>(byOrder);
+        other.byOrder.forEach((order, n) -> orders.merge(order, n, Integer::sum));
+        return LongPollUnreadCount.builder()
+                .total(total + other.total)
+                .byType(types)
+                .byOrder(orders)
+                .build();
+    }
+
+    static LongPollUnreadCount empty() {
+        return LongPollUnreadCount.builder()
+                .total(0)
+                .byType(Map.of())
+                .byOrder(Map.of())
+                .build();
+    }
+}
@@ -0,0 +1,69 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Брокер уведомлений пользователей: публикация событий и их выдача через long-poll/SSE.
+ * <p>
+ * Реализации: {@link LongPollService} — в памяти одного узла (по умолчанию), {@link OutboxNotificationBroker} —
+ * персистентный outbox с рассылкой между репликами ({@code notifications.broker.type=outbox}).
+ * События публикуются в топики ({@link NotificationTopic}); id монотонны в пределах топика. Клиент продолжает
+ * с {@code since} (личный топик) и курсоров остальных топиков после переподключения.
+ * <p>
+ * Прикладной код публикует не в брокер напрямую, а через {@link NotificationDispatcher}: событие уходит клиентам
+ * только после коммита транзакции, в которой оно возникло.
+ */
+public interface NotificationBroker extends NotificationPublisher {
+
+    /**
+     * Публикует пачку событий одного топика. Реализации могут принять её за один заход (одна блокировка,
+     * одно пробуждение ждущих); по умолчанию — по одному событию.
+     */
+    default void publishAll(String topic, List<LongPollEvent> events) {
+        for (LongPollEvent event : events) {
+            publish(topic, event);
+        }
+    }
+
+    /**
+     * Long poll for events after 'since' (exclusive). If none, wait up to timeoutMs.
+     */
+    default CompletableFuture<LongPollEnvelope> poll(Long userId, long since, long timeoutMs, int maxBatch) {
+        return poll(userId, since, Map.of(), timeoutMs, maxBatch);
+    }
+
+    /**
+     * Long poll по личному топику пользователя и дополнительным топикам.
+     *
+     * @param topics топик → курсор (id последнего полученного события); {@code null} — только новые события.
+     *               Право на топики проверяет вызывающий код
+     * @return события всех топиков; {@link LongPollEnvelope#getCursors()} — курсоры для следующего запроса
+     */
+    CompletableFuture<LongPollEnvelope> poll(Long userId, long since, Map<String, Long> topics, long timeoutMs, int maxBatch);
+
+    default void ack(Long userId, long lastReceivedId) {
+        ack(userId, lastReceivedId, Map.of());
+    }
+
+    /**
+     * ACK личного топика до {@code lastReceivedId} включительно и отметка прочитанного в остальных топиках.
+     *
+     * @param cursors топик → id последнего обработанного события. События общих топиков не удаляются: курсор
+     *                лишь отделяет прочитанное для {@link #unreadCount(Long, Collection)}. Право на топики
+     *                проверяет вызывающий код
+     */
+    void ack(Long userId, long lastReceivedId, Map<String, Long> cursors);
+
+    default LongPollUnreadCount unreadCount(Long userId) {
+        return unreadCount(userId, List.of());
+    }
+
+    /**
+     * Неподтверждённые события личного топика и события топиков {@code topics} после курсора, отмеченного через ACK:
+     * всего, по типу и по заказу. Топик без отметки не учитывается. Не ждёт и не создаёт очередь.
+     */
+    LongPollUnreadCount unreadCount(Long userId, Collection<String> topics);
+}
@@ -0,0 +1,100 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "notifications.broker")
+public class NotificationBrokerProperties {
+
+    /**
+     * {@code memory} — события только в памяти узла ({@link LongPollService});
+     * {@code outbox} — таблица {@code notification_events} и рассылка между репликами ({@link OutboxNotificationBroker}).
+     */
+    private String type = "memory";
+
+    /**
+     * Рассылка новых событий outbox между репликами: {@code none} (один узел), {@code kafka}, {@code postgres}.
+     */
+    private String transport = "none";
+
+    /**
+     * Сколько хранить события в outbox: клиент может продолжить с {@code since} в пределах этого окна.
+     */
+    private Duration retention = Duration.ofHours(24);
+
+    /**
+     * Число строк outbox, удаляемых одной транзакцией при очистке.
+     */
+    private int purgeBatchSize = 5_000;
+
+    /**
+     * Период прохода ретранслятора outbox: подбирает закоммиченные события без номера, для которых сигнал
+     * после коммита не сработал (узел упал, ошибка БД). Обычно события уходят сразу по сигналу.
+     */
+    private Duration relayInterval = Duration.ofSeconds(1);
+
+    /**
+     * Число событий outbox, которым ретранслятор назначает номера за одну транзакцию.
+     */
+    private int relayBatchSize = 500;
+
+    private Dispatch dispatch = new Dispatch();
+
+    private Kafka kafka = new Kafka();
+
+    private Postgres postgres = new Postgres();
+
+    /**
+     * Отправка событий после коммита ({@link NotificationDispatcher}).
+     */
+    @Getter
+    @Setter
+    public static class Dispatch {
+
+        /**
+         * Ёмкость очереди событий, ждущих отправки. При переполнении поток коммита ждёт места в очереди.
+         */
+        private int queueCapacity = 10_000;
+
+        /**
+         * Сколько событий забирается из очереди за один проход (затем группируется по топикам).
+         */
+        private int maxBatch = 256;
+    }
+
+    @Getter
+    @Setter
+    public static class Kafka {
+
+        private String topic = "identity.notifications";
+
+        /**
+         * Префикс consumer group: к нему добавляется случайный суффикс, чтобы каждая реплика получала все события.
+         */
+        private String groupPrefix = "identity-notifications";
+    }
+
+    @Getter
+    @Setter
+    public static class Postgres {
+
+        private String channel = "notification_events";
+
+        /**
+         * Таймаут ожидания уведомлений в одном цикле опроса LISTEN-соединения.
+         */
+        private Duration pollTimeout = Duration.ofSeconds(1);
+
+        /**
+         * Пауза перед переподключением после ошибки LISTEN-соединения.
+         */
+        private Duration reconnectDelay = Duration.ofSeconds(5);
+    }
+}
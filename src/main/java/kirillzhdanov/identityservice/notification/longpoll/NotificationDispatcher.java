@@ -0,0 +1,208 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Точка публикации уведомлений для прикладного кода: события отправляются клиентам после коммита транзакции
+ * и не в потоке запроса.
+ * <p>
+ * В транзакции публикация только записывает {@link NotificationRequested}; на {@code AFTER_COMMIT} оно попадает
+ * в ограниченную очередь ({@code notifications.broker.dispatch.queue-capacity}). Виртуальный поток
+ * {@code notification-dispatch} забирает очередь пачками, группирует события по топику (получателю)
+ * и отдаёт брокеру через {@link NotificationBroker#publishAll(String, List)}. Один поток сохраняет порядок
+ * событий внутри топика: при полной очереди поток коммита ждёт места, а не отправляет событие сам — иначе оно
+ * обогнало бы более ранние события того же топика, ещё не отданные брокеру. При откате транзакции событие
+ * не уходит никому; вне транзакции — ставится в очередь сразу.
+ * <p>
+ * В режиме {@code outbox} очередь не используется: событие пишется в {@code notification_events} в транзакции
+ * вызывающего кода — это и есть запись о нём, она переживает падение узла. Номер топика и рассылку после коммита
+ * брокер делает сам ({@link OutboxNotificationBroker}).
+ */
+@Slf4j
+@Component
+public class NotificationDispatcher implements NotificationPublisher {
+
+    private static final long OFFER_WAIT_MS = 100;
+
+    private final NotificationBroker broker;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final boolean durable;
+
+    private final int maxBatch;
+
+    private final BlockingQueue<Pending> queue;
+
+    private final Thread worker;
+
+    private volatile boolean running = true;
+
+    // отправка в потоке вызывающего кода после остановки потока отправки — по одной, в порядке очереди
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    private final Timer lag;
+
+    private final DistributionSummary batchSize;
+
+    private final Counter overflow;
+
+    public NotificationDispatcher(NotificationBroker broker,
+                                  ApplicationEventPublisher eventPublisher,
+                                  NotificationBrokerProperties properties,
+                                  ObjectProvider<MeterRegistry> meterRegistry) {
+        this.broker = broker;
+        this.eventPublisher = eventPublisher;
+        this.durable = "outbox".equals(properties.getType());
+        this.maxBatch = Math.max(1, properties.getDispatch().getMaxBatch());
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, properties.getDispatch().getQueueCapacity()));
+        MeterRegistry registry = meterRegistry != null ? meterRegistry.getIfAvailable() : null;
+        if (registry != null) {
+            Gauge.builder("notifications.dispatch.queue", queue, BlockingQueue::size)
+                    .description("События, ждущие отправки после коммита")
+                    .register(registry);
+            lag = Timer.builder("notifications.dispatch.lag")
+                    .description("Время от коммита до передачи события брокеру")
+                    .publishPercentiles(0.5, 0.99)
+                    .register(registry);
+            batchSize = DistributionSummary.builder("notifications.dispatch.batch")
+                    .description("Событий в одной передаче брокеру (один топик)")
+                    .register(registry);
+            overflow = Counter.builder("notifications.dispatch.overflow")
+                    .description("События, для которых поток коммита ждал места в очереди отправки")
+                    .register(registry);
+        } else {
+            lag = null;
+            batchSize = null;
+            overflow = null;
+        }
+        this.worker = Thread.ofVirtual().name("notification-dispatch").start(this::run);
+    }
+
+    @Override
+    public void publish(String topic, LongPollEvent event) {
+        if (durable) {
+            // строка outbox — часть транзакции вызывающего кода; номер и рассылка — у ретранслятора после коммита
+            broker.publish(topic, event);
+            return;
+        }
+        eventPublisher.publishEvent(new NotificationRequested(topic, event));
+    }
+
+    /**
+     * Транзакция закоммичена (или её не было): событие ставится в очередь отправки.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCommitted(NotificationRequested requested) {
+        Pending pending = new Pending(requested.topic(), requested.event(), System.nanoTime());
+        if (running && queue.offer(pending)) {
+            // узел остановился между проверкой и постановкой: остаток очереди никто не заберёт
+            if (!running) drainRemaining(null);
+            return;
+        }
+        if (running) {
+            if (overflow != null) overflow.increment();
+            log.debug("[LP] dispatch queue full, waiting topic={}", requested.topic());
+            boolean interrupted = false;
+            try {
+                while (running) {
+                    try {
+                        if (queue.offer(pending, OFFER_WAIT_MS, TimeUnit.MILLISECONDS)) return;
+                    } catch (InterruptedException e) {
+                        // событие уже закоммичено: не бросаем его, а дожидаемся места
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) Thread.currentThread().interrupt();
+            }
+        }
+        // поток отправки остановлен: сами отдаём остаток очереди и это событие, сохраняя порядок
+        drainRemaining(pending);
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            queue.drainTo(batch, maxBatch - 1);
+            dispatch(batch);
+            batch.clear();
+        }
+    }
+
+    private void dispatch(List<Pending> batch) {
+        Map<String, List<LongPollEvent>> byTopic = new LinkedHashMap<>();
+        for (Pending p : batch) {
+            byTopic.computeIfAbsent(p.topic(), k -> new ArrayList<>()).add(p.event());
+        }
+        for (Map.Entry<String, List<LongPollEvent>> e : byTopic.entrySet()) {
+            try {
+                broker.publishAll(e.getKey(), e.getValue());
+                if (batchSize != null) batchSize.record(e.getValue().size());
+            } catch (RuntimeException ex) {
+                log.error("[LP] dispatch failed topic={} events={}: {}", e.getKey(), e.getValue().size(), ex.toString());
+            }
+        }
+        if (lag != null) {
+            long now = System.nanoTime();
+            for (Pending p : batch) {
+                lag.record(now - p.committedNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Останавливает поток отправки и отдаёт брокеру то, что осталось в очереди.
+     */
+    @PreDestroy
+    void shutdown() {
+        running = false;
+        worker.interrupt();
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drainRemaining(null);
+    }
+
+    private void drainRemaining(Pending last) {
+        drainLock.lock();
+        try {
+            List<Pending> rest = new ArrayList<>();
+            queue.drainTo(rest);
+            if (last != null) rest.add(last);
+            if (!rest.isEmpty()) dispatch(rest);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private record Pending(String topic, LongPollEvent event, long committedNanos) {
+    }
+}
@@ -0,0 +1,11 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+/**
+ * Сообщение о новом событии outbox, рассылаемое всем репликам.
+ *
+ * @param topic топик события ({@link NotificationTopic})
+ * @param seq   номер события в топике (id для клиента)
+ * @param event само событие или {@code null}, если транспорт передаёт только ссылку — тогда оно читается из outbox
+ */
+public record NotificationMessage(String topic, long seq, LongPollEvent event) {
+}
@@ -0,0 +1,83 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import java.time.Instant;
+
+/**
+ * Публикация уведомлений: готовые события заказов и сообщений поверх {@link #publish(String, LongPollEvent)}.
+ */
+public interface NotificationPublisher {
+
+    /**
+     * Публикует событие в топик; id присваивает брокер.
+     */
+    void publish(String topic, LongPollEvent event);
+
+    /**
+     * Публикует событие пользователю (в его личный топик).
+     */
+    default void publish(Long userId, LongPollEvent event) {
+        publish(NotificationTopic.user(userId), event);
+    }
+
+    default void publishStatusChanged(Long userId, Long orderId, String oldStatus, String newStatus) {
+        publish(userId, LongPollEvent.builder()
+                .type(LongPollEventType.ORDER_STATUS_CHANGED)
+                .orderId(orderId)
+                .oldStatus(oldStatus)
+                .newStatus(newStatus)
+                .at(Instant.now())
+                .build());
+    }
+
+    default void publishCourierMessage(Long userId, Long orderId, String text, Long messageId) {
+        publish(userId, LongPollEvent.builder()
+                .type(LongPollEventType.COURIER_MESSAGE)
+                .orderId(orderId)
+                .messageId(messageId)
+                .text(text)
+                .at(Instant.now())
+                .build());
+    }
+
+    default void publishClientMessage(Long userId, Long orderId, String text, Long messageId) {
+        publish(userId, LongPollEvent.builder()
+                .type(LongPollEventType.CLIENT_MESSAGE)
+                .orderId(orderId)
+                .messageId(messageId)
+                .text(text)
+                .at(Instant.now())
+                .build());
+    }
+
+    default void publishNewOrder(Long userId, Long orderId) {
+        publish(userId, LongPollEvent.builder()
+                .type(LongPollEventType.NEW_ORDER)
+                .orderId(orderId)
+                .at(Instant.now())
+                .build());
+    }
+
+    /**
+     * Новый заказ — персоналу бренда: одно событие в топике бренда вместо копии каждому сотруднику.
+     */
+    default void publishBrandNewOrder(Long brandId, Long orderId) {
+        publish(NotificationTopic.brandStaff(brandId), LongPollEvent.builder()
+                .type(LongPollEventType.NEW_ORDER)
+                .orderId(orderId)
+                .at(Instant.now())
+                .build());
+    }
+
+    /**
+     * Сообщение клиента по заказу — персоналу бренда.
+     */
+    default void publishBrandClientMessage(Long brandId, Long orderId, String text, Long messageId) {
+        publish(NotificationTopic.brandStaff(brandId), LongPollEvent.builder()
+                .type(LongPollEventType.CLIENT_MESSAGE)
+                .orderId(orderId)
+                .messageId(messageId)
+                .text(text)
+                .at(Instant.now())
+                .build());
+    }
+}
@@ -0,0 +1,8 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+/**
+ * Событие приложения: в транзакции возникло уведомление для топика. Клиентам оно уходит только после коммита
+ * ({@link NotificationDispatcher}); при откате транзакции отбрасывается.
+ */
+public record NotificationRequested(String topic, LongPollEvent event) {
+}
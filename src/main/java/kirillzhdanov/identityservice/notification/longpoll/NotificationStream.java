@@ -0,0 +1,142 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Одно SSE-подключение поверх {@link NotificationBroker}.
+ * <p>
+ * Подключение — цепочка long-poll запросов к той же очереди пользователя: следующий запрос ставится только после того,
+ * как предыдущая пачка записана в сокет. Медленный клиент поэтому не накапливает ничего сверх буфера пользователя
+ * (обратное давление на уровне подключения), а события в полёте ограничены {@code maxBatch}. Таймаут ожидания служит
+ * интервалом heartbeat: пустой ответ превращается в SSE-комментарий. id событий — те же, что у long-poll, поэтому
+ * браузер возобновляет поток по {@code Last-Event-ID}.
+ * <p>
+ * События дополнительных топиков (персонал бренда) идут без SSE-id: их id считаются в своём топике и не должны
+ * затирать {@code Last-Event-ID} личного. Курсоры этих топиков поток хранит сам на время подключения.
+ * <p>
+ * Запись в сокет блокирующая, поэтому идёт в {@code sender}, а не в потоках пробуждения и таймаутов сервиса.
+ * <p>
+ * Аутентификация проверяется только при открытии, поэтому перед каждым запросом и каждой отправкой поток
+ * спрашивает {@code revoked}: после отзыва токена (logout, отзыв всех токенов) подключение закрывается
+ * не позже чем через интервал heartbeat.
+ */
+@Slf4j
+final class NotificationStream {
+
+    private final NotificationBroker service;
+
+    private final Long userId;
+
+    private final SseEmitter emitter;
+
+    private final Executor sender;
+
+    private final long heartbeatMs;
+
+    private final int maxBatch;
+
+    private final BooleanSupplier revoked;
+
+    private long since;
+
+    // курсоры дополнительных топиков; null — с текущего конца
+    private final Map<String, Long> topics;
+
+    private volatile boolean closed;
+
+    NotificationStream(NotificationBroker service, Long userId, long since, Map<String, Long> topics,
+                       SseEmitter emitter, Executor sender, long heartbeatMs, int maxBatch, BooleanSupplier revoked) {
+        this.service = service;
+        this.userId = userId;
+        this.since = since;
+        this.topics = topics != null ? new HashMap<>(topics) : new HashMap<>();
+        this.emitter = emitter;
+        this.sender = sender;
+        this.heartbeatMs = heartbeatMs;
+        this.maxBatch = maxBatch;
+        this.revoked = revoked;
+        emitter.onCompletion(this::close);
+        emitter.onTimeout(this::close);
+        emitter.onError(ex -> close());
+    }
+
+    void start() {
+        sender.execute(() -> {
+            // первый байт сразу: прокси и браузер видят открытый поток, клиент получает интервал переподключения
+            if (send(SseEmitter.event().comment("connected").reconnectTime(heartbeatMs))) {
+                next();
+            }
+        });
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    private void next() {
+        if (closed || closeIfRevoked()) return;
+        var result = topics.isEmpty()
+                ? service.poll(userId, since, heartbeatMs, maxBatch)
+                : service.poll(userId, since, new HashMap<>(topics), heartbeatMs, maxBatch);
+        result.thenAcceptAsync(this::deliver, sender)
+                .exceptionally(ex -> {
+                    log.warn("[SSE] stream failed userId={} since={}: {}", userId, since, ex.toString());
+                    emitter.completeWithError(ex);
+                    return null;
+                });
+    }
+
+    private void deliver(LongPollEnvelope envelope) {
+        if (closed || closeIfRevoked()) return;
+        if (envelope == null || envelope.getEvents() == null || envelope.getEvents().isEmpty()) {
+            if (!send(SseEmitter.event().comment("heartbeat"))) return;
+        } else {
+            for (LongPollEvent event : envelope.getEvents()) {
+                SseEmitter.SseEventBuilder sse = SseEmitter.event();
+                if (event.getTopic() == null) {
+                    sse.id(Long.toString(event.getId()));
+                }
+                sse.name(event.getType() != null ? event.getType().name() : "message").data(event);
+                if (!send(sse)) return;
+            }
+            since = envelope.getNextSince();
+        }
+        if (envelope != null && envelope.getCursors() != null) {
+            topics.putAll(envelope.getCursors());
+        }
+        next();
+    }
+
+    private boolean send(SseEmitter.SseEventBuilder event) {
+        try {
+            emitter.send(event);
+            return true;
+        } catch (IOException | IllegalStateException ex) {
+            // клиент ушёл или эмиттер уже завершён
+            log.debug("[SSE] send failed userId={}: {}", userId, ex.toString());
+            close();
+            return false;
+        }
+    }
+
+    private boolean closeIfRevoked() {
+        if (!revoked.getAsBoolean()) {
+            return false;
+        }
+        log.info("[SSE] token revoked, closing stream userId={}", userId);
+        close();
+        emitter.complete();
+        return true;
+    }
+
+    private void close() {
+        closed = true;
+    }
+}
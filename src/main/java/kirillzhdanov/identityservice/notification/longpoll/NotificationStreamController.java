@@ -0,0 +1,136 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import kirillzhdanov.identityservice.security.CurrentUser;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
+import kirillzhdanov.identityservice.security.revocation.TokenDenyList;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Поток уведомлений по SSE: одно аутентифицированное подключение вместо запроса на каждую пачку событий.
+ * Модель событий и очереди те же, что у {@link LongPollController}; long-poll остаётся запасным вариантом.
+ * <p>
+ * Подключение не переживает access-токен, которым открыто: таймаут эмиттера не больше оставшегося {@code exp},
+ * а отзыв токена по {@link TokenDenyList} закрывает поток.
+ */
+@RestController
+@RequestMapping("/notifications/stream")
+@CrossOrigin(origins = "*")
+@Slf4j
+public class NotificationStreamController {
+
+    private final NotificationBroker longPollService;
+
+    private final LongPollProperties properties;
+
+    private final NotificationSubscriptions subscriptions;
+
+    private final TokenDenyList denyList;
+
+    // Запись в сокет блокируется на медленных клиентах — на виртуальных потоках это дёшево
+    private final ExecutorService sender = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("sse-send-", 0).factory());
+
+    public NotificationStreamController(NotificationBroker longPollService, LongPollProperties properties,
+                                        NotificationSubscriptions subscriptions, TokenDenyList denyList) {
+        this.longPollService = longPollService;
+        this.properties = properties;
+        this.subscriptions = subscriptions;
+        this.denyList = denyList;
+    }
+
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(name = "since", required = false, defaultValue = "0") long since,
+            @RequestParam(name = "maxBatch", required = false, defaultValue = "50") int maxBatch,
+            Authentication authentication,
+            CurrentUser currentUser,
+            HttpServletRequest request,
+            HttpServletResponse response
+    ) {
+        if (authentication == null || !authentication.isAuthenticated() || authentication instanceof AnonymousAuthenticationToken) {
+            // 204 для EventSource означает «не переподключаться» — как idle-ответ long-poll вместо 401
+            log.info("[SSE] controller stream UNAUTH -> 204");
+            return ResponseEntity.noContent().build();
+        }
+        Long from = resumeFrom(lastEventId, since);
+        if (from == null) {
+            log.info("[SSE] controller stream malformed Last-Event-ID={} -> 400", lastEventId);
+            return ResponseEntity.badRequest().build();
+        }
+        ParsedAccessToken token = request.getAttribute(ParsedAccessToken.REQUEST_ATTRIBUTE) instanceof ParsedAccessToken parsed
+                ? parsed : null;
+        Duration timeout = streamTimeout(token, properties.getStreamTimeout(), Instant.now());
+        if (timeout.isZero()) {
+            log.info("[SSE] controller stream token expired -> 204");
+            return ResponseEntity.noContent().build();
+        }
+        Long userId = LongPollController.resolveUserId(authentication, currentUser);
+        BooleanSupplier revoked = token != null ? () -> denyList.isDenied(token) : () -> false;
+        SseEmitter emitter = new SseEmitter(timeout.toMillis());
+        // nginx не должен буферизовать поток; заголовок ставится до старта потока — первая запись может
+        // зафиксировать ответ раньше, чем обработчик вернёт эмиттер
+        response.setHeader("X-Accel-Buffering", "no");
+        // топики персонала — с текущего конца: их id не попадают в Last-Event-ID
+        new NotificationStream(longPollService, userId, from, subscriptions.topics(userId, null), emitter, sender,
+                properties.getStreamHeartbeat().toMillis(), maxBatch, revoked).start();
+        log.info("[SSE] controller stream OPEN userId={} since={}", userId, from);
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Позиция продолжения потока: при переподключении браузер присылает id последнего полученного события.
+     * Пустой заголовок — {@code since}; отрицательный id — как первое подключение; id из будущего (id сбросились
+     * после рестарта) обрабатывается как {@code since} у long-poll — ожиданием новых событий.
+     *
+     * @return {@code null}, если заголовок не число
+     */
+    static Long resumeFrom(String lastEventId, long since) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return since;
+        }
+        try {
+            return Math.max(0, Long.parseLong(lastEventId.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Время жизни подключения: {@code stream-timeout}, но не дольше срока действия access-токена.
+     * Без разобранного токена (аутентификация не по JWT) — только {@code stream-timeout}.
+     *
+     * @return {@link Duration#ZERO}, если токен уже истёк
+     */
+    static Duration streamTimeout(ParsedAccessToken token, Duration configured, Instant now) {
+        if (token == null || token.expiration() == null) {
+            return configured;
+        }
+        Duration remaining = Duration.between(now, token.expiration());
+        if (remaining.isNegative() || remaining.isZero()) {
+            return Duration.ZERO;
+        }
+        return remaining.compareTo(configured) < 0 ? remaining : configured;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // прерывает зависшую запись в сокет; продолжения цепочек после этого отклоняются и закрывают эмиттеры
+        sender.shutdownNow();
+    }
+}
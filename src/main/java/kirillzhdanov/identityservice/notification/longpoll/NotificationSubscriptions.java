@@ -0,0 +1,117 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Дополнительные топики, на которые подписан пользователь при long-poll/SSE: {@code brand:{id}:staff} брендов,
+ * где он персонал. Право на топик определяет сервер; курсоры клиента для чужих топиков отбрасываются.
+ * Список брендов кешируется на {@code notifications.longpoll.staff-topics-ttl} — запрос идёт раз в срок,
+ * а не на каждый poll. Метрики — {@code cache.gets{cache=notifications.staff-topics}}.
+ * <p>
+ * Курсоры топиков персонала из каждого ответа запоминаются на сервере ({@link #remember}): запрос без курсора
+ * продолжает с них, а не с текущего конца, и события, опубликованные между двумя poll, не теряются.
+ * Запомненные курсоры живут {@code notifications.longpoll.idle-ttl} с последнего обращения.
+ */
+@Slf4j
+@Component
+public class NotificationSubscriptions {
+
+    static final String CACHE = "notifications.staff-topics";
+
+    private final UserMembershipRepository membershipRepository;
+
+    private final Cache<Long, List<String>> staffTopics;
+
+    // userId → топик → курсор из последнего ответа
+    private final Cache<Long, Map<String, Long>> positions;
+
+    public NotificationSubscriptions(UserMembershipRepository membershipRepository,
+                                     LongPollProperties properties,
+                                     ObjectProvider<MeterRegistry> meterRegistry) {
+        this.membershipRepository = membershipRepository;
+        this.staffTopics = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(properties.getStaffTopicsTtl())
+                .recordStats()
+                .build();
+        this.positions = Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterAccess(properties.getIdleTtl())
+                .build();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, staffTopics, CACHE));
+    }
+
+    /**
+     * @param requested курсоры клиента в виде {@code topic=id}
+     * @return топик → курсор для {@link NotificationBroker#poll(Long, long, Map, long, int)}: курсор клиента,
+     * иначе запомненный из прошлого ответа; {@code null} — без курсора
+     */
+    public Map<String, Long> topics(Long userId, List<String> requested) {
+        List<String> allowed = staffTopics(userId);
+        if (allowed.isEmpty()) return Map.of();
+        Map<String, Long> cursors = parse(requested);
+        Map<String, Long> remembered = positions.getIfPresent(userId);
+        Map<String, Long> topics = new LinkedHashMap<>();
+        for (String topic : allowed) {
+            Long cursor = cursors.get(topic);
+            if (cursor == null && remembered != null) cursor = remembered.get(topic);
+            topics.put(topic, cursor);
+        }
+        return topics;
+    }
+
+    /**
+     * Запоминает курсоры топиков из ответа long-poll, в том числе пустого (204): с ними продолжит следующий
+     * запрос пользователя, если клиент не передал свои.
+     */
+    public void remember(Long userId, Map<String, Long> cursors) {
+        if (userId == null || cursors == null || cursors.isEmpty()) return;
+        positions.asMap().merge(userId, Map.copyOf(cursors), (previous, latest) -> {
+            Map<String, Long> merged = new HashMap<>(previous);
+            merged.putAll(latest);
+            return Map.copyOf(merged);
+        });
+    }
+
+    private List<String> staffTopics(Long userId) {
+        if (userId == null) return List.of();
+        try {
+            return staffTopics.get(userId, id -> membershipRepository.findStaffBrandIds(id)
+                    .stream()
+                    .map(NotificationTopic::brandStaff)
+                    .toList());
+        } catch (Exception e) {
+            // без топиков персонала личные уведомления всё равно доставляются
+            log.warn("[LP] staff topics lookup failed userId={}: {}", userId, e.getClass().getSimpleName());
+            return List.of();
+        }
+    }
+
+    static Map<String, Long> parse(List<String> requested) {
+        if (requested == null || requested.isEmpty()) return Map.of();
+        Map<String, Long> cursors = new HashMap<>();
+        for (String value : requested) {
+            if (value == null) continue;
+            int sep = value.lastIndexOf('=');
+            if (sep <= 0) continue;
+            try {
+                cursors.put(value.substring(0, sep), Long.parseLong(value.substring(sep + 1)));
+            } catch (NumberFormatException ignored) {
+                // битый курсор — топик читается с текущего конца
+            }
+        }
+        return cursors;
+    }
+}
@@ -0,0 +1,36 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+/**
+ * Имена топиков уведомлений. Событие хранится один раз в своём топике, а получатель подписывается на несколько:
+ * личный {@code user:{id}} и, для персонала, {@code brand:{id}:staff} своих брендов.
+ */
+public final class NotificationTopic {
+
+    private static final String USER_PREFIX = "user:";
+
+    private static final String BRAND_PREFIX = "brand:";
+
+    private static final String STAFF_SUFFIX = ":staff";
+
+    private NotificationTopic() {
+    }
+
+    public static String user(Long userId) {
+        return USER_PREFIX + userId;
+    }
+
+    /**
+     * Персонал бренда: новые заказы и сообщения клиентов.
+     */
+    public static String brandStaff(Long brandId) {
+        return BRAND_PREFIX + brandId + STAFF_SUFFIX;
+    }
+
+    public static boolean isUser(String topic) {
+        return topic != null && topic.startsWith(USER_PREFIX);
+    }
+
+    public static boolean isBrandStaff(String topic) {
+        return topic != null && topic.startsWith(BRAND_PREFIX) && topic.endsWith(STAFF_SUFFIX);
+    }
+}
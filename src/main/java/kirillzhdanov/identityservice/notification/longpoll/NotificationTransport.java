@@ -0,0 +1,10 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+/**
+ * Межузловой транспорт событий outbox. Реализация доставляет сообщение всем репликам (отправителю — допустимо)
+ * и передаёт принятые в {@link OutboxNotificationBroker#onMessage(NotificationMessage)}.
+ */
+public interface NotificationTransport {
+
+    void send(NotificationMessage message);
+}
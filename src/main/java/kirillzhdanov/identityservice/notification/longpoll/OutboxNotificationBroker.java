@@ -0,0 +1,345 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import kirillzhdanov.identityservice.model.notification.NotificationEvent;
+import kirillzhdanov.identityservice.repository.notification.NotificationEventRepository;
+import kirillzhdanov.identityservice.util.AfterCommit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Персистентный брокер уведомлений для нескольких реплик ({@code notifications.broker.type=outbox}).
+ * <p>
+ * Прикладной код публикует через {@link NotificationDispatcher}, который в этом режиме вызывает брокер прямо
+ * в бизнес-транзакции: строка {@code notification_events} пишется вместе с заказом и откатывается вместе с ним.
+ * Номер топика при этом не берётся — у строки только глобальный {@code id} (identity), поэтому заказы одного
+ * бренда не ждут друг друга на счётчике общего топика.
+ * <p>
+ * Номера назначает ретранслятор ({@link #relay()}): после коммита (сигнал из {@code afterCommit}) и по расписанию
+ * {@code notifications.broker.relay-interval} — так строки, закоммиченные перед падением узла, тоже будут
+ * отправлены. Под advisory-блокировкой БД (одна реплика за раз) он берёт строки без номера в порядке {@code id},
+ * резервирует номера в {@code notification_topic_seq}, затем кладёт события в локальный {@link LongPollService}
+ * и рассылает остальным репликам через {@link NotificationTransport} ({@code notifications.broker.transport}).
+ * <p>
+ * Ожидание и выдача идут из локального буфера. Если буфер не покрывает {@code since} (клиент пришёл с другой реплики,
+ * узел перезапущен, рассылка пропущена), недостающие события читаются из outbox — так клиент продолжает с {@code since}
+ * после отказа узла. События хранятся {@code notifications.broker.retention}.
+ */
+@Slf4j
+@Primary
+@Component
+@ConditionalOnProperty(prefix = "notifications.broker", name = "type", havingValue = "outbox")
+public class OutboxNotificationBroker implements NotificationBroker {
+
+    private static final int DEFAULT_MAX_BATCH = 50;
+
+    // ключ pg_advisory_xact_lock ретранслятора
+    static final long RELAY_LOCK_KEY = 0x4e4f544946594c50L;
+
+    private final NotificationEventRepository repository;
+
+    private final LongPollService local;
+
+    private final ObjectProvider<NotificationTransport> transport;
+
+    private final NotificationBrokerProperties properties;
+
+    private final ObjectMapper objectMapper;
+
+    private final TransactionTemplate transactionTemplate;
+
+    private final ReentrantLock relayLock = new ReentrantLock();
+
+    private final AtomicBoolean relayScheduled = new AtomicBoolean();
+
+    private final ExecutorService relayExecutor =
+            Executors.newSingleThreadExecutor(Thread.ofVirtual().name("notification-outbox-relay").factory());
+
+    public OutboxNotificationBroker(NotificationEventRepository repository,
+                                    LongPollService local,
+                                    ObjectProvider<NotificationTransport> transport,
+                                    NotificationBrokerProperties properties,
+                                    ObjectMapper objectMapper,
+                                    PlatformTransactionManager transactionManager) {
+        this.repository = repository;
+        this.local = local;
+        this.transport = transport;
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        // ретранслятор и очистка — в своих транзакциях, независимо от вызывающего кода
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @Override
+    public void publish(String topic, LongPollEvent event) {
+        publishAll(topic, List.of(event));
+    }
+
+    /**
+     * Пишет события в транзакции вызывающего кода, без номера и без блокировок: при откате их нет, после коммита
+     * их отправляет ретранслятор. Вне транзакции строки фиксируются сразу, и ретранслятор запускается тут же.
+     */
+    @Override
+    public void publishAll(String topic, List<LongPollEvent> events) {
+        if (events.isEmpty()) return;
+        List<NotificationEvent> rows = new ArrayList<>(events.size());
+        for (LongPollEvent event : events) {
+            if (!NotificationTopic.isUser(topic)) event.setTopic(topic);
+            rows.add(NotificationEvent.builder()
+                    .topic(topic)
+                    .type(event.getType() != null ? event.getType().name() : "UNKNOWN")
+                    .payload(toJson(event))
+                    .build());
+        }
+        repository.saveAll(rows);
+        AfterCommit.run(this::wakeRelay);
+    }
+
+    /**
+     * Назначает номера всем закоммиченным строкам без номера и рассылает их. Вызовы на одном узле идут по очереди;
+     * ошибка оставляет строки без номера до следующего прохода.
+     */
+    @Scheduled(fixedDelayString = "${notifications.broker.relay-interval:PT1S}",
+            initialDelayString = "${notifications.broker.relay-interval:PT1S}")
+    public void relay() {
+        int batchSize = Math.max(1, properties.getRelayBatchSize());
+        relayLock.lock();
+        try {
+            while (relayBatch(batchSize) == batchSize) {
+                // следующая пачка
+            }
+        } catch (RuntimeException e) {
+            log.warn("[LP] outbox relay failed, will retry: {}", e.toString());
+        } finally {
+            relayLock.unlock();
+        }
+    }
+
+    @Override
+    public CompletableFuture<LongPollEnvelope> poll(Long userId, long since, Map<String, Long> topics, long timeoutMs, int maxBatch) {
+        if (maxBatch <= 0 || maxBatch > 200) maxBatch = DEFAULT_MAX_BATCH;
+        String personal = NotificationTopic.user(userId);
+        // личный топик первым: его события в приоритете при заполнении пачки
+        Map<String, Long> cursors = new LinkedHashMap<>();
+        cursors.put(personal, since);
+        if (topics != null) {
+            topics.forEach((topic, cursor) -> {
+                if (topic != null && !topic.equals(personal)) cursors.put(topic, cursor);
+            });
+        }
+        List<LongPollEvent> events = new ArrayList<>();
+        Map<String, Long> next = new LinkedHashMap<>();
+        boolean hasMore = false;
+        long nextSince = since;
+        long unread = 0;
+        for (Map.Entry<String, Long> e : cursors.entrySet()) {
+            String topic = e.getKey();
+            Long cursor = e.getValue();
+            if (!local.isPrimed(topic)) {
+                local.prime(topic, lastSeq(topic));
+            }
+            long advanced = cursor != null ? cursor : 0;
+            int room = maxBatch - events.size();
+            if (cursor != null && room > 0 && !local.covers(topic, cursor)) {
+                List<LongPollEvent> part = load(topic, cursor, room + 1);
+                if (part.size() > room) {
+                    hasMore = true;
+                    part = part.subList(0, room);
+                }
+                if (!part.isEmpty()) {
+                    events.addAll(part);
+                    advanced = part.getLast().getId();
+                }
+            }
+            if (topic.equals(personal)) {
+                nextSince = advanced;
+                if (!events.isEmpty()) unread = Math.max(0, lastSeq(topic) - nextSince);
+            } else {
+                // без курсора — с текущего конца топика, как в локальном буфере
+                next.put(topic, cursor != null ? advanced : lastSeq(topic));
+            }
+        }
+        if (!events.isEmpty()) {
+            log.debug("[LP] outbox backfill userId={} since={} -> nextSince={} events={}", userId, since, nextSince, events.size());
+            return CompletableFuture.completedFuture(LongPollEnvelope.builder()
+                    .events(List.copyOf(events))
+                    .nextSince(nextSince)
+                    .hasMore(hasMore)
+                    .unreadCount((int) Math.min(Integer.MAX_VALUE, unread))
+                    .cursors(topics != null && !topics.isEmpty() ? next : null)
+                    .build());
+        }
+        return local.poll(userId, since, topics, timeoutMs, maxBatch);
+    }
+
+    /**
+     * ACK подрезает только локальный буфер: outbox чистится по {@code retention}.
+     */
+    @Override
+    public void ack(Long userId, long lastReceivedId, Map<String, Long> cursors) {
+        local.ack(userId, lastReceivedId, cursors);
+    }
+
+    /**
+     * По локальному буферу: события, которые узел не видел (клиент пришёл с другой реплики), не учитываются
+     * до первого long-poll, дочитавшего их из outbox.
+     */
+    @Override
+    public LongPollUnreadCount unreadCount(Long userId, Collection<String> topics) {
+        return local.unreadCount(userId, topics);
+    }
+
+    /**
+     * Сообщение от другой реплики (или собственное, вернувшееся через транспорт — повтор отбросится).
+     */
+    void onMessage(NotificationMessage message) {
+        LongPollEvent event = message.event();
+        if (event == null) {
+            event = repository.findByTopicAndSeq(message.topic(), message.seq())
+                    .map(this::toEvent)
+                    .orElse(null);
+            if (event == null) {
+                log.warn("[LP] outbox event not found topic={} seq={}", message.topic(), message.seq());
+                return;
+            }
+        }
+        event.setId(message.seq());
+        local.deliver(message.topic(), event);
+    }
+
+    @Scheduled(fixedDelayString = "${notifications.broker.purge-interval:PT1H}",
+            initialDelayString = "${notifications.broker.purge-interval:PT1H}")
+    public void purgeExpired() {
+        LocalDateTime before = LocalDateTime.now().minus(properties.getRetention());
+        int batchSize = Math.max(1, properties.getPurgeBatchSize());
+        long deleted = 0;
+        try {
+            while (true) {
+                Integer n = transactionTemplate.execute(status -> repository.deleteCreatedBeforeBatch(before, batchSize));
+                deleted += n != null ? n : 0;
+                if (n == null || n < batchSize) break;
+            }
+        } catch (Exception e) {
+            log.warn("[LP] outbox purge interrupted after {} rows: {}", deleted, e.getMessage());
+        }
+        if (deleted > 0) {
+            log.info("[LP] outbox purge deleted={} before={}", deleted, before);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        relayExecutor.shutdownNow();
+    }
+
+    private void wakeRelay() {
+        // пачка коммитов — один проход ретранслятора в его потоке, а не в потоке коммита
+        if (!relayScheduled.compareAndSet(false, true)) return;
+        try {
+            relayExecutor.execute(() -> {
+                relayScheduled.set(false);
+                relay();
+            });
+        } catch (RejectedExecutionException e) {
+            // узел останавливается: строки уже в outbox, их отправит следующий проход любой реплики
+            relayScheduled.set(false);
+        }
+    }
+
+    /**
+     * @return число строк, которым назначены номера
+     */
+    private int relayBatch(int batchSize) {
+        List<NotificationMessage> messages = transactionTemplate.execute(status -> {
+            repository.lockRelay(RELAY_LOCK_KEY);
+            List<NotificationEvent> rows = repository.findUnsequenced(Limit.of(batchSize));
+            Map<String, List<NotificationEvent>> byTopic = new LinkedHashMap<>();
+            for (NotificationEvent row : rows) {
+                byTopic.computeIfAbsent(row.getTopic(), k -> new ArrayList<>()).add(row);
+            }
+            List<NotificationMessage> sequenced = new ArrayList<>(rows.size());
+            byTopic.forEach((topic, part) -> {
+                long seq = repository.reserveSeq(topic, part.size()) - part.size();
+                for (NotificationEvent row : part) {
+                    row.setSeq(++seq);
+                    sequenced.add(new NotificationMessage(topic, row.getSeq(), toEvent(row)));
+                }
+            });
+            return sequenced;
+        });
+        if (messages == null) return 0;
+        for (NotificationMessage message : messages) {
+            // нечитаемое событие получило номер, но не рассылается: клиенты перешагнут его при дочитке
+            if (message.event() != null) dispatch(message);
+        }
+        return messages.size();
+    }
+
+    private void dispatch(NotificationMessage message) {
+        // локально — сразу, остальным репликам — через транспорт; своё эхо отбросится как повтор
+        local.deliver(message.topic(), message.event());
+        transport.ifAvailable(t -> {
+            try {
+                t.send(message);
+            } catch (Exception e) {
+                // событие уже в outbox: клиенты на других репликах дочитают его при следующем запросе с since
+                log.warn("[LP] outbox fan-out failed topic={} seq={}: {}", message.topic(), message.seq(), e.getClass().getSimpleName());
+            }
+        });
+    }
+
+    private long lastSeq(String topic) {
+        return repository.findLastSeq(topic).orElse(0L);
+    }
+
+    private List<LongPollEvent> load(String topic, long since, int limit) {
+        List<LongPollEvent> events = new ArrayList<>();
+        for (NotificationEvent row : repository.findByTopicAndSeqGreaterThanOrderBySeqAsc(topic, Math.max(0, since), Limit.of(limit))) {
+            LongPollEvent event = toEvent(row);
+            if (event != null) events.add(event);
+        }
+        return events;
+    }
+
+    private LongPollEvent toEvent(NotificationEvent row) {
+        try {
+            LongPollEvent event = objectMapper.readValue(row.getPayload(), LongPollEvent.class);
+            event.setId(row.getSeq());
+            return event;
+        } catch (Exception e) {
+            log.warn("[LP] malformed outbox event topic={} seq={}: {}", row.getTopic(), row.getSeq(), e.getClass().getSimpleName());
+            return null;
+        }
+    }
+
+    private String toJson(LongPollEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось сериализовать событие уведомления", e);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import kirillzhdanov.identityservice.util.PgNotifyChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Рассылка новых событий outbox через Postgres {@code LISTEN/NOTIFY} для развёртываний без Kafka.
+ * <p>
+ * В уведомлении только ссылка {@code topic:seq} (payload {@code pg_notify} ограничен 8000 байт), само событие
+ * получатель читает из outbox по ключу. Уведомления не персистентны: пропущенные во время разрыва события клиент
+ * дочитает из outbox по {@code since}.
+ */
+@Slf4j
+@Component
+@ConditionalOnExpression("'${notifications.broker.type:memory}' == 'outbox' && '${notifications.broker.transport:none}' == 'postgres'")
+public class PostgresNotificationTransport implements NotificationTransport, SmartLifecycle {
+
+    private final OutboxNotificationBroker broker;
+
+    private final PgNotifyChannel channel;
+
+    public PostgresNotificationTransport(DataSource dataSource,
+                                         NotificationBrokerProperties properties,
+                                         OutboxNotificationBroker broker) {
+        this.broker = broker;
+        NotificationBrokerProperties.Postgres pg = properties.getPostgres();
+        this.channel = new PgNotifyChannel(dataSource, pg.getChannel(), pg.getPollTimeout(), pg.getReconnectDelay(),
+                "notification-pg-listener", this::handle);
+    }
+
+    @Override
+    public void send(NotificationMessage message) {
+        try {
+            channel.send(message.topic() + ":" + message.seq());
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось отправить событие уведомления через pg_notify", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        channel.start();
+    }
+
+    @Override
+    public void stop() {
+        channel.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return channel.isRunning();
+    }
+
+    void handle(String payload) {
+        try {
+            // в имени топика тоже есть двоеточия — номер после последнего
+            int sep = payload.lastIndexOf(':');
+            broker.onMessage(new NotificationMessage(payload.substring(0, sep),
+                    Long.parseLong(payload.substring(sep + 1)), null));
+        } catch (Exception e) {
+            log.warn("Некорректное событие уведомления из pg_notify: {}", e.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Хешированное колесо таймеров для таймаутов long-poll (по мотивам {@code HashedWheelTimer} из Netty).
+ * <p>
+ * Постановка и отмена — O(1) без блокировок: постановка кладёт запись в очередь, отмена только меняет её состояние.
+ * Один поток раз в тик переносит новые записи в ячейки колеса и пачкой завершает просроченные; отменённые записи
+ * выбрасываются при проходе ячейки. Таймаут срабатывает не раньше срока и не позже чем через тик после него.
+ * Поток запускается при первой постановке таймаута, поэтому созданное, но не используемое колесо потоков не держит.
+ */
+@Slf4j
+final class TimeoutWheel {
+
+    /**
+     * Поставленный таймаут.
+     */
+    interface Timeout {
+
+        /**
+         * @return {@code true}, если задача ещё не запускалась и теперь не будет запущена
+         */
+        boolean cancel();
+    }
+
+    private final long tickNanos;
+
+    private final ArrayList<Entry>[] buckets;
+
+    private final int mask;
+
+    private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger scheduled = new AtomicInteger();
+
+    private final Thread worker;
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final long startNanos = System.nanoTime();
+
+    /**
+     * Номер текущего тика; меняется только рабочим потоком.
+     */
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    TimeoutWheel(String threadName, long tickMillis, int ticksPerWheel) {
+        if (tickMillis <= 0) throw new IllegalArgumentException("tickMillis must be positive");
+        if (ticksPerWheel <= 0 || Integer.bitCount(ticksPerWheel) != 1) {
+            throw new IllegalArgumentException("ticksPerWheel must be a power of two");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new ArrayList[ticksPerWheel];
+        for (int i = 0; i < ticksPerWheel; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = ticksPerWheel - 1;
+        this.worker = new Thread(this::run, threadName);
+        worker.setDaemon(true);
+    }
+
+    Timeout schedule(Runnable task, long delayMillis) {
+        Entry entry = new Entry(task, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+        scheduled.incrementAndGet();
+        pending.add(entry);
+        if (!started.get() && started.compareAndSet(false, true)) {
+            worker.start();
+        }
+        return entry;
+    }
+
+    /**
+     * Число поставленных, но ещё не сработавших и не отменённых таймаутов.
+     */
+    int pendingCount() {
+        return scheduled.get();
+    }
+
+    /**
+     * Останавливает рабочий поток; несработавшие таймауты не запускаются.
+     */
+    void stop() {
+        // не запущенное колесо помечается запущенным и больше не стартует
+        if (!started.compareAndSet(false, true)) {
+            worker.interrupt();
+        }
+    }
+
+    private void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(sleep);
+                if (Thread.currentThread().isInterrupted()) return;
+            }
+            transferPending();
+            expire(buckets[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferPending() {
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            if (entry.isCancelled()) continue;
+            long due = (entry.deadlineNanos - startNanos) / tickNanos;
+            // срок уже прошёл — в текущую ячейку, сработает в этом же тике
+            long slot = Math.max(due, tick);
+            entry.rounds = (slot - tick) / buckets.length;
+            buckets[(int) (slot & mask)].add(entry);
+        }
+    }
+
+    private void expire(ArrayList<Entry> bucket) {
+        int i = 0;
+        while (i < bucket.size()) {
+            Entry entry = bucket.get(i);
+            if (entry.isCancelled() || entry.rounds <= 0) {
+                // удаление перестановкой последней записи: порядок внутри ячейки не важен
+                Entry last = bucket.removeLast();
+                if (i < bucket.size()) bucket.set(i, last);
+                if (!entry.isCancelled()) entry.expire();
+            } else {
+                entry.rounds--;
+                i++;
+            }
+        }
+    }
+
+    private final class Entry extends AtomicInteger implements Timeout {
+
+        private static final int INIT = 0;
+
+        private static final int CANCELLED = 1;
+
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+
+        private final long deadlineNanos;
+
+        /**
+         * Сколько ещё полных оборотов колеса ждать; меняется только рабочим потоком.
+         */
+        private long rounds;
+
+        Entry(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!compareAndSet(INIT, CANCELLED)) return false;
+            scheduled.decrementAndGet();
+            return true;
+        }
+
+        boolean isCancelled() {
+            return get() == CANCELLED;
+        }
+
+        void expire() {
+            if (!compareAndSet(INIT, EXPIRED)) return;
+            scheduled.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                log.warn("[LP] timeout task failed: {}", t.toString());
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Счётчики неподтверждённых событий личного топика: всего, по типу и по заказу.
+ * <p>
+ * Меняются {@link EventRing} при добавлении и удалении события (ACK, вытеснение, усечение) — под монитором очереди,
+ * O(1) на событие. Читаются без блокировки: ответ {@code unreadCount} не трогает буфер и не ждёт публикаций.
+ * <p>
+ * У общего топика курсор прочитанного свой у каждого читателя, поэтому счётчики {@link #indexed()} дополнительно
+ * хранят префиксные суммы по id события: {@link #after(long)} вычитает сумму на курсоре из текущей,
+ * не перебирая непрочитанные события.
+ */
+final class UnreadCounters {
+
+    private static final LongPollEventType[] TYPES = LongPollEventType.values();
+
+    private final AtomicInteger total = new AtomicInteger();
+
+    private final AtomicIntegerArray byType = new AtomicIntegerArray(TYPES.length);
+
+    // только заказы с ненулевым счётчиком: обнулившийся ключ удаляется
+    private final Map<Long, Integer> byOrder = new ConcurrentHashMap<>();
+
+    private final SeqIndex index;
+
+    UnreadCounters() {
+        this(null);
+    }
+
+    private UnreadCounters(SeqIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * Счётчики общего топика с индексом по id для {@link #after(long)}.
+     */
+    static UnreadCounters indexed() {
+        return new UnreadCounters(new SeqIndex());
+    }
+
+    void added(LongPollEvent event) {
+        change(event, 1);
+        if (index != null) index.added(event);
+    }
+
+    void removed(LongPollEvent event) {
+        change(event, -1);
+        if (index != null) index.removed(event);
+    }
+
+    /**
+     * Хранимые события с id больше {@code readId}. Только для {@link #indexed()}; вызывается под монитором очереди.
+     */
+    LongPollUnreadCount after(long readId) {
+        if (index == null) throw new IllegalStateException("counters are not indexed");
+        return index.after(readId);
+    }
+
+    private void change(LongPollEvent event, int delta) {
+        total.addAndGet(delta);
+        if (event.getType() != null) {
+            byType.addAndGet(event.getType().ordinal(), delta);
+        }
+        if (event.getOrderId() != null) {
+            byOrder.merge(event.getOrderId(), delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+    }
+
+    LongPollUnreadCount snapshot() {
+        Map<LongPollEventType, Integer> types = new EnumMap<>(LongPollEventType.class);
+        for (int i = 0; i < TYPES.length; i++) {
+            int n = byType.get(i);
+            if (n > 0) types.put(TYPES[i], n);
+        }
+        return LongPollUnreadCount.builder()
+                .total(total.get())
+                .byType(types)
+                .byOrder(new HashMap<>(byOrder))
+                .build();
+    }
+
+    /**
+     * Префиксные суммы по хранимым событиям. События добавляются с возрастающими id и удаляются только с начала
+     * (вытеснение, усечение, сброс), поэтому сумма на id лежит в кольце по {@code id & mask}, а сумма
+     * до первого хранимого события — в {@code base}. Суммы накопительные с начала жизни топика: переполнение int
+     * не портит разности.
+     */
+    private static final class SeqIndex {
+
+        private static final int INITIAL_CAPACITY = 16;
+
+        private static final int TOTAL = TYPES.length;
+
+        // по типу и всего (последний элемент) для всех событий, когда-либо добавленных
+        private final int[] sum = new int[TOTAL + 1];
+
+        // sum на момент после последнего удалённого события
+        private final int[] base = new int[TOTAL + 1];
+
+        // ids хранимых событий по заказу, по возрастанию
+        private final Map<Long, OrderIds> orders = new HashMap<>();
+
+        private int[][] prefixes = new int[INITIAL_CAPACITY][];
+
+        private int mask = INITIAL_CAPACITY - 1;
+
+        private long firstId;
+
+        private long lastId;
+
+        private int size;
+
+        void added(LongPollEvent event) {
+            long id = event.getId();
+            if (size == 0) {
+                firstId = id; // после сброса буфера id продолжаются с разрывом
+            } else if (size == prefixes.length) {
+                grow();
+            }
+            lastId = id;
+            size++;
+            if (event.getType() != null) sum[event.getType().ordinal()]++;
+            sum[TOTAL]++;
+            int slot = (int) (id & mask);
+            if (prefixes[slot] == null) prefixes[slot] = new int[TOTAL + 1];
+            System.arraycopy(sum, 0, prefixes[slot], 0, TOTAL + 1);
+            if (event.getOrderId() != null) {
+                orders.computeIfAbsent(event.getOrderId(), k -> new OrderIds()).add(id);
+            }
+        }
+
+        void removed(LongPollEvent event) {
+            long id = event.getId();
+            System.arraycopy(prefixes[(int) (id & mask)], 0, base, 0, TOTAL + 1);
+            firstId = id + 1;
+            size--;
+            if (event.getOrderId() != null) {
+                OrderIds ids = orders.get(event.getOrderId());
+                if (ids != null && ids.removeFirst()) orders.remove(event.getOrderId());
+            }
+        }
+
+        LongPollUnreadCount after(long readId) {
+            if (size == 0 || readId >= lastId) return LongPollUnreadCount.empty();
+            int[] from = readId < firstId ? base : prefixes[(int) (readId & mask)];
+            Map<LongPollEventType, Integer> types = new EnumMap<>(LongPollEventType.class);
+            for (int i = 0; i < TOTAL; i++) {
+                int n = sum[i] - from[i];
+                if (n > 0) types.put(TYPES[i], n);
+            }
+            Map<Long, Integer> byOrder = new HashMap<>();
+            orders.forEach((orderId, ids) -> {
+                int n = ids.countAfter(readId);
+                if (n > 0) byOrder.put(orderId, n);
+            });
+            return LongPollUnreadCount.builder()
+                    .total(sum[TOTAL] - from[TOTAL])
+                    .byType(types)
+                    .byOrder(byOrder)
+                    .build();
+        }
+
+        private void grow() {
+            int[][] next = new int[prefixes.length << 1][];
+            int nextMask = next.length - 1;
+            for (long id = firstId; id <= lastId; id++) {
+                next[(int) (id & nextMask)] = prefixes[(int) (id & mask)];
+            }
+            prefixes = next;
+            mask = nextMask;
+        }
+    }
+
+    /**
+     * Возрастающие id событий одного заказа; удаляются с начала.
+     */
+    private static final class OrderIds {
+
+        private long[] ids = new long[4];
+
+        private int head;
+
+        private int tail;
+
+        void add(long id) {
+            if (tail == ids.length) {
+                int n = tail - head;
+                ids = n * 2 > ids.length ? Arrays.copyOfRange(ids, head, head + ids.length * 2) : compact(n);
+                head = 0;
+                tail = n;
+            }
+            ids[tail++] = id;
+        }
+
+        /**
+         * @return {@code true}, если id не осталось
+         */
+        boolean removeFirst() {
+            head++;
+            return head == tail;
+        }
+
+        int countAfter(long readId) {
+            if (ids[tail - 1] <= readId) return 0;
+            int from = Arrays.binarySearch(ids, head, tail, readId);
+            return tail - (from >= 0 ? from + 1 : -from - 1);
+        }
+
+        private long[] compact(int n) {
+            System.arraycopy(ids, head, ids, 0, n);
+            return ids;
+        }
+    }
+}
@@ -13,6 +13,9 @@ public interface ProductRepository extends JpaRepository<Product, Long> {
     List<Product> findByBrandAndGroupTagIsNull(Brand brand);
     List<Product> findByBrandAndGroupTagIsNullAndVisibleIsTrue(Brand brand);
 
+    // Все видимые товары бренда (снимок публичного меню)
+    List<Product> findByBrandAndVisibleIsTrue(Brand brand);
+
     // Товары в конкретной группе
     List<Product> findByBrandAndGroupTagId(Brand brand, Long groupTagId);
     List<Product> findByBrandAndGroupTagIdAndVisibleIsTrue(Brand brand, Long groupTagId);
@@ -3,8 +3,12 @@ package kirillzhdanov.identityservice.repository;
 import kirillzhdanov.identityservice.model.StorageFile;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface StorageFileRepository extends JpaRepository<StorageFile, Long> {
     List<StorageFile> findByOwnerTypeAndOwnerId(String ownerType, Long ownerId);
+
+    // Пакетная выборка файлов одного назначения для нескольких владельцев (одним запросом)
+    List<StorageFile> findByOwnerTypeAndOwnerIdInAndPurposeAndUsageType(String ownerType, Collection<Long> ownerIds, String purpose, String usageType);
 }
@@ -2,21 +2,32 @@ package kirillzhdanov.identityservice.repository;
 
 import kirillzhdanov.identityservice.model.Token;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface TokenRepository extends JpaRepository<Token, Long> {
 
-	Optional<Token> findByToken(String token);
+	Optional<Token> findByTokenHash(byte[] tokenHash);
 
-	@Query("SELECT t FROM Token t WHERE t.user.id = :userId AND t.revoked = false")
-	List<Token> findAllValidTokensByUser(@Param("userId") Long userId);
+	@Modifying
+	@Query("UPDATE Token t SET t.revoked = true WHERE t.user.id = :userId AND t.revoked = false")
+	int revokeAllByUserId(@Param("userId") Long userId);
 
-	List<Token> findAllByExpiryDateBefore(LocalDateTime date);
+	/**
+	 * Удаляет не более {@code limit} истекших токенов. {@code SKIP LOCKED} — чтобы реплики, чистящие таблицу одновременно,
+	 * не ждали друг друга на одних и тех же строках.
+	 */
+	@Modifying
+	@Query(value = "DELETE FROM tokens WHERE id IN (SELECT id FROM tokens WHERE expiry_date < :before LIMIT :limit FOR UPDATE SKIP LOCKED)",
+			nativeQuery = true)
+	int deleteExpiredBatch(@Param("before") LocalDateTime before, @Param("limit") int limit);
+
+	@Query(value = "SELECT pg_total_relation_size('tokens')", nativeQuery = true)
+	Long tableSizeBytes();
 }
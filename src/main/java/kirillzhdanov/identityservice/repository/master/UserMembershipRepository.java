@@ -3,6 +3,8 @@ package kirillzhdanov.identityservice.repository.master;
 import kirillzhdanov.identityservice.model.master.UserMembership;
 import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -16,4 +18,12 @@ public interface UserMembershipRepository extends JpaRepository<UserMembership,
     Optional<UserMembership> findByUserIdAndBrandId(Long userId, Long brandId);
 
     Optional<UserMembership> findByUserIdAndMasterId(Long userId, Long masterId);
+
+    /**
+     * Бренды, где пользователь — активный персонал (не CLIENT). Membership уровня master без бренда даёт все бренды master-а.
+     */
+    @Query("select distinct b.id from UserMembership m join Brand b on (b = m.brand or (m.brand is null and b.master = m.master)) "
+            + "where m.user.id = :userId and m.role <> kirillzhdanov.identityservice.model.master.RoleMembership.CLIENT "
+            + "and (m.status is null or m.status = 'ACTIVE')")
+    List<Long> findStaffBrandIds(@Param("userId") Long userId);
 }
@@ -0,0 +1,54 @@
+package kirillzhdanov.identityservice.repository.notification;
+
+import kirillzhdanov.identityservice.model.notification.NotificationEvent;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface NotificationEventRepository extends JpaRepository<NotificationEvent, Long> {
+
+    /**
+     * Резервирует {@code count} следующих номеров топика и возвращает последний из них. Вызывается только
+     * ретранслятором под {@link #lockRelay(long)}, поэтому строка счётчика не ждёт чужих транзакций.
+     */
+    @Query(value = "INSERT INTO notification_topic_seq (topic, last_seq) VALUES (:topic, :count) "
+            + "ON CONFLICT (topic) DO UPDATE SET last_seq = notification_topic_seq.last_seq + :count RETURNING last_seq",
+            nativeQuery = true)
+    long reserveSeq(@Param("topic") String topic, @Param("count") int count);
+
+    /**
+     * Транзакционная advisory-блокировка ретранслятора: номера назначает одна реплика за раз.
+     */
+    @Query(value = "SELECT count(*) FROM (SELECT pg_advisory_xact_lock(:key)) l", nativeQuery = true)
+    long lockRelay(@Param("key") long key);
+
+    /**
+     * Закоммиченные события без номера, в порядке записи.
+     */
+    @Query("SELECT e FROM NotificationEvent e WHERE e.seq IS NULL ORDER BY e.id")
+    List<NotificationEvent> findUnsequenced(Limit limit);
+
+    @Query(value = "SELECT last_seq FROM notification_topic_seq WHERE topic = :topic", nativeQuery = true)
+    Optional<Long> findLastSeq(@Param("topic") String topic);
+
+    List<NotificationEvent> findByTopicAndSeqGreaterThanOrderBySeqAsc(String topic, long seq, Limit limit);
+
+    Optional<NotificationEvent> findByTopicAndSeq(String topic, long seq);
+
+    /**
+     * Удаляет не более {@code limit} событий старше {@code before}; счётчики топиков не трогает.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM notification_events WHERE id IN "
+            + "(SELECT id FROM notification_events WHERE created_at < :before LIMIT :limit FOR UPDATE SKIP LOCKED)",
+            nativeQuery = true)
+    int deleteCreatedBeforeBatch(@Param("before") LocalDateTime before, @Param("limit") int limit);
+}
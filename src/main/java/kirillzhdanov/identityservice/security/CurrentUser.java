@@ -0,0 +1,76 @@
+package kirillzhdanov.identityservice.security;
+
+import kirillzhdanov.identityservice.model.Brand;
+import kirillzhdanov.identityservice.model.User;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Текущий аутентифицированный пользователь в рамках одного HTTP-запроса.
+ * <p>
+ * Строится из {@link CustomUserDetails}, который уже собрал фильтр аутентификации, поэтому контроллерам и сервисам
+ * не нужно повторно искать пользователя по username. Получение — через аргумент метода контроллера
+ * (см. {@link CurrentUserArgumentResolver}) или {@link CurrentUserProvider#current()}.
+ *
+ * @param id            идентификатор пользователя
+ * @param username      имя пользователя
+ * @param masterId      master-аккаунт пользователя ({@code users.master_id}), может быть {@code null}
+ * @param brandMasterId master любого из привязанных брендов — запасной вариант, когда {@code masterId} не задан
+ * @param brandIds      бренды, к которым привязан пользователь ({@code user_brands}); пусто, если бренды не загружены
+ */
+public record CurrentUser(Long id,
+						  String username,
+						  Long masterId,
+						  Long brandMasterId,
+						  Set<Long> brandIds) {
+
+	public CurrentUser {
+		brandIds = brandIds != null ? Set.copyOf(brandIds) : Set.of();
+	}
+
+	/**
+	 * Имя атрибута запроса, под которым запоминается уже определённый пользователь.
+	 */
+	public static final String REQUEST_ATTRIBUTE = CurrentUser.class.getName();
+
+	public static CurrentUser of(User user) {
+		return new CurrentUser(user.getId(), user.getUsername(), user.getMasterId(), brandMasterIdOf(user), brandIdsOf(user));
+	}
+
+	private static Set<Long> brandIdsOf(User user) {
+		try {
+			if (user.getBrands() == null) {
+				return Set.of();
+			}
+			Set<Long> ids = new HashSet<>();
+			for (Brand brand : user.getBrands()) {
+				if (brand != null && brand.getId() != null) {
+					ids.add(brand.getId());
+				}
+			}
+			return ids;
+		} catch (Exception ignored) {
+			// бренды не загружены (вне сессии)
+			return Set.of();
+		}
+	}
+
+	private static Long brandMasterIdOf(User user) {
+		try {
+			if (user.getBrands() == null) {
+				return null;
+			}
+			for (Brand brand : user.getBrands()) {
+				if (brand != null && brand.getMaster() != null && brand.getMaster()
+																	   .getId() != null) {
+					return brand.getMaster()
+								.getId();
+				}
+			}
+		} catch (Exception ignored) {
+			// бренды не загружены (вне сессии) — запасного masterId нет
+		}
+		return null;
+	}
+}
@@ -0,0 +1,37 @@
+package kirillzhdanov.identityservice.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+/**
+ * Подставляет {@link CurrentUser} в параметры методов контроллеров.
+ * <p>
+ * Для анонимного запроса (или неизвестного пользователя) передаётся {@code null} — ответ 401/204
+ * по-прежнему решает сам контроллер.
+ */
+@RequiredArgsConstructor
+public class CurrentUserArgumentResolver implements HandlerMethodArgumentResolver {
+
+	private final CurrentUserProvider currentUserProvider;
+
+	@Override
+	public boolean supportsParameter(MethodParameter parameter) {
+		return CurrentUser.class.equals(parameter.getParameterType());
+	}
+
+	@Override
+	public Object resolveArgument(@NonNull MethodParameter parameter, ModelAndViewContainer mavContainer,
+								  NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+		return currentUserProvider.resolve(SecurityContextHolder.getContext()
+																.getAuthentication(),
+										   webRequest.getNativeRequest(HttpServletRequest.class))
+								  .orElse(null);
+	}
+}
@@ -0,0 +1,83 @@
+package kirillzhdanov.identityservice.security;
+
+import jakarta.servlet.http.HttpServletRequest;
+import kirillzhdanov.identityservice.repository.UserRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Определяет {@link CurrentUser} один раз на запрос.
+ * <p>
+ * Основной источник — {@link CustomUserDetails} из {@code SecurityContext} (его строит {@link JwtAuthenticator}),
+ * запрос в БД при этом не выполняется. Для прочих principal (например, {@code @WithMockUser} в тестах)
+ * пользователь ищется по username. Результат запоминается в атрибуте запроса {@link CurrentUser#REQUEST_ATTRIBUTE}.
+ * <p>
+ * Репозиторий пользователей берётся лениво: в web-срезах тестов без него пользователь определяется только
+ * по {@code CustomUserDetails}.
+ */
+@Component
+@RequiredArgsConstructor
+public class CurrentUserProvider {
+
+	private final ObjectProvider<UserRepository> userRepository;
+
+	/**
+	 * Текущий пользователь по {@code SecurityContext} и текущему запросу (если он есть).
+	 */
+	public Optional<CurrentUser> current() {
+		HttpServletRequest request = null;
+		if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+			request = attributes.getRequest();
+		}
+		return resolve(SecurityContextHolder.getContext()
+											.getAuthentication(), request);
+	}
+
+	/**
+	 * @param authentication аутентификация запроса
+	 * @param request        запрос для кеширования результата или {@code null}
+	 * @return пользователь или пусто для анонима/неизвестного username
+	 */
+	public Optional<CurrentUser> resolve(Authentication authentication, HttpServletRequest request) {
+		if (authentication == null || !authentication.isAuthenticated()
+				|| authentication instanceof AnonymousAuthenticationToken) {
+			return Optional.empty();
+		}
+		String username = authentication.getName();
+		if (request != null && request.getAttribute(CurrentUser.REQUEST_ATTRIBUTE) instanceof CurrentUser cached
+				&& Objects.equals(cached.username(), username)) {
+			return Optional.of(cached);
+		}
+
+		Optional<CurrentUser> resolved = fromPrincipal(authentication.getPrincipal()).or(() -> load(username));
+		if (request != null) {
+			resolved.ifPresent(user -> request.setAttribute(CurrentUser.REQUEST_ATTRIBUTE, user));
+		}
+		return resolved;
+	}
+
+	private Optional<CurrentUser> fromPrincipal(Object principal) {
+		if (principal instanceof CustomUserDetails details && details.user() != null && details.getId() != null) {
+			return Optional.of(CurrentUser.of(details.user()));
+		}
+		return Optional.empty();
+	}
+
+	private Optional<CurrentUser> load(String username) {
+		UserRepository repository = userRepository.getIfAvailable();
+		if (repository == null || username == null) {
+			return Optional.empty();
+		}
+		return repository.findByUsername(username)
+						 .map(CurrentUser::of);
+	}
+}
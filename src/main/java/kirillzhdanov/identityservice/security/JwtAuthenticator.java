@@ -1,8 +1,8 @@
 package kirillzhdanov.identityservice.security;
 
 import jakarta.servlet.http.HttpServletRequest;
-import kirillzhdanov.identityservice.model.Token;
 import kirillzhdanov.identityservice.model.master.RoleMembership;
+import kirillzhdanov.identityservice.model.master.UserMembership;
 import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
 import kirillzhdanov.identityservice.service.TokenService;
 import kirillzhdanov.identityservice.tenant.TenantContext;
@@ -36,46 +36,45 @@ public class JwtAuthenticator {
 
 	private final UserMembershipRepository userMembershipRepository;
 
+	private final PrincipalCache principalCache;
+
 	/**
-	 * Обрабатывает JWT токен, проверяя его тип и аутентифицируя пользователя
+	 * Обрабатывает JWT токен, проверяя его тип и аутентифицируя пользователя.
+	 * <p>
+	 * Токен разбирается и проверяется по подписи один раз; снимок клеймов сохраняется в атрибуте запроса
+	 * {@link ParsedAccessToken#REQUEST_ATTRIBUTE} для повторного использования контроллерами.
 	 *
 	 * @param request HTTP запрос
 	 * @param jwt     JWT токен
 	 * @return true, если аутентификация прошла успешно
 	 */
 	public boolean processJwtToken(@NonNull HttpServletRequest request, @NonNull String jwt) {
-		// Проверяем тип токена - должен быть только ACCESS
-		Token.TokenType tokenType;
+		ParsedAccessToken parsed;
 		try {
-			tokenType = jwtUtils.extractTokenType(jwt);
-			if (tokenType != Token.TokenType.ACCESS) {
-				log.warn("Неверный тип токена: {}", tokenType);
-				return false;
-			}
+			parsed = jwtUtils.resolveParsedToken(request, jwt);
 		} catch (Exception e) {
-			log.warn("Не удалось извлечь тип токена: {}", e.getClass()
-														   .getSimpleName());
+			log.warn("Не удалось разобрать JWT токен: {}", e.getClass()
+															.getSimpleName());
 			return false;
 		}
 
-		// Извлекаем имя пользователя из токена
-		String username;
-		try {
-			username = jwtUtils.extractUsername(jwt);
-			if (username == null || username.isEmpty()) {
-				log.warn("Не удалось извлечь имя пользователя из токена");
-				return false;
-			}
-		} catch (Exception e) {
-			log.warn("Ошибка при извлечении имени пользователя: {}", e.getClass()
-																	  .getSimpleName());
+		// Проверяем тип токена - должен быть только ACCESS
+		if (!parsed.isAccess()) {
+			log.warn("Неверный тип токена: {}", parsed.tokenType());
+			return false;
+		}
+
+		// Имя пользователя из токена
+		String username = parsed.username();
+		if (username == null || username.isEmpty()) {
+			log.warn("Не удалось извлечь имя пользователя из токена");
 			return false;
 		}
 
 		// Если пользователь еще не аутентифицирован
 		if (SecurityContextHolder.getContext()
 								 .getAuthentication() == null) {
-			return authenticateUser(request, jwt, username);
+			return authenticateUser(request, parsed);
 		}
 
 		return true;
@@ -84,38 +83,33 @@ public class JwtAuthenticator {
 	/**
 	 * Аутентифицирует пользователя, если токен валиден
 	 */
-	private boolean authenticateUser(@NonNull HttpServletRequest request,
-									 @NonNull String jwt,
-									 @NonNull String username) {
+	private boolean authenticateUser(@NonNull HttpServletRequest request, @NonNull ParsedAccessToken parsed) {
 		try {
-			UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+			UserDetails userDetails = principalCache.user(parsed.username(), userDetailsService::loadUserByUsername);
 			Objects.requireNonNull(userDetails, "UserDetailsService вернул null");
 
 			// Проверяем валидность токена в JWT и в базе данных
-			if (isTokenValid(jwt, userDetails)) {
+			if (isTokenValid(parsed, userDetails)) {
 				UsernamePasswordAuthenticationToken authToken = createAuthenticationToken(userDetails);
 				authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 				SecurityContextHolder.getContext().setAuthentication(authToken);
 
 				// Заполняем TenantContext из клеймов (membership/master/brand/location)
 				try {
-					Long membershipId = jwtUtils.extractMembershipId(jwt);
-					Long masterId = jwtUtils.extractMasterIdClaim(jwt);
-					Long brandId = jwtUtils.extractBrandIdClaim(jwt);
-					Long locationId = jwtUtils.extractLocationIdClaim(jwt);
+					Long membershipId = parsed.membershipId();
 					if (membershipId != null) {
 						TenantContext.setMembershipId(membershipId);
-						// Загрузим роль membership из БД и положим в контекст
-						userMembershipRepository.findById(membershipId).ifPresent(um -> {
-							RoleMembership role = um.getRole();
-							if (role != null) TenantContext.setRole(role);
-						});
+						// Роль membership (из кеша или БД) кладём в контекст
+						RoleMembership role = principalCache.membershipRole(membershipId, id -> userMembershipRepository.findById(id)
+																												  .map(UserMembership::getRole)
+																												  .orElse(null));
+						if (role != null) TenantContext.setRole(role);
 					}
-					if (masterId != null) TenantContext.setMasterId(masterId);
-					if (brandId != null) TenantContext.setBrandId(brandId);
-					if (locationId != null) TenantContext.setLocationId(locationId);
+					if (parsed.masterId() != null) TenantContext.setMasterId(parsed.masterId());
+					if (parsed.brandId() != null) TenantContext.setBrandId(parsed.brandId());
+					if (parsed.locationId() != null) TenantContext.setLocationId(parsed.locationId());
 				} catch (Exception ignore) {
-					// если клеймов нет/некорректны — оставляем контекст пустым; защищенные эндпоинты проверят наличие
+					// если membership не загрузился — оставляем контекст пустым; защищенные эндпоинты проверят наличие
 				}
 				return true;
 			} else {
@@ -150,29 +144,21 @@ public class JwtAuthenticator {
 	}
 
 	/**
-	 * Проверяет валидность токена
+	 * Проверяет валидность токена: совпадение пользователя и срок действия по уже разобранным клеймам,
+	 * затем отсутствие отзыва в базе данных
 	 *
-	 * @param jwt         JWT токен
+	 * @param parsed      разобранный JWT токен
 	 * @param userDetails данные пользователя
 	 * @return true, если токен валиден
 	 */
-	public boolean isTokenValid(@NonNull String jwt, @NonNull UserDetails userDetails) {
-
-		boolean isJwtValid;
+	public boolean isTokenValid(@NonNull ParsedAccessToken parsed, @NonNull UserDetails userDetails) {
 
-		try {
-			isJwtValid = jwtUtils.validateToken(jwt, userDetails);
-			if (!isJwtValid) {
-				return false;
-			}
-		} catch (Exception e) {
-			log.warn("Ошибка при проверке JWT токена: {}", e.getClass()
-															.getSimpleName());
+		if (!userDetails.getUsername().equals(parsed.username()) || parsed.isExpired()) {
 			return false;
 		}
 
 		try {
-			return tokenService.isTokenValid(jwt);
+			return tokenService.isTokenValid(parsed);
 		} catch (Exception e) {
 			log.warn("Ошибка при проверке токена в базе данных: {}", e.getClass()
 																	  .getSimpleName());
@@ -2,13 +2,16 @@ package kirillzhdanov.identityservice.security;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
 import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
 import kirillzhdanov.identityservice.model.Brand;
 import kirillzhdanov.identityservice.model.Token;
 import kirillzhdanov.identityservice.model.User;
+import lombok.RequiredArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
@@ -21,11 +24,16 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
+@RequiredArgsConstructor
 public class JwtUtils {
 
 	@Value("${jwt.secret:secret_key_for_jwt_token_please_change_in_production}")
 	private String secret;
 	private Key key;
+	/**
+	 * Потокобезопасный парсер с уже установленным ключом: строится один раз вместо каждого вызова.
+	 */
+	private JwtParser parser;
 
 	@Value("${jwt.access.expiration:3600000}")
 	private Long accessTokenExpiration; // 1 час по умолчанию
@@ -33,9 +41,67 @@ public class JwtUtils {
 	@Value("${jwt.refresh.expiration:2592000000}")
 	private Long refreshTokenExpiration; // 30 дней по умолчанию
 
+	/**
+	 * Stateless-режим access-токенов: короткий срок жизни и claim {@code tokenEpoch}.
+	 */
+	private final StatelessAccessProperties statelessAccess;
+
 	@PostConstruct
 	public void init() {
 		this.key = Keys.hmacShaKeyFor(secret.getBytes());
+		this.parser = Jwts.parserBuilder()
+						  .setSigningKey(key)
+						  .build();
+	}
+
+	/**
+	 * Разбирает токен и проверяет подпись один раз, возвращая неизменяемый снимок всех клеймов.
+	 * <p>
+	 * Как и {@link #extractAllClaims(String)}, для истекшего токена снимок возвращается (подпись уже проверена),
+	 * срок действия проверяется через {@link ParsedAccessToken#isExpired()}.
+	 *
+	 * @param token JWT токен
+	 * @return разобранный токен
+	 * @throws io.jsonwebtoken.JwtException при неверной подписи или формате
+	 */
+	public ParsedAccessToken parseToken(String token) {
+
+		Claims claims = extractAllClaims(token);
+		return ParsedAccessToken.builder()
+								.token(token)
+								.jti(claims.getId())
+								.username(claims.getSubject())
+								.tokenType(tokenTypeOf(claims))
+								.userId(longClaim(claims, "userId"))
+								.membershipId(longClaim(claims, "membershipId"))
+								.masterId(longClaim(claims, "masterId"))
+								.brandId(longClaim(claims, "brandId"))
+								.locationId(longClaim(claims, "locationId"))
+								.brandIds(brandIdsOf(claims))
+								.roles(rolesOf(claims))
+								.tokenEpoch(longClaim(claims, "tokenEpoch"))
+								.issuedAt(claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null)
+								.expiration(claims.getExpiration() != null ? claims.getExpiration().toInstant() : null)
+								.build();
+	}
+
+	/**
+	 * Возвращает снимок токена, уже разобранный в рамках текущего запроса (см. {@link ParsedAccessToken#REQUEST_ATTRIBUTE}),
+	 * либо разбирает токен и кладёт результат в атрибут запроса.
+	 *
+	 * @param request HTTP запрос
+	 * @param token   JWT токен
+	 * @return разобранный токен
+	 */
+	public ParsedAccessToken resolveParsedToken(HttpServletRequest request, String token) {
+
+		if (request.getAttribute(ParsedAccessToken.REQUEST_ATTRIBUTE) instanceof ParsedAccessToken parsed
+				&& parsed.token().equals(token)) {
+			return parsed;
+		}
+		ParsedAccessToken parsed = parseToken(token);
+		request.setAttribute(ParsedAccessToken.REQUEST_ATTRIBUTE, parsed);
+		return parsed;
 	}
 
 	public String extractUsername(String token) {
@@ -57,11 +123,8 @@ public class JwtUtils {
 	private Claims extractAllClaims(String token) {
 
 		try {
-			return Jwts.parserBuilder()
-					.setSigningKey(key)
-					.build()
-					   .parseClaimsJws(token)
-					   .getBody();
+			return parser.parseClaimsJws(token)
+						 .getBody();
 		} catch (ExpiredJwtException e) {
 			// Для истекших токенов все равно возвращаем claims для тестирования
 			return e.getClaims();
@@ -99,9 +162,10 @@ public class JwtUtils {
 													  .name())
 									 .collect(Collectors.toList());
 			claims.put("roles", roles);
+			putTokenEpoch(claims, user);
 		}
 
-		return createToken(claims, userDetails.getUsername(), accessTokenExpiration);
+		return createToken(claims, userDetails.getUsername(), accessTokenLifetime());
 	}
 
 	public String generateAccessToken(UserDetails userDetails,
@@ -118,12 +182,27 @@ public class JwtUtils {
 			claims.put("brandIds", brandIds);
 			List<String> roles = user.getRoles().stream().map(role -> role.getName().name()).collect(Collectors.toList());
 			claims.put("roles", roles);
+			putTokenEpoch(claims, user);
 		}
 		if (membershipId != null) claims.put("membershipId", membershipId);
 		if (masterId != null) claims.put("masterId", masterId);
 		if (brandId != null) claims.put("brandId", brandId);
 		if (locationId != null) claims.put("locationId", locationId);
-		return createToken(claims, userDetails.getUsername(), accessTokenExpiration);
+		return createToken(claims, userDetails.getUsername(), accessTokenLifetime());
+	}
+
+	private void putTokenEpoch(Map<String, Object> claims, User user) {
+
+		if (statelessAccess.isEnabled()) {
+			claims.put("tokenEpoch", user.getTokenEpoch());
+		}
+	}
+
+	private Long accessTokenLifetime() {
+
+		return statelessAccess.isEnabled() && statelessAccess.getExpiration() != null
+				? statelessAccess.getExpiration().toMillis()
+				: accessTokenExpiration;
 	}
 
 	public String generateRefreshToken(UserDetails userDetails) {
@@ -156,6 +235,25 @@ public class JwtUtils {
 		return Token.TokenType.valueOf(extractClaim(token, claims -> claims.get("tokenType", String.class)));
 	}
 
+	private static Token.TokenType tokenTypeOf(Claims claims) {
+
+		Object type = claims.get("tokenType");
+		if (type == null) {
+			return null;
+		}
+		try {
+			return Token.TokenType.valueOf(type.toString());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static Long longClaim(Claims claims, String name) {
+
+		Object v = claims.get(name);
+		return v instanceof Number n ? n.longValue() : null;
+	}
+
 	public LocalDateTime extractExpirationAsLocalDateTime(String token) {
 
 		Date expirationDate = extractExpiration(token);
@@ -172,36 +270,41 @@ public class JwtUtils {
 		});
 	}
 
-	@SuppressWarnings("unchecked")
 	public List<Long> extractBrandIds(String token) {
 
-		return extractClaim(token, claims -> {
-			Object brandIds = claims.get("brandIds");
-			if (brandIds instanceof List<?> list) {
-				List<Long> result = new ArrayList<>(list.size());
-				for (Object item : list) {
-					if (item instanceof Number n) {
-						result.add(n.longValue());
-					} else if (item != null) {
-						try {
-							result.add(Long.parseLong(item.toString()));
-						} catch (NumberFormatException ignored) {
-						}
+		return extractClaim(token, JwtUtils::brandIdsOf);
+	}
+
+	public List<String> extractRoles(String token) {
+
+		return extractClaim(token, JwtUtils::rolesOf);
+	}
+
+	private static List<Long> brandIdsOf(Claims claims) {
+
+		Object brandIds = claims.get("brandIds");
+		if (brandIds instanceof List<?> list) {
+			List<Long> result = new ArrayList<>(list.size());
+			for (Object item : list) {
+				if (item instanceof Number n) {
+					result.add(n.longValue());
+				} else if (item != null) {
+					try {
+						result.add(Long.parseLong(item.toString()));
+					} catch (NumberFormatException ignored) {
 					}
 				}
-				return result;
 			}
-			return Collections.emptyList();
-		});
+			return result;
+		}
+		return Collections.emptyList();
 	}
 
 	@SuppressWarnings("unchecked")
-	public List<String> extractRoles(String token) {
+	private static List<String> rolesOf(Claims claims) {
 
-		return extractClaim(token, claims -> {
-			Object roles = claims.get("roles");
-			return roles != null ? (List<String>) roles : Collections.emptyList();
-		});
+		Object roles = claims.get("roles");
+		return roles != null ? (List<String>) roles : Collections.emptyList();
 	}
 
 	public Long extractMembershipId(String token) {
@@ -241,11 +344,8 @@ public class JwtUtils {
 	public boolean validateTokenSignature(String token) {
 
 		try {
-			Jwts.parserBuilder()
-					.setSigningKey(key)
-					.build()
-				.parseClaimsJws(token);
-			return !isTokenExpired(token);
+			parser.parseClaimsJws(token);
+			return true;
 		} catch (Exception e) {
 			return false;
 		}
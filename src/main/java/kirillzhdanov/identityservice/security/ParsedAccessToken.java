@@ -0,0 +1,70 @@
+package kirillzhdanov.identityservice.security;
+
+import kirillzhdanov.identityservice.model.Token;
+import lombok.Builder;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Неизменяемый снимок клеймов JWT, подпись которого проверена ровно один раз.
+ * <p>
+ * Создаётся {@link JwtUtils#parseToken(String)} и кладётся в атрибут запроса {@link #REQUEST_ATTRIBUTE},
+ * чтобы фильтр аутентификации и контроллеры не разбирали один и тот же токен повторно.
+ * Для истекшего токена снимок всё равно строится (подпись валидна), проверку срока делает {@link #isExpired()}.
+ *
+ * @param token      исходная строка токена
+ * @param jti        идентификатор токена (claim {@code jti})
+ * @param username   subject токена
+ * @param tokenType  тип токена или {@code null}, если claim отсутствует/некорректен
+ * @param userId     claim {@code userId}
+ * @param membershipId claim {@code membershipId}
+ * @param masterId   claim {@code masterId}
+ * @param brandId    claim {@code brandId}
+ * @param locationId claim {@code locationId}
+ * @param brandIds   claim {@code brandIds}
+ * @param roles      claim {@code roles}
+ * @param tokenEpoch claim {@code tokenEpoch} (только в stateless-режиме, см. {@link StatelessAccessProperties})
+ * @param issuedAt   момент выпуска
+ * @param expiration момент истечения
+ */
+@Builder
+public record ParsedAccessToken(String token,
+								String jti,
+								String username,
+								Token.TokenType tokenType,
+								Long userId,
+								Long membershipId,
+								Long masterId,
+								Long brandId,
+								Long locationId,
+								List<Long> brandIds,
+								List<String> roles,
+								Long tokenEpoch,
+								Instant issuedAt,
+								Instant expiration) {
+
+	/**
+	 * Имя атрибута запроса, под которым хранится разобранный токен.
+	 */
+	public static final String REQUEST_ATTRIBUTE = ParsedAccessToken.class.getName();
+
+	public ParsedAccessToken {
+		brandIds = brandIds != null ? List.copyOf(brandIds) : List.of();
+		roles = roles != null ? List.copyOf(roles) : List.of();
+	}
+
+	public boolean isAccess() {
+		return tokenType == Token.TokenType.ACCESS;
+	}
+
+	public boolean isExpired() {
+		return expiration == null || expiration.isBefore(Instant.now());
+	}
+
+	public LocalDateTime expirationAsLocalDateTime() {
+		return expiration != null ? LocalDateTime.ofInstant(expiration, ZoneId.systemDefault()) : null;
+	}
+}
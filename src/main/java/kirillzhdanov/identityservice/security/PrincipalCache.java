@@ -0,0 +1,198 @@
+package kirillzhdanov.identityservice.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kirillzhdanov.identityservice.model.User;
+import kirillzhdanov.identityservice.model.master.RoleMembership;
+import kirillzhdanov.identityservice.security.revocation.RevocationEvent;
+import kirillzhdanov.identityservice.security.revocation.TokenDenyList;
+import kirillzhdanov.identityservice.security.revocation.TokenRevocationBus;
+import kirillzhdanov.identityservice.util.AfterCommit;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Кеш данных, которые {@link JwtAuthenticator} восстанавливает на каждый запрос: principal по username
+ * и роль membership по membershipId.
+ * <p>
+ * Principal кешируется как отвязанный от JPA снимок (id, username, masterId, роли, бренды — без пароля и ленивых связей),
+ * поэтому вход по паролю через {@code UserDetailsService} кеш не использует.
+ * Сервисы, меняющие роли, бренды или membership, обязаны вызвать {@link #evictUser(String)} / {@link #evictMembership(Long)}:
+ * запись сбрасывается сразу и повторно после коммита, чтобы параллельный запрос не закешировал незакоммиченное состояние,
+ * а после коммита сброс уходит остальным репликам через {@link TokenRevocationBus} (транспорт {@code token.revocation.transport}).
+ * <p>
+ * Записи версионированы: сброс ключа запоминает момент по локальным часам кеша, и запись, загрузка которой началась
+ * раньше последнего сброса (в том числе пришедшего с другой реплики во время чтения из БД), при чтении перечитывается.
+ * Метрики — {@code cache.gets{cache=auth.principal|auth.membership-role}}.
+ */
+@Component
+public class PrincipalCache {
+
+	static final String USERS_CACHE = "auth.principal";
+
+	static final String MEMBERSHIPS_CACHE = "auth.membership-role";
+
+	private final boolean enabled;
+
+	private final Cache<String, Versioned<UserDetails>> users;
+
+	private final Cache<Long, Versioned<Optional<RoleMembership>>> membershipRoles;
+
+	// момент последнего сброса ключа; живёт не меньше записей, загруженных до него
+	private final Cache<String, Long> userVersions;
+
+	private final Cache<Long, Long> membershipVersions;
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final ObjectProvider<TokenRevocationBus> revocationBus;
+
+	public PrincipalCache(PrincipalCacheProperties properties,
+						  ObjectProvider<TokenRevocationBus> revocationBus,
+						  ObjectProvider<MeterRegistry> meterRegistry) {
+		this.enabled = properties.isEnabled();
+		this.revocationBus = revocationBus;
+		this.users = Caffeine.newBuilder()
+							 .maximumSize(properties.getMaxSize())
+							 .expireAfterWrite(properties.getTtl())
+							 .recordStats()
+							 .build();
+		this.membershipRoles = Caffeine.newBuilder()
+									   .maximumSize(properties.getMaxSize())
+									   .expireAfterWrite(properties.getTtl())
+									   .recordStats()
+									   .build();
+		this.userVersions = Caffeine.newBuilder()
+									.maximumSize(properties.getMaxSize())
+									.expireAfterWrite(properties.getTtl())
+									.build();
+		this.membershipVersions = Caffeine.newBuilder()
+										  .maximumSize(properties.getMaxSize())
+										  .expireAfterWrite(properties.getTtl())
+										  .build();
+		meterRegistry.ifAvailable(registry -> {
+			CaffeineCacheMetrics.monitor(registry, users, USERS_CACHE);
+			CaffeineCacheMetrics.monitor(registry, membershipRoles, MEMBERSHIPS_CACHE);
+		});
+	}
+
+	/**
+	 * @param loader загрузка principal-а (обычно {@code UserDetailsService::loadUserByUsername}); исключения не кешируются
+	 */
+	public UserDetails user(String username, Function<String, UserDetails> loader) {
+		if (!enabled) {
+			return loader.apply(username);
+		}
+		return read(users, userVersions, username, name -> snapshot(loader.apply(name)));
+	}
+
+	/**
+	 * @return роль membership или {@code null}, если membership не найден/без роли
+	 */
+	public RoleMembership membershipRole(Long membershipId, Function<Long, RoleMembership> loader) {
+		if (!enabled) {
+			return loader.apply(membershipId);
+		}
+		return read(membershipRoles, membershipVersions, membershipId, id -> Optional.ofNullable(loader.apply(id)))
+				.orElse(null);
+	}
+
+	public void evictUser(String username) {
+		if (username != null) {
+			evict(username, null);
+		}
+	}
+
+	public void evictMembership(Long membershipId) {
+		if (membershipId != null) {
+			evict(null, membershipId);
+		}
+	}
+
+	/**
+	 * Сброс на этой реплике без рассылки: вызывается {@link TokenDenyList} для событий с других узлов.
+	 */
+	public void evictLocally(String username, Long membershipId) {
+		if (username != null) {
+			userVersions.put(username, clock.incrementAndGet());
+			users.invalidate(username);
+		}
+		if (membershipId != null) {
+			membershipVersions.put(membershipId, clock.incrementAndGet());
+			membershipRoles.invalidate(membershipId);
+		}
+	}
+
+	/**
+	 * Полный сброс (например, после массовых изменений пользователей в обход сервисов).
+	 */
+	public void evictAll() {
+		users.invalidateAll();
+		membershipRoles.invalidateAll();
+	}
+
+	private void evict(String username, Long membershipId) {
+		evictLocally(username, membershipId);
+		TokenRevocationBus bus = revocationBus.getIfAvailable();
+		if (bus != null) {
+			// шина после коммита применит сброс ещё раз (через TokenDenyList) и разошлёт его остальным репликам
+			bus.publish(RevocationEvent.principalChanged(username, membershipId, bus.nodeId()));
+		} else {
+			AfterCommit.run(() -> evictLocally(username, membershipId));
+		}
+	}
+
+	private <K, V> V read(Cache<K, Versioned<V>> cache, Cache<K, Long> versions, K key, Function<K, V> loader) {
+		Versioned<V> entry = cache.get(key, k -> load(k, loader));
+		if (entry != null && entry.version() < evictedAt(versions, key)) {
+			// загрузка началась до последнего сброса: значение могло быть прочитано до изменения
+			entry = cache.asMap().compute(key, (k, current) ->
+					current != null && current.version() >= evictedAt(versions, k) ? current : load(k, loader));
+		}
+		return entry != null ? entry.value() : null;
+	}
+
+	private <K, V> Versioned<V> load(K key, Function<K, V> loader) {
+		// версия фиксируется до чтения из БД, чтобы сброс во время загрузки сделал запись устаревшей
+		long version = clock.get();
+		V value = loader.apply(key);
+		return value != null ? new Versioned<>(version, value) : null;
+	}
+
+	private static <K> long evictedAt(Cache<K, Long> versions, K key) {
+		Long version = versions.getIfPresent(key);
+		return version != null ? version : Long.MIN_VALUE;
+	}
+
+	private static UserDetails snapshot(UserDetails details) {
+		if (!(details instanceof CustomUserDetails(User user))) {
+			return details;
+		}
+		User copy = User.builder()
+						.id(user.getId())
+						.username(user.getUsername())
+						.email(user.getEmail())
+						.masterId(user.getMasterId())
+						.tokenEpoch(user.getTokenEpoch())
+						.roles(new HashSet<>(user.getRoles()))
+						.brands(new HashSet<>(user.getBrands()))
+						.build();
+		return new CustomUserDetails(copy);
+	}
+
+	long userCount() {
+		users.cleanUp();
+		return users.estimatedSize();
+	}
+
+	private record Versioned<V>(long version, V value) {
+	}
+}
@@ -0,0 +1,30 @@
+package kirillzhdanov.identityservice.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "jwt.principal-cache")
+public class PrincipalCacheProperties {
+
+	/**
+	 * Включает кеш principal-а (по username) и роли membership (по membershipId) для JWT-аутентификации.
+	 */
+	private boolean enabled = true;
+
+	/**
+	 * Максимальное число записей в каждом из кешей.
+	 */
+	private long maxSize = 10_000;
+
+	/**
+	 * Время жизни записи: страховка на случай изменения данных в обход сервисов, сбрасывающих кеш.
+	 */
+	private Duration ttl = Duration.ofMinutes(5);
+}
@@ -1,6 +1,7 @@
 package kirillzhdanov.identityservice.security;
 
 import kirillzhdanov.identityservice.googleOAuth2.CustomOidcUserService;
+import kirillzhdanov.identityservice.security.route.RoutePolicyRegistry;
 import kirillzhdanov.identityservice.tenant.ContextEnforcementFilter;
 import kirillzhdanov.identityservice.tenant.CtxCookieFilter;
 import kirillzhdanov.identityservice.tenant.TenantContextCleanupFilter;
@@ -16,6 +17,8 @@ import org.springframework.security.config.annotation.web.configurers.AbstractHt
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+import org.springframework.security.web.util.matcher.RequestMatcher;
 
 /**
  * Конфигурация безопасности.
@@ -40,23 +43,33 @@ public class SecurityConfig {
     private final kirillzhdanov.identityservice.googleOAuth2.OAuth2LoginFailureHandler oAuth2LoginFailureHandler;
     private final CtxCookieFilter ctxCookieFilter;
     private final TenantContextCleanupFilter tenantContextCleanupFilter;
+    private final RoutePolicyRegistry routePolicyRegistry;
 
     public SecurityConfig(JwtAuthenticationFilter jwtAuthenticationFilter,
                           kirillzhdanov.identityservice.googleOAuth2.OAuth2LoginSuccessHandler successHandler,
                           kirillzhdanov.identityservice.googleOAuth2.OAuth2LoginFailureHandler failureHandler,
                           CtxCookieFilter ctxCookieFilter,
-                          TenantContextCleanupFilter tenantContextCleanupFilter) {
+                          TenantContextCleanupFilter tenantContextCleanupFilter,
+                          RoutePolicyRegistry routePolicyRegistry) {
 
         this.jwtAuthenticationFilter = jwtAuthenticationFilter;
         this.oAuth2LoginSuccessHandler = successHandler;
         this.oAuth2LoginFailureHandler = failureHandler;
         this.ctxCookieFilter = ctxCookieFilter;
         this.tenantContextCleanupFilter = tenantContextCleanupFilter;
+        this.routePolicyRegistry = routePolicyRegistry;
     }
 
     @Bean
     public ContextEnforcementFilter contextEnforcementFilter() {
-        return new ContextEnforcementFilter();
+        return new ContextEnforcementFilter(routePolicyRegistry);
+    }
+
+    private RequestMatcher[] permitAllMatchers() {
+        return routePolicyRegistry.publicRules()
+                .stream()
+                .map(rule -> PathPatternRequestMatcher.withDefaults().matcher(rule.method(), rule.pattern()))
+                .toArray(RequestMatcher[]::new);
     }
 
     @Bean
@@ -65,43 +78,8 @@ public class SecurityConfig {
         http.csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
                         .requestMatchers(HttpMethod.OPTIONS, "/**").permitAll() // CORS preflight
-                        // Long-poll: GET /notifications/longpoll доступен всем (контроллер вернёт 204 для неавторизованных)
-                        .requestMatchers(HttpMethod.GET, "/notifications/longpoll").permitAll()
-                        // ACK и unreadCount доступны только авторизованным
-                        .requestMatchers("/notifications/longpoll/ack", "/notifications/longpoll/unreadCount").authenticated()
-
-                        .requestMatchers("/auth/v1/login")
-                        .permitAll()
-                        .requestMatchers("/auth/v1/register")
-                        .permitAll()
-                        .requestMatchers("/auth/v1/checkUsername")
-                        .permitAll()
-                        .requestMatchers("/auth/v1/refresh")
-                        .permitAll()
-
-                        .requestMatchers("/oauth2/authorization/**", "/login/oauth2/code/**").permitAll() // public endpoint
-                        .requestMatchers("/menu/v1/**").permitAll()
-                        .requestMatchers(HttpMethod.GET, "/menu/**").permitAll()
-                        .requestMatchers(HttpMethod.GET, "/orders").permitAll()
-                        .requestMatchers(HttpMethod.GET, "/public/v1/**").permitAll()
-                        .requestMatchers("/cart/**").permitAll()
-
-                        .requestMatchers("/swagger-ui/**") // swager
-                        .permitAll()
-                        .requestMatchers("/swagger-ui.html")
-                        .permitAll()
-                        .requestMatchers("/doc/swagger")
-                        .permitAll()
-                        .requestMatchers("/doc/swagger-ui/**")
-                        .permitAll()
-                        .requestMatchers("/doc/api-docs/**")
-                        .permitAll()
-                        .requestMatchers("/api-docs/**")
-                        .permitAll()
-                        .requestMatchers("/v3/api-docs/**")
-                        .permitAll()
-
-                        .requestMatchers("/status") // health
+                        // Публичные маршруты — из единого реестра (он же управляет ContextEnforcementFilter)
+                        .requestMatchers(permitAllMatchers())
                         .permitAll()
                         .anyRequest()
                         .authenticated())
@@ -0,0 +1,36 @@
+package kirillzhdanov.identityservice.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "jwt.stateless-access")
+public class StatelessAccessProperties {
+
+	/**
+	 * Stateless-режим access-токенов: они не пишутся в {@code tokens}, отзыв — через claim {@code tokenEpoch}.
+	 * Срок жизни access-токена в этом режиме задаёт {@code jwt.stateless-access.expiration}.
+	 */
+	private boolean enabled = false;
+
+	/**
+	 * Срок жизни access-токена в stateless-режиме.
+	 */
+	private Duration expiration = Duration.ofMinutes(15);
+
+	/**
+	 * Время жизни записи {@code userId -> tokenEpoch} в кеше (страховка на случай потерянного события отзыва).
+	 */
+	private Duration epochCacheTtl = Duration.ofMinutes(1);
+
+	/**
+	 * Максимальное число пользователей в кеше эпох.
+	 */
+	private long epochCacheMaxSize = 100_000;
+}
@@ -0,0 +1,75 @@
+package kirillzhdanov.identityservice.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kirillzhdanov.identityservice.repository.UserRepository;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+/**
+ * Эпохи токенов пользователей для stateless-режима access-токенов (см. {@link StatelessAccessProperties}).
+ * <p>
+ * Access-токен несёт claim {@code tokenEpoch}; токен действителен, пока его эпоха совпадает с {@code users.token_epoch}.
+ * Отзыв всех токенов пользователя — атомарный инкремент эпохи. Текущие эпохи кешируются,
+ * поэтому проверка токена обходится без запроса в БД; кеш сбрасывается событиями отзыва со всех реплик.
+ */
+@Component
+public class TokenEpochService {
+
+	static final String CACHE_NAME = "jwt.epoch";
+
+	private final boolean enabled;
+
+	private final UserRepository userRepository;
+
+	private final Cache<Long, Long> epochs;
+
+	public TokenEpochService(StatelessAccessProperties properties,
+							 UserRepository userRepository,
+							 ObjectProvider<MeterRegistry> meterRegistry) {
+		this.enabled = properties.isEnabled();
+		this.userRepository = userRepository;
+		this.epochs = Caffeine.newBuilder()
+							  .maximumSize(properties.getEpochCacheMaxSize())
+							  .expireAfterWrite(properties.getEpochCacheTtl())
+							  .recordStats()
+							  .build();
+		meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, epochs, CACHE_NAME));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return текущая эпоха пользователя или {@code null}, если пользователь не найден
+	 */
+	public Long currentEpoch(Long userId) {
+		if (userId == null) {
+			return null;
+		}
+		return epochs.get(userId, id -> userRepository.findTokenEpochById(id)
+													  .orElse(null));
+	}
+
+	/**
+	 * Инвалидирует все ранее выпущенные access-токены пользователя. Вызывается внутри транзакции отзыва.
+	 *
+	 * @return новая эпоха, которую нужно записать в следующие токены
+	 */
+	public long bump(Long userId) {
+		userRepository.incrementTokenEpoch(userId);
+		// Локальную запись сбрасываем сразу; после коммита её ещё раз сбросит событие отзыва (в т.ч. на других репликах)
+		epochs.invalidate(userId);
+		return userRepository.findTokenEpochById(userId)
+							 .orElse(0L);
+	}
+
+	public void invalidate(Long userId) {
+		if (userId != null) {
+			epochs.invalidate(userId);
+		}
+	}
+}
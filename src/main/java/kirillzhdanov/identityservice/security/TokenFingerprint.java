@@ -0,0 +1,31 @@
+package kirillzhdanov.identityservice.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Отпечаток токена для хранения в таблице {@code tokens}: SHA-256 от строки JWT (32 байта).
+ * <p>
+ * Совпадает с {@code sha256(convert_to(token, 'UTF8'))} в PostgreSQL, которым заполнены существующие строки.
+ */
+public final class TokenFingerprint {
+
+	public static final int LENGTH = 32;
+
+	private TokenFingerprint() {
+	}
+
+	public static byte[] of(String token) {
+		if (token == null) {
+			throw new IllegalArgumentException("Токен не может быть null");
+		}
+		try {
+			return MessageDigest.getInstance("SHA-256")
+								.digest(token.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 обязан поддерживаться любой реализацией JRE
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package kirillzhdanov.identityservice.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Ограниченный in-memory кеш валидности токенов по {@code jti}.
+ * <p>
+ * Хранит только положительные результаты проверки в БД; запись живёт до {@code exp} самого токена.
+ * Отзыв токена (или всех токенов пользователя) обязан вызвать {@link #invalidate(String)} / {@link #invalidateUser(Long)}.
+ * Метрики публикуются как {@code cache.gets{cache=jwt.validity,result=hit|miss}}, {@code cache.evictions} и т.д.
+ */
+@Component
+public class TokenValidityCache {
+
+	static final String CACHE_NAME = "jwt.validity";
+
+	private final boolean enabled;
+
+	private final Cache<String, Entry> cache;
+
+	public TokenValidityCache(TokenValidityCacheProperties properties, ObjectProvider<MeterRegistry> meterRegistry) {
+		this.enabled = properties.isEnabled();
+		this.cache = Caffeine.newBuilder()
+							 .maximumSize(properties.getMaxSize())
+							 .expireAfter(new UntilTokenExpiry())
+							 .recordStats()
+							 .build();
+		meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, CACHE_NAME));
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Возвращает закешированный положительный результат либо выполняет проверку {@code loader} и кеширует её успех.
+	 *
+	 * @param parsed разобранный токен (нужны {@code jti} и {@code exp})
+	 * @param loader проверка в БД
+	 * @return true, если токен валиден
+	 */
+	public boolean isValid(ParsedAccessToken parsed, BooleanSupplier loader) {
+		if (!enabled || parsed.jti() == null || parsed.expiration() == null) {
+			return loader.getAsBoolean();
+		}
+		if (cache.getIfPresent(parsed.jti()) != null) {
+			return true;
+		}
+		boolean valid = loader.getAsBoolean();
+		if (valid && !parsed.isExpired()) {
+			cache.put(parsed.jti(), new Entry(parsed.userId(), parsed.expiration()));
+		}
+		return valid;
+	}
+
+	public void invalidate(String jti) {
+		if (jti != null) {
+			cache.invalidate(jti);
+		}
+	}
+
+	public void invalidateUser(Long userId) {
+		if (userId != null) {
+			cache.asMap().values().removeIf(e -> userId.equals(e.userId()));
+		}
+	}
+
+	/**
+	 * Принудительно удаляет истекшие записи (обычно Caffeine делает это лениво).
+	 */
+	public void evictExpired() {
+		cache.cleanUp();
+	}
+
+	long size() {
+		return cache.estimatedSize();
+	}
+
+	private record Entry(Long userId, Instant expiresAt) {
+	}
+
+	private static final class UntilTokenExpiry implements Expiry<String, Entry> {
+
+		@Override
+		public long expireAfterCreate(String key, Entry value, long currentTime) {
+			return Math.max(0, Duration.between(Instant.now(), value.expiresAt()).toNanos());
+		}
+
+		@Override
+		public long expireAfterUpdate(String key, Entry value, long currentTime, long currentDuration) {
+			return expireAfterCreate(key, value, currentTime);
+		}
+
+		@Override
+		public long expireAfterRead(String key, Entry value, long currentTime, long currentDuration) {
+			return currentDuration;
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package kirillzhdanov.identityservice.security;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "jwt.validity-cache")
+public class TokenValidityCacheProperties {
+
+	/**
+	 * Включает кеш результатов {@code TokenService.isTokenValid}. При {@code false} каждый запрос идёт в БД.
+	 */
+	private boolean enabled = true;
+
+	/**
+	 * Максимальное число токенов (jti) в кеше.
+	 */
+	private long maxSize = 100_000;
+}
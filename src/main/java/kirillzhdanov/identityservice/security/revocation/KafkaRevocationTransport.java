@@ -0,0 +1,54 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Рассылка событий отзыва через Kafka-топик {@code token.revocation.kafka.topic}.
+ * <p>
+ * У каждой реплики своя consumer group (случайный суффикс), поэтому событие получают все узлы;
+ * читаем только новые сообщения — старые события покрыты состоянием БД.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "token.revocation", name = "transport", havingValue = "kafka")
+public class KafkaRevocationTransport implements RevocationTransport {
+
+	static final String LISTENER_ID = "tokenRevocationListener";
+
+	private final KafkaTemplate<String, String> kafkaTemplate;
+
+	private final TokenRevocationProperties properties;
+
+	private final TokenDenyList denyList;
+
+	private final ObjectMapper objectMapper;
+
+	@Override
+	public void send(RevocationEvent event) {
+		try {
+			String key = event.userId() != null ? event.userId().toString() : event.jti();
+			kafkaTemplate.send(properties.getKafka().getTopic(), key, objectMapper.writeValueAsString(event));
+		} catch (Exception e) {
+			throw new IllegalStateException("Не удалось отправить событие отзыва в Kafka", e);
+		}
+	}
+
+	@KafkaListener(id = LISTENER_ID,
+			topics = "${token.revocation.kafka.topic:identity.token-revocations}",
+			groupId = "${token.revocation.kafka.group-prefix:identity-revocation}-${random.uuid}",
+			properties = "auto.offset.reset=latest")
+	void onMessage(String payload) {
+		try {
+			denyList.apply(objectMapper.readValue(payload, RevocationEvent.class));
+		} catch (Exception e) {
+			log.warn("Некорректное событие отзыва из Kafka: {}", e.getClass().getSimpleName());
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kirillzhdanov.identityservice.util.PgNotifyChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Рассылка событий отзыва через Postgres {@code LISTEN/NOTIFY} для развёртываний без Kafka.
+ * <p>
+ * Отправка — {@code pg_notify(channel, json)}, приём — {@link PgNotifyChannel}. Уведомления не персистентны:
+ * события, пришедшие во время разрыва, теряются, но отзыв в БД уже зафиксирован.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "token.revocation", name = "transport", havingValue = "postgres")
+public class PostgresRevocationTransport implements RevocationTransport, SmartLifecycle {
+
+	private final TokenDenyList denyList;
+
+	private final ObjectMapper objectMapper;
+
+	private final PgNotifyChannel channel;
+
+	public PostgresRevocationTransport(DataSource dataSource,
+									   TokenRevocationProperties properties,
+									   TokenDenyList denyList,
+									   ObjectMapper objectMapper) {
+		this.denyList = denyList;
+		this.objectMapper = objectMapper;
+		TokenRevocationProperties.Postgres pg = properties.getPostgres();
+		this.channel = new PgNotifyChannel(dataSource, pg.getChannel(), pg.getPollTimeout(), pg.getReconnectDelay(),
+				"token-revocation-pg-listener", this::handle);
+	}
+
+	@Override
+	public void send(RevocationEvent event) {
+		try {
+			channel.send(objectMapper.writeValueAsString(event));
+		} catch (Exception e) {
+			throw new IllegalStateException("Не удалось отправить событие отзыва через pg_notify", e);
+		}
+	}
+
+	@Override
+	public void start() {
+		channel.start();
+	}
+
+	@Override
+	public void stop() {
+		channel.stop();
+	}
+
+	@Override
+	public boolean isRunning() {
+		return channel.isRunning();
+	}
+
+	private void handle(String payload) {
+		try {
+			denyList.apply(objectMapper.readValue(payload, RevocationEvent.class));
+		} catch (Exception e) {
+			log.warn("Некорректное событие отзыва из pg_notify: {}", e.getClass().getSimpleName());
+		}
+	}
+}
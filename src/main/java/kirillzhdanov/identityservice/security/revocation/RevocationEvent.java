@@ -0,0 +1,40 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+import java.time.Instant;
+
+/**
+ * Компактное событие отзыва токенов, рассылаемое всем репликам.
+ * <p>
+ * По тому же каналу идут и сбросы кеша principal-а ({@link #principalChanged(String, Long, String)}):
+ * это тоже сигнал безопасности, который не должен ждать истечения TTL на других репликах.
+ *
+ * @param jti           идентификатор отозванного токена или {@code null} для отзыва всех токенов пользователя
+ * @param userId        владелец токена(ов)
+ * @param revokedBefore для отзыва по пользователю — все токены, выпущенные раньше этого момента, недействительны
+ * @param username      для сброса principal-а — пользователь, чьи роли/бренды изменились
+ * @param membershipId  для сброса principal-а — membership, чья роль изменилась
+ * @param origin        идентификатор узла-источника (для логов)
+ */
+public record RevocationEvent(String jti, Long userId, Instant revokedBefore, String username, Long membershipId,
+							  String origin) {
+
+	public static RevocationEvent token(String jti, Long userId, String origin) {
+		return new RevocationEvent(jti, userId, Instant.now(), null, null, origin);
+	}
+
+	public static RevocationEvent allUserTokens(Long userId, String origin) {
+		return new RevocationEvent(null, userId, Instant.now(), null, null, origin);
+	}
+
+	public static RevocationEvent principalChanged(String username, Long membershipId, String origin) {
+		return new RevocationEvent(null, null, null, username, membershipId, origin);
+	}
+
+	public boolean isPrincipalChange() {
+		return username != null || membershipId != null;
+	}
+
+	public boolean isUserWide() {
+		return jti == null && !isPrincipalChange();
+	}
+}
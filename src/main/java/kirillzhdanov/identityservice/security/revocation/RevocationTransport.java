@@ -0,0 +1,10 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+/**
+ * Межузловой транспорт событий отзыва. Реализация доставляет событие всем репликам (включая отправителя допустимо),
+ * а принятые события передаёт в {@link TokenDenyList#apply(RevocationEvent)}.
+ */
+public interface RevocationTransport {
+
+	void send(RevocationEvent event);
+}
@@ -0,0 +1,93 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
+import kirillzhdanov.identityservice.security.PrincipalCache;
+import kirillzhdanov.identityservice.security.TokenEpochService;
+import kirillzhdanov.identityservice.security.TokenValidityCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Локальный deny-лист отозванных токенов, наполняемый событиями {@link RevocationEvent} со всех реплик.
+ * <p>
+ * Позволяет отклонить отозванный токен без обращения к БД и сбрасывает {@link TokenValidityCache}
+ * и кеш эпох {@link TokenEpochService}; события смены ролей/membership сбрасывают {@link PrincipalCache}.
+ * Источником истины остаётся таблица {@code tokens}; deny-лист лишь гарантирует, что кеш на этой реплике не переживёт отзыв.
+ */
+@Slf4j
+@Component
+public class TokenDenyList {
+
+	private final TokenValidityCache tokenValidityCache;
+
+	private final TokenEpochService tokenEpochService;
+
+	private final PrincipalCache principalCache;
+
+	private final Cache<String, Boolean> deniedJtis;
+
+	private final Cache<Long, Instant> userRevokedBefore;
+
+	public TokenDenyList(TokenValidityCache tokenValidityCache,
+						 TokenEpochService tokenEpochService,
+						 PrincipalCache principalCache,
+						 TokenRevocationProperties properties) {
+		this.tokenValidityCache = tokenValidityCache;
+		this.tokenEpochService = tokenEpochService;
+		this.principalCache = principalCache;
+		this.deniedJtis = Caffeine.newBuilder()
+								  .maximumSize(properties.getDenyListMaxSize())
+								  .expireAfterWrite(properties.getDenyListTtl())
+								  .build();
+		this.userRevokedBefore = Caffeine.newBuilder()
+										 .maximumSize(properties.getDenyListMaxSize())
+										 .expireAfterWrite(properties.getDenyListTtl())
+										 .build();
+	}
+
+	/**
+	 * Применяет событие отзыва: пополняет deny-лист и сбрасывает кеш валидности.
+	 */
+	public void apply(RevocationEvent event) {
+		if (event == null) {
+			return;
+		}
+		if (event.isPrincipalChange()) {
+			principalCache.evictLocally(event.username(), event.membershipId());
+		} else if (event.isUserWide()) {
+			if (event.userId() == null || event.revokedBefore() == null) {
+				return;
+			}
+			// iat в JWT хранится с точностью до секунды: токен, выпущенный в ту же секунду (например, при логине сразу
+			// после отзыва), не должен попасть под запрет
+			Instant cutoff = event.revokedBefore().truncatedTo(ChronoUnit.SECONDS);
+			userRevokedBefore.asMap().merge(event.userId(), cutoff, (a, b) -> a.isAfter(b) ? a : b);
+			tokenValidityCache.invalidateUser(event.userId());
+			tokenEpochService.invalidate(event.userId());
+		} else {
+			deniedJtis.put(event.jti(), Boolean.TRUE);
+			tokenValidityCache.invalidate(event.jti());
+		}
+		log.debug("Применено событие отзыва jti={} userId={} membershipId={} origin={}", event.jti(), event.userId(),
+				  event.membershipId(), event.origin());
+	}
+
+	/**
+	 * @return true, если токен отозван по jti или выпущен до отзыва всех токенов пользователя
+	 */
+	public boolean isDenied(ParsedAccessToken parsed) {
+		if (parsed.jti() != null && deniedJtis.getIfPresent(parsed.jti()) != null) {
+			return true;
+		}
+		if (parsed.userId() == null || parsed.issuedAt() == null) {
+			return false;
+		}
+		Instant cutoff = userRevokedBefore.getIfPresent(parsed.userId());
+		return cutoff != null && parsed.issuedAt().isBefore(cutoff);
+	}
+}
@@ -0,0 +1,62 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+import kirillzhdanov.identityservice.util.AfterCommit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Публикует события отзыва: применяет их локально и отправляет остальным репликам через {@link RevocationTransport}
+ * (если транспорт настроен, см. {@code token.revocation.transport}).
+ * <p>
+ * Внутри транзакции публикация откладывается до коммита, чтобы реплики не узнали об откатившемся отзыве.
+ */
+@Slf4j
+@Component
+public class TokenRevocationBus {
+
+	private final String nodeId = UUID.randomUUID().toString();
+
+	private final TokenDenyList denyList;
+
+	private final ObjectProvider<RevocationTransport> transport;
+
+	public TokenRevocationBus(TokenDenyList denyList, ObjectProvider<RevocationTransport> transport) {
+		this.denyList = denyList;
+		this.transport = transport;
+	}
+
+	public String nodeId() {
+		return nodeId;
+	}
+
+	public void publishTokenRevoked(String jti, Long userId) {
+		if (jti != null) {
+			publish(RevocationEvent.token(jti, userId, nodeId));
+		}
+	}
+
+	public void publishAllUserTokensRevoked(Long userId) {
+		if (userId != null) {
+			publish(RevocationEvent.allUserTokens(userId, nodeId));
+		}
+	}
+
+	public void publish(RevocationEvent event) {
+		AfterCommit.run(() -> dispatch(event));
+	}
+
+	private void dispatch(RevocationEvent event) {
+		denyList.apply(event);
+		transport.ifAvailable(t -> {
+			try {
+				t.send(event);
+			} catch (Exception e) {
+				// Отзыв уже зафиксирован в БД; реплики увидят его после истечения записей кеша
+				log.warn("Не удалось разослать событие отзыва: {}", e.getClass().getSimpleName());
+			}
+		});
+	}
+}
@@ -0,0 +1,63 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "token.revocation")
+public class TokenRevocationProperties {
+
+	/**
+	 * Транспорт рассылки событий отзыва между репликами: {@code none} (только локально), {@code kafka}, {@code postgres}.
+	 */
+	private String transport = "none";
+
+	/**
+	 * Сколько держать записи deny-листа: не меньше максимального срока жизни access-токена.
+	 */
+	private Duration denyListTtl = Duration.ofHours(10);
+
+	/**
+	 * Максимальное число отозванных jti в deny-листе.
+	 */
+	private long denyListMaxSize = 100_000;
+
+	private Kafka kafka = new Kafka();
+
+	private Postgres postgres = new Postgres();
+
+	@Getter
+	@Setter
+	public static class Kafka {
+
+		private String topic = "identity.token-revocations";
+
+		/**
+		 * Префикс consumer group: к нему добавляется случайный суффикс, чтобы каждая реплика получала все события.
+		 */
+		private String groupPrefix = "identity-revocation";
+	}
+
+	@Getter
+	@Setter
+	public static class Postgres {
+
+		private String channel = "token_revocations";
+
+		/**
+		 * Таймаут ожидания уведомлений в одном цикле опроса LISTEN-соединения.
+		 */
+		private Duration pollTimeout = Duration.ofSeconds(1);
+
+		/**
+		 * Пауза перед переподключением после ошибки LISTEN-соединения.
+		 */
+		private Duration reconnectDelay = Duration.ofSeconds(5);
+	}
+}
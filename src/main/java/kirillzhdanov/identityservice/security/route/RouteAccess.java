@@ -0,0 +1,17 @@
+package kirillzhdanov.identityservice.security.route;
+
+/**
+ * Политика доступа для маршрута из {@link RoutePolicyRegistry}.
+ */
+public enum RouteAccess {
+
+	/**
+	 * Доступен без аутентификации ({@code permitAll}) и без tenant-контекста.
+	 */
+	PUBLIC,
+
+	/**
+	 * Требует аутентификации, но не требует tenant-контекста (master/brand/pickup).
+	 */
+	CONTEXT_FREE
+}
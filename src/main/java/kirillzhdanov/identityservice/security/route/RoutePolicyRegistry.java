@@ -0,0 +1,150 @@
+package kirillzhdanov.identityservice.security.route;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import static kirillzhdanov.identityservice.security.route.RouteRule.contextFree;
+import static kirillzhdanov.identityservice.security.route.RouteRule.publicRoute;
+
+/**
+ * Единый реестр политик маршрутов.
+ * <p>
+ * {@link RouteAccess#PUBLIC} превращается в {@code permitAll} в {@code SecurityConfig}; любой найденный маршрут
+ * (PUBLIC или {@link RouteAccess#CONTEXT_FREE}) освобождает запрос от проверки tenant-контекста
+ * в {@code ContextEnforcementFilter}. Правила компилируются при старте в {@link RouteTrie}.
+ * <p>
+ * Совпадения считаются по правилам: метрика {@code route.policy.hits{route,access}}.
+ */
+@Component
+public class RoutePolicyRegistry {
+
+	static final List<RouteRule> DEFAULT_RULES = List.of(
+			// Long-poll: GET доступен всем (контроллер вернёт 204 для неавторизованных), ack и прочее — без контекста
+			publicRoute(HttpMethod.GET, "/notifications/longpoll"),
+			contextFree("/notifications/longpoll/**"),
+			// SSE-поток уведомлений: аноним получает 204, как и в long-poll
+			publicRoute(HttpMethod.GET, "/notifications/stream"),
+
+			// Auth endpoints
+			publicRoute("/auth/v1/login"),
+			publicRoute("/auth/v1/register"),
+			publicRoute("/auth/v1/checkUsername"),
+			publicRoute("/auth/v1/refresh"),
+			contextFree("/auth/v1/memberships/**"),
+			contextFree("/auth/v1/context/**"),
+			contextFree("/auth/v1/revoke"),
+			contextFree("/auth/v1/revoke-all"),
+			contextFree("/auth/v1/logout/**"),
+			contextFree("/auth/v1/whoami"),
+			// Создание и листинг брендов без tenant-контекста (первичный сценарий)
+			contextFree("/auth/v1/brands/**"),
+			// User-пути не завязаны на tenant-контекст
+			contextFree("/user/v1/**"),
+
+			publicRoute("/oauth2/authorization/**"),
+			publicRoute("/login/oauth2/code/**"),
+
+			// Меню и публичные витрины
+			publicRoute("/menu/v1/**"),
+			publicRoute(HttpMethod.GET, "/menu/**"),
+			contextFree("/menu/**"),
+			publicRoute(HttpMethod.GET, "/public/v1/**"),
+			contextFree("/public/**"),
+			publicRoute(HttpMethod.GET, "/orders"),
+
+			// Корзина не зависит от tenant-контекста
+			publicRoute("/cart/**"),
+			// Заказы клиента (в т.ч. /order/v1/my) доступны без tenant-контекста
+			contextFree("/order/v1/**"),
+
+			// Документация
+			publicRoute("/swagger-ui/**"),
+			publicRoute("/swagger-ui.html"),
+			publicRoute("/doc/swagger"),
+			publicRoute("/doc/swagger-ui/**"),
+			publicRoute("/doc/api-docs/**"),
+			publicRoute("/api-docs/**"),
+			publicRoute("/v3/api-docs/**"),
+
+			// health
+			publicRoute("/status")
+	);
+
+	private final List<RouteRule> rules;
+
+	private final RouteTrie trie;
+
+	private final Map<RouteRule, LongAdder> hits = new IdentityHashMap<>();
+
+	public RoutePolicyRegistry(ObjectProvider<MeterRegistry> meterRegistry) {
+		this(DEFAULT_RULES, meterRegistry.getIfAvailable());
+	}
+
+	RoutePolicyRegistry(List<RouteRule> rules, MeterRegistry meterRegistry) {
+		this.rules = List.copyOf(rules);
+		this.trie = new RouteTrie(this.rules);
+		for (RouteRule rule : this.rules) {
+			LongAdder counter = new LongAdder();
+			hits.put(rule, counter);
+			if (meterRegistry != null) {
+				FunctionCounter.builder("route.policy.hits", counter, LongAdder::sum)
+							   .description("Запросы, совпавшие с правилом реестра маршрутов")
+							   .tag("route", rule.key())
+							   .tag("access", rule.access()
+												  .name())
+							   .register(meterRegistry);
+			}
+		}
+	}
+
+	/**
+	 * Правила {@link RouteAccess#PUBLIC} в порядке объявления — для {@code permitAll} в {@code SecurityConfig}.
+	 */
+	public List<RouteRule> publicRules() {
+		return rules.stream()
+					.filter(rule -> rule.access() == RouteAccess.PUBLIC)
+					.toList();
+	}
+
+	/**
+	 * Находит правило для запроса и увеличивает его счётчик.
+	 *
+	 * @return правило или {@code null}, если маршрут требует и аутентификации, и контекста
+	 */
+	public RouteRule match(String method, String uri) {
+		RouteRule rule = trie.match(method, uri);
+		if (rule != null) {
+			hits.get(rule)
+				.increment();
+		}
+		return rule;
+	}
+
+	/**
+	 * Маршрут не требует tenant-контекста.
+	 */
+	public boolean isContextFree(String method, String uri) {
+		return match(method, uri) != null;
+	}
+
+	/**
+	 * Снимок счётчиков совпадений по правилам ({@link RouteRule#key()}).
+	 */
+	public Map<String, Long> hitCounts() {
+		Map<String, Long> snapshot = new LinkedHashMap<>();
+		for (RouteRule rule : rules) {
+			snapshot.put(rule.key(), hits.get(rule)
+										 .sum());
+		}
+		return snapshot;
+	}
+}
@@ -0,0 +1,60 @@
+package kirillzhdanov.identityservice.security.route;
+
+import org.springframework.http.HttpMethod;
+
+/**
+ * Декларация маршрута.
+ *
+ * @param pattern путь в стиле Spring: точный ({@code /auth/v1/login}) или поддерево ({@code /cart/**} —
+ *                сам {@code /cart} и всё под ним); других шаблонов не поддерживается
+ * @param method  HTTP-метод или {@code null} для любого
+ * @param access  политика доступа
+ */
+public record RouteRule(String pattern, HttpMethod method, RouteAccess access) {
+
+	static final String SUBTREE = "/**";
+
+	public RouteRule {
+		if (pattern == null || !pattern.startsWith("/")) {
+			throw new IllegalArgumentException("Route pattern must start with '/': " + pattern);
+		}
+		String path = pattern.endsWith(SUBTREE) ? pattern.substring(0, pattern.length() - SUBTREE.length()) : pattern;
+		if (path.contains("*") || path.contains("{")) {
+			throw new IllegalArgumentException("Only exact paths and trailing '/**' are supported: " + pattern);
+		}
+	}
+
+	public static RouteRule publicRoute(String pattern) {
+		return new RouteRule(pattern, null, RouteAccess.PUBLIC);
+	}
+
+	public static RouteRule publicRoute(HttpMethod method, String pattern) {
+		return new RouteRule(pattern, method, RouteAccess.PUBLIC);
+	}
+
+	public static RouteRule contextFree(String pattern) {
+		return new RouteRule(pattern, null, RouteAccess.CONTEXT_FREE);
+	}
+
+	public boolean isSubtree() {
+		return pattern.endsWith(SUBTREE);
+	}
+
+	/**
+	 * Путь без суффикса {@code /**}.
+	 */
+	public String path() {
+		return isSubtree() ? pattern.substring(0, pattern.length() - SUBTREE.length()) : pattern;
+	}
+
+	public boolean appliesTo(String requestMethod) {
+		return method == null || method.matches(requestMethod);
+	}
+
+	/**
+	 * Ключ для метрик и логов: {@code GET /menu/**} или {@code * /cart/**}.
+	 */
+	public String key() {
+		return (method != null ? method.name() : "*") + " " + pattern;
+	}
+}
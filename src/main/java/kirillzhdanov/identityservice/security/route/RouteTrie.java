@@ -0,0 +1,126 @@
+package kirillzhdanov.identityservice.security.route;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Символьный префиксный trie по путям {@link RouteRule}.
+ * <p>
+ * Поиск идёт по символам URI без выделения памяти: на границах сегментов ({@code /} или конец строки)
+ * проверяются правила-поддеревья ({@code /x/**}), в конце URI — точные правила. Побеждает самое длинное
+ * совпадение, при равной длине — точное правило, далее порядок объявления.
+ */
+final class RouteTrie {
+
+	private final Node root = new Node();
+
+	RouteTrie(List<RouteRule> rules) {
+		for (RouteRule rule : rules) {
+			Node node = root;
+			String path = rule.path();
+			for (int i = 0; i < path.length(); i++) {
+				node = node.childOrCreate(path.charAt(i));
+			}
+			(rule.isSubtree() ? node.subtree : node.exact).add(rule);
+		}
+		root.freeze();
+	}
+
+	/**
+	 * @return самое специфичное правило для метода и пути или {@code null}
+	 */
+	RouteRule match(String method, String uri) {
+		if (uri == null || uri.isEmpty() || uri.charAt(0) != '/') {
+			return null;
+		}
+		// "/**" в корне: путь правила пустой, граница — перед первым '/'
+		RouteRule best = root.firstSubtree(method);
+		Node node = root;
+		int length = uri.length();
+		for (int i = 0; i < length; i++) {
+			node = node.child(uri.charAt(i));
+			if (node == null) {
+				break;
+			}
+			boolean end = i + 1 == length;
+			if (end) {
+				RouteRule exact = node.firstExact(method);
+				if (exact != null) {
+					return exact;
+				}
+			}
+			if (end || uri.charAt(i + 1) == '/') {
+				RouteRule subtree = node.firstSubtree(method);
+				if (subtree != null) {
+					best = subtree;
+				}
+			}
+		}
+		return best;
+	}
+
+	private static final class Node {
+
+		private char[] keys = new char[0];
+
+		private Node[] children = new Node[0];
+
+		private final List<RouteRule> exact = new ArrayList<>(1);
+
+		private final List<RouteRule> subtree = new ArrayList<>(1);
+
+		private RouteRule[] exactRules;
+
+		private RouteRule[] subtreeRules;
+
+		Node child(char c) {
+			int idx = Arrays.binarySearch(keys, c);
+			return idx >= 0 ? children[idx] : null;
+		}
+
+		Node childOrCreate(char c) {
+			int idx = Arrays.binarySearch(keys, c);
+			if (idx >= 0) {
+				return children[idx];
+			}
+			int insert = -idx - 1;
+			char[] newKeys = new char[keys.length + 1];
+			Node[] newChildren = new Node[children.length + 1];
+			System.arraycopy(keys, 0, newKeys, 0, insert);
+			System.arraycopy(children, 0, newChildren, 0, insert);
+			newKeys[insert] = c;
+			newChildren[insert] = new Node();
+			System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+			System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+			keys = newKeys;
+			children = newChildren;
+			return newChildren[insert];
+		}
+
+		void freeze() {
+			exactRules = exact.toArray(RouteRule[]::new);
+			subtreeRules = subtree.toArray(RouteRule[]::new);
+			for (Node child : children) {
+				child.freeze();
+			}
+		}
+
+		RouteRule firstExact(String method) {
+			return first(exactRules, method);
+		}
+
+		RouteRule firstSubtree(String method) {
+			return first(subtreeRules, method);
+		}
+
+		private static RouteRule first(RouteRule[] rules, String method) {
+			for (RouteRule rule : rules) {
+				if (rule.appliesTo(method)) {
+					return rule;
+				}
+			}
+			return null;
+		}
+	}
+}
@@ -2,6 +2,7 @@ package kirillzhdanov.identityservice.service;
 
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
+import kirillzhdanov.identityservice.security.PrincipalCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -12,6 +13,7 @@ public class BrandLinksReconcileService {
 
     private final UserMembershipRepository userMembershipRepository;
     private final UserService userService;
+    private final PrincipalCache principalCache;
 
     /**
      * Fast self-heal: if user has ACTIVE OWNER/ADMIN memberships with brand, but user.brands
@@ -36,6 +38,7 @@ public class BrandLinksReconcileService {
             }
             if (changed) {
                 userService.save(user);
+                principalCache.evictUser(user.getUsername());
             }
         } catch (Exception ignored) {
         }
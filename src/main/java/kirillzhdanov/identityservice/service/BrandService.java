@@ -16,6 +16,10 @@ import kirillzhdanov.identityservice.repository.master.MasterAccountRepository;
 import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
 import kirillzhdanov.identityservice.repository.pickup.PickupPointRepository;
 import kirillzhdanov.identityservice.repository.userbrand.UserBrandMembershipRepository;
+import kirillzhdanov.identityservice.security.CurrentUser;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
+import kirillzhdanov.identityservice.security.PrincipalCache;
+import kirillzhdanov.identityservice.service.menu.MenuSnapshotService;
 import kirillzhdanov.identityservice.tenant.ContextAccess;
 import kirillzhdanov.identityservice.tenant.TenantContext;
 import lombok.RequiredArgsConstructor;
@@ -47,6 +51,9 @@ public class BrandService {
     private final PickupPointRepository pickupPointRepository;
     private final UserBrandMembershipRepository userBrandMembershipRepository;
     private final MasterAccountService masterAccountService;
+    private final PrincipalCache principalCache;
+    private final MenuSnapshotService menuSnapshots;
+    private final CurrentUserProvider currentUserProvider;
 
     // ===== Context guards for brands =====
     private Brand getBrandInCurrentMasterOr404(Long id) {
@@ -89,13 +96,8 @@ public class BrandService {
     public List<BrandDto> getMyBrands() {
         // Возвращаем только бренды, в которых у пользователя есть членство (ADMIN или OWNER),
         // и только внутри текущего master-контекста (если он задан).
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        if (auth == null || !auth.isAuthenticated()) {
-            throw new ResourceNotFoundException("Not authenticated");
-        }
-        String username = auth.getName();
-        User currentUser = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResourceNotFoundException("User not found: " + username));
+        CurrentUser currentUser = currentUserProvider.current()
+                .orElseThrow(() -> new ResourceNotFoundException("Not authenticated"));
 
         Long masterId = ContextAccess.getMasterIdOrNull();
         if (masterId == null) {
@@ -109,7 +111,7 @@ public class BrandService {
             }
         }
 
-        List<UserMembership> memberships = userMembershipRepository.findByUserId(currentUser.getId());
+        List<UserMembership> memberships = userMembershipRepository.findByUserId(currentUser.id());
         Long finalMasterId = masterId;
         List<Long> brandIds = memberships.stream()
                 .filter(m -> m.getBrand() != null)
@@ -229,6 +231,7 @@ public class BrandService {
             // Ассоциировать бренд с пользователем (для удобства выборок)
             currentUser.getBrands().add(savedBrand);
             userRepository.save(currentUser);
+            principalCache.evictUser(currentUser.getUsername());
 
             // Также создаём user-brand membership (лояльность/доступ), чтобы владелец видел заказы бренда и получал нотификации
             try {
@@ -342,6 +345,7 @@ public class BrandService {
         Brand brand = brandRepository.findByIdAndMaster_Id(id, masterId)
                 .orElseThrow(() -> new ResourceNotFoundException("Brand not found with id in current master: " + id));
         brandRepository.delete(brand);
+        menuSnapshots.brandChanged(id);
     }
 
 
@@ -359,6 +363,7 @@ public class BrandService {
         user.getBrands()
                 .add(brand);
         userRepository.save(user);
+        principalCache.evictUser(user.getUsername());
     }
 
 
@@ -376,6 +381,7 @@ public class BrandService {
         user.getBrands()
                 .remove(brand);
         userRepository.save(user);
+        principalCache.evictUser(user.getUsername());
     }
 
     /**
@@ -10,6 +10,7 @@ import kirillzhdanov.identityservice.repository.BrandRepository;
 import kirillzhdanov.identityservice.repository.GroupTagArchiveRepository;
 import kirillzhdanov.identityservice.repository.GroupTagRepository;
 import kirillzhdanov.identityservice.repository.ProductRepository;
+import kirillzhdanov.identityservice.service.menu.MenuSnapshotService;
 import kirillzhdanov.identityservice.tenant.ContextGuards;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
@@ -34,6 +35,7 @@ public class GroupTagService {
     private final ProductRepository productRepository;
     private final ProductService productService;
     private final PathResolutionService pathResolutionService;
+    private final MenuSnapshotService menuSnapshots;
 
     // ===== Context guards (centralized in ContextGuards) =====
 
@@ -56,6 +58,7 @@ public class GroupTagService {
 
         GroupTag groupTag = new GroupTag(request.getName(), brand, parent);
         groupTag = groupTagRepository.save(groupTag);
+        menuSnapshots.brandChanged(brand.getId());
 
         return convertToDto(groupTag);
     }
@@ -164,6 +167,7 @@ public class GroupTagService {
         }
         groupTag.setName(newName);
         GroupTag saved = groupTagRepository.save(groupTag);
+        menuSnapshots.brandChanged(saved.getBrand().getId());
         return convertToDto(saved);
     }
 
@@ -209,6 +213,8 @@ public class GroupTagService {
         Brand newBrand = brandRepository.findById(newBrandId)
                 .orElseThrow(() -> new ResourceNotFoundException("Brand not found with id: " + newBrandId));
         Brand oldBrand = root.getBrand();
+        menuSnapshots.brandChanged(oldBrand.getId());
+        menuSnapshots.brandChanged(newBrand.getId());
 
         // Collect subtree including root
         String subtreePrefix = root.getPath() + root.getId() + "/";
@@ -263,6 +269,7 @@ public class GroupTagService {
 
         groupTag.setParent(newParent); // updates path/level and children via entity logic
         GroupTag saved = groupTagRepository.save(groupTag);
+        menuSnapshots.brandChanged(saved.getBrand().getId());
         return convertToDto(saved);
     }
 
@@ -320,6 +327,7 @@ public class GroupTagService {
 
         // Finally delete root; children will be removed via cascade
         groupTagRepository.delete(root);
+        menuSnapshots.brandChanged(brand.getId());
     }
 
     @Transactional
@@ -400,6 +408,7 @@ public class GroupTagService {
 
         GroupTag restored = new GroupTag(a.getName(), brand, parent);
         restored = groupTagRepository.save(restored);
+        menuSnapshots.brandChanged(brand.getId());
 
         groupTagArchiveRepository.delete(a);
         return convertToDto(restored);
@@ -457,32 +466,4 @@ public class GroupTagService {
         }
         return dto;
     }
-
-    /**
-     * Проверяет, есть ли ВИДИМЫЕ товары в поддереве данной группы (включая саму группу).
-     * Используется для публичного меню, чтобы скрывать пустые ветки.
-     */
-    @Transactional(Transactional.TxType.SUPPORTS)
-    public boolean hasVisibleProductsInSubtree(Long brandId, Long groupTagId) {
-        Brand brand = brandRepository.findById(brandId)
-                .orElseThrow(() -> new ResourceNotFoundException("Brand not found with id: " + brandId));
-
-        GroupTag node = groupTagRepository.findById(groupTagId)
-                .orElseThrow(() -> new ResourceNotFoundException("Group tag not found: " + groupTagId));
-
-        // Сначала проверим саму группу
-        if (!productRepository.findByBrandAndGroupTagIdAndVisibleIsTrue(brand, node.getId()).isEmpty()) {
-            return true;
-        }
-
-        // Затем проверим дочерние группы через path-префикс
-        String prefix = node.getPath() + node.getId() + "/";
-        List<GroupTag> subtree = groupTagRepository.findSubtreeByPathPrefix(brand, prefix);
-        for (GroupTag gt : subtree) {
-            if (!productRepository.findByBrandAndGroupTagIdAndVisibleIsTrue(brand, gt.getId()).isEmpty()) {
-                return true;
-            }
-        }
-        return false;
-    }
 }
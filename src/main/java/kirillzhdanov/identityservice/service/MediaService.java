@@ -175,15 +175,21 @@ public class MediaService {
     }
 
     // ================= User Avatar ==================
+    // Ключ аватара до версионирования: для пользователей без записи в storage_files
     public String getUserAvatarKey(String userId) {
         return "user-avatars/" + sanitize(userId) + "/avatar.png";
     }
 
+    // Каждая загрузка пишется под новым ключом: подписанная ссылка на старый аватар не отдаст новый файл
+    private String newUserAvatarKey(String userId) {
+        return "user-avatars/" + sanitize(userId) + "/" + UUID.randomUUID() + ".png";
+    }
+
     public Map<String, String> uploadUserAvatar(String userId, byte[] bytes, String contentType) throws IOException {
         // Always process to square 512 PNG, store privately
         ImageProcessingService.ProcessedResult processed = imageService.processToPngSquare(bytes);
         byte[] png512 = processed.imagesBySize().get(ImageProcessingService.SizeKey.S512);
-        String key = getUserAvatarKey(userId);
+        String key = newUserAvatarKey(userId);
         s3.upload(key, png512, "image/png", false);
         Map<String, String> resp = new HashMap<>();
         resp.put("key", key);
@@ -194,7 +200,8 @@ public class MediaService {
     public Map<String, String> uploadProductImage(String productId, byte[] bytes, String contentType) throws IOException {
         // Save original as-is
         String ext = detectExtension(contentType);
-        String base = "product-images/" + sanitize(productId) + "/";
+        // Каждая загрузка — под своим imageId: подпись ссылок детерминирована, перезапись ключа её бы не сменила
+        String base = baseProductPath(productId, UUID.randomUUID().toString());
         String originalKey = base + "original" + (ext != null ? ("." + ext) : "");
         if (bytes == null || bytes.length == 0) {
             throw new IOException("Empty image payload for original");
@@ -12,19 +12,25 @@ import kirillzhdanov.identityservice.model.product.Product;
 import kirillzhdanov.identityservice.model.product.ProductArchive;
 import kirillzhdanov.identityservice.model.tags.GroupTag;
 import kirillzhdanov.identityservice.repository.*;
+import kirillzhdanov.identityservice.service.menu.MenuSnapshotService;
 import kirillzhdanov.identityservice.tenant.ContextGuards;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class ProductService {
 
+    private static final Duration IMAGE_URL_TTL = Duration.ofDays(7);
+
     private final ProductRepository productRepository;
     private final BrandRepository brandRepository;
     private final GroupTagRepository groupTagRepository;
@@ -33,6 +39,7 @@ public class ProductService {
     private final S3StorageService s3StorageService;
     private final MediaService mediaService;
     private final PathResolutionService pathResolutionService;
+    private final MenuSnapshotService menuSnapshots;
 
     // ===== Context guards: use centralized helpers =====
 
@@ -92,7 +99,18 @@ public class ProductService {
     
 
     private ProductResponse buildResponse(Product product, String variant) {
-        String imageUrl = buildProductImageUrl(product, variant);
+        return mapResponse(product, buildProductImageUrls(List.of(product), variant).get(product.getId()));
+    }
+
+    // Списки товаров: ссылки на изображения всех товаров одним запросом к storage_files
+    private List<ProductResponse> buildResponses(List<Product> products, String variant) {
+        Map<Long, String> imageUrls = buildProductImageUrls(products, variant);
+        return products.stream()
+                .map(p -> mapResponse(p, imageUrls.get(p.getId())))
+                .collect(Collectors.toList());
+    }
+
+    private ProductResponse mapResponse(Product product, String imageUrl) {
         return ProductResponse.builder()
                 .id(product.getId())
                 .name(product.getName())
@@ -138,6 +156,7 @@ public class ProductService {
         );
 
         Product saved = productRepository.save(product);
+        menuSnapshots.productChanged(saved.getBrand().getId(), saved.getId());
         return toResponse(saved);
     }
 
@@ -167,6 +186,7 @@ public class ProductService {
         Product product = requireProductInContext(productId);
         product.setVisible(visible);
         Product saved = productRepository.save(product);
+        menuSnapshots.productChanged(saved.getBrand().getId(), saved.getId());
         return toResponse(saved);
     }
 
@@ -187,7 +207,7 @@ public class ProductService {
                     : productRepository.findByBrandAndGroupTagId(brand, groupTagId);
         }
 
-        return products.stream().map(this::toResponse).collect(Collectors.toList());
+        return buildResponses(products, "H512");
     }
 
     /**
@@ -205,28 +225,29 @@ public class ProductService {
             products = productRepository.findByBrandAndGroupTagIdAndVisibleIsTrue(brand, groupTagId);
         }
 
-        return products.stream().map(this::toResponsePublic).collect(Collectors.toList());
+        // Публичная версия ответа: используем H256 (16:9 высота 256)
+        return buildResponses(products, "H256");
     }
 
     private ProductResponse toResponse(Product product) {
         return buildResponse(product, "H512");
     }
 
-    // Публичная версия ответа: используем H256 (16:9 высота 256)
-    private ProductResponse toResponsePublic(Product product) {
-        return buildResponse(product, "H256");
-    }
-
-    private String buildProductImageUrl(Product product, String variant) {
+    // productId -> подписанная ссылка на изображение варианта; товары без изображения в карту не попадают
+    private Map<Long, String> buildProductImageUrls(List<Product> products, String variant) {
+        if (products.isEmpty()) return Map.of();
         try {
-            java.util.List<StorageFile> files = storageFileRepository.findByOwnerTypeAndOwnerId("PRODUCT", product.getId());
             String useVariant = (variant == null || variant.isBlank()) ? "H512" : variant;
-            java.util.Optional<StorageFile> img = files.stream()
-                    .filter(f -> "PRODUCT_IMAGE".equals(f.getPurpose()) && useVariant.equals(f.getUsageType()))
-                    .findFirst();
-            return img.flatMap(storageFile -> s3StorageService.buildPresignedGetUrl(storageFile.getPath(), java.time.Duration.ofDays(7))).orElse(null);
+            List<Long> ids = products.stream().map(Product::getId).toList();
+            Map<Long, String> urls = new HashMap<>();
+            for (StorageFile f : storageFileRepository.findByOwnerTypeAndOwnerIdInAndPurposeAndUsageType("PRODUCT", ids, "PRODUCT_IMAGE", useVariant)) {
+                if (urls.containsKey(f.getOwnerId())) continue;
+                // подпись кешируется в S3StorageService, повторные списки её не пересчитывают
+                s3StorageService.buildPresignedGetUrl(f.getPath(), IMAGE_URL_TTL).ifPresent(url -> urls.put(f.getOwnerId(), url));
+            }
+            return urls;
         } catch (Exception e) {
-            return null;
+            return Map.of();
         }
     }
 
@@ -240,16 +261,21 @@ public class ProductService {
         String pid = String.valueOf(product.getId());
         var res = mediaService.uploadProductImage(pid, file.getBytes(), file.getContentType());
 
-        // upsert по вариантам ORIGINAL/H256/H512
-        upsertProductImageFile(product, "ORIGINAL", res.get("ORIGINAL"));
-        upsertProductImageFile(product, "H256", res.get("H256"));
-        upsertProductImageFile(product, "H512", res.get("H512"));
+        // upsert по вариантам ORIGINAL/H256/H512; файлы прежней загрузки удаляем после коммита
+        List<String> previous = new java.util.ArrayList<>();
+        for (String usage : List.of("ORIGINAL", "H256", "H512")) {
+            String old = upsertProductImageFile(product, usage, res.get(usage));
+            if (old != null && !old.equals(res.get(usage))) previous.add(old);
+        }
+        s3StorageService.deleteAfterCommit(previous);
+        menuSnapshots.productChanged(product.getBrand().getId(), product.getId());
 
         return toResponse(product);
     }
 
-    private void upsertProductImageFile(Product product, String usage, String path) {
-        if (path == null) return;
+    // возвращает путь, на который запись ссылалась до загрузки
+    private String upsertProductImageFile(Product product, String usage, String path) {
+        if (path == null) return null;
         java.util.List<StorageFile> files = storageFileRepository.findByOwnerTypeAndOwnerId("PRODUCT", product.getId());
         java.util.Optional<StorageFile> existing = files.stream()
                 .filter(f -> "PRODUCT_IMAGE".equals(f.getPurpose()) && usage.equals(f.getUsageType()))
@@ -261,9 +287,11 @@ public class ProductService {
                 .usageType(usage)
                 .createdAt(LocalDateTime.now())
                 .build());
+        String previous = sf.getPath();
         sf.setPath(path);
         sf.setUpdatedAt(LocalDateTime.now());
         storageFileRepository.save(sf);
+        return previous;
     }
 
     @Transactional
@@ -289,6 +317,7 @@ public class ProductService {
 
         productArchiveRepository.save(archive);
         productRepository.delete(product);
+        menuSnapshots.productChanged(archive.getBrandId(), archive.getOriginalProductId());
     }
 
     // Формирует путь вида "/Brand/Parent/Child/" из названий бренда и иерархии групп
@@ -328,6 +357,7 @@ public class ProductService {
         }
 
         Product saved = productRepository.save(product);
+        menuSnapshots.productChanged(saved.getBrand().getId(), saved.getId());
         return toResponse(saved);
     }
 
@@ -349,6 +379,7 @@ public class ProductService {
         if (request.getVisible() != null) product.setVisible(request.getVisible());
 
         Product saved = productRepository.save(product);
+        menuSnapshots.productChanged(saved.getBrand().getId(), saved.getId());
         return toResponse(saved);
     }
 
@@ -358,6 +389,7 @@ public class ProductService {
         // Разрешаем смену бренда только из контекста ИСХОДНОГО бренда товара.
         ContextGuards.requireEntityBrandMatchesContextOr404(product.getBrand());
         Brand newBrand = requireBrand(brandId);
+        menuSnapshots.productChanged(product.getBrand().getId(), product.getId());
 
         // Если текущая группа не относится к новому бренду — сбрасываем в корень
         if (product.getGroupTag() != null) {
@@ -368,6 +400,7 @@ public class ProductService {
         }
         product.setBrand(newBrand);
         Product saved = productRepository.save(product);
+        menuSnapshots.productChanged(saved.getBrand().getId(), saved.getId());
         return toResponse(saved);
     }
 
@@ -431,6 +464,7 @@ public class ProductService {
 
         Product saved = productRepository.save(product);
         productArchiveRepository.delete(archive);
+        menuSnapshots.productChanged(brand.getId(), saved.getId());
         return toResponse(saved);
     }
 
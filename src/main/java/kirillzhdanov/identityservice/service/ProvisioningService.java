@@ -11,6 +11,7 @@ import kirillzhdanov.identityservice.repository.BrandRepository;
 import kirillzhdanov.identityservice.repository.master.MasterAccountRepository;
 import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
 import kirillzhdanov.identityservice.repository.pickup.PickupPointRepository;
+import kirillzhdanov.identityservice.security.PrincipalCache;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -30,6 +31,7 @@ public class ProvisioningService implements ProvisioningServiceOps {
     private final BrandRepository brandRepository;
     private final PickupPointRepository pickupPointRepository;
     private final UserService userService;
+    private final PrincipalCache principalCache;
 
     /**
      * Ensure there is a MasterAccount for the user.
@@ -72,6 +74,7 @@ public class ProvisioningService implements ProvisioningServiceOps {
                     .status("ACTIVE")
                     .build();
             userMembershipRepository.save(um);
+            principalCache.evictUser(user.getUsername());
         }
     }
 
@@ -121,6 +124,7 @@ public class ProvisioningService implements ProvisioningServiceOps {
 
         user.getBrands().add(defaultBrand);
         userService.save(user);
+        principalCache.evictUser(user.getUsername());
 
         // Update existing membership without brand, or create new with brand
         UserMembership membershipWithoutBrand = null;
@@ -140,6 +144,7 @@ public class ProvisioningService implements ProvisioningServiceOps {
                 membershipWithoutBrand.setStatus("ACTIVE");
             }
             userMembershipRepository.save(membershipWithoutBrand);
+            principalCache.evictMembership(membershipWithoutBrand.getId());
         } else {
             UserMembership brandMembership = UserMembership.builder()
                     .user(user)
@@ -1,27 +1,59 @@
 package kirillzhdanov.identityservice.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kirillzhdanov.identityservice.util.AfterCommit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
 import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.http.auth.aws.signer.AwsV4FamilyHttpSigner;
+import software.amazon.awssdk.http.auth.aws.signer.AwsV4HttpSigner;
+import software.amazon.awssdk.http.auth.spi.signer.HttpSigner;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.model.*;
-import software.amazon.awssdk.services.s3.presigner.S3Presigner;
-import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
-import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.utils.http.SdkHttpUtils;
 
 import java.net.URI;
+import java.time.Clock;
 import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+@Slf4j
 @Service
 public class S3StorageService {
 
+    static final String PRESIGNED_URLS_CACHE = "s3.presigned-url";
+
+    // SigV4 не принимает подпись дольше 7 дней
+    static final Duration MAX_PRESIGN_EXPIRATION = Duration.ofDays(7);
+
     private final S3Client s3;
-    private final S3Presigner presigner;
+
+    private final AwsV4HttpSigner signer = AwsV4HttpSigner.create();
+    private final AwsBasicCredentials credentials;
+    private final URI endpoint;
+    private final String region;
+    private final Duration presignWindow;
+
+    // подписанные GET-ссылки по (key, ttl, начало окна): живут до конца своего окна
+    private final Cache<PresignKey, String> presignedUrls;
+
+    Clock clock = Clock.systemUTC();
 
     @Value("${s3.bucket}")
     private String bucket;
@@ -36,10 +68,17 @@ public class S3StorageService {
             @Value("${s3.endpoint:https://storage.yandexcloud.net}") String endpoint,
             @Value("${s3.region:ru-central1}") String region,
             @Value("${s3.accessKey}") String accessKey,
-            @Value("${s3.secretKey}") String secretKey
+            @Value("${s3.secretKey}") String secretKey,
+            @Value("${s3.presign.window:P1D}") Duration presignWindow,
+            @Value("${s3.presign.cache.max-size:50000}") long presignCacheMaxSize,
+            ObjectProvider<MeterRegistry> meterRegistry
     ) {
         AwsBasicCredentials creds = AwsBasicCredentials.create(accessKey, secretKey);
         var credsProvider = StaticCredentialsProvider.create(creds);
+        this.credentials = creds;
+        this.endpoint = URI.create(endpoint);
+        this.region = region;
+        this.presignWindow = presignWindow;
         this.s3 = S3Client.builder()
                 .credentialsProvider(credsProvider)
                 .endpointOverride(URI.create(endpoint))
@@ -50,11 +89,12 @@ public class S3StorageService {
                         .build())
                 .build();
 
-        this.presigner = S3Presigner.builder()
-                .credentialsProvider(credsProvider)
-                .endpointOverride(URI.create(endpoint))
-                .region(Region.of(region))
+        this.presignedUrls = Caffeine.newBuilder()
+                .maximumSize(presignCacheMaxSize)
+                .expireAfter(Expiry.creating((PresignKey k, String url) -> untilWindowEnd(k)))
+                .recordStats()
                 .build();
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, presignedUrls, PRESIGNED_URLS_CACHE));
     }
 
     public void upload(String key, byte[] data, String contentType, boolean makePublic) {
@@ -89,6 +129,23 @@ public class S3StorageService {
         }
     }
 
+    /**
+     * Удаляет объекты после коммита текущей транзакции (без транзакции — сразу). При откате записи в БД
+     * продолжают ссылаться на эти файлы, поэтому раньше коммита их удалять нельзя. Ошибка удаления
+     * одного ключа только логируется и не мешает остальным: сирота в бакете безопаснее упавшего запроса.
+     */
+    public void deleteAfterCommit(Collection<String> keys) {
+        if (keys.isEmpty()) return;
+        List<String> snapshot = List.copyOf(keys);
+        AfterCommit.run(() -> snapshot.forEach(key -> {
+            try {
+                delete(key);
+            } catch (Exception e) {
+                log.warn("Не удалось удалить объект {} после коммита: {}", key, e.getMessage());
+            }
+        }));
+    }
+
     public java.util.List<String> listKeysByPrefix(String prefix) {
         try {
             ListObjectsV2Request req = ListObjectsV2Request.builder().bucket(bucket).prefix(prefix).build();
@@ -132,20 +189,66 @@ public class S3StorageService {
         }
     }
 
+    /**
+     * Подписанная GET-ссылка на объект, одинаковая для всех вызовов (и всех реплик с тем же ключом доступа)
+     * в пределах окна {@code s3.presign.window}: время подписи — начало окна, а не текущий момент.
+     * Окно не длиннее половины ttl, а подпись действует {@code ttl + окно} (но не больше 7 дней),
+     * поэтому выданная ссылка живёт не меньше ttl, а при ttl в 7 дней — не меньше {@code ttl - окно}.
+     * Ошибки подписи не кешируются.
+     */
     public Optional<String> buildPresignedGetUrl(String key, Duration ttl) {
+        PresignKey cacheKey = new PresignKey(key, ttl, windowStart(clock.instant(), ttl));
+        return Optional.ofNullable(presignedUrls.get(cacheKey, this::presign));
+    }
+
+    /**
+     * Момент, когда ссылки с данным ttl, выданные в {@code at}, сменятся на подписанные в следующем окне.
+     */
+    public Instant presignWindowEnd(Instant at, Duration ttl) {
+        return windowStart(at, ttl).plus(window(ttl));
+    }
+
+    Duration window(Duration ttl) {
+        Duration half = ttl.dividedBy(2);
+        return presignWindow.compareTo(half) < 0 ? presignWindow : half;
+    }
+
+    Instant windowStart(Instant at, Duration ttl) {
+        long window = window(ttl).toMillis();
+        return Instant.ofEpochMilli(Math.floorDiv(at.toEpochMilli(), window) * window);
+    }
+
+    private Duration untilWindowEnd(PresignKey k) {
+        Duration left = Duration.between(clock.instant(), k.windowStart().plus(window(k.ttl())));
+        return left.isNegative() ? Duration.ZERO : left;
+    }
+
+    private String presign(PresignKey k) {
         try {
-            GetObjectRequest getReq = GetObjectRequest.builder()
-                    .bucket(bucket)
-                    .key(key)
+            Duration requested = k.ttl().plus(window(k.ttl()));
+            Duration expiration = requested.compareTo(MAX_PRESIGN_EXPIRATION) > 0 ? MAX_PRESIGN_EXPIRATION : requested;
+            // path-style, как и у S3Client
+            SdkHttpRequest request = SdkHttpRequest.builder()
+                    .method(SdkHttpMethod.GET)
+                    .uri(endpoint)
+                    .encodedPath(SdkHttpUtils.urlEncodeIgnoreSlashes("/" + bucket + "/" + k.key()))
                     .build();
-            GetObjectPresignRequest presignReq = GetObjectPresignRequest.builder()
-                    .signatureDuration(ttl)
-                    .getObjectRequest(getReq)
-                    .build();
-            PresignedGetObjectRequest presigned = presigner.presignGetObject(presignReq);
-            return Optional.of(presigned.url().toString());
+            return signer.sign(r -> r.identity(credentials)
+                            .request(request)
+                            .putProperty(AwsV4HttpSigner.SERVICE_SIGNING_NAME, "s3")
+                            .putProperty(AwsV4HttpSigner.REGION_NAME, region)
+                            .putProperty(AwsV4HttpSigner.AUTH_LOCATION, AwsV4FamilyHttpSigner.AuthLocation.QUERY_STRING)
+                            .putProperty(AwsV4HttpSigner.EXPIRATION_DURATION, expiration)
+                            .putProperty(AwsV4HttpSigner.PAYLOAD_SIGNING_ENABLED, false)
+                            .putProperty(AwsV4HttpSigner.DOUBLE_URL_ENCODE, false)
+                            .putProperty(AwsV4HttpSigner.NORMALIZE_PATH, false)
+                            .putProperty(HttpSigner.SIGNING_CLOCK, Clock.fixed(k.windowStart(), ZoneOffset.UTC)))
+                    .request().getUri().toString();
         } catch (Exception e) {
-            return Optional.empty();
+            return null;
         }
     }
+
+    record PresignKey(String key, Duration ttl, Instant windowStart) {
+    }
 }
@@ -9,6 +9,7 @@ import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.repository.DepartmentRepository;
 import kirillzhdanov.identityservice.repository.RoleRepository;
 import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.security.PrincipalCache;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
@@ -30,6 +31,7 @@ public class StaffService {
     private final DepartmentRepository departmentRepository;
     private final RoleRepository roleRepository;
     private final PasswordEncoder passwordEncoder;
+    private final PrincipalCache principalCache;
 
     @Transactional
     public DepartmentDto createDepartment(DepartmentCreateRequest req) {
@@ -77,6 +79,7 @@ public class StaffService {
     @Transactional
     public UserListItemDto updateUser(Long id, UpdateStaffUserRequest req, Long masterId) {
         User u = userRepository.findById(id).orElseThrow(() -> new BadRequestException("Пользователь не найден"));
+        principalCache.evictUser(u.getUsername());
         if (req.getLogin() != null && !req.getLogin().equals(u.getUsername())) {
             if (userRepository.existsByUsername(req.getLogin())) {
                 throw new BadRequestException("Логин уже используется");
@@ -106,6 +109,7 @@ public class StaffService {
             u.setRoles(mapRoles(req.getRoles()));
         }
         u = userRepository.save(u);
+        principalCache.evictUser(u.getUsername());
         log.info("[STAFF] masterId={} изменил пользователя id={} login={}", masterId, u.getId(), u.getUsername());
         return toItem(u);
     }
@@ -114,6 +118,7 @@ public class StaffService {
     public void deleteUser(Long id, Long masterId) {
         User u = userRepository.findById(id).orElseThrow(() -> new BadRequestException("Пользователь не найден"));
         userRepository.delete(u);
+        principalCache.evictUser(u.getUsername());
         log.info("[STAFF] masterId={} удалил пользователя id={} login={}", masterId, u.getId(), u.getUsername());
     }
 
@@ -4,12 +4,18 @@ import kirillzhdanov.identityservice.model.Token;
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.repository.TokenRepository;
 import kirillzhdanov.identityservice.security.JwtUtils;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
+import kirillzhdanov.identityservice.security.TokenEpochService;
+import kirillzhdanov.identityservice.security.TokenFingerprint;
+import kirillzhdanov.identityservice.security.TokenValidityCache;
+import kirillzhdanov.identityservice.security.revocation.TokenDenyList;
+import kirillzhdanov.identityservice.security.revocation.TokenRevocationBus;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
-import java.util.List;
 import java.util.Optional;
 
 @Service
@@ -20,6 +26,20 @@ public class TokenService {
 
 	private final JwtUtils jwtUtils;
 
+	private final TokenValidityCache tokenValidityCache;
+
+	private final TokenDenyList tokenDenyList;
+
+	private final TokenRevocationBus tokenRevocationBus;
+
+	private final TokenEpochService tokenEpochService;
+
+	/**
+	 * Дублировать исходную строку JWT в колонку {@code token} (на время отката на версию, ищущую по строке).
+	 */
+	@Value("${jwt.token-storage.store-raw:false}")
+	private boolean storeRawToken;
+
 	@Transactional
 	public void saveToken(String tokenValue, Token.TokenType tokenType, User user) {
 		// Проверяем входные параметры
@@ -27,8 +47,14 @@ public class TokenService {
 			throw new IllegalArgumentException("Параметры токена не могут быть null");
 		}
 
+		// В stateless-режиме access-токены не хранятся: их отзыв проверяется по tokenEpoch
+		if (tokenType == Token.TokenType.ACCESS && tokenEpochService.isEnabled()) {
+			return;
+		}
+
 		// Проверяем, существует ли уже такой токен
-		Optional<Token> existingToken = tokenRepository.findByToken(tokenValue);
+		byte[] tokenHash = TokenFingerprint.of(tokenValue);
+		Optional<Token> existingToken = tokenRepository.findByTokenHash(tokenHash);
 		if (existingToken.isPresent()) {
 			// Если токен существует, но отозван или истек, обновляем его
 			Token token = existingToken.get();
@@ -45,7 +71,8 @@ public class TokenService {
 
 		// Создаем новый токен
 		Token token = Token.builder()
-						   .token(tokenValue)
+						   .tokenHash(tokenHash)
+						   .token(storeRawToken ? tokenValue : null)
 						   .tokenType(tokenType)
 						   .revoked(false)
 						   .expiryDate(jwtUtils.extractExpirationAsLocalDateTime(tokenValue))
@@ -59,46 +86,96 @@ public class TokenService {
 	@Transactional(readOnly = true)
 	public Optional<Token> findByToken(String tokenValue) {
 
-		return tokenRepository.findByToken(tokenValue);
+		return findByValue(tokenValue);
 	}
 
 	@Transactional
 	public void revokeToken(String tokenValue) {
 
-		Optional<Token> tokenOptional = tokenRepository.findByToken(tokenValue);
+		Optional<Token> tokenOptional = findByValue(tokenValue);
 		tokenOptional.ifPresent(token -> {
 			token.setRevoked(true);
 			tokenRepository.save(token);
 		});
+		// Локальный кеш сбрасываем сразу, остальным репликам событие уйдёт после коммита
+		String jti = jtiOf(tokenValue);
+		tokenValidityCache.invalidate(jti);
+		tokenRevocationBus.publishTokenRevoked(jti, tokenOptional.map(Token::getUser)
+																 .map(User::getId)
+																 .orElse(null));
 	}
 
 	@Transactional
 	public void revokeAllUserTokens(User user) {
 
-		List<Token> validUserTokens = tokenRepository.findAllValidTokensByUser(user.getId());
-		if (validUserTokens.isEmpty()) {
-			return;
+		tokenValidityCache.invalidateUser(user.getId());
+		tokenRevocationBus.publishAllUserTokensRevoked(user.getId());
+		if (tokenEpochService.isEnabled()) {
+			// Следующие токены этого пользователя (например, при логине) выпускаются уже с новой эпохой
+			user.setTokenEpoch(tokenEpochService.bump(user.getId()));
 		}
-
-		validUserTokens.forEach(token -> {
-			token.setRevoked(true);
-			tokenRepository.save(token);
-		});
+		tokenRepository.revokeAllByUserId(user.getId());
 	}
 
 	@Transactional(readOnly = true)
 	public boolean isTokenValid(String tokenValue) {
 
-		Optional<Token> tokenOptional = tokenRepository.findByToken(tokenValue);
+		Optional<Token> tokenOptional = findByValue(tokenValue);
 		return tokenOptional.map(Token::isValid)
 							.orElse(false);
 	}
 
+	/**
+	 * Проверяет, что токен не отозван: сначала по локальному deny-листу (события отзыва со всех реплик),
+	 * затем по эпохе пользователя (stateless access-токен с claim {@code tokenEpoch})
+	 * или через кеш валидности по {@code jti}.
+	 * <p>
+	 * Метод намеренно не транзакционный: при попадании в кеш соединение с БД не берётся.
+	 *
+	 * @param parsed разобранный токен
+	 * @return true, если токен найден в БД и действителен
+	 */
+	public boolean isTokenValid(ParsedAccessToken parsed) {
+
+		if (tokenDenyList.isDenied(parsed)) {
+			return false;
+		}
+		if (tokenEpochService.isEnabled() && parsed.isAccess() && parsed.tokenEpoch() != null) {
+			return parsed.tokenEpoch()
+						 .equals(tokenEpochService.currentEpoch(parsed.userId()));
+		}
+		return tokenValidityCache.isValid(parsed, () -> findByValue(parsed.token()).map(Token::isValid)
+																				   .orElse(false));
+	}
+
+	/**
+	 * Удаляет одну порцию истекших токенов отдельной транзакцией (вызывается циклом из {@code TokenPurgeScheduler}).
+	 *
+	 * @param before    удаляются токены с {@code expiryDate} раньше этого момента
+	 * @param batchSize максимальный размер порции
+	 * @return число удалённых строк
+	 */
 	@Transactional
-	public void cleanupExpiredTokens() {
+	public int purgeExpiredTokens(LocalDateTime before, int batchSize) {
+
+		return tokenRepository.deleteExpiredBatch(before, batchSize);
+	}
 
-		LocalDateTime now = LocalDateTime.now();
-		List<Token> expiredTokens = tokenRepository.findAllByExpiryDateBefore(now);
-		tokenRepository.deleteAll(expiredTokens);
+	private Optional<Token> findByValue(String tokenValue) {
+
+		if (tokenValue == null) {
+			return Optional.empty();
+		}
+		return tokenRepository.findByTokenHash(TokenFingerprint.of(tokenValue));
+	}
+
+	private String jtiOf(String tokenValue) {
+
+		try {
+			ParsedAccessToken parsed = jwtUtils.parseToken(tokenValue);
+			return parsed != null ? parsed.jti() : null;
+		} catch (Exception e) {
+			return null;
+		}
 	}
 }
@@ -12,6 +12,8 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 
 @Service
@@ -99,7 +101,7 @@ public class UserProfileService {
         // Сформируем avatarUrl аналогично остальным местам: пробуем получить presigned URL, иначе - служебный URL
         String avatarUrl = user.getAvatarUrl();
         try {
-            String key = mediaService.getUserAvatarKey(String.valueOf(user.getId()));
+            String key = avatarKey(user.getId());
             String presigned = s3StorageService
                     .buildPresignedGetUrl(key, java.time.Duration.ofHours(12))
                     .orElse(avatarUrl);
@@ -140,19 +142,20 @@ public class UserProfileService {
         String key = res.get("key");
 
         // upsert storage record for this user's avatar
-        StorageFile sf = storageFileRepository.findByOwnerTypeAndOwnerId("USER", user.getId())
-                .stream()
-                .filter(f -> "USER_AVATAR".equals(f.getPurpose()))
-                .findFirst()
+        StorageFile sf = findAvatarFile(user.getId())
                 .orElseGet(() -> StorageFile.builder()
                         .ownerType("USER")
                         .ownerId(user.getId())
                         .purpose("USER_AVATAR")
                         .createdAt(LocalDateTime.now())
                         .build());
+        String previousKey = sf.getPath();
         sf.setPath(key);
         sf.setUpdatedAt(LocalDateTime.now());
         storageFileRepository.save(sf);
+        if (previousKey != null && !previousKey.equals(key)) {
+            s3StorageService.deleteAfterCommit(List.of(previousKey));
+        }
 
         // For privacy, expose backend endpoint as avatarUrl
         String servedUrl = "/user/v1/avatar";
@@ -169,7 +172,7 @@ public class UserProfileService {
 
     @Transactional
     public byte[] getAvatarBytes(Long userId) {
-        String key = mediaService.getUserAvatarKey(String.valueOf(userId));
+        String key = avatarKey(userId);
         return s3StorageService.getObjectBytes(key);
     }
 
@@ -177,7 +180,21 @@ public class UserProfileService {
     public byte[] getAvatarBytesByUsername(String username) {
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new BadRequestException("Пользователь не найден"));
-        String key = mediaService.getUserAvatarKey(String.valueOf(user.getId()));
+        String key = avatarKey(user.getId());
         return s3StorageService.getObjectBytes(key);
     }
+
+    // Аватар пишется под новым ключом при каждой загрузке, актуальный ключ — в storage_files
+    private String avatarKey(Long userId) {
+        return findAvatarFile(userId)
+                .map(StorageFile::getPath)
+                .orElseGet(() -> mediaService.getUserAvatarKey(String.valueOf(userId)));
+    }
+
+    private Optional<StorageFile> findAvatarFile(Long userId) {
+        return storageFileRepository.findByOwnerTypeAndOwnerId("USER", userId)
+                .stream()
+                .filter(f -> "USER_AVATAR".equals(f.getPurpose()))
+                .findFirst();
+    }
 }
@@ -6,8 +6,9 @@ import jakarta.persistence.criteria.Subquery;
 import kirillzhdanov.identityservice.dto.client.ClientDto;
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.model.order.Order;
-import kirillzhdanov.identityservice.repository.UserRepository;
 import kirillzhdanov.identityservice.repository.order.OrderRepository;
+import kirillzhdanov.identityservice.security.CurrentUser;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.service.admin.ClientAdminService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -28,12 +29,12 @@ import java.util.Optional;
 @Service
 public class ClientAdminServiceImpl implements ClientAdminService {
 
-    private final UserRepository userRepository;
     private final OrderRepository orderRepository;
+    private final CurrentUserProvider currentUserProvider;
 
-    public ClientAdminServiceImpl(UserRepository userRepository, OrderRepository orderRepository) {
-        this.userRepository = userRepository;
+    public ClientAdminServiceImpl(OrderRepository orderRepository, CurrentUserProvider currentUserProvider) {
         this.orderRepository = orderRepository;
+        this.currentUserProvider = currentUserProvider;
     }
 
     @Override
@@ -108,25 +109,14 @@ public class ClientAdminServiceImpl implements ClientAdminService {
             if (auth == null || !auth.isAuthenticated()) return null;
             boolean isOwner = hasRole(auth, "ROLE_OWNER") || hasRole(auth, "OWNER");
             boolean isAdmin = hasRole(auth, "ROLE_ADMIN") || hasRole(auth, "ADMIN");
-            String username = auth.getName();
-            Optional<User> uOpt = userRepository.findByUsername(username);
             // И ADMIN, и OWNER — ограничиваем их собственным masterId (если он задан)
             if (isAdmin || isOwner) {
-                if (uOpt.isEmpty()) return null;
-                User u = uOpt.get();
-                Long mid = u.getMasterId();
+                Optional<CurrentUser> current = currentUserProvider.current();
+                if (current.isEmpty()) return null;
+                Long mid = current.get().masterId();
                 if (mid != null) return mid;
-                // Fallback: попробуем взять masterId из любой привязанной бренда
-                try {
-                    if (u.getBrands() != null && !u.getBrands().isEmpty()) {
-                        var any = u.getBrands().iterator().next();
-                        if (any != null && any.getMaster() != null && any.getMaster().getId() != null) {
-                            return any.getMaster().getId();
-                        }
-                    }
-                } catch (Exception ignored) {
-                }
-                return null;
+                // Fallback: masterId любого привязанного бренда
+                return current.get().brandMasterId();
             }
             return null; // для остальных ролей
         } catch (Exception ignored) {
@@ -7,9 +7,10 @@ import kirillzhdanov.identityservice.dto.order.OrderItemDto;
 import kirillzhdanov.identityservice.model.Brand;
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.model.order.Order;
-import kirillzhdanov.identityservice.repository.UserRepository;
 import kirillzhdanov.identityservice.repository.order.OrderRepository;
 import kirillzhdanov.identityservice.repository.order.OrderReviewRepository;
+import kirillzhdanov.identityservice.security.CurrentUser;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.service.admin.OrderAdminService;
 import kirillzhdanov.identityservice.tenant.TenantContext;
 import org.springframework.data.domain.Page;
@@ -33,12 +34,12 @@ import java.util.*;
 public class OrderAdminServiceImpl implements OrderAdminService {
 
     private final OrderRepository orderRepository;
-    private final UserRepository userRepository;
+    private final CurrentUserProvider currentUserProvider;
     private final OrderReviewRepository orderReviewRepository;
 
-    public OrderAdminServiceImpl(OrderRepository orderRepository, UserRepository userRepository, OrderReviewRepository orderReviewRepository) {
+    public OrderAdminServiceImpl(OrderRepository orderRepository, CurrentUserProvider currentUserProvider, OrderReviewRepository orderReviewRepository) {
         this.orderRepository = orderRepository;
-        this.userRepository = userRepository;
+        this.currentUserProvider = currentUserProvider;
         this.orderReviewRepository = orderReviewRepository;
     }
 
@@ -252,9 +253,7 @@ public class OrderAdminServiceImpl implements OrderAdminService {
             boolean isAdmin = hasRole(auth, "ROLE_ADMIN") || hasRole(auth, "ADMIN");
             if (isOwner) return null; // без ограничений
             if (!isAdmin) return null; // клиент — ограничения не применяем здесь
-            String username = auth.getName();
-            Optional<User> u = userRepository.findByUsername(username);
-            return u.map(User::getMasterId).orElse(null);
+            return currentUserProvider.current().map(CurrentUser::masterId).orElse(null);
         } catch (Exception ignored) {
             return null;
         }
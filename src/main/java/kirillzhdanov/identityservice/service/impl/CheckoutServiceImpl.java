@@ -11,7 +11,7 @@ import kirillzhdanov.identityservice.model.order.OrderItem;
 import kirillzhdanov.identityservice.model.pickup.PickupPoint;
 import kirillzhdanov.identityservice.model.userbrand.DeliveryAddress;
 import kirillzhdanov.identityservice.model.userbrand.UserBrandMembership;
-import kirillzhdanov.identityservice.notification.longpoll.LongPollService;
+import kirillzhdanov.identityservice.notification.longpoll.NotificationDispatcher;
 import kirillzhdanov.identityservice.repository.cart.CartItemRepository;
 import kirillzhdanov.identityservice.repository.order.OrderItemRepository;
 import kirillzhdanov.identityservice.repository.order.OrderRepository;
@@ -36,7 +36,7 @@ public class CheckoutServiceImpl implements CheckoutService {
     private final PickupPointRepository pickupPointRepository;
     private final ObjectMapper objectMapper;
     private final UserBrandMembershipRepository membershipRepository;
-    private final LongPollService longPollService;
+    private final NotificationDispatcher notifications;
 
     @Override
     @Transactional
@@ -143,17 +143,9 @@ public class CheckoutServiceImpl implements CheckoutService {
         // Очистим корзину
         cartRepo.deleteByUser_Id(user.getId());
 
-        // Оповестим персонал бренда о новом заказе
-        try {
-            if (brandId != null) {
-                var userIds = membershipRepository.findUserIdsByBrandId(brandId);
-                if (userIds != null) {
-                    for (Long uid : userIds) {
-                        if (uid != null) longPollService.publishNewOrder(uid, order.getId());
-                    }
-                }
-            }
-        } catch (Exception ignore) {
+        // Оповестим персонал бренда о новом заказе: одно событие в топике бренда, запишется и уйдёт после коммита заказа
+        if (brandId != null) {
+            notifications.publishBrandNewOrder(brandId, order.getId());
         }
 
         return order;
@@ -6,6 +6,7 @@ import kirillzhdanov.identityservice.model.userbrand.UserBrandMembership;
 import kirillzhdanov.identityservice.repository.BrandRepository;
 import kirillzhdanov.identityservice.repository.UserRepository;
 import kirillzhdanov.identityservice.repository.userbrand.UserBrandMembershipRepository;
+import kirillzhdanov.identityservice.security.PrincipalCache;
 import kirillzhdanov.identityservice.service.MembershipService;
 import kirillzhdanov.identityservice.tenant.ContextAccess;
 import lombok.RequiredArgsConstructor;
@@ -31,6 +32,7 @@ public class MembershipServiceImpl implements MembershipService {
     private final UserRepository userRepository;
     private final BrandRepository brandRepository;
     private final UserBrandMembershipRepository membershipRepository;
+    private final PrincipalCache principalCache;
 
     /**
      * Гарантирует, что у пользователя есть запись членства для текущего бренда (из контекста).
@@ -68,5 +70,6 @@ public class MembershipServiceImpl implements MembershipService {
                 .brand(brand)
                 .build();
         membershipRepository.save(mb);
+        principalCache.evictUser(user.getUsername());
     }
 }
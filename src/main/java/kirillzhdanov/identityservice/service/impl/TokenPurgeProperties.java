@@ -0,0 +1,35 @@
+package kirillzhdanov.identityservice.service.impl;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "token.purge")
+public class TokenPurgeProperties {
+
+    /**
+     * Включает периодическую очистку истекших токенов.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Число строк, удаляемых одной транзакцией.
+     */
+    private int batchSize = 5_000;
+
+    /**
+     * Пауза между порциями, чтобы не забивать WAL и реплики.
+     */
+    private Duration pause = Duration.ofMillis(200);
+
+    /**
+     * Верхняя граница порций за один запуск; остаток дочищается следующим запуском.
+     */
+    private int maxBatchesPerRun = 200;
+}
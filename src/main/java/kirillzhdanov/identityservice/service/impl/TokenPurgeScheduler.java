@@ -0,0 +1,76 @@
+package kirillzhdanov.identityservice.service.impl;
+
+import kirillzhdanov.identityservice.repository.TokenRepository;
+import kirillzhdanov.identityservice.security.TokenValidityCache;
+import kirillzhdanov.identityservice.service.TokenService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Периодически удаляет истекшие токены порциями ({@code token.purge.*}), каждая порция — отдельная транзакция.
+ * По завершении пишет в лог число строк, скорость удаления и размер таблицы {@code tokens} до и после.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TokenPurgeScheduler {
+
+    private final TokenService tokenService;
+    private final TokenRepository tokenRepository;
+    private final TokenValidityCache tokenValidityCache;
+    private final TokenPurgeProperties properties;
+
+    @Scheduled(fixedDelayString = "${token.purge.interval:PT15M}", initialDelayString = "${token.purge.initial-delay:PT2M}")
+    public void purgeExpiredTokens() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        purge(LocalDateTime.now());
+    }
+
+    /**
+     * @return число удалённых строк
+     */
+    long purge(LocalDateTime before) {
+        int batchSize = Math.max(1, properties.getBatchSize());
+        Long sizeBefore = tableSize();
+        long started = System.nanoTime();
+        long deleted = 0;
+        int batches = 0;
+        try {
+            while (batches < properties.getMaxBatchesPerRun()) {
+                int n = tokenService.purgeExpiredTokens(before, batchSize);
+                deleted += n;
+                batches++;
+                if (n < batchSize) {
+                    break;
+                }
+                Thread.sleep(properties.getPause().toMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Token purge: прервано после {} строк: {}", deleted, e.getMessage());
+        }
+        tokenValidityCache.evictExpired();
+
+        if (deleted > 0) {
+            double seconds = Math.max((System.nanoTime() - started) / 1e9, 1e-3);
+            log.info("Token purge: удалено {} строк за {} порций, {} строк/с, размер tokens {} -> {} байт",
+                    deleted, batches, Math.round(deleted / seconds), sizeBefore, tableSize());
+        }
+        return deleted;
+    }
+
+    private Long tableSize() {
+        try {
+            return tokenRepository.tableSizeBytes();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package kirillzhdanov.identityservice.service.menu;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Рассылка отметок снимков меню через Kafka-топик {@code app.menu.snapshot.kafka.topic}.
+ * <p>
+ * У каждой реплики своя consumer group (случайный суффикс), поэтому отметку получают все узлы;
+ * читаем только новые сообщения — снимок, собранный после старта, уже видит прежние изменения.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(prefix = "app.menu.snapshot", name = "transport", havingValue = "kafka")
+public class KafkaMenuSnapshotTransport implements MenuSnapshotTransport {
+
+    static final String LISTENER_ID = "menuSnapshotListener";
+
+    private final KafkaTemplate<String, String> kafkaTemplate;
+
+    private final MenuSnapshotProperties properties;
+
+    private final MenuSnapshotService snapshots;
+
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public void send(MenuInvalidation event) {
+        try {
+            kafkaTemplate.send(properties.getKafka().getTopic(), String.valueOf(event.brandId()),
+                    objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось отправить отметку меню в Kafka", e);
+        }
+    }
+
+    @KafkaListener(id = LISTENER_ID,
+            topics = "${app.menu.snapshot.kafka.topic:identity.menu-snapshots}",
+            groupId = "${app.menu.snapshot.kafka.group-prefix:identity-menu}-${random.uuid}",
+            properties = "auto.offset.reset=latest")
+    void onMessage(String payload) {
+        try {
+            snapshots.apply(objectMapper.readValue(payload, MenuInvalidation.class));
+        } catch (Exception e) {
+            log.warn("Некорректная отметка меню из Kafka: {}", e.getClass().getSimpleName());
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package kirillzhdanov.identityservice.service.menu;
+
+/**
+ * Отметка об изменении меню бренда, рассылаемая остальным репликам.
+ *
+ * @param brandId   бренд
+ * @param productId изменённый товар или {@code null}, если бренд нужно собрать заново
+ * @param origin    идентификатор узла-источника: своё событие, вернувшееся через транспорт, не применяется повторно
+ */
+public record MenuInvalidation(Long brandId, Long productId, String origin) {
+
+    public static MenuInvalidation product(Long brandId, Long productId, String origin) {
+        return new MenuInvalidation(brandId, productId, origin);
+    }
+
+    public static MenuInvalidation brand(Long brandId, String origin) {
+        return new MenuInvalidation(brandId, null, origin);
+    }
+
+    public boolean isBrandWide() {
+        return productId == null;
+    }
+}
@@ -0,0 +1,232 @@
+package kirillzhdanov.identityservice.service.menu;
+
+import kirillzhdanov.identityservice.dto.menu.PublicGroupTagResponse;
+import kirillzhdanov.identityservice.dto.menu.PublicProductResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Неизменяемый снимок публичного меню бренда: дерево групп, видимые товары с ценами и ссылками на изображения.
+ * <p>
+ * Версия — хеш отдаваемого содержимого (видимые группы, товары, ссылки на изображения), а не счётчик сборок:
+ * у реплик за балансировщиком, после рестарта или пересборки снимка с тем же содержимым {@link #etag()} совпадает,
+ * и {@code If-None-Match} получает {@code 304}. {@link #lastModified()} — самое позднее {@code updatedAt} товаров
+ * и изображений снимка. Объекты DTO внутри снимка не изменяются: их разделяют все ответы.
+ */
+public final class MenuSnapshot {
+
+    /**
+     * Ключ корня: группы без родителя и товары без группы.
+     */
+    public static final long ROOT = 0L;
+
+    /**
+     * Видимый товар в снимке: группа ({@link #ROOT} для корня), S3-ключ изображения, версия его содержимого
+     * (время загрузки), время изменения товара и публичный ответ.
+     */
+    record Item(long groupId, String imagePath, LocalDateTime imageVersion, LocalDateTime updatedAt,
+                PublicProductResponse product) {
+    }
+
+    private final Long brandId;
+
+    private final long version;
+
+    private final Instant lastModified;
+
+    // момент пересборки: конец окна, в котором подписаны ссылки на изображения, но не позже max-age
+    private final Instant expiresAt;
+
+    // все группы бренда (level, id), включая пустые: нужны для пересчёта видимости при инкрементальном обновлении
+    private final List<PublicGroupTagResponse> allTags;
+
+    private final Map<Long, Item> items;
+
+    private final Set<Long> tagIds;
+
+    // только группы с видимыми товарами в поддереве
+    private final Set<Long> visibleTagIds;
+
+    private final Map<Long, List<PublicGroupTagResponse>> tagsByParent;
+
+    private final Map<Long, List<PublicProductResponse>> productsByGroup;
+
+    private MenuSnapshot(Long brandId, Instant expiresAt, List<PublicGroupTagResponse> allTags, Map<Long, Item> items) {
+        this.brandId = brandId;
+        this.expiresAt = expiresAt;
+        this.allTags = List.copyOf(allTags);
+        this.items = Map.copyOf(items);
+        this.tagIds = this.allTags.stream().map(PublicGroupTagResponse::getId).collect(Collectors.toUnmodifiableSet());
+        this.productsByGroup = groupProducts(this.items);
+        this.visibleTagIds = visibleTagIds(this.allTags, this.productsByGroup.keySet());
+        this.tagsByParent = groupTags(this.allTags, this.visibleTagIds);
+        this.version = contentHash(brandId, tags(), this.productsByGroup);
+        this.lastModified = lastModified(this.items.values());
+    }
+
+    /**
+     * Снимок с новым содержимым. Если оно не изменилось, возвращается {@code previous}
+     * (с обновлённым {@code expiresAt}); версия и так совпала бы — она считается только по содержимому.
+     */
+    static MenuSnapshot next(MenuSnapshot previous, Long brandId, List<PublicGroupTagResponse> allTags,
+                             Map<Long, Item> items, Instant expiresAt) {
+        if (previous != null && previous.allTags.equals(allTags) && previous.items.equals(items)
+                && expiresAt.equals(previous.expiresAt)) {
+            return previous;
+        }
+        return new MenuSnapshot(brandId, expiresAt, allTags, items);
+    }
+
+    public Long brandId() {
+        return brandId;
+    }
+
+    public long version() {
+        return version;
+    }
+
+    /**
+     * Самое позднее изменение товаров и изображений снимка; {@code null}, если товаров нет.
+     */
+    public Instant lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Сильный ETag вида {@code "brandId-hash"}: одинаков для одинакового содержимого на любой реплике.
+     */
+    public String etag() {
+        return "\"" + brandId + "-" + Long.toHexString(version) + "\"";
+    }
+
+    /**
+     * Непустые группы с родителем {@code parentId} ({@link #ROOT} — корневые), по id.
+     */
+    public List<PublicGroupTagResponse> tags(Long parentId) {
+        return tagsByParent.getOrDefault(parentId == null ? ROOT : parentId, List.of());
+    }
+
+    /**
+     * Все непустые группы бренда: по уровню, затем по id.
+     */
+    public List<PublicGroupTagResponse> tags() {
+        return allTags.stream()
+                .filter(t -> visibleTagIds.contains(t.getId()))
+                .toList();
+    }
+
+    /**
+     * Видимые товары группы {@code groupTagId} ({@link #ROOT} — корневые), по id.
+     */
+    public List<PublicProductResponse> products(Long groupTagId) {
+        return productsByGroup.getOrDefault(groupTagId == null ? ROOT : groupTagId, List.of());
+    }
+
+    /**
+     * Видимые товары по группам; ключ {@link #ROOT} — товары без группы.
+     */
+    public Map<Long, List<PublicProductResponse>> productsByGroup() {
+        return productsByGroup;
+    }
+
+    Instant expiresAt() {
+        return expiresAt;
+    }
+
+    List<PublicGroupTagResponse> allTags() {
+        return allTags;
+    }
+
+    Map<Long, Item> items() {
+        return items;
+    }
+
+    boolean hasGroup(long groupId) {
+        return groupId == ROOT || tagIds.contains(groupId);
+    }
+
+    /**
+     * Первые 63 бита SHA-256 от того, что видит клиент: непустые группы по уровню и товары по группам.
+     */
+    private static long contentHash(Long brandId, List<PublicGroupTagResponse> tags,
+                                    Map<Long, List<PublicProductResponse>> productsByGroup) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 недоступен", e);
+        }
+        update(digest, brandId);
+        for (PublicGroupTagResponse tag : tags) {
+            update(digest, tag.getId(), tag.getName(), tag.getParentId(), tag.getLevel());
+        }
+        productsByGroup.forEach((groupId, products) -> {
+            update(digest, groupId);
+            for (PublicProductResponse p : products) {
+                update(digest, p.getId(), p.getName(), p.getDescription(), p.getPrice(), p.getPromoPrice(),
+                        p.isVisible(), p.getImageUrl());
+            }
+        });
+        return ByteBuffer.wrap(digest.digest()).getLong() & Long.MAX_VALUE;
+    }
+
+    private static void update(MessageDigest digest, Object... values) {
+        for (Object value : values) {
+            // длина перед значением: соседние поля не склеиваются, null отличается от пустой строки
+            String text = value != null ? value.toString() : null;
+            byte[] bytes = text != null ? text.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(text != null ? bytes.length : -1).array());
+            digest.update(bytes);
+        }
+    }
+
+    private static Instant lastModified(Collection<Item> items) {
+        return items.stream()
+                .flatMap(i -> Stream.of(i.updatedAt(), i.imageVersion()))
+                .filter(Objects::nonNull)
+                .max(Comparator.naturalOrder())
+                .map(t -> t.atZone(ZoneId.systemDefault()).toInstant())
+                .orElse(null);
+    }
+
+    private static Map<Long, List<PublicProductResponse>> groupProducts(Map<Long, Item> items) {
+        Map<Long, List<PublicProductResponse>> byGroup = new TreeMap<>();
+        items.values().stream()
+                .sorted(Comparator.comparing(i -> i.product().getId()))
+                .forEach(i -> byGroup.computeIfAbsent(i.groupId(), g -> new ArrayList<>()).add(i.product()));
+        byGroup.replaceAll((g, list) -> List.copyOf(list));
+        return Collections.unmodifiableMap(byGroup);
+    }
+
+    private static Set<Long> visibleTagIds(List<PublicGroupTagResponse> allTags, Set<Long> groupsWithProducts) {
+        // снизу вверх (allTags упорядочены по уровню): группа видима, если в ней или в любой дочерней есть видимые товары
+        Set<Long> nonEmpty = new HashSet<>(groupsWithProducts);
+        for (int i = allTags.size() - 1; i >= 0; i--) {
+            PublicGroupTagResponse tag = allTags.get(i);
+            if (nonEmpty.contains(tag.getId()) && tag.getParentId() != null) {
+                nonEmpty.add(tag.getParentId());
+            }
+        }
+        nonEmpty.remove(ROOT);
+        return Set.copyOf(nonEmpty);
+    }
+
+    private static Map<Long, List<PublicGroupTagResponse>> groupTags(List<PublicGroupTagResponse> allTags, Set<Long> visibleTagIds) {
+        Map<Long, List<PublicGroupTagResponse>> byParent = new HashMap<>();
+        allTags.stream()
+                .filter(t -> visibleTagIds.contains(t.getId()))
+                .sorted(Comparator.comparing(PublicGroupTagResponse::getId))
+                .forEach(t -> byParent.computeIfAbsent(t.getParentId() == null ? ROOT : t.getParentId(), p -> new ArrayList<>()).add(t));
+        byParent.replaceAll((p, list) -> List.copyOf(list));
+        return Map.copyOf(byParent);
+    }
+}
@@ -0,0 +1,70 @@
+package kirillzhdanov.identityservice.service.menu;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "app.menu.snapshot")
+public class MenuSnapshotProperties {
+
+    /**
+     * Держать снимки публичного меню в памяти; false — собирать снимок на каждый запрос.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Максимальное число брендов со снимком в памяти.
+     */
+    private long maxBrands = 1_000;
+
+    /**
+     * Возраст, после которого снимок собирается заново (страховка от изменений в обход сервисов).
+     * Снимок пересобирается и раньше — при смене окна подписи ссылок на изображения ({@code s3.presign.window}).
+     */
+    private Duration maxAge = Duration.ofHours(24);
+
+    /**
+     * Транспорт рассылки отметок об изменениях между репликами: {@code none} (только локально), {@code kafka},
+     * {@code postgres}. Без транспорта другие реплики видят изменения после пересборки по {@code max-age}.
+     */
+    private String transport = "none";
+
+    private Kafka kafka = new Kafka();
+
+    private Postgres postgres = new Postgres();
+
+    @Getter
+    @Setter
+    public static class Kafka {
+
+        private String topic = "identity.menu-snapshots";
+
+        /**
+         * Префикс consumer group: к нему добавляется случайный суффикс, чтобы каждая реплика получала все отметки.
+         */
+        private String groupPrefix = "identity-menu";
+    }
+
+    @Getter
+    @Setter
+    public static class Postgres {
+
+        private String channel = "menu_snapshots";
+
+        /**
+         * Таймаут ожидания уведомлений в одном цикле опроса LISTEN-соединения.
+         */
+        private Duration pollTimeout = Duration.ofSeconds(1);
+
+        /**
+         * Пауза перед переподключением после ошибки LISTEN-соединения.
+         */
+        private Duration reconnectDelay = Duration.ofSeconds(5);
+    }
+}
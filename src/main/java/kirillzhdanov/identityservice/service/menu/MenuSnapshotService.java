@@ -0,0 +1,324 @@
+package kirillzhdanov.identityservice.service.menu;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import kirillzhdanov.identityservice.dto.menu.PublicGroupTagResponse;
+import kirillzhdanov.identityservice.dto.menu.PublicProductResponse;
+import kirillzhdanov.identityservice.exception.ResourceNotFoundException;
+import kirillzhdanov.identityservice.model.Brand;
+import kirillzhdanov.identityservice.model.StorageFile;
+import kirillzhdanov.identityservice.model.product.Product;
+import kirillzhdanov.identityservice.repository.BrandRepository;
+import kirillzhdanov.identityservice.repository.GroupTagRepository;
+import kirillzhdanov.identityservice.repository.ProductRepository;
+import kirillzhdanov.identityservice.repository.StorageFileRepository;
+import kirillzhdanov.identityservice.service.S3StorageService;
+import kirillzhdanov.identityservice.util.AfterCommit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * Снимки публичного меню по брендам ({@link MenuSnapshot}), из которых {@code /menu/v1} отвечает без запросов к БД.
+ * <p>
+ * Снимок собирается при первом чтении и дальше обновляется по отметкам сервисов:
+ * {@link #productChanged(Long, Long)} — перечитать один товар (инкрементально, с переиспользованием подписанных ссылок),
+ * {@link #brandChanged(Long)} — собрать снимок бренда заново (группы, удаление бренда).
+ * Как и {@code PrincipalCache}, отметка ставится сразу и повторно после коммита, чтобы параллельное чтение
+ * не закрепило незакоммиченное состояние. После коммита отметка уходит остальным репликам через
+ * {@link MenuSnapshotTransport} ({@code app.menu.snapshot.transport}), если он настроен. Сборка одного бренда идёт под его блокировкой (без {@code synchronized},
+ * чтобы не закреплять виртуальные потоки), чтение готового снимка — без блокировок.
+ * Метрики — {@code cache.gets{cache=menu.snapshot}} и {@code menu.snapshot.builds{type=full|incremental}}.
+ */
+@Slf4j
+@Service
+public class MenuSnapshotService {
+
+    static final String CACHE = "menu.snapshot";
+
+    static final String PRODUCT_OWNER = "PRODUCT";
+
+    static final String PRODUCT_IMAGE = "PRODUCT_IMAGE";
+
+    // публичное меню показывает вариант 16:9 высотой 256
+    static final String PUBLIC_VARIANT = "H256";
+
+    static final Duration IMAGE_URL_TTL = Duration.ofDays(7);
+
+    private final BrandRepository brandRepository;
+
+    private final GroupTagRepository groupTagRepository;
+
+    private final ProductRepository productRepository;
+
+    private final StorageFileRepository storageFileRepository;
+
+    private final S3StorageService s3StorageService;
+
+    private final MenuSnapshotProperties properties;
+
+    private final Cache<Long, Entry> entries;
+
+    private final Counter fullBuilds;
+
+    private final Counter incrementalBuilds;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final ObjectProvider<MenuSnapshotTransport> transport;
+
+    public MenuSnapshotService(BrandRepository brandRepository,
+                               GroupTagRepository groupTagRepository,
+                               ProductRepository productRepository,
+                               StorageFileRepository storageFileRepository,
+                               S3StorageService s3StorageService,
+                               MenuSnapshotProperties properties,
+                               ObjectProvider<MenuSnapshotTransport> transport,
+                               ObjectProvider<MeterRegistry> meterRegistry) {
+        this.brandRepository = brandRepository;
+        this.groupTagRepository = groupTagRepository;
+        this.productRepository = productRepository;
+        this.storageFileRepository = storageFileRepository;
+        this.s3StorageService = s3StorageService;
+        this.properties = properties;
+        this.transport = transport;
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxBrands())
+                .recordStats()
+                .build();
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        if (registry != null) {
+            CaffeineCacheMetrics.monitor(registry, entries, CACHE);
+        }
+        this.fullBuilds = registry == null ? null : Counter.builder("menu.snapshot.builds").tag("type", "full")
+                .description("Сборки снимка публичного меню").register(registry);
+        this.incrementalBuilds = registry == null ? null : Counter.builder("menu.snapshot.builds").tag("type", "incremental")
+                .description("Сборки снимка публичного меню").register(registry);
+    }
+
+    /**
+     * Актуальный снимок меню бренда.
+     *
+     * @throws ResourceNotFoundException если бренда нет (такой ответ не кешируется)
+     */
+    public MenuSnapshot get(Long brandId) {
+        if (!properties.isEnabled()) {
+            return fullBuild(brandId, null);
+        }
+        Entry entry = entries.get(brandId, id -> new Entry());
+        MenuSnapshot current = entry.snapshot;
+        if (isFresh(entry, current)) {
+            return current;
+        }
+        entry.lock.lock();
+        try {
+            current = entry.snapshot;
+            if (isFresh(entry, current)) {
+                return current;
+            }
+            MenuSnapshot next = refresh(brandId, entry, current);
+            entry.snapshot = next;
+            return next;
+        } catch (ResourceNotFoundException e) {
+            entries.invalidate(brandId);
+            throw e;
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * Товар создан, изменён, перемещён или удалён. При смене бренда вызывается для обоих брендов.
+     */
+    public void productChanged(Long brandId, Long productId) {
+        if (brandId != null && productId != null) {
+            mark(MenuInvalidation.product(brandId, productId, nodeId));
+        }
+    }
+
+    /**
+     * Изменилась структура меню бренда (группы) или сам бренд: следующее чтение соберёт снимок заново.
+     */
+    public void brandChanged(Long brandId) {
+        if (brandId != null) {
+            mark(MenuInvalidation.brand(brandId, nodeId));
+        }
+    }
+
+    /**
+     * Отметка от другой реплики (своя, вернувшаяся через транспорт, пропускается).
+     */
+    public void apply(MenuInvalidation event) {
+        if (event == null || event.brandId() == null || nodeId.equals(event.origin())) {
+            return;
+        }
+        markLocally(event);
+    }
+
+    private boolean isFresh(Entry entry, MenuSnapshot snapshot) {
+        return snapshot != null && !entry.stale && entry.pending.isEmpty() && !isExpired(snapshot);
+    }
+
+    private boolean isExpired(MenuSnapshot snapshot) {
+        return !snapshot.expiresAt().isAfter(Instant.now());
+    }
+
+    // снимок живёт до смены окна подписи ссылок: тогда все реплики переходят на новые ссылки одновременно
+    private Instant expiresAt(Instant now) {
+        Instant maxAge = now.plus(properties.getMaxAge());
+        Instant windowEnd = s3StorageService.presignWindowEnd(now, IMAGE_URL_TTL);
+        return windowEnd.isBefore(maxAge) ? windowEnd : maxAge;
+    }
+
+    private MenuSnapshot refresh(Long brandId, Entry entry, MenuSnapshot current) {
+        // отметки снимаются до чтения из БД: изменение, пришедшее во время сборки, вызовет ещё одну
+        boolean full = current == null || entry.stale || isExpired(current);
+        entry.stale = false;
+        Set<Long> changed = new HashSet<>();
+        for (Long id : entry.pending) {
+            if (entry.pending.remove(id)) changed.add(id);
+        }
+        if (!full) {
+            MenuSnapshot patched = patch(brandId, current, changed);
+            if (patched != null) {
+                return patched;
+            }
+        }
+        return fullBuild(brandId, current);
+    }
+
+    private MenuSnapshot fullBuild(Long brandId, MenuSnapshot previous) {
+        Brand brand = brandRepository.findById(brandId)
+                .orElseThrow(() -> new ResourceNotFoundException("Бренд не найден: " + brandId));
+        List<PublicGroupTagResponse> tags = groupTagRepository.findAllByBrandOrdered(brand).stream()
+                .map(t -> new PublicGroupTagResponse(t.getId(), t.getName(),
+                        t.getParent() != null ? t.getParent().getId() : null, t.getLevel()))
+                .toList();
+        // подписанные ссылки прошлого снимка переиспользуются, пока он не устарел
+        MenuSnapshot reusable = previous != null && !isExpired(previous) ? previous : null;
+        Instant now = Instant.now();
+        Map<Long, MenuSnapshot.Item> items = toItems(productRepository.findByBrandAndVisibleIsTrue(brand), reusable);
+        if (fullBuilds != null) fullBuilds.increment();
+        return MenuSnapshot.next(previous, brandId, tags, items, reusable != null ? reusable.expiresAt() : expiresAt(now));
+    }
+
+    /**
+     * Перечитывает только изменённые товары; {@code null}, если нужна полная сборка (товар в неизвестной группе).
+     */
+    private MenuSnapshot patch(Long brandId, MenuSnapshot current, Set<Long> changed) {
+        if (changed.isEmpty()) {
+            return current;
+        }
+        List<Product> visible = productRepository.findAllById(changed).stream()
+                .filter(p -> p.isVisible() && p.getBrand() != null && brandId.equals(p.getBrand().getId()))
+                .toList();
+        if (visible.stream().anyMatch(p -> !current.hasGroup(groupId(p)))) {
+            return null;
+        }
+        Map<Long, MenuSnapshot.Item> items = new HashMap<>(current.items());
+        changed.forEach(items::remove);
+        items.putAll(toItems(visible, current));
+        if (incrementalBuilds != null) incrementalBuilds.increment();
+        return MenuSnapshot.next(current, brandId, current.allTags(), items, current.expiresAt());
+    }
+
+    private Map<Long, MenuSnapshot.Item> toItems(List<Product> products, MenuSnapshot reusable) {
+        if (products.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, StorageFile> images = storageFileRepository.findByOwnerTypeAndOwnerIdInAndPurposeAndUsageType(
+                        PRODUCT_OWNER, products.stream().map(Product::getId).toList(), PRODUCT_IMAGE, PUBLIC_VARIANT).stream()
+                .collect(Collectors.toMap(StorageFile::getOwnerId, f -> f, (a, b) -> a));
+        Map<Long, MenuSnapshot.Item> items = new HashMap<>();
+        for (Product p : products) {
+            StorageFile image = images.get(p.getId());
+            String path = image != null ? image.getPath() : null;
+            LocalDateTime version = image != null ? imageVersion(image) : null;
+            MenuSnapshot.Item previous = reusable != null ? reusable.items().get(p.getId()) : null;
+            // ссылка переиспользуется только для того же содержимого: повторная загрузка под прежним ключом
+            // меняет версию, и ссылка подписывается заново
+            String imageUrl = previous != null && Objects.equals(previous.imagePath(), path)
+                    && Objects.equals(previous.imageVersion(), version)
+                    ? previous.product().getImageUrl()
+                    : imageUrl(path);
+            PublicProductResponse product = new PublicProductResponse(p.getId(), p.getName(), p.getDescription(),
+                    p.getPrice(), p.getPromoPrice(), p.isVisible(), imageUrl);
+            items.put(p.getId(), new MenuSnapshot.Item(groupId(p), path, version, p.getUpdatedAt(), product));
+        }
+        return items;
+    }
+
+    private String imageUrl(String path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            return s3StorageService.buildPresignedGetUrl(path, IMAGE_URL_TTL).orElse(null);
+        } catch (Exception e) {
+            log.debug("Menu snapshot: cannot sign image {}", path, e);
+            return null;
+        }
+    }
+
+    private static LocalDateTime imageVersion(StorageFile image) {
+        return image.getUpdatedAt() != null ? image.getUpdatedAt() : image.getCreatedAt();
+    }
+
+    private static long groupId(Product product) {
+        return product.getGroupTag() != null ? product.getGroupTag().getId() : MenuSnapshot.ROOT;
+    }
+
+    private void mark(MenuInvalidation event) {
+        markLocally(event);
+        AfterCommit.run(() -> {
+            markLocally(event);
+            broadcast(event);
+        });
+    }
+
+    private void markLocally(MenuInvalidation event) {
+        Entry entry = entries.getIfPresent(event.brandId());
+        if (entry == null) return;
+        if (event.isBrandWide()) {
+            entry.stale = true;
+        } else {
+            entry.pending.add(event.productId());
+        }
+    }
+
+    private void broadcast(MenuInvalidation event) {
+        transport.ifAvailable(t -> {
+            try {
+                t.send(event);
+            } catch (Exception e) {
+                // изменение уже в БД; реплики увидят его после пересборки по max-age
+                log.warn("Не удалось разослать отметку меню brandId={}: {}", event.brandId(), e.getClass().getSimpleName());
+            }
+        });
+    }
+
+    /**
+     * Состояние бренда: последний снимок и отметки об изменениях после него.
+     */
+    private static final class Entry {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+        volatile MenuSnapshot snapshot;
+
+        volatile boolean stale;
+    }
+}
@@ -0,0 +1,10 @@
+package kirillzhdanov.identityservice.service.menu;
+
+/**
+ * Межузловой транспорт отметок снимков меню. Реализация доставляет отметку всем репликам (включая отправителя
+ * допустимо), а принятые передаёт в {@link MenuSnapshotService#apply(MenuInvalidation)}.
+ */
+public interface MenuSnapshotTransport {
+
+    void send(MenuInvalidation event);
+}
@@ -0,0 +1,71 @@
+package kirillzhdanov.identityservice.service.menu;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kirillzhdanov.identityservice.util.PgNotifyChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+
+/**
+ * Рассылка отметок снимков меню через Postgres {@code LISTEN/NOTIFY} для развёртываний без Kafka.
+ * <p>
+ * Уведомления не персистентны: отметка, пришедшая во время разрыва, теряется, и реплика покажет прежнее меню
+ * до пересборки по {@code app.menu.snapshot.max-age} или концу окна подписи ссылок.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "app.menu.snapshot", name = "transport", havingValue = "postgres")
+public class PostgresMenuSnapshotTransport implements MenuSnapshotTransport, SmartLifecycle {
+
+    private final MenuSnapshotService snapshots;
+
+    private final ObjectMapper objectMapper;
+
+    private final PgNotifyChannel channel;
+
+    public PostgresMenuSnapshotTransport(DataSource dataSource,
+                                         MenuSnapshotProperties properties,
+                                         MenuSnapshotService snapshots,
+                                         ObjectMapper objectMapper) {
+        this.snapshots = snapshots;
+        this.objectMapper = objectMapper;
+        MenuSnapshotProperties.Postgres pg = properties.getPostgres();
+        this.channel = new PgNotifyChannel(dataSource, pg.getChannel(), pg.getPollTimeout(), pg.getReconnectDelay(),
+                "menu-snapshot-pg-listener", this::handle);
+    }
+
+    @Override
+    public void send(MenuInvalidation event) {
+        try {
+            channel.send(objectMapper.writeValueAsString(event));
+        } catch (Exception e) {
+            throw new IllegalStateException("Не удалось отправить отметку меню через pg_notify", e);
+        }
+    }
+
+    @Override
+    public void start() {
+        channel.start();
+    }
+
+    @Override
+    public void stop() {
+        channel.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return channel.isRunning();
+    }
+
+    private void handle(String payload) {
+        try {
+            snapshots.apply(objectMapper.readValue(payload, MenuInvalidation.class));
+        } catch (Exception e) {
+            log.warn("Некорректная отметка меню из pg_notify: {}", e.getClass().getSimpleName());
+        }
+    }
+}
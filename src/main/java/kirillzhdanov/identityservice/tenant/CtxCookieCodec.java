@@ -0,0 +1,167 @@
+package kirillzhdanov.identityservice.tenant;
+
+import kirillzhdanov.identityservice.util.HmacSigner;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Кодирование и разбор значения HttpOnly cookie "ctx": {@code base64url(JSON).base64url(HMAC)}.
+ * <p>
+ * JSON всегда плоский и содержит только числовые поля {@code masterId}, {@code brandId}, {@code pickupPointId},
+ * {@code issuedAt}, поэтому вместо дерева Jackson используется небольшой разборщик по байтам:
+ * без промежуточных строк и узлов. Неизвестные поля пропускаются, любой другой формат — cookie игнорируется.
+ */
+public final class CtxCookieCodec {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final byte[] MASTER_ID = "masterId".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BRAND_ID = "brandId".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] PICKUP_POINT_ID = "pickupPointId".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ISSUED_AT = "issuedAt".getBytes(StandardCharsets.US_ASCII);
+
+    private CtxCookieCodec() {
+    }
+
+    /**
+     * Собирает подписанное значение cookie. Поля со значением null в JSON не попадают.
+     */
+    public static String encode(HmacSigner signer, Long masterId, Long brandId, Long pickupPointId, long issuedAt) {
+        String json = "{" +
+                (masterId != null ? "\"masterId\":" + masterId + "," : "") +
+                (brandId != null ? "\"brandId\":" + brandId + "," : "") +
+                (pickupPointId != null ? "\"pickupPointId\":" + pickupPointId + "," : "") +
+                "\"issuedAt\":" + issuedAt +
+                "}";
+        String payload = ENCODER.encodeToString(json.getBytes(StandardCharsets.UTF_8));
+        return payload + "." + signer.signBase64Url(payload);
+    }
+
+    /**
+     * Проверяет подпись и разбирает значение cookie.
+     *
+     * @return контекст или null, если значение пустое, подпись неверна или JSON не распознан
+     */
+    public static ContextResolver.Ctx decode(HmacSigner signer, String raw) {
+        if (raw == null || raw.isEmpty()) return null;
+        int dot = raw.lastIndexOf('.');
+        if (dot <= 0) return null;
+        String payload = raw.substring(0, dot);
+        if (!signer.verifyBase64Url(payload, raw.substring(dot + 1))) {
+            return null; // invalid signature
+        }
+        try {
+            return parse(DECODER.decode(payload));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Разбирает плоский JSON-объект с числовыми значениями (или null).
+     *
+     * @return контекст или null при любом отклонении от ожидаемого формата
+     */
+    static ContextResolver.Ctx parse(byte[] json) {
+        Long masterId = null;
+        Long brandId = null;
+        Long pickupPointId = null;
+        Long issuedAt = null;
+
+        int i = skipWs(json, 0);
+        if (i >= json.length || json[i] != '{') return null;
+        i = skipWs(json, i + 1);
+        if (i < json.length && json[i] == '}') {
+            return trailingOnly(json, i + 1) ? new ContextResolver.Ctx(null, null, null, null) : null;
+        }
+        while (i < json.length) {
+            // ключ
+            if (json[i] != '"') return null;
+            int keyStart = i + 1;
+            int keyEnd = keyStart;
+            while (keyEnd < json.length && json[keyEnd] != '"') {
+                if (json[keyEnd] == '\\') return null; // экранирование в наших ключах не встречается
+                keyEnd++;
+            }
+            if (keyEnd >= json.length) return null;
+            i = skipWs(json, keyEnd + 1);
+            if (i >= json.length || json[i] != ':') return null;
+            i = skipWs(json, i + 1);
+            if (i >= json.length) return null;
+
+            // значение
+            Long value = null;
+            boolean known = keyEquals(json, keyStart, keyEnd, MASTER_ID) || keyEquals(json, keyStart, keyEnd, BRAND_ID)
+                    || keyEquals(json, keyStart, keyEnd, PICKUP_POINT_ID) || keyEquals(json, keyStart, keyEnd, ISSUED_AT);
+            byte c = json[i];
+            if (c == 'n') {
+                if (!matches(json, i, "null")) return null;
+                i += 4;
+            } else if (c == '-' || (c >= '0' && c <= '9')) {
+                boolean negative = c == '-';
+                if (negative) i++;
+                int digitsStart = i;
+                long acc = 0;
+                while (i < json.length && json[i] >= '0' && json[i] <= '9') {
+                    if (i - digitsStart >= 18) return null; // не помещается в long без переполнения
+                    acc = acc * 10 + (json[i] - '0');
+                    i++;
+                }
+                if (i == digitsStart) return null;
+                if (i < json.length && (json[i] == '.' || json[i] == 'e' || json[i] == 'E')) return null;
+                value = negative ? -acc : acc;
+            } else if (c == '"' && !known) {
+                i++;
+                while (i < json.length && json[i] != '"') {
+                    if (json[i] == '\\') i++;
+                    i++;
+                }
+                if (i >= json.length) return null;
+                i++;
+            } else {
+                return null;
+            }
+
+            if (keyEquals(json, keyStart, keyEnd, MASTER_ID)) masterId = value;
+            else if (keyEquals(json, keyStart, keyEnd, BRAND_ID)) brandId = value;
+            else if (keyEquals(json, keyStart, keyEnd, PICKUP_POINT_ID)) pickupPointId = value;
+            else if (keyEquals(json, keyStart, keyEnd, ISSUED_AT)) issuedAt = value;
+
+            i = skipWs(json, i);
+            if (i >= json.length) return null;
+            if (json[i] == '}') {
+                return trailingOnly(json, i + 1) ? new ContextResolver.Ctx(masterId, brandId, pickupPointId, issuedAt) : null;
+            }
+            if (json[i] != ',') return null;
+            i = skipWs(json, i + 1);
+        }
+        return null;
+    }
+
+    private static int skipWs(byte[] json, int i) {
+        while (i < json.length && (json[i] == ' ' || json[i] == '\t' || json[i] == '\n' || json[i] == '\r')) i++;
+        return i;
+    }
+
+    private static boolean trailingOnly(byte[] json, int i) {
+        return skipWs(json, i) == json.length;
+    }
+
+    private static boolean keyEquals(byte[] json, int start, int end, byte[] key) {
+        if (end - start != key.length) return false;
+        for (int k = 0; k < key.length; k++) {
+            if (json[start + k] != key[k]) return false;
+        }
+        return true;
+    }
+
+    private static boolean matches(byte[] json, int i, String literal) {
+        if (i + literal.length() > json.length) return false;
+        for (int k = 0; k < literal.length(); k++) {
+            if (json[i + k] != literal.charAt(k)) return false;
+        }
+        return true;
+    }
+}
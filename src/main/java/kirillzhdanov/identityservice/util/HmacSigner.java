@@ -3,46 +3,81 @@ package kirillzhdanov.identityservice.util;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
+/**
+ * Потокобезопасная HMAC-подпись.
+ * <p>
+ * Ключ инициализируется один раз в конструкторе; подпись берёт клон уже проинициализированного {@link Mac}
+ * из небольшого пула и возвращает его обратно, поэтому на запрос не выполняются {@code Mac.getInstance}/{@code init}.
+ * Пул, а не {@code ThreadLocal}: на виртуальных потоках каждый запрос идёт в новом потоке, и клон не переиспользовался бы.
+ * Экземпляр рассчитан на переиспользование (один бин), а не на создание на каждый запрос.
+ */
 public class HmacSigner {
-    private final byte[] key;
-    private final String algorithm;
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private static final int POOL_SIZE = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    private final Mac prototype;
+    private final BlockingQueue<Mac> macs = new ArrayBlockingQueue<>(POOL_SIZE);
 
     public HmacSigner(String secret) {
         this(secret, "HmacSHA256");
     }
 
     public HmacSigner(String secret, String algorithm) {
-        this.key = secret == null ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
-        this.algorithm = algorithm == null ? "HmacSHA256" : algorithm;
+        byte[] key = secret == null ? new byte[0] : secret.getBytes(StandardCharsets.UTF_8);
+        String alg = algorithm == null ? "HmacSHA256" : algorithm;
+        try {
+            this.prototype = Mac.getInstance(alg);
+            this.prototype.init(new SecretKeySpec(key, alg));
+        } catch (Exception e) {
+            throw new IllegalStateException("HMAC init error", e);
+        }
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException("HMAC provider does not support clone", e);
+        }
     }
 
-    private static boolean constantTimeEquals(String a, String b) {
-        if (a == null || b == null) return false;
-        if (a.length() != b.length()) return false;
-        int result = 0;
-        for (int i = 0; i < a.length(); i++) {
-            result |= a.charAt(i) ^ b.charAt(i);
+    /**
+     * Подпись произвольных байтов. {@code doFinal} сбрасывает состояние Mac, и клон возвращается в пул;
+     * при пустом пуле создаётся новый клон, при полном — лишний отбрасывается.
+     */
+    public byte[] sign(byte[] data) {
+        Mac mac = macs.poll();
+        if (mac == null) {
+            mac = newMac();
         }
-        return result == 0;
+        byte[] result = mac.doFinal(data);
+        macs.offer(mac);
+        return result;
     }
 
     public String signBase64Url(String payload) {
         try {
-            Mac mac = Mac.getInstance(algorithm);
-            mac.init(new SecretKeySpec(key, algorithm));
-            byte[] sig = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-            return Base64.getUrlEncoder().withoutPadding().encodeToString(sig);
+            return ENCODER.encodeToString(sign(payload.getBytes(StandardCharsets.UTF_8)));
         } catch (Exception e) {
             throw new IllegalStateException("HMAC sign error", e);
         }
     }
 
+    /**
+     * Проверяет подпись base64url за постоянное время ({@link MessageDigest#isEqual}) по байтам.
+     */
     public boolean verifyBase64Url(String payload, String signature) {
+        if (payload == null || signature == null) return false;
         try {
-            String expected = signBase64Url(payload);
-            return constantTimeEquals(expected, signature);
+            byte[] expected = sign(payload.getBytes(StandardCharsets.UTF_8));
+            return MessageDigest.isEqual(expected, DECODER.decode(signature));
         } catch (Exception e) {
             return false;
         }
@@ -0,0 +1,125 @@
+package kirillzhdanov.identityservice.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Канал Postgres {@code LISTEN/NOTIFY}: отправка {@code pg_notify(channel, payload)} и приём в отдельном потоке,
+ * который держит одно соединение с {@code LISTEN channel} и переподключается после ошибок.
+ * <p>
+ * Уведомления не персистентны: пришедшие во время разрыва теряются, поэтому по каналу передаются только сигналы,
+ * состояние которых уже зафиксировано в БД. Жизненным циклом ({@link #start()}/{@link #stop()}) управляет владелец.
+ */
+@Slf4j
+public class PgNotifyChannel {
+
+    private final DataSource dataSource;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String channel;
+
+    private final Duration pollTimeout;
+
+    private final Duration reconnectDelay;
+
+    private final String threadName;
+
+    private final Consumer<String> handler;
+
+    private volatile boolean running;
+
+    private Thread listenerThread;
+
+    /**
+     * @param handler обработчик payload; вызывается в потоке слушателя, исключения логируются и не рвут соединение
+     */
+    public PgNotifyChannel(DataSource dataSource, String channel, Duration pollTimeout, Duration reconnectDelay,
+                           String threadName, Consumer<String> handler) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.channel = channel;
+        this.pollTimeout = pollTimeout;
+        this.reconnectDelay = reconnectDelay;
+        this.threadName = threadName;
+        this.handler = handler;
+    }
+
+    /**
+     * Отправляет уведомление (payload {@code pg_notify} ограничен 8000 байт).
+     */
+    public void send(String payload) {
+        jdbcTemplate.queryForObject("SELECT pg_notify(?, ?)", Object.class, channel, payload);
+    }
+
+    public void start() {
+        running = true;
+        listenerThread = Thread.ofPlatform()
+                .name(threadName)
+                .daemon(true)
+                .start(this::listenLoop);
+    }
+
+    public void stop() {
+        running = false;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void listenLoop() {
+        int timeoutMs = (int) pollTimeout.toMillis();
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                try (Statement st = connection.createStatement()) {
+                    st.execute("LISTEN " + quoteIdentifier(channel));
+                }
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(timeoutMs);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification n : notifications) {
+                        handle(n.getParameter());
+                    }
+                }
+            } catch (Exception e) {
+                if (!running) {
+                    return;
+                }
+                log.warn("LISTEN {} прерван: {}, переподключение", channel, e.getClass().getSimpleName());
+                try {
+                    Thread.sleep(reconnectDelay.toMillis());
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handle(String payload) {
+        try {
+            handler.accept(payload);
+        } catch (Exception e) {
+            log.warn("Ошибка обработки уведомления из канала {}: {}", channel, e.getClass().getSimpleName());
+        }
+    }
+
+    static String quoteIdentifier(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,80 @@
+package kirillzhdanov.identityservice.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import kirillzhdanov.identityservice.tenant.ContextResolver;
+import kirillzhdanov.identityservice.tenant.CtxCookieCodec;
+import kirillzhdanov.identityservice.util.HmacSigner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость разбора cookie "ctx" в {@code CtxCookieFilter} на один запрос.
+ * <p>
+ * {@code legacyPerRequest} повторяет прежний путь: новый {@code HmacSigner} на запрос ({@code Mac.getInstance} + {@code init}),
+ * сравнение base64-строк подписи и {@code ObjectMapper.readTree}.
+ * {@code codecPerRequest} — {@link CtxCookieCodec#decode} с переиспользуемым {@link HmacSigner}.
+ * <p>
+ * Запуск: {@code mvn test-compile} и далее main-метод этого класса из IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CtxCookieBenchmark {
+
+    private static final String SECRET = "benchmark-ctx-secret";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private HmacSigner signer;
+
+    private String cookie;
+
+    @Setup
+    public void setUp() {
+        signer = new HmacSigner(SECRET);
+        cookie = CtxCookieCodec.encode(signer, 12L, 345L, 6789L, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public ContextResolver.Ctx legacyPerRequest() throws Exception {
+        int dot = cookie.lastIndexOf('.');
+        String payload = cookie.substring(0, dot);
+        String signature = cookie.substring(dot + 1);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        String expected = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+        if (!expected.equals(signature)) return null;
+        JsonNode node = mapper.readTree(new String(Base64.getUrlDecoder().decode(payload), StandardCharsets.UTF_8));
+        return new ContextResolver.Ctx(
+                node.hasNonNull("masterId") ? node.get("masterId").asLong() : null,
+                node.hasNonNull("brandId") ? node.get("brandId").asLong() : null,
+                node.hasNonNull("pickupPointId") ? node.get("pickupPointId").asLong() : null,
+                node.hasNonNull("issuedAt") ? node.get("issuedAt").asLong() : null);
+    }
+
+    @Benchmark
+    public ContextResolver.Ctx codecPerRequest() {
+        return CtxCookieCodec.decode(signer, cookie);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(CtxCookieBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,107 @@
+package kirillzhdanov.identityservice.benchmark;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import kirillzhdanov.identityservice.model.Brand;
+import kirillzhdanov.identityservice.model.Role;
+import kirillzhdanov.identityservice.model.User;
+import kirillzhdanov.identityservice.security.CustomUserDetails;
+import kirillzhdanov.identityservice.security.JwtUtils;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
+import kirillzhdanov.identityservice.security.StatelessAccessProperties;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость разбора access-токена на один аутентифицированный запрос.
+ * <p>
+ * {@code legacyPerRequest} повторяет прежний путь {@code JwtAuthenticator}: восемь вызовов {@code extract*}/{@code validateToken},
+ * каждый из которых строил новый парсер и заново проверял HMAC-подпись.
+ * {@code snapshotPerRequest} — один разбор кешированным парсером в {@link ParsedAccessToken}.
+ * <p>
+ * Запуск: {@code mvn test-compile} и далее main-метод этого класса из IDE
+ * (или {@code java -cp target/test-classes:<test classpath> ...JwtParseBenchmark}).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtParseBenchmark {
+
+	private static final String SECRET = "benchmark_secret_key_for_jwt_token_that_is_long_enough";
+
+	private JwtUtils jwtUtils;
+
+	private Key key;
+
+	private String token;
+
+	@Setup
+	public void setUp() {
+		jwtUtils = new JwtUtils(new StatelessAccessProperties());
+		ReflectionTestUtils.setField(jwtUtils, "secret", SECRET);
+		ReflectionTestUtils.setField(jwtUtils, "accessTokenExpiration", 3600000L);
+		ReflectionTestUtils.setField(jwtUtils, "refreshTokenExpiration", 2592000000L);
+		jwtUtils.init();
+		key = Keys.hmacShaKeyFor(SECRET.getBytes());
+
+		Role role = new Role();
+		role.setId(1L);
+		role.setName(Role.RoleName.USER);
+		Brand brand = new Brand();
+		brand.setId(1L);
+		User user = User.builder()
+						.id(1L)
+						.username("bench")
+						.roles(Set.of(role))
+						.brands(Set.of(brand))
+						.build();
+		token = jwtUtils.generateAccessToken(new CustomUserDetails(user), 10L, 20L, 30L, 40L);
+	}
+
+	@Benchmark
+	public void legacyPerRequest(Blackhole bh) {
+		bh.consume(legacyClaims().get("tokenType", String.class));
+		bh.consume(legacyClaims().getSubject());
+		// validateToken: extractUsername + extractExpiration
+		bh.consume(legacyClaims().getSubject());
+		bh.consume(legacyClaims().getExpiration().before(new Date()));
+		bh.consume(legacyClaims().get("membershipId"));
+		bh.consume(legacyClaims().get("masterId"));
+		bh.consume(legacyClaims().get("brandId"));
+		bh.consume(legacyClaims().get("locationId"));
+	}
+
+	@Benchmark
+	public ParsedAccessToken snapshotPerRequest() {
+		return jwtUtils.parseToken(token);
+	}
+
+	private Claims legacyClaims() {
+		return Jwts.parserBuilder()
+				   .setSigningKey(key)
+				   .build()
+				   .parseClaimsJws(token)
+				   .getBody();
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(JwtParseBenchmark.class.getSimpleName())
+				.build();
+		new Runner(options).run();
+	}
+}
@@ -12,6 +12,7 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
 
+import kirillzhdanov.identityservice.security.PrincipalCache;
 import kirillzhdanov.identityservice.tenant.TenantContext;
 // Контейнеры поднимает TestEnvironment один раз на JVM
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -23,6 +24,9 @@ public abstract class IntegrationTestBase {
     @Autowired
     private JdbcTemplate jdbc;
 
+    @Autowired
+    private PrincipalCache principalCache;
+
     @DynamicPropertySource
     static void setProperties(DynamicPropertyRegistry registry) {
         String postgresHost = TestEnvironment.getPostgresHost();
@@ -93,6 +97,8 @@ public abstract class IntegrationTestBase {
     @BeforeEach
     void clearTenantContextBefore() {
         TenantContext.clear();
+        // Тесты меняют пользователей/membership напрямую через репозитории и переиспользуют id после TRUNCATE
+        principalCache.evictAll();
     }
 
     @AfterEach
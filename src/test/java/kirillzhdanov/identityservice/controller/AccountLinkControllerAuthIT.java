@@ -1,8 +1,10 @@
 package kirillzhdanov.identityservice.controller;
 
 import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.security.CustomUserDetails;
 import kirillzhdanov.identityservice.security.JwtAuthenticator;
 import kirillzhdanov.identityservice.security.JwtTokenExtractor;
@@ -31,7 +33,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @WebMvcTest(controllers = AccountLinkController.class,
         excludeAutoConfiguration = {OAuth2ClientAutoConfiguration.class})
-@Import(AccountLinkControllerAuthIT.TestConfig.class)
+@Import({AccountLinkControllerAuthIT.TestConfig.class, CtxCookieSignerConfig.class, CurrentUserProvider.class})
 @AutoConfigureMockMvc(addFilters = false)
 class AccountLinkControllerAuthIT {
 
@@ -1,10 +1,12 @@
 package kirillzhdanov.identityservice.controller;
 
 import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
 import kirillzhdanov.identityservice.repository.BrandRepository;
 import kirillzhdanov.identityservice.repository.ProductRepository;
 import kirillzhdanov.identityservice.repository.UserRepository;
 import kirillzhdanov.identityservice.repository.cart.CartItemRepository;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.security.JwtAuthenticator;
 import kirillzhdanov.identityservice.security.JwtTokenExtractor;
 import org.junit.jupiter.api.DisplayName;
@@ -31,7 +33,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         controllers = CartController.class,
         excludeAutoConfiguration = {OAuth2ClientAutoConfiguration.class}
 )
-@Import(CartControllerWebMvcSmokeTest.TestConfig.class)
+@Import({CartControllerWebMvcSmokeTest.TestConfig.class, CtxCookieSignerConfig.class, CurrentUserProvider.class})
 @AutoConfigureMockMvc(addFilters = false)
 class CartControllerWebMvcSmokeTest {
 
@@ -0,0 +1,93 @@
+package kirillzhdanov.identityservice.controller;
+
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.servlet.http.Cookie;
+import kirillzhdanov.identityservice.config.IntegrationTestBase;
+import kirillzhdanov.identityservice.model.User;
+import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.testutil.MembershipFixtures;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Число SQL-выражений на типичный запрос: пользователь берётся из {@code CustomUserDetails} фильтра,
+ * а не ищется заново по username в каждом контроллере.
+ * <p>
+ * «До» моделируется principal без {@code CustomUserDetails} — тогда {@code CurrentUserProvider}
+ * ищет пользователя по username, как это делали контроллеры раньше. Экономия должна ровно совпадать
+ * со стоимостью {@code findByUsername} (сам пользователь и его EAGER-коллекции), а запрос по JWT не загружает {@code User}.
+ */
+@DisplayName("CurrentUser: число SQL-выражений на запрос")
+class CurrentUserStatementCountIT extends IntegrationTestBase {
+
+    @Autowired
+    MockMvc mvc;
+    @Autowired
+    MembershipFixtures fx;
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+    @Autowired
+    UserRepository userRepository;
+
+    Statistics statistics;
+
+    @BeforeEach
+    void enableStatistics() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+    }
+
+    @Test
+    @DisplayName("GET /order/v1/my и GET /cart: по JWT без поиска пользователя по username")
+    void typicalRequests_NoUserLookup() throws Exception {
+        String username = "current-user-sql-" + System.nanoTime();
+        Cookie login = fx.registerAndLogin(username);
+
+        statistics.clear();
+        assertThat(userRepository.findByUsername(username)).isPresent();
+        long lookupCost = statistics.getPrepareStatementCount();
+        assertThat(lookupCost).as("SQL на findByUsername").isPositive();
+
+        for (String path : new String[]{"/order/v1/my", "/cart"}) {
+            // Прогрев: кеши принципала и валидности токена
+            perform(get(path).header("Authorization", "Bearer " + login.getValue()));
+
+            long withJwt = countStatements(get(path).header("Authorization", "Bearer " + login.getValue()));
+            long userLoadsWithJwt = userLoads();
+            long withLookup = countStatements(get(path).with(authentication(
+                    new UsernamePasswordAuthenticationToken(username, null, AuthorityUtils.createAuthorityList("ROLE_USER")))));
+
+            assertThat(withJwt)
+                    .as("SQL на %s: по JWT=%d, с поиском по username=%d", path, withJwt, withLookup)
+                    .isEqualTo(withLookup - lookupCost);
+            assertThat(userLoadsWithJwt).as("загрузки User на %s по JWT", path).isZero();
+        }
+    }
+
+    private long userLoads() {
+        return statistics.getEntityStatistics(User.class.getName()).getLoadCount();
+    }
+
+    private long countStatements(MockHttpServletRequestBuilder request) throws Exception {
+        statistics.clear();
+        perform(request);
+        return statistics.getPrepareStatementCount();
+    }
+
+    private void perform(MockHttpServletRequestBuilder request) throws Exception {
+        mvc.perform(request).andExpect(status().is2xxSuccessful());
+    }
+}
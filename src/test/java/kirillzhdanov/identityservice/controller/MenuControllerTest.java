@@ -0,0 +1,61 @@
+package kirillzhdanov.identityservice.controller;
+
+import kirillzhdanov.identityservice.dto.menu.PublicProductResponse;
+import kirillzhdanov.identityservice.service.BrandService;
+import kirillzhdanov.identityservice.service.menu.MenuSnapshot;
+import kirillzhdanov.identityservice.service.menu.MenuSnapshotService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class MenuControllerTest {
+
+    private static final String ETAG = "\"1-1700000000000\"";
+
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setup() {
+        MenuSnapshot snapshot = mock(MenuSnapshot.class);
+        when(snapshot.etag()).thenReturn(ETAG);
+        when(snapshot.lastModified()).thenReturn(Instant.ofEpochSecond(1_700_000_000L));
+        when(snapshot.products(0L)).thenReturn(List.of(
+                new PublicProductResponse(101L, "Хлеб", null, new BigDecimal("100.00"), null, true, null)));
+        MenuSnapshotService menuSnapshots = mock(MenuSnapshotService.class);
+        when(menuSnapshots.get(1L)).thenReturn(snapshot);
+        mockMvc = MockMvcBuilders.standaloneSetup(new MenuController(mock(BrandService.class), menuSnapshots)).build();
+    }
+
+    @Test
+    void productsCarryValidators() throws Exception {
+        mockMvc.perform(get("/menu/v1/brands/1/products"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", ETAG))
+                .andExpect(header().exists("Last-Modified"))
+                .andExpect(header().string("Cache-Control", "no-cache"))
+                .andExpect(jsonPath("$[0].id").value(101));
+    }
+
+    @Test
+    void matchingEtagAnswersNotModified() throws Exception {
+        mockMvc.perform(get("/menu/v1/products/by-brand/1").header("If-None-Match", ETAG))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    void staleEtagGetsFullResponse() throws Exception {
+        mockMvc.perform(get("/menu/v1/brands/1/products").header("If-None-Match", "\"1-1\""))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Хлеб"));
+    }
+}
@@ -1,10 +1,13 @@
 package kirillzhdanov.identityservice.controller;
 
 import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
 import kirillzhdanov.identityservice.dto.JwtUserDetailsResponse;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.security.JwtAuthenticator;
 import kirillzhdanov.identityservice.security.JwtTokenExtractor;
 import kirillzhdanov.identityservice.security.JwtUtils;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
 import kirillzhdanov.identityservice.service.TokenService;
 import kirillzhdanov.identityservice.service.impl.newImpl.UserServiceImpl;
 import org.junit.jupiter.api.DisplayName;
@@ -14,17 +17,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientAutoConfiguration;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Instant;
 import java.util.List;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @SuppressWarnings({"removal", "deprecation"})
 @WebMvcTest(controllers = TokenValidationController.class,
         excludeAutoConfiguration = {OAuth2ClientAutoConfiguration.class})
+@Import({CtxCookieSignerConfig.class, CurrentUserProvider.class})
 @AutoConfigureMockMvc(addFilters = false)
 class TokenValidationControllerIT {
 
@@ -45,14 +53,22 @@ class TokenValidationControllerIT {
     @MockitoBean
     JwtAuthenticator jwtAuthenticator;
 
+    private static ParsedAccessToken parsed(Long userId) {
+        return ParsedAccessToken.builder()
+                .token("abc")
+                .username("u")
+                .userId(userId)
+                .expiration(Instant.now().plusSeconds(60))
+                .build();
+    }
+
     @Test
     @DisplayName("POST /token/v1/validate: без заголовка теперь 400, с заголовком ок")
     void validateToken_current_200() throws Exception {
         mockMvc.perform(post("/token/v1/validate"))
                 .andExpect(status().isBadRequest());
-        Mockito.when(jwtUtils.validateTokenSignature("abc")).thenReturn(true);
-        Mockito.when(tokenService.isTokenValid("abc")).thenReturn(true);
-        Mockito.when(jwtUtils.extractUserId("abc")).thenReturn(1L);
+        Mockito.when(jwtUtils.resolveParsedToken(any(), eq("abc"))).thenReturn(parsed(1L));
+        Mockito.when(tokenService.isTokenValid(any(ParsedAccessToken.class))).thenReturn(true);
         Mockito.when(userService.getUserDetailsById(1L))
                 .thenReturn(JwtUserDetailsResponse.builder()
                         .userId(1L)
@@ -75,19 +91,33 @@ class TokenValidationControllerIT {
     @Test
     @DisplayName("POST /token/v1/validate/details невалидная подпись -> 403")
     void details_bad_signature_403() throws Exception {
-        Mockito.when(jwtUtils.validateTokenSignature("abc"))
-                .thenReturn(false);
+        Mockito.when(jwtUtils.resolveParsedToken(any(), eq("abc")))
+                .thenThrow(new io.jsonwebtoken.security.SignatureException("bad"));
+        mockMvc.perform(post("/token/v1/validate/details")
+                        .header("Authorization", "Bearer abc"))
+                .andExpect(status().isForbidden());
+    }
+
+    @Test
+    @DisplayName("POST /token/v1/validate/details истекший токен -> 403")
+    void details_expired_403() throws Exception {
+        Mockito.when(jwtUtils.resolveParsedToken(any(), eq("abc")))
+                .thenReturn(ParsedAccessToken.builder()
+                        .token("abc")
+                        .userId(1L)
+                        .expiration(Instant.now().minusSeconds(60))
+                        .build());
         mockMvc.perform(post("/token/v1/validate/details")
                         .header("Authorization", "Bearer abc"))
                 .andExpect(status().isForbidden());
+        Mockito.verifyNoInteractions(tokenService);
     }
 
     @Test
     @DisplayName("POST /token/v1/validate/details отозванный токен -> 403")
     void details_revoked_403() throws Exception {
-        Mockito.when(jwtUtils.validateTokenSignature("abc"))
-                .thenReturn(true);
-        Mockito.when(tokenService.isTokenValid("abc"))
+        Mockito.when(jwtUtils.resolveParsedToken(any(), eq("abc"))).thenReturn(parsed(1L));
+        Mockito.when(tokenService.isTokenValid(any(ParsedAccessToken.class)))
                 .thenReturn(false);
         mockMvc.perform(post("/token/v1/validate/details")
                         .header("Authorization", "Bearer abc"))
@@ -97,12 +127,9 @@ class TokenValidationControllerIT {
     @Test
     @DisplayName("POST /token/v1/validate/details не удалось извлечь userId -> 403")
     void details_no_user_id_403() throws Exception {
-        Mockito.when(jwtUtils.validateTokenSignature("abc"))
+        Mockito.when(jwtUtils.resolveParsedToken(any(), eq("abc"))).thenReturn(parsed(null));
+        Mockito.when(tokenService.isTokenValid(any(ParsedAccessToken.class)))
                 .thenReturn(true);
-        Mockito.when(tokenService.isTokenValid("abc"))
-                .thenReturn(true);
-        Mockito.when(jwtUtils.extractUserId("abc"))
-                .thenReturn(null);
         mockMvc.perform(post("/token/v1/validate/details")
                         .header("Authorization", "Bearer abc"))
                 .andExpect(status().isForbidden());
@@ -111,12 +138,9 @@ class TokenValidationControllerIT {
     @Test
     @DisplayName("POST /token/v1/validate/details пользователь не найден -> 403")
     void details_user_not_found_403() throws Exception {
-        Mockito.when(jwtUtils.validateTokenSignature("abc"))
+        Mockito.when(jwtUtils.resolveParsedToken(any(), eq("abc"))).thenReturn(parsed(1L));
+        Mockito.when(tokenService.isTokenValid(any(ParsedAccessToken.class)))
                 .thenReturn(true);
-        Mockito.when(tokenService.isTokenValid("abc"))
-                .thenReturn(true);
-        Mockito.when(jwtUtils.extractUserId("abc"))
-                .thenReturn(1L);
         Mockito.when(userService.getUserDetailsById(1L))
                 .thenReturn(null);
         mockMvc.perform(post("/token/v1/validate/details")
@@ -127,12 +151,9 @@ class TokenValidationControllerIT {
     @Test
     @DisplayName("POST /token/v1/validate/details успех -> 200")
     void details_success_200() throws Exception {
-        Mockito.when(jwtUtils.validateTokenSignature("abc"))
-                .thenReturn(true);
-        Mockito.when(tokenService.isTokenValid("abc"))
+        Mockito.when(jwtUtils.resolveParsedToken(any(), eq("abc"))).thenReturn(parsed(1L));
+        Mockito.when(tokenService.isTokenValid(any(ParsedAccessToken.class)))
                 .thenReturn(true);
-        Mockito.when(jwtUtils.extractUserId("abc"))
-                .thenReturn(1L);
         Mockito.when(userService.getUserDetailsById(1L))
                 .thenReturn(JwtUserDetailsResponse.builder()
                         .userId(1L)
@@ -2,10 +2,12 @@ package kirillzhdanov.identityservice.controller;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
 import kirillzhdanov.identityservice.dto.EmailVerificationRequest;
 import kirillzhdanov.identityservice.dto.EmailVerifiedResponse;
 import kirillzhdanov.identityservice.dto.UpdateUserRequest;
 import kirillzhdanov.identityservice.dto.UserResponse;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.security.JwtAuthenticator;
 import kirillzhdanov.identityservice.security.JwtTokenExtractor;
 import kirillzhdanov.identityservice.service.UserProfileService;
@@ -39,7 +41,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         excludeAutoConfiguration = {
                 org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientAutoConfiguration.class
         })
-@Import(UserControllerTest.TestConfig.class)
+@Import({UserControllerTest.TestConfig.class, CtxCookieSignerConfig.class, CurrentUserProvider.class})
 class UserControllerTest {
 
     @Autowired
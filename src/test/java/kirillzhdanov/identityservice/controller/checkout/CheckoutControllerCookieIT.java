@@ -2,11 +2,13 @@ package kirillzhdanov.identityservice.controller.checkout;
 
 import jakarta.servlet.http.Cookie;
 import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.model.order.DeliveryMode;
 import kirillzhdanov.identityservice.model.order.Order;
 import kirillzhdanov.identityservice.repository.UserRepository;
 import kirillzhdanov.identityservice.repository.order.OrderRepository;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.security.JwtAuthenticator;
 import kirillzhdanov.identityservice.security.JwtTokenExtractor;
 import kirillzhdanov.identityservice.service.CheckoutService;
@@ -30,7 +32,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(controllers = CheckoutController.class)
-@Import({CtxCookieFilter.class})
+@Import({CtxCookieFilter.class, CtxCookieSignerConfig.class, CurrentUserProvider.class})
 @AutoConfigureMockMvc(addFilters = true)
 class CheckoutControllerCookieIT {
 
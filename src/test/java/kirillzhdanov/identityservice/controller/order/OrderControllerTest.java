@@ -1,16 +1,18 @@
 package kirillzhdanov.identityservice.controller.order;
 
 import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
 import kirillzhdanov.identityservice.dto.order.OrderDto;
 import kirillzhdanov.identityservice.model.Brand;
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.model.order.OrderMessage;
-import kirillzhdanov.identityservice.notification.longpoll.LongPollService;
+import kirillzhdanov.identityservice.notification.longpoll.NotificationDispatcher;
 import kirillzhdanov.identityservice.repository.UserRepository;
 import kirillzhdanov.identityservice.repository.order.OrderMessageRepository;
 import kirillzhdanov.identityservice.repository.order.OrderRepository;
 import kirillzhdanov.identityservice.repository.order.OrderReviewRepository;
 import kirillzhdanov.identityservice.repository.userbrand.UserBrandMembershipRepository;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.security.JwtAuthenticator;
 import kirillzhdanov.identityservice.security.JwtTokenExtractor;
 import kirillzhdanov.identityservice.service.admin.OrderAdminService;
@@ -48,7 +50,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         excludeAutoConfiguration = {
                 org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientAutoConfiguration.class
         })
-@Import(OrderControllerTest.TestConfig.class)
+@Import({OrderControllerTest.TestConfig.class, CtxCookieSignerConfig.class, CurrentUserProvider.class})
 @AutoConfigureMockMvc
 class OrderControllerTest {
 
@@ -68,7 +70,7 @@ class OrderControllerTest {
     @MockitoBean
     OrderReviewRepository orderReviewRepository;
     @MockitoBean
-    LongPollService longPollService;
+    NotificationDispatcher notifications;
 
     @MockitoBean
     private BrandContextInterceptor brandContextInterceptor;
@@ -143,7 +145,7 @@ class OrderControllerTest {
                 .andExpect(status().isNoContent());
 
         Mockito.verify(orderMessageRepository).save(any(OrderMessage.class));
-        Mockito.verify(longPollService).publishCourierMessage(eq(1L), eq(12L), eq("hi"), eq(100L));
+        Mockito.verify(notifications).publishCourierMessage(eq(1L), eq(12L), eq("hi"), eq(100L));
     }
 
     @Test
@@ -161,8 +163,6 @@ class OrderControllerTest {
         brand.setId(10L);
         order.setBrand(brand);
         Mockito.when(orderRepository.findById(13L)).thenReturn(Optional.of(order));
-        // staff users to notify
-        Mockito.when(membershipRepository.findUserIdsByBrandId(10L)).thenReturn(List.of(2L, 3L));
         // repo should return persisted entity with id to avoid NPE in controller
         Mockito.when(orderMessageRepository.save(any(OrderMessage.class)))
                 .thenAnswer(inv -> {
@@ -183,7 +183,9 @@ class OrderControllerTest {
                 .andExpect(status().isNoContent());
 
         Mockito.verify(orderMessageRepository).save(any(OrderMessage.class));
-        Mockito.verify(longPollService, Mockito.atLeastOnce()).publishClientMessage(anyLong(), eq(13L), eq("client"), eq(101L));
+        // одно событие в топике персонала бренда вместо копии каждому сотруднику
+        Mockito.verify(notifications).publishBrandClientMessage(eq(10L), eq(13L), eq("client"), eq(101L));
+        Mockito.verifyNoInteractions(membershipRepository);
     }
 
     @Test
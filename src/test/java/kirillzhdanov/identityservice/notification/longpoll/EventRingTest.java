@@ -0,0 +1,99 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventRingTest {
+
+    private static LongPollEvent event() {
+        return LongPollEvent.builder().type(LongPollEventType.NEW_ORDER).build();
+    }
+
+    private static List<Long> ids(List<LongPollEvent> events) {
+        return events.stream().map(LongPollEvent::getId).toList();
+    }
+
+    private static List<Long> range(long fromInclusive, long toInclusive) {
+        return LongStream.rangeClosed(fromInclusive, toInclusive).boxed().toList();
+    }
+
+    @Test
+    void appendAssignsDenseIdsAndGrowsPastInitialCapacity() {
+        EventRing ring = new EventRing(100);
+        for (int i = 0; i < 40; i++) {
+            assertEquals(i + 1, ring.append(event()));
+        }
+        assertEquals(40, ring.size());
+        assertEquals(1, ring.firstId());
+        assertEquals(range(1, 40), ids(ring.after(0, 100)));
+    }
+
+    @Test
+    void afterReturnsBatchAndHasAfterReportsRemainder() {
+        EventRing ring = new EventRing(100);
+        for (int i = 0; i < 10; i++) ring.append(event());
+
+        assertEquals(range(4, 6), ids(ring.after(3, 3)));
+        assertTrue(ring.hasAfter(6));
+        assertFalse(ring.hasAfter(10));
+        assertTrue(ring.after(10, 5).isEmpty());
+        assertTrue(ring.after(3, 0).isEmpty());
+    }
+
+    @Test
+    void overflowEvictsOldestEvents() {
+        EventRing ring = new EventRing(20);
+        for (int i = 0; i < 50; i++) ring.append(event());
+
+        assertEquals(20, ring.size());
+        assertEquals(31, ring.firstId());
+        assertEquals(50, ring.lastId());
+        // since раньше окна — отдаём с самого старого хранимого
+        assertEquals(range(31, 35), ids(ring.after(5, 5)));
+        assertEquals(range(46, 50), ids(ring.tail(5)));
+    }
+
+    @Test
+    void dropUpToAdvancesHeadAndKeepsIdsMonotonic() {
+        EventRing ring = new EventRing(100);
+        for (int i = 0; i < 10; i++) ring.append(event());
+
+        assertEquals(4, ring.dropUpTo(4));
+        assertEquals(0, ring.dropUpTo(2));
+        assertEquals(range(5, 10), ids(ring.after(0, 100)));
+
+        assertEquals(6, ring.dropUpTo(Long.MAX_VALUE));
+        assertTrue(ring.isEmpty());
+        assertTrue(ring.tail(10).isEmpty());
+        assertFalse(ring.hasAfter(0));
+        assertEquals(11, ring.append(event()));
+        assertEquals(List.of(11L), ids(ring.after(0, 10)));
+    }
+
+    @Test
+    void returnedBatchIsUnmodifiable() {
+        EventRing ring = new EventRing(10);
+        ring.append(event());
+        assertThrows(UnsupportedOperationException.class, () -> ring.after(0, 10).clear());
+    }
+
+    @Test
+    void indexedCountersMatchEventsAfterCursorAcrossEvictionAndReset() {
+        UnreadCounters counters = UnreadCounters.indexed();
+        EventRing ring = new EventRing(50, counters);
+        LongPollEventType[] types = {LongPollEventType.NEW_ORDER, LongPollEventType.CLIENT_MESSAGE};
+        for (int i = 0; i < 120; i++) {
+            ring.append(LongPollEvent.builder().type(types[i % 2]).orderId((long) (i % 7)).build());
+            if (i == 80) ring.reset(ring.lastId() + 10);
+        }
+        for (long read = 0; read <= ring.lastId() + 1; read++) {
+            UnreadCounters expected = new UnreadCounters();
+            ring.after(read, 1000).forEach(expected::added);
+            assertEquals(expected.snapshot(), counters.after(read), "read=" + read);
+        }
+    }
+}
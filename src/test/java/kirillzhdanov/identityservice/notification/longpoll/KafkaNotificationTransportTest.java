@@ -0,0 +1,70 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class KafkaNotificationTransportTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @SuppressWarnings("unchecked")
+    private final KafkaTemplate<String, String> kafkaTemplate = mock(KafkaTemplate.class);
+
+    private final OutboxNotificationBroker broker = mock(OutboxNotificationBroker.class);
+
+    private final KafkaNotificationTransport transport =
+            new KafkaNotificationTransport(kafkaTemplate, new NotificationBrokerProperties(), broker, objectMapper);
+
+    @Test
+    void sentMessageIsKeyedByTopicAndReachesBroker() {
+        String topic = NotificationTopic.brandStaff(5L);
+        LongPollEvent event = LongPollEvent.builder()
+                .type(LongPollEventType.NEW_ORDER)
+                .orderId(100L)
+                .topic(topic)
+                .at(Instant.parse("2026-10-17T08:00:00Z"))
+                .build();
+        NotificationMessage message = new NotificationMessage(topic, 42, event);
+
+        transport.send(message);
+
+        // ключ — топик: события одного топика попадают в одну партицию и читаются по порядку
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(kafkaTemplate).send(eq("identity.notifications"), eq(topic), payload.capture());
+
+        transport.onMessage(payload.getValue());
+        ArgumentCaptor<NotificationMessage> received = ArgumentCaptor.forClass(NotificationMessage.class);
+        verify(broker).onMessage(received.capture());
+        assertEquals(topic, received.getValue().topic());
+        assertEquals(42, received.getValue().seq());
+        assertEquals(100L, received.getValue().event().getOrderId());
+        assertEquals(LongPollEventType.NEW_ORDER, received.getValue().event().getType());
+    }
+
+    @Test
+    void malformedPayloadIsIgnored() {
+        transport.onMessage("{not json");
+
+        verify(broker, never()).onMessage(any());
+    }
+
+    @Test
+    void sendFailureIsReported() {
+        when(kafkaTemplate.send(anyString(), anyString(), anyString())).thenThrow(new IllegalStateException("closed"));
+
+        assertThrows(IllegalStateException.class,
+                () -> transport.send(new NotificationMessage(NotificationTopic.user(1L), 1, null)));
+    }
+}
@@ -1,8 +1,10 @@
 package kirillzhdanov.identityservice.notification.longpoll;
 
 import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
 import kirillzhdanov.identityservice.repository.BrandRepository;
 import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.security.JwtAuthenticator;
 import kirillzhdanov.identityservice.security.JwtTokenExtractor;
 import org.junit.jupiter.api.DisplayName;
@@ -16,6 +18,7 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MockMvc;
@@ -32,6 +35,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         excludeAutoConfiguration = {OAuth2ClientAutoConfiguration.class},
         excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE, classes = BrandContextInterceptor.class)
 )
+@Import({CtxCookieSignerConfig.class, CurrentUserProvider.class})
 @AutoConfigureMockMvc(addFilters = false)
 class LongPollControllerNegativeWebMvcTest {
 
@@ -83,7 +87,7 @@ class LongPollControllerNegativeWebMvcTest {
         u.setId(42L);
         u.setUsername("user1");
         Mockito.when(userRepository.findByUsername("user1")).thenReturn(Optional.of(u));
-        Mockito.doThrow(new RuntimeException("boom")).when(longPollService).ack(Mockito.anyLong(), Mockito.anyLong());
+        Mockito.doThrow(new RuntimeException("boom")).when(longPollService).ack(Mockito.anyLong(), Mockito.anyLong(), Mockito.any());
 
         mockMvc.perform(post("/notifications/longpoll/ack")
                         .contentType(MediaType.APPLICATION_JSON)
@@ -98,6 +102,11 @@ class LongPollControllerNegativeWebMvcTest {
             return Mockito.mock(LongPollService.class);
         }
 
+        @Bean
+        NotificationSubscriptions notificationSubscriptions() {
+            return Mockito.mock(NotificationSubscriptions.class);
+        }
+
         @Bean
         UserRepository userRepository() {
             return Mockito.mock(UserRepository.class);
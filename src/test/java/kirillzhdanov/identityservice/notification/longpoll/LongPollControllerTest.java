@@ -2,8 +2,11 @@ package kirillzhdanov.identityservice.notification.longpoll;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
 import kirillzhdanov.identityservice.security.JwtAuthenticator;
 import kirillzhdanov.identityservice.security.JwtTokenExtractor;
+import kirillzhdanov.identityservice.security.CustomUserDetails;
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -16,6 +19,7 @@ import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -24,7 +28,9 @@ import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
@@ -34,6 +40,7 @@ import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.authentication;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
@@ -45,7 +52,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
         excludeAutoConfiguration = {
                 org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientAutoConfiguration.class
         })
-@Import(LongPollControllerTest.TestConfig.class)
+@Import({LongPollControllerTest.TestConfig.class, CtxCookieSignerConfig.class, CurrentUserProvider.class})
 class LongPollControllerTest {
 
     @Autowired
@@ -57,6 +64,9 @@ class LongPollControllerTest {
     @MockitoBean
     private LongPollService longPollService;
 
+    @MockitoBean
+    private NotificationSubscriptions subscriptions;
+
     @MockitoBean
     private UserRepository userRepository;
 
@@ -140,6 +150,51 @@ class LongPollControllerTest {
         verify(longPollService).poll(eq(777L), eq(5L), anyLong(), anyInt());
     }
 
+    @Test
+    @DisplayName("GET /notifications/longpoll -> userId берётся из CustomUserDetails фильтра без запроса в БД")
+    void poll_Authenticated_ResolveUserIdFromPrincipal() throws Exception {
+        LongPollEnvelope env = LongPollEnvelope.builder()
+                .events(List.of())
+                .nextSince(0)
+                .hasMore(false)
+                .build();
+        Mockito.when(longPollService.poll(eq(321L), anyLong(), anyLong(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(env));
+        CustomUserDetails principal = new CustomUserDetails(User.builder().id(321L).username("user3").build());
+
+        var mvcResult = mockMvc.perform(get("/notifications/longpoll")
+                        .with(authentication(new UsernamePasswordAuthenticationToken(principal, null, List.of()))))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isNoContent());
+
+        verify(longPollService).poll(eq(321L), eq(0L), anyLong(), anyInt());
+        verify(userRepository, never()).findByUsername(anyString());
+    }
+
+    @Test
+    @WithMockUser(username = "123")
+    @DisplayName("GET /notifications/longpoll -> 204, курсоры топиков персонала запоминаются для следующего poll")
+    void poll_Idle_RemembersTopicCursors() throws Exception {
+        Map<String, Long> topics = new HashMap<>();
+        topics.put("brand:5:staff", null);
+        Mockito.when(subscriptions.topics(eq(123L), any())).thenReturn(topics);
+        LongPollEnvelope env = LongPollEnvelope.builder()
+                .events(List.of())
+                .cursors(Map.of("brand:5:staff", 7L))
+                .build();
+        Mockito.when(longPollService.poll(eq(123L), anyLong(), eq(topics), anyLong(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(env));
+
+        var mvcResult = mockMvc.perform(get("/notifications/longpoll"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isNoContent());
+        verify(subscriptions).remember(123L, Map.of("brand:5:staff", 7L));
+    }
+
     @Test
     @WithMockUser(username = "123")
     @DisplayName("GET /notifications/longpoll -> 204 если сервис вернул пустой список событий (idle)")
@@ -198,7 +253,7 @@ class LongPollControllerTest {
 
         ArgumentCaptor<Long> userIdCaptor = ArgumentCaptor.forClass(Long.class);
         ArgumentCaptor<Long> lastIdCaptor = ArgumentCaptor.forClass(Long.class);
-        verify(longPollService).ack(userIdCaptor.capture(), lastIdCaptor.capture());
+        verify(longPollService).ack(userIdCaptor.capture(), lastIdCaptor.capture(), eq(Map.of()));
         org.junit.jupiter.api.Assertions.assertEquals(55L, userIdCaptor.getValue());
         org.junit.jupiter.api.Assertions.assertEquals(33L, lastIdCaptor.getValue());
     }
@@ -216,10 +271,50 @@ class LongPollControllerTest {
                         .content(objectMapper.writeValueAsString(req)))
                 .andExpect(status().isNoContent());
 
-        verify(longPollService).ack(900L, 7L);
+        verify(longPollService).ack(900L, 7L, Map.of());
         verify(userRepository).findByUsername("user2");
     }
 
+    @Test
+    @WithMockUser(username = "55")
+    @DisplayName("POST /notifications/longpoll/ack -> курсоры прочитанного только по топикам пользователя")
+    void ack_Authenticated_PassesOwnTopicCursors() throws Exception {
+        Map<String, Long> topics = new HashMap<>();
+        topics.put("brand:5:staff", null);
+        Mockito.when(subscriptions.topics(eq(55L), any())).thenReturn(topics);
+
+        LongPollAckRequest req = LongPollAckRequest.builder()
+                .lastReceivedId(3)
+                .cursors(Map.of("brand:5:staff", 40L, "brand:9:staff", 7L))
+                .build();
+        mockMvc.perform(post("/notifications/longpoll/ack")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(req)))
+                .andExpect(status().isNoContent());
+
+        verify(longPollService).ack(55L, 3L, Map.of("brand:5:staff", 40L));
+    }
+
+    @Test
+    @WithMockUser(username = "123")
+    @DisplayName("GET /notifications/longpoll/unreadCount -> 200 со счётчиками по типу и заказу, с топиками персонала")
+    void unreadCount_Authenticated_ReturnsCounters() throws Exception {
+        Map<String, Long> topics = new HashMap<>();
+        topics.put("brand:5:staff", null);
+        Mockito.when(subscriptions.topics(eq(123L), any())).thenReturn(topics);
+        Mockito.when(longPollService.unreadCount(123L, java.util.Set.of("brand:5:staff"))).thenReturn(LongPollUnreadCount.builder()
+                .total(3)
+                .byType(java.util.Map.of(LongPollEventType.COURIER_MESSAGE, 2, LongPollEventType.ORDER_STATUS_CHANGED, 1))
+                .byOrder(java.util.Map.of(10L, 3))
+                .build());
+
+        mockMvc.perform(get("/notifications/longpoll/unreadCount"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total", equalTo(3)))
+                .andExpect(jsonPath("$.byType.COURIER_MESSAGE", equalTo(2)))
+                .andExpect(jsonPath("$.byOrder.10", equalTo(3)));
+    }
+
     static class TestConfig {
         @Bean
         JwtTokenExtractor jwtTokenExtractor() {
@@ -0,0 +1,81 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Выборка «события после since» из буфера пользователя в {@link LongPollService} при 1000 накопленных событиях.
+ * <p>
+ * {@code legacyList} повторяет прежний путь: {@code stream().filter().limit().toList()} по {@code ArrayList}
+ * и ещё один проход {@code anyMatch} для {@code hasMore}. {@code ring} — {@link EventRing#after} и {@link EventRing#hasAfter}.
+ * Клиенты отстают на разное число событий: {@code since} перебирает весь буфер.
+ * Целевая нагрузка — 10k опросов в секунду (10 ops/ms на поток).
+ * <p>
+ * Лежит рядом с {@link EventRing}, так как буфер package-private.
+ * Запуск: {@code mvn test-compile} и далее main-метод этого класса из IDE.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LongPollRingBenchmark {
+
+    private static final int BUFFERED = 1000;
+
+    private static final int MAX_BATCH = 50;
+
+    private final List<LongPollEvent> list = new ArrayList<>();
+
+    private final EventRing ring = new EventRing(BUFFERED);
+
+    private long since;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < BUFFERED; i++) {
+            LongPollEvent event = LongPollEvent.builder().type(LongPollEventType.NEW_ORDER).orderId((long) i).build();
+            ring.append(event);
+            list.add(event);
+        }
+    }
+
+    private long nextSince() {
+        since = (since + 37) % BUFFERED;
+        return since;
+    }
+
+    @Benchmark
+    public boolean legacyList() {
+        long from = nextSince();
+        List<LongPollEvent> events = list.stream()
+                .filter(e -> e.getId() > from)
+                .limit(MAX_BATCH)
+                .toList();
+        long next = events.isEmpty() ? from : events.getLast().getId();
+        return list.stream().anyMatch(e -> e.getId() > next);
+    }
+
+    @Benchmark
+    public boolean ring() {
+        long from = nextSince();
+        List<LongPollEvent> events = ring.after(from, MAX_BATCH);
+        long next = events.isEmpty() ? from : events.getLast().getId();
+        return ring.hasAfter(next);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LongPollRingBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -1,19 +1,41 @@
 package kirillzhdanov.identityservice.notification.longpoll;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class LongPollServiceTest {
 
+    // созданные в тесте сервисы: планировщик и колесо таймаутов останавливаются после каждого теста
+    private final List<LongPollService> services = new ArrayList<>();
+
     private LongPollService service;
 
     @BeforeEach
     void setUp() {
-        service = new LongPollService();
+        service = service(new LongPollProperties(), null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        services.forEach(LongPollService::shutdown);
+    }
+
+    private LongPollService service(LongPollProperties properties, MockEnvironment environment) {
+        LongPollService created = new LongPollService(properties, null, environment);
+        services.add(created);
+        return created;
     }
 
     @Test
@@ -81,4 +103,221 @@ class LongPollServiceTest {
         assertEquals(7, rest.getEvents().size());
         assertFalse(rest.isHasMore());
     }
+
+    @Test
+    void wakeUpDeliversOnlyEventsAfterWaiterSince() throws Exception {
+        long userId = 1L;
+        for (int i = 0; i < 5; i++) service.publishClientMessage(userId, 1L, "old" + i, null);
+        CompletableFuture<LongPollEnvelope> f = service.poll(userId, 5, 2000, 2);
+        assertFalse(f.isDone());
+
+        for (int i = 0; i < 3; i++) service.publishClientMessage(userId, 1L, "new" + i, null);
+        LongPollEnvelope env = f.get();
+        assertEquals(List.of(6L, 7L), env.getEvents().stream().map(LongPollEvent::getId).toList());
+        assertEquals(7L, env.getNextSince());
+        assertTrue(env.isHasMore());
+    }
+
+    @Test
+    void burstOfEventsIsCoalescedIntoOneResponse() throws Exception {
+        long userId = 1L;
+        CompletableFuture<LongPollEnvelope> first = service.poll(userId, 0, 2000, 50);
+        CompletableFuture<LongPollEnvelope> second = service.poll(userId, 0, 2000, 50);
+
+        service.publishStatusChanged(userId, 101L, "QUEUED", "PREPARING");
+        service.publishStatusChanged(userId, 101L, "PREPARING", "READY");
+        service.publishStatusChanged(userId, 101L, "READY", "DELIVERED");
+
+        assertEquals(3, first.get().getEvents().size());
+        assertEquals(3, second.get().getEvents().size());
+        assertFalse(first.get().isHasMore());
+    }
+
+    @Test
+    void sinceAheadOfBufferWaitsForAnyNewEvent() throws Exception {
+        long userId = 1L;
+        service.publishClientMessage(userId, 1L, "a", null);
+        // клиент с курсором из прошлой жизни сервера ждёт любые новые события
+        CompletableFuture<LongPollEnvelope> f = service.poll(userId, 100, 2000, 50);
+        assertFalse(f.isDone());
+        service.publishClientMessage(userId, 1L, "b", null);
+        assertEquals(2, f.get().getEvents().size());
+    }
+
+    @Test
+    void sweeperEvictsIdleEmptyQueuesAndKeepsActiveOnes() throws Exception {
+        LongPollProperties props = new LongPollProperties();
+        props.setIdleTtl(Duration.ofMinutes(10));
+        props.setAbandonedTtl(Duration.ofHours(1));
+        LongPollService svc = service(props, null);
+
+        svc.publishClientMessage(1L, 1L, "a", null);
+        svc.ack(1L, 1);
+        svc.publishClientMessage(2L, 1L, "undelivered", null);
+        CompletableFuture<LongPollEnvelope> parked = svc.poll(3L, 0, 2000, 50);
+        assertEquals(3, svc.queueCount());
+
+        long later = System.nanoTime() + Duration.ofMinutes(11).toNanos();
+        assertEquals(1, svc.evictIdle(later));
+        assertEquals(2, svc.queueCount());
+
+        long muchLater = System.nanoTime() + Duration.ofHours(2).toNanos();
+        assertEquals(1, svc.evictIdle(muchLater));
+        assertEquals(0, svc.bufferedEventCount());
+        assertFalse(parked.isDone());
+
+        // после удаления очередь создаётся заново, курсор клиента из прошлой очереди не мешает
+        CompletableFuture<LongPollEnvelope> f = svc.poll(1L, 1, 2000, 50);
+        svc.publishClientMessage(1L, 1L, "b", null);
+        assertEquals(1, f.get().getEvents().size());
+    }
+
+    @Test
+    void virtualThreadModeWakesWaitersOnVirtualThread() throws Exception {
+        MockEnvironment env = new MockEnvironment().withProperty("spring.threads.virtual.enabled", "true");
+        LongPollService svc = service(new LongPollProperties(), env);
+
+        CompletableFuture<Boolean> wokenOnVirtual = svc.poll(1L, 0, 2000, 50)
+                .thenApply(envelope -> Thread.currentThread().isVirtual());
+        svc.publishClientMessage(1L, 1L, "a", null);
+        assertTrue(wokenOnVirtual.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void unreadCountFollowsPublishAndAck() {
+        service.publishStatusChanged(1L, 10L, "NEW", "PREPARING");
+        service.publishCourierMessage(1L, 10L, "a", 1L);
+        service.publishCourierMessage(1L, 11L, "b", 2L);
+        service.publishBrandNewOrder(5L, 12L); // общий топик не входит в личные счётчики
+
+        LongPollUnreadCount unread = service.unreadCount(1L);
+        assertEquals(3, unread.getTotal());
+        assertEquals(Map.of(LongPollEventType.ORDER_STATUS_CHANGED, 1, LongPollEventType.COURIER_MESSAGE, 2), unread.getByType());
+        assertEquals(Map.of(10L, 2, 11L, 1), unread.getByOrder());
+
+        service.ack(1L, 2);
+        unread = service.unreadCount(1L);
+        assertEquals(1, unread.getTotal());
+        assertEquals(Map.of(LongPollEventType.COURIER_MESSAGE, 1), unread.getByType());
+        assertEquals(Map.of(11L, 1), unread.getByOrder());
+    }
+
+    @Test
+    void unreadCountIncludesStaffTopicsAfterAckedCursor() throws Exception {
+        String brand = NotificationTopic.brandStaff(5L);
+        service.publishStatusChanged(1L, 10L, "NEW", "PREPARING");
+        service.publishBrandNewOrder(5L, 20L);
+        // без отметки прочитанного общий топик не считается
+        assertEquals(1, service.unreadCount(1L, List.of(brand)).getTotal());
+
+        service.ack(1L, 0, Map.of(brand, 1L));
+        service.publishBrandNewOrder(5L, 21L);
+        service.publishBrandClientMessage(5L, 21L, "hi", 3L);
+        LongPollUnreadCount unread = service.unreadCount(1L, List.of(brand));
+        assertEquals(3, unread.getTotal());
+        assertEquals(Map.of(LongPollEventType.ORDER_STATUS_CHANGED, 1, LongPollEventType.NEW_ORDER, 1,
+                LongPollEventType.CLIENT_MESSAGE, 1), unread.getByType());
+        assertEquals(Map.of(10L, 1, 21L, 2), unread.getByOrder());
+        // топик, на который пользователь больше не подписан, не считается
+        assertEquals(1, service.unreadCount(1L, List.of()).getTotal());
+
+        LongPollEnvelope env = service.poll(1L, 1, Map.of(brand, 1L), 10, 50).get(1, TimeUnit.SECONDS);
+        assertEquals(2, env.getEvents().size());
+        assertEquals(3, env.getUnreadCount());
+
+        service.ack(1L, 1, Map.of(brand, 3L));
+        assertEquals(0, service.unreadCount(1L, List.of(brand)).getTotal());
+    }
+
+    @Test
+    void unreadCountDropsEventsPushedOutOfBuffer() {
+        for (int i = 0; i < 1005; i++) service.publishClientMessage(1L, (long) (i % 2), "m" + i, null);
+        LongPollUnreadCount unread = service.unreadCount(1L);
+        assertEquals(1000, unread.getTotal());
+        assertEquals(1000, unread.getByType().get(LongPollEventType.CLIENT_MESSAGE));
+        assertEquals(1000, unread.getByOrder().values().stream().mapToInt(Integer::intValue).sum());
+        assertEquals(0, service.unreadCount(2L).getTotal());
+        assertEquals(1, service.queueCount());
+    }
+
+    @Test
+    void ackWithoutQueueDoesNotCreateOne() {
+        service.ack(42L, 10);
+        assertEquals(0, service.queueCount());
+    }
+
+    @Test
+    void globalCapTrimsOnlyUsersAboveFairShare() throws Exception {
+        LongPollProperties props = new LongPollProperties();
+        props.setMaxBufferedEvents(100);
+        props.setMinEventsPerUser(5);
+        LongPollService svc = service(props, null);
+
+        for (int i = 0; i < 10; i++) svc.publishClientMessage(1L, 1L, "quiet" + i, null);
+        for (int i = 0; i < 200; i++) svc.publishClientMessage(2L, 1L, "chatty" + i, null);
+        assertTrue(svc.bufferedEventCount() <= 100);
+
+        LongPollEnvelope quiet = svc.poll(1L, 0, 10, 50).get();
+        assertEquals(10, quiet.getEvents().size());
+        LongPollEnvelope chatty = svc.poll(2L, 0, 10, 200).get();
+        assertEquals(200L, chatty.getEvents().getLast().getId());
+        assertEquals(svc.bufferedEventCount() - 10, chatty.getUnreadCount());
+    }
+
+    @Test
+    void brandEventIsStoredOnceAndReadByEveryStaffCursor() throws Exception {
+        String brand = NotificationTopic.brandStaff(5L);
+        service.publishBrandNewOrder(5L, 100L);
+        service.publishBrandNewOrder(5L, 101L);
+        assertEquals(2, service.bufferedEventCount());
+
+        LongPollEnvelope first = service.poll(1L, 0, Map.of(brand, 0L), 10, 50).get();
+        assertEquals(List.of(100L, 101L), first.getEvents().stream().map(LongPollEvent::getOrderId).toList());
+        assertEquals(brand, first.getEvents().getFirst().getTopic());
+        assertEquals(2L, first.getCursors().get(brand));
+
+        LongPollEnvelope second = service.poll(2L, 0, Map.of(brand, 1L), 10, 50).get();
+        assertEquals(List.of(101L), second.getEvents().stream().map(LongPollEvent::getOrderId).toList());
+        assertEquals(2, service.bufferedEventCount());
+    }
+
+    @Test
+    void topicWithoutCursorStartsFromCurrentEnd() throws Exception {
+        String brand = NotificationTopic.brandStaff(5L);
+        service.publishBrandNewOrder(5L, 100L);
+
+        Map<String, Long> topics = new HashMap<>();
+        topics.put(brand, null);
+        CompletableFuture<LongPollEnvelope> f = service.poll(1L, 0, topics, 2000, 50);
+        assertFalse(f.isDone());
+
+        service.publishBrandNewOrder(5L, 101L);
+        LongPollEnvelope env = f.get(1, TimeUnit.SECONDS);
+        assertEquals(List.of(101L), env.getEvents().stream().map(LongPollEvent::getOrderId).toList());
+        assertEquals(0, env.getNextSince());
+        assertEquals(2L, env.getCursors().get(brand));
+    }
+
+    @Test
+    void subscriptionWakesOnPersonalEventAndKeepsTopicCursors() throws Exception {
+        String brand = NotificationTopic.brandStaff(5L);
+        service.publishBrandNewOrder(5L, 100L);
+        CompletableFuture<LongPollEnvelope> f = service.poll(1L, 0, Map.of(brand, 1L), 2000, 50);
+        assertFalse(f.isDone());
+
+        service.publishStatusChanged(1L, 7L, "QUEUED", "PREPARING");
+        LongPollEnvelope env = f.get(1, TimeUnit.SECONDS);
+        assertEquals(1, env.getEvents().size());
+        assertNull(env.getEvents().getFirst().getTopic());
+        assertEquals(1, env.getNextSince());
+        assertEquals(1L, env.getCursors().get(brand));
+    }
+
+    @Test
+    void subscriptionTimesOutWithUnchangedCursors() throws Exception {
+        String brand = NotificationTopic.brandStaff(5L);
+        LongPollEnvelope env = service.poll(1L, 0, Map.of(brand, 0L), 150, 50).get(2, TimeUnit.SECONDS);
+        assertTrue(env.getEvents().isEmpty());
+        assertEquals(0L, env.getCursors().get(brand));
+    }
 }
@@ -0,0 +1,90 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость таймаутов для 50 000 одновременно ждущих long-poll запросов.
+ * <p>
+ * За один вызов 50 000 запросов ставят 60-секундный таймаут, и каждый затем завершается событием
+ * (таймаут отменяется) — обычный путь при активных заказах. {@code scheduledExecutor} повторяет прежнюю
+ * схему {@link LongPollService}: по {@code ScheduledFuture} на запрос в однопоточном планировщике
+ * (отменённые задачи остаются в его куче до срока). {@code timeoutWheel} — {@link TimeoutWheel}.
+ * Результат — время на один запрос.
+ * <p>
+ * Лежит рядом с {@link TimeoutWheel}, так как колесо package-private.
+ * Запуск: {@code mvn test-compile} и далее main-метод этого класса из IDE.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx1g")
+@State(Scope.Thread)
+public class LongPollTimeoutBenchmark {
+
+    private static final int POLLERS = 50_000;
+
+    private static final long TIMEOUT_MS = 60_000;
+
+    private static final Runnable NOOP = () -> {
+    };
+
+    private ScheduledExecutorService scheduler;
+
+    private TimeoutWheel wheel;
+
+    private final ScheduledFuture<?>[] futures = new ScheduledFuture<?>[POLLERS];
+
+    private final TimeoutWheel.Timeout[] timeouts = new TimeoutWheel.Timeout[POLLERS];
+
+    // Свежие планировщики на каждый вызов: отменённые задачи прежней схемы иначе копились бы минуту
+    @Setup(Level.Invocation)
+    public void setUp() {
+        scheduler = Executors.newScheduledThreadPool(1);
+        wheel = new TimeoutWheel("bench-wheel", 100, 1024);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDown() {
+        scheduler.shutdownNow();
+        wheel.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POLLERS)
+    public void scheduledExecutor() {
+        for (int i = 0; i < POLLERS; i++) {
+            futures[i] = scheduler.schedule(NOOP, TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        for (int i = 0; i < POLLERS; i++) {
+            futures[i].cancel(false);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POLLERS)
+    public void timeoutWheel() {
+        for (int i = 0; i < POLLERS; i++) {
+            timeouts[i] = wheel.schedule(NOOP, TIMEOUT_MS);
+        }
+        for (int i = 0; i < POLLERS; i++) {
+            timeouts[i].cancel();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(LongPollTimeoutBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
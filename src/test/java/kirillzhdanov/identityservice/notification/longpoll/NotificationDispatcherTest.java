@@ -0,0 +1,204 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class NotificationDispatcherTest {
+
+    private static final String USER_TOPIC = NotificationTopic.user(1L);
+
+    private static final String BRAND_TOPIC = NotificationTopic.brandStaff(5L);
+
+    private final NotificationBroker broker = mock(NotificationBroker.class);
+
+    private AnnotationConfigApplicationContext context;
+
+    @AfterEach
+    void tearDown() {
+        if (context != null) context.close();
+    }
+
+    @Test
+    void eventIsPublishedOnlyAfterCommit() {
+        NotificationDispatcher dispatcher = start(new NotificationBrokerProperties());
+        TransactionTemplate tx = context.getBean(TransactionTemplate.class);
+
+        tx.executeWithoutResult(status -> {
+            dispatcher.publishStatusChanged(1L, 100L, "NEW", "PREPARING");
+            verify(broker, after(100).never()).publishAll(anyString(), anyList());
+        });
+
+        verify(broker, timeout(1000)).publishAll(eq(USER_TOPIC), argThat(events -> events.size() == 1));
+    }
+
+    @Test
+    void rolledBackTransactionPublishesNothing() {
+        NotificationDispatcher dispatcher = start(new NotificationBrokerProperties());
+        TransactionTemplate tx = context.getBean(TransactionTemplate.class);
+
+        tx.executeWithoutResult(status -> {
+            dispatcher.publishBrandNewOrder(5L, 100L);
+            status.setRollbackOnly();
+        });
+
+        verify(broker, after(200).never()).publishAll(anyString(), anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void queuedEventsAreBatchedPerTopic() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean first = new AtomicBoolean(true);
+        doAnswer(inv -> {
+            if (first.compareAndSet(true, false)) {
+                entered.countDown();
+                release.await(1, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(broker).publishAll(anyString(), anyList());
+        NotificationDispatcher dispatcher = start(new NotificationBrokerProperties());
+
+        // вне транзакции событие ставится в очередь сразу; поток отправки занят первым
+        dispatcher.publishNewOrder(1L, 99L);
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+        dispatcher.publishClientMessage(1L, 100L, "a", null);
+        dispatcher.publishBrandNewOrder(5L, 101L);
+        dispatcher.publishClientMessage(1L, 100L, "b", null);
+        release.countDown();
+
+        ArgumentCaptor<List<LongPollEvent>> user = ArgumentCaptor.forClass(List.class);
+        verify(broker, timeout(1000).times(2)).publishAll(eq(USER_TOPIC), user.capture());
+        assertEquals(List.of("a", "b"), user.getAllValues().get(1).stream().map(LongPollEvent::getText).toList());
+        verify(broker, timeout(1000)).publishAll(eq(BRAND_TOPIC), argThat(events -> events.size() == 1));
+    }
+
+    @Test
+    void fullQueueMakesCommitWaitAndKeepsTopicOrder() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> published = new CopyOnWriteArrayList<>();
+        AtomicBoolean inline = new AtomicBoolean();
+        doAnswer(inv -> {
+            if (!Thread.currentThread().isVirtual()) inline.set(true);
+            List<LongPollEvent> events = inv.getArgument(1);
+            events.forEach(e -> published.add(e.getOrderId()));
+            if (entered.getCount() > 0) {
+                entered.countDown();
+                release.await(1, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(broker).publishAll(anyString(), anyList());
+        NotificationBrokerProperties properties = new NotificationBrokerProperties();
+        properties.getDispatch().setQueueCapacity(1);
+        NotificationDispatcher dispatcher = start(properties);
+
+        dispatcher.publishNewOrder(1L, 1L);
+        assertTrue(entered.await(1, TimeUnit.SECONDS));
+        dispatcher.publishNewOrder(1L, 2L); // занимает очередь
+        CompletableFuture<Void> third = CompletableFuture.runAsync(() -> dispatcher.publishNewOrder(1L, 3L));
+        // не помещается: коммит ждёт, а не отправляет событие сам в обход очереди
+        assertThrows(TimeoutException.class, () -> third.get(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+
+        third.get(1, TimeUnit.SECONDS);
+        verify(broker, timeout(1000).atLeast(2)).publishAll(eq(USER_TOPIC), anyList());
+        await(() -> published.size() == 3);
+        assertEquals(List.of(1L, 2L, 3L), published);
+        assertFalse(inline.get());
+    }
+
+    @Test
+    void outboxModeWritesInCallerTransaction() {
+        NotificationBrokerProperties properties = new NotificationBrokerProperties();
+        properties.setType("outbox");
+        NotificationDispatcher dispatcher = start(properties);
+        TransactionTemplate tx = context.getBean(TransactionTemplate.class);
+
+        tx.executeWithoutResult(status -> {
+            dispatcher.publishBrandNewOrder(5L, 100L);
+            // строка outbox пишется вместе с заказом, а не после коммита
+            verify(broker).publish(eq(BRAND_TOPIC), any(LongPollEvent.class));
+        });
+
+        verify(broker, after(100).never()).publishAll(anyString(), anyList());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private NotificationDispatcher start(NotificationBrokerProperties properties) {
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(NotificationBroker.class, () -> broker);
+        context.registerBean(NotificationBrokerProperties.class, () -> properties);
+        context.register(TxConfig.class, NotificationDispatcher.class);
+        context.refresh();
+        return context.getBean(NotificationDispatcher.class);
+    }
+
+    @Configuration
+    @EnableTransactionManagement
+    static class TxConfig {
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new NoOpTransactionManager();
+        }
+
+        @Bean
+        TransactionTemplate transactionTemplate(PlatformTransactionManager transactionManager) {
+            return new TransactionTemplate(transactionManager);
+        }
+    }
+
+    /**
+     * Транзакции без ресурса: достаточно, чтобы работали синхронизации и фазы {@code AFTER_COMMIT}.
+     */
+    static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
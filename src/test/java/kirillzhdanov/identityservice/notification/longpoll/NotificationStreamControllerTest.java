@@ -0,0 +1,181 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import kirillzhdanov.identityservice.config.BrandContextInterceptor;
+import kirillzhdanov.identityservice.config.CtxCookieSignerConfig;
+import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.security.CurrentUserProvider;
+import kirillzhdanov.identityservice.security.JwtAuthenticator;
+import kirillzhdanov.identityservice.security.JwtTokenExtractor;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
+import kirillzhdanov.identityservice.security.revocation.TokenDenyList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.security.config.annotation.web.builders.HttpSecurity;
+import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(controllers = NotificationStreamController.class,
+        excludeAutoConfiguration = {
+                org.springframework.boot.autoconfigure.security.oauth2.client.OAuth2ClientAutoConfiguration.class
+        })
+@Import({NotificationStreamControllerTest.TestConfig.class, CtxCookieSignerConfig.class, CurrentUserProvider.class})
+class NotificationStreamControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private LongPollService longPollService;
+
+    @MockitoBean
+    private NotificationSubscriptions subscriptions;
+
+    @MockitoBean
+    private UserRepository userRepository;
+
+    @MockitoBean
+    private BrandContextInterceptor brandContextInterceptor;
+
+    @MockitoBean
+    private TokenDenyList tokenDenyList;
+
+    @BeforeEach
+    void allowRequestsThroughInterceptor() throws Exception {
+        Mockito.when(brandContextInterceptor.preHandle(Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(true);
+    }
+
+    @Test
+    @DisplayName("GET /notifications/stream -> 204 для анонима: EventSource не переподключается")
+    void stream_Unauthenticated_NoContent() throws Exception {
+        mockMvc.perform(get("/notifications/stream").accept(MediaType.TEXT_EVENT_STREAM))
+                .andExpect(status().isNoContent());
+        verifyNoInteractions(longPollService);
+    }
+
+    @Test
+    @WithMockUser(username = "123")
+    @DisplayName("GET /notifications/stream -> открывает поток и продолжает с Last-Event-ID")
+    void stream_Authenticated_ResumesFromLastEventId() throws Exception {
+        Mockito.when(longPollService.poll(eq(123L), anyLong(), anyLong(), anyInt()))
+                .thenReturn(new CompletableFuture<>());
+
+        mockMvc.perform(get("/notifications/stream")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .header("Last-Event-ID", "42")
+                        .param("since", "7"))
+                .andExpect(request().asyncStarted())
+                .andExpect(status().isOk())
+                .andExpect(header().string("X-Accel-Buffering", "no"));
+
+        verify(longPollService, timeout(2000)).poll(eq(123L), eq(42L), eq(15_000L), eq(50));
+    }
+
+    @Test
+    @WithMockUser(username = "123")
+    @DisplayName("GET /notifications/stream -> 400 только для нечислового Last-Event-ID")
+    void stream_MalformedLastEventId_BadRequest() throws Exception {
+        mockMvc.perform(get("/notifications/stream")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .header("Last-Event-ID", "abc"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(longPollService);
+    }
+
+    @Test
+    @DisplayName("Last-Event-ID: пустой — since, отрицательный — с начала, из будущего — как есть")
+    void resumeFrom() {
+        assertEquals(7L, NotificationStreamController.resumeFrom(" ", 7));
+        assertEquals(7L, NotificationStreamController.resumeFrom(null, 7));
+        assertEquals(0L, NotificationStreamController.resumeFrom("-5", 7));
+        assertEquals(900L, NotificationStreamController.resumeFrom("900", 7));
+        assertNull(NotificationStreamController.resumeFrom("1.5", 7));
+    }
+
+    @Test
+    @WithMockUser(username = "123")
+    @DisplayName("GET /notifications/stream -> 204 для истекшего access-токена")
+    void stream_ExpiredToken_NoContent() throws Exception {
+        ParsedAccessToken expired = ParsedAccessToken.builder()
+                .token("t")
+                .expiration(Instant.now().minusSeconds(1))
+                .build();
+
+        mockMvc.perform(get("/notifications/stream")
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .requestAttr(ParsedAccessToken.REQUEST_ATTRIBUTE, expired))
+                .andExpect(status().isNoContent());
+        verifyNoInteractions(longPollService);
+    }
+
+    @Test
+    @DisplayName("Таймаут потока не больше оставшегося срока access-токена")
+    void streamTimeout_CappedByTokenExpiry() {
+        Instant now = Instant.parse("2026-01-01T00:00:00Z");
+        Duration configured = Duration.ofMinutes(30);
+        ParsedAccessToken token = ParsedAccessToken.builder()
+                .token("t")
+                .expiration(now.plus(Duration.ofMinutes(10)))
+                .build();
+
+        assertEquals(Duration.ofMinutes(10), NotificationStreamController.streamTimeout(token, configured, now));
+        assertEquals(configured, NotificationStreamController.streamTimeout(token, configured, now.minus(Duration.ofHours(1))));
+        assertEquals(Duration.ZERO, NotificationStreamController.streamTimeout(token, configured, now.plus(Duration.ofMinutes(10))));
+        assertEquals(configured, NotificationStreamController.streamTimeout(null, configured, now));
+    }
+
+    static class TestConfig {
+        @Bean
+        JwtTokenExtractor jwtTokenExtractor() {
+            return Mockito.mock(JwtTokenExtractor.class);
+        }
+
+        @Bean
+        JwtAuthenticator jwtAuthenticator() {
+            return Mockito.mock(JwtAuthenticator.class);
+        }
+
+        @Bean
+        LongPollProperties longPollProperties() {
+            return new LongPollProperties();
+        }
+
+        @Bean
+        SecurityFilterChain testSecurityFilterChain(HttpSecurity http) throws Exception {
+            http
+                    .csrf(AbstractHttpConfigurer::disable)
+                    .authorizeHttpRequests(reg -> reg
+                            .requestMatchers("/notifications/stream").permitAll()
+                            .anyRequest().authenticated()
+                    )
+                    .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS));
+            return http.build();
+        }
+    }
+}
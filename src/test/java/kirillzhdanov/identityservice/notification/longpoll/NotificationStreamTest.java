@@ -0,0 +1,109 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NotificationStreamTest {
+
+    private final LongPollService service = new LongPollService(new LongPollProperties(), null, null);
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        sender.shutdownNow();
+        service.shutdown();
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 2_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in 2s");
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Эмиттер, записывающий SSE-кадры в список вместо сокета.
+     */
+    private static class RecordingEmitter extends SseEmitter {
+
+        final List<String> frames = new CopyOnWriteArrayList<>();
+
+        volatile boolean broken;
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (broken) throw new IOException("client gone");
+            StringBuilder frame = new StringBuilder();
+            builder.build().forEach(part -> frame.append(part.getData() instanceof String s ? s : "<data>"));
+            frames.add(frame.toString());
+        }
+
+        long count(String prefix) {
+            return frames.stream().filter(f -> f.startsWith(prefix)).count();
+        }
+    }
+
+    @Test
+    void resumesAfterLastEventIdAndStreamsNewEvents() throws Exception {
+        for (int i = 0; i < 3; i++) service.publishClientMessage(1L, 10L, "m" + i, null);
+        RecordingEmitter emitter = new RecordingEmitter();
+        new NotificationStream(service, 1L, 2, Map.of(), emitter, sender, 5_000, 50, () -> false).start();
+
+        awaitUntil(() -> emitter.count("id:") == 1);
+        assertTrue(emitter.frames.getFirst().startsWith(":connected"));
+        assertTrue(emitter.frames.get(1).startsWith("id:3\nevent:CLIENT_MESSAGE\n"));
+
+        service.publishStatusChanged(1L, 10L, "QUEUED", "READY");
+        awaitUntil(() -> emitter.count("id:") == 2);
+        assertTrue(emitter.frames.getLast().startsWith("id:4\nevent:ORDER_STATUS_CHANGED\n"));
+    }
+
+    @Test
+    void sendsHeartbeatWhenIdle() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+        new NotificationStream(service, 1L, 0, Map.of(), emitter, sender, 150, 50, () -> false).start();
+
+        awaitUntil(() -> emitter.count(":heartbeat") >= 2);
+        assertEquals(0, emitter.count("id:"));
+    }
+
+    @Test
+    void stopsPollingWhenClientIsGone() throws Exception {
+        RecordingEmitter emitter = new RecordingEmitter();
+        NotificationStream stream = new NotificationStream(service, 1L, 0, Map.of(), emitter, sender, 150, 50, () -> false);
+        stream.start();
+        awaitUntil(() -> emitter.count(":connected") == 1);
+
+        emitter.broken = true;
+        service.publishClientMessage(1L, 10L, "lost", null);
+        awaitUntil(stream::isClosed);
+    }
+
+    @Test
+    void closesStreamOnceTokenIsRevoked() throws Exception {
+        AtomicBoolean revoked = new AtomicBoolean();
+        RecordingEmitter emitter = new RecordingEmitter();
+        NotificationStream stream = new NotificationStream(service, 1L, 0, Map.of(), emitter, sender, 150, 50, revoked::get);
+        stream.start();
+        awaitUntil(() -> emitter.count(":connected") == 1);
+
+        revoked.set(true);
+        service.publishClientMessage(1L, 10L, "after logout", null);
+        awaitUntil(stream::isClosed);
+        assertEquals(0, emitter.count("id:"));
+    }
+}
@@ -0,0 +1,94 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class NotificationSubscriptionsTest {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry = mock();
+
+    @Test
+    void onlyStaffBrandTopicsAreSubscribedAndLookupIsCached() {
+        UserMembershipRepository repository = mock(UserMembershipRepository.class);
+        when(repository.findStaffBrandIds(1L)).thenReturn(List.of(5L, 6L));
+        NotificationSubscriptions subscriptions = new NotificationSubscriptions(repository, new LongPollProperties(),
+                meterRegistry);
+
+        Map<String, Long> topics = subscriptions.topics(1L, List.of("brand:5:staff=40", "brand:9:staff=3", "garbage"));
+        assertEquals(2, topics.size());
+        assertEquals(40L, topics.get("brand:5:staff"));
+        assertTrue(topics.containsKey("brand:6:staff"));
+        assertNull(topics.get("brand:6:staff"));
+        assertFalse(topics.containsKey("brand:9:staff"));
+
+        subscriptions.topics(1L, null);
+        verify(repository, times(1)).findStaffBrandIds(1L);
+    }
+
+    @Test
+    void clientWithoutStaffRolesHasNoExtraTopics() {
+        UserMembershipRepository repository = mock(UserMembershipRepository.class);
+        when(repository.findStaffBrandIds(2L)).thenReturn(List.of());
+        NotificationSubscriptions subscriptions = new NotificationSubscriptions(repository, new LongPollProperties(),
+                meterRegistry);
+
+        assertTrue(subscriptions.topics(2L, List.of("brand:5:staff=1")).isEmpty());
+    }
+
+    @Test
+    void clientCursorWinsOverRememberedOne() {
+        UserMembershipRepository repository = mock(UserMembershipRepository.class);
+        when(repository.findStaffBrandIds(1L)).thenReturn(List.of(5L, 6L));
+        NotificationSubscriptions subscriptions = new NotificationSubscriptions(repository, new LongPollProperties(),
+                meterRegistry);
+
+        subscriptions.remember(1L, Map.of("brand:5:staff", 3L));
+        subscriptions.remember(1L, Map.of("brand:6:staff", 8L));
+        Map<String, Long> topics = subscriptions.topics(1L, List.of("brand:5:staff=4"));
+        assertEquals(4L, topics.get("brand:5:staff"));
+        assertEquals(8L, topics.get("brand:6:staff"));
+    }
+
+    @Test
+    void staffEventPublishedBetweenPollsIsDelivered() throws Exception {
+        UserMembershipRepository repository = mock(UserMembershipRepository.class);
+        when(repository.findStaffBrandIds(1L)).thenReturn(List.of(5L));
+        NotificationSubscriptions subscriptions = new NotificationSubscriptions(repository, new LongPollProperties(),
+                meterRegistry);
+        LongPollService service = new LongPollService(new LongPollProperties(), null, null);
+        try {
+            service.publishBrandNewOrder(5L, 100L);
+
+            // первый poll без курсора: топик читается с текущего конца, ответ пустой
+            LongPollEnvelope idle = service.poll(1L, 0, subscriptions.topics(1L, null), 100, 50)
+                    .get(2, TimeUnit.SECONDS);
+            assertTrue(idle.getEvents().isEmpty());
+            subscriptions.remember(1L, idle.getCursors());
+
+            // событие между запросами: клиента в этот момент никто не ждёт
+            service.publishBrandNewOrder(5L, 101L);
+
+            LongPollEnvelope next = service.poll(1L, 0, subscriptions.topics(1L, null), 100, 50)
+                    .get(2, TimeUnit.SECONDS);
+            assertEquals(List.of(101L), next.getEvents().stream().map(LongPollEvent::getOrderId).toList());
+        } finally {
+            service.shutdown();
+        }
+    }
+
+    @Test
+    void malformedCursorsAreIgnored() {
+        Map<String, Long> cursors = NotificationSubscriptions.parse(Arrays.asList("brand:1:staff=x", "=5", null, "brand:2:staff=7"));
+        assertEquals(Map.of("brand:2:staff", 7L), cursors);
+    }
+}
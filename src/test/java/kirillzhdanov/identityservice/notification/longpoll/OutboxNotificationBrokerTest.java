@@ -0,0 +1,275 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import kirillzhdanov.identityservice.model.notification.NotificationEvent;
+import kirillzhdanov.identityservice.repository.notification.NotificationEventRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class OutboxNotificationBrokerTest {
+
+    private static final long USER = 7L;
+
+    private static final String TOPIC = NotificationTopic.user(USER);
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    /**
+     * Строки outbox топика пользователя {@link #USER}, как их видит БД.
+     */
+    private final List<NotificationEvent> rows = new CopyOnWriteArrayList<>();
+
+    /**
+     * Все строки outbox в порядке id (для выборки ретранслятора) и счётчики топиков.
+     */
+    private final List<NotificationEvent> outbox = new CopyOnWriteArrayList<>();
+
+    private final Map<String, Long> lastSeq = new HashMap<>();
+
+    private NotificationEventRepository repository;
+
+    private NotificationTransport transport;
+
+    private LongPollService local;
+
+    private PlatformTransactionManager txManager;
+
+    private OutboxNotificationBroker broker;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        repository = mock(NotificationEventRepository.class);
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            List<NotificationEvent> saved = inv.getArgument(0);
+            for (NotificationEvent row : saved) {
+                if (TOPIC.equals(row.getTopic())) rows.add(row);
+                outbox.add(row);
+            }
+            return saved;
+        });
+        when(repository.findUnsequenced(any(Limit.class))).thenAnswer(inv -> outbox.stream()
+                .filter(r -> r.getSeq() == null)
+                .limit(((Limit) inv.getArgument(0)).max())
+                .toList());
+        when(repository.reserveSeq(anyString(), anyInt())).thenAnswer(inv ->
+                lastSeq.merge(inv.getArgument(0), (long) (int) inv.getArgument(1), Long::sum));
+        when(repository.findLastSeq(TOPIC)).thenAnswer(inv -> rows.isEmpty() ? Optional.empty() : Optional.of((long) rows.size()));
+        when(repository.findByTopicAndSeqGreaterThanOrderBySeqAsc(eq(TOPIC), anyLong(), any(Limit.class))).thenAnswer(inv -> {
+            long since = inv.getArgument(1);
+            int limit = ((Limit) inv.getArgument(2)).max();
+            return rows.stream().filter(r -> r.getSeq() != null && r.getSeq() > since).limit(limit).toList();
+        });
+        when(repository.findByTopicAndSeq(eq(TOPIC), anyLong())).thenAnswer(inv -> {
+            long seq = inv.getArgument(1);
+            return rows.stream().filter(r -> r.getSeq() != null && r.getSeq() == seq).findFirst();
+        });
+
+        txManager = mock(PlatformTransactionManager.class);
+
+        transport = mock(NotificationTransport.class);
+        ObjectProvider<NotificationTransport> transportProvider = mock(ObjectProvider.class);
+        doAnswer(inv -> {
+            ((java.util.function.Consumer<NotificationTransport>) inv.getArgument(0)).accept(transport);
+            return null;
+        }).when(transportProvider).ifAvailable(any());
+
+        local = new LongPollService(new LongPollProperties(), null, null);
+        broker = new OutboxNotificationBroker(repository, local, transportProvider, new NotificationBrokerProperties(),
+                objectMapper, txManager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        broker.shutdown();
+        local.shutdown();
+    }
+
+    @Test
+    void publishStoresEventWithPerUserSeqAndFansOut() throws Exception {
+        broker.publishClientMessage(USER, 100L, "hello", null);
+        broker.publishClientMessage(USER, 100L, "world", null);
+        broker.relay();
+
+        assertEquals(List.of(1L, 2L), rows.stream().map(NotificationEvent::getSeq).toList());
+        verify(transport, times(2)).send(any(NotificationMessage.class));
+
+        LongPollEnvelope env = broker.poll(USER, 0, 10, 50).get();
+        assertEquals(List.of("hello", "world"), env.getEvents().stream().map(LongPollEvent::getText).toList());
+        assertEquals(2, env.getNextSince());
+    }
+
+    @Test
+    void rowIsWrittenWithoutSeqAndNumberedByRelay() {
+        rows.add(row(1, "m1"));
+        lastSeq.put(TOPIC, 1L);
+        // строка закоммичена перед падением узла: номера нет, сигнал после коммита потерян
+        NotificationEvent pending = unsequenced("m2");
+        rows.add(pending);
+        outbox.add(pending);
+        verify(repository, never()).reserveSeq(anyString(), anyInt());
+
+        broker.relay();
+
+        assertEquals(2L, pending.getSeq());
+        verify(repository).lockRelay(OutboxNotificationBroker.RELAY_LOCK_KEY);
+        verify(transport).send(argThat(m -> m.seq() == 2 && "m2".equals(m.event().getText())));
+        assertEquals(1, local.bufferedEventCount());
+    }
+
+    @Test
+    void relayFailureKeepsRowsForNextPass() {
+        NotificationEvent pending = unsequenced("m1");
+        rows.add(pending);
+        outbox.add(pending);
+        when(repository.lockRelay(anyLong())).thenThrow(new IllegalStateException("db down")).thenReturn(1L);
+
+        broker.relay();
+        assertNull(pending.getSeq());
+        verify(transport, never()).send(any());
+
+        broker.relay();
+        assertEquals(1L, pending.getSeq());
+        verify(transport).send(any(NotificationMessage.class));
+    }
+
+    @Test
+    void pollAfterFailoverResumesFromOutbox() throws Exception {
+        // события опубликованы другой репликой, локальный буфер о них не знает
+        for (int i = 1; i <= 5; i++) {
+            rows.add(row(i, "m" + i));
+        }
+
+        LongPollEnvelope env = broker.poll(USER, 2, 1000, 2).get(1, TimeUnit.SECONDS);
+        assertEquals(List.of(3L, 4L), env.getEvents().stream().map(LongPollEvent::getId).toList());
+        assertTrue(env.isHasMore());
+        assertEquals(1, env.getUnreadCount());
+
+        env = broker.poll(USER, 4, 1000, 2).get(1, TimeUnit.SECONDS);
+        assertEquals(List.of(5L), env.getEvents().stream().map(LongPollEvent::getId).toList());
+        assertFalse(env.isHasMore());
+    }
+
+    @Test
+    void coveredPollParksUntilRemoteMessageArrives() throws Exception {
+        rows.add(row(1, "m1"));
+        CompletableFuture<LongPollEnvelope> f = broker.poll(USER, 1, 2000, 50);
+        assertFalse(f.isDone());
+
+        rows.add(row(2, "m2"));
+        broker.onMessage(new NotificationMessage(TOPIC, 2, null));
+
+        LongPollEnvelope env = f.get(1, TimeUnit.SECONDS);
+        assertEquals("m2", env.getEvents().getFirst().getText());
+        assertEquals(2, env.getNextSince());
+    }
+
+    @Test
+    void duplicateMessagesAreIgnored() throws Exception {
+        broker.publishClientMessage(USER, 100L, "hello", null);
+        broker.relay();
+        broker.onMessage(new NotificationMessage(TOPIC, 1, null));
+        broker.onMessage(new NotificationMessage(TOPIC, 1, null));
+
+        LongPollEnvelope env = broker.poll(USER, 0, 10, 50).get();
+        assertEquals(1, env.getEvents().size());
+        assertEquals(1, local.bufferedEventCount());
+    }
+
+    @Test
+    void gapReleasesWaiterToBackfillFromOutbox() throws Exception {
+        rows.add(row(1, "m1"));
+        CompletableFuture<LongPollEnvelope> f = broker.poll(USER, 1, 2000, 50);
+
+        // рассылка seq=2 потерялась, пришёл сразу seq=3
+        rows.add(row(2, "m2"));
+        rows.add(row(3, "m3"));
+        broker.onMessage(new NotificationMessage(TOPIC, 3, null));
+
+        LongPollEnvelope released = f.get(1, TimeUnit.SECONDS);
+        assertTrue(released.getEvents().isEmpty());
+        assertEquals(1, released.getNextSince());
+        assertTrue(released.isHasMore());
+
+        LongPollEnvelope env = broker.poll(USER, released.getNextSince(), 1000, 50).get(1, TimeUnit.SECONDS);
+        assertEquals(List.of(2L, 3L), env.getEvents().stream().map(LongPollEvent::getId).toList());
+    }
+
+    @Test
+    void brandTopicEventIsStoredOnceAndBackfilledByCursor() throws Exception {
+        String brand = NotificationTopic.brandStaff(3L);
+        List<NotificationEvent> brandRows = outbox;
+        when(repository.findLastSeq(brand)).thenAnswer(inv -> Optional.of((long) brandRows.size()));
+        when(repository.findByTopicAndSeqGreaterThanOrderBySeqAsc(eq(brand), anyLong(), any(Limit.class))).thenAnswer(inv -> {
+            long since = inv.getArgument(1);
+            return brandRows.stream().filter(r -> r.getSeq() > since).toList();
+        });
+
+        broker.publishBrandNewOrder(3L, 500L);
+        broker.publishBrandNewOrder(3L, 501L);
+        broker.relay();
+        assertEquals(List.of(1L, 2L), brandRows.stream().map(NotificationEvent::getSeq).toList());
+        assertTrue(rows.isEmpty());
+        verify(repository, never()).reserveSeq(eq(TOPIC), anyInt());
+
+        // сотрудник пришёл на другую реплику с курсором 1: второе событие дочитывается из outbox
+        local.shutdown();
+        local = new LongPollService(new LongPollProperties(), null, null);
+        ObjectProvider<NotificationTransport> noTransport = mock();
+        broker.shutdown();
+        broker = new OutboxNotificationBroker(repository, local, noTransport, new NotificationBrokerProperties(),
+                objectMapper, txManager);
+        LongPollEnvelope env = broker.poll(USER, 0, java.util.Map.of(brand, 1L), 1000, 50).get(1, TimeUnit.SECONDS);
+        assertEquals(List.of(501L), env.getEvents().stream().map(LongPollEvent::getOrderId).toList());
+        assertEquals(brand, env.getEvents().getFirst().getTopic());
+        assertEquals(2L, env.getCursors().get(brand));
+    }
+
+    private NotificationEvent unsequenced(String text) {
+        NotificationEvent row = row(0, text);
+        row.setSeq(null);
+        return row;
+    }
+
+    private NotificationEvent row(long seq, String text) {
+        LongPollEvent event = LongPollEvent.builder()
+                .type(LongPollEventType.CLIENT_MESSAGE)
+                .orderId(100L)
+                .text(text)
+                .build();
+        return NotificationEvent.builder()
+                .topic(TOPIC)
+                .seq(seq)
+                .type(event.getType().name())
+                .payload(toJson(event))
+                .build();
+    }
+
+    private String toJson(LongPollEvent event) {
+        try {
+            return objectMapper.writeValueAsString(event);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class PostgresNotificationTransportTest {
+
+    private final DataSource dataSource = mock(DataSource.class);
+
+    private final OutboxNotificationBroker broker = mock(OutboxNotificationBroker.class);
+
+    private final PostgresNotificationTransport transport =
+            new PostgresNotificationTransport(dataSource, new NotificationBrokerProperties(), broker);
+
+    @Test
+    void notificationIsParsedIntoReferenceWithTopicContainingColons() {
+        transport.handle("brand:5:staff:42");
+
+        // событие не передаётся: брокер дочитает его из outbox по topic и seq
+        verify(broker).onMessage(new NotificationMessage("brand:5:staff", 42, null));
+    }
+
+    @Test
+    void malformedNotificationIsIgnored() {
+        transport.handle("user:7:");
+        transport.handle("no-separator");
+
+        verify(broker, never()).onMessage(any());
+    }
+
+    @Test
+    void sendFailureIsReported() throws Exception {
+        when(dataSource.getConnection()).thenThrow(new SQLException("connection refused"));
+
+        assertThrows(IllegalStateException.class,
+                () -> transport.send(new NotificationMessage(NotificationTopic.user(7L), 3, null)));
+    }
+}
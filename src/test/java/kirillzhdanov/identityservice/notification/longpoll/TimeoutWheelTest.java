@@ -0,0 +1,88 @@
+package kirillzhdanov.identityservice.notification.longpoll;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimeoutWheelTest {
+
+    private final TimeoutWheel wheel = new TimeoutWheel("test-wheel", 10, 8);
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void firesNotBeforeDeadlineEvenAfterSeveralRotations() throws Exception {
+        // оборот колеса 80 мс, таймаут — почти три оборота
+        CountDownLatch fired = new CountDownLatch(1);
+        AtomicLong firedAt = new AtomicLong();
+        long started = System.nanoTime();
+        wheel.schedule(() -> {
+            firedAt.set(System.nanoTime());
+            fired.countDown();
+        }, 230);
+
+        assertTrue(fired.await(2, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(firedAt.get() - started);
+        assertTrue(elapsedMs >= 230, "fired early: " + elapsedMs);
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    @Test
+    void workerStartsOnFirstSchedule() throws Exception {
+        TimeoutWheel idle = new TimeoutWheel("idle-wheel", 10, 8);
+        try {
+            assertFalse(threadAlive("idle-wheel"));
+            CountDownLatch fired = new CountDownLatch(1);
+            idle.schedule(fired::countDown, 5);
+            assertTrue(fired.await(2, TimeUnit.SECONDS));
+        } finally {
+            idle.stop();
+        }
+    }
+
+    @Test
+    void cancelledTimeoutDoesNotFire() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        TimeoutWheel.Timeout timeout = wheel.schedule(runs::incrementAndGet, 30);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(0, wheel.pendingCount());
+
+        CountDownLatch later = new CountDownLatch(1);
+        wheel.schedule(later::countDown, 60);
+        assertTrue(later.await(2, TimeUnit.SECONDS));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void expiresFiftyThousandParkedPollsInBatches() throws Exception {
+        int pollers = 50_000;
+        CountDownLatch done = new CountDownLatch(pollers / 2);
+        AtomicInteger fired = new AtomicInteger();
+        for (int i = 0; i < pollers; i++) {
+            TimeoutWheel.Timeout timeout = wheel.schedule(() -> {
+                fired.incrementAndGet();
+                done.countDown();
+            }, 50 + (i % 100));
+            // половина запросов завершается событием раньше таймаута
+            if (i % 2 == 0) timeout.cancel();
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(pollers / 2, fired.get());
+        assertEquals(0, wheel.pendingCount());
+    }
+
+    private static boolean threadAlive(String name) {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(t -> t.getName().equals(name) && t.isAlive());
+    }
+}
@@ -0,0 +1,119 @@
+package kirillzhdanov.identityservice.security;
+
+import kirillzhdanov.identityservice.model.Brand;
+import kirillzhdanov.identityservice.model.User;
+import kirillzhdanov.identityservice.model.master.MasterAccount;
+import kirillzhdanov.identityservice.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CurrentUserProviderTest {
+
+	@Mock
+	private UserRepository userRepository;
+
+	@Mock
+	private ObjectProvider<UserRepository> userRepositoryProvider;
+
+	private CurrentUserProvider provider;
+
+	@BeforeEach
+	void setUp() {
+		lenient().when(userRepositoryProvider.getIfAvailable())
+				 .thenReturn(userRepository);
+		provider = new CurrentUserProvider(userRepositoryProvider);
+	}
+
+	@Test
+	@DisplayName("CustomUserDetails из фильтра: пользователь собирается без запроса в БД")
+	void resolve_CustomUserDetails_NoQuery() {
+		MasterAccount master = new MasterAccount();
+		master.setId(70L);
+		Brand brand = new Brand();
+		brand.setId(5L);
+		brand.setMaster(master);
+		User user = User.builder()
+						.id(7L)
+						.username("alice")
+						.masterId(70L)
+						.brands(Set.of(brand))
+						.build();
+		CustomUserDetails details = new CustomUserDetails(user);
+		var auth = new UsernamePasswordAuthenticationToken(details, null, List.of());
+
+		CurrentUser current = provider.resolve(auth, new MockHttpServletRequest())
+									  .orElseThrow();
+
+		assertEquals(new CurrentUser(7L, "alice", 70L, 70L, Set.of(5L)), current);
+		verifyNoInteractions(userRepository);
+	}
+
+	@Test
+	@DisplayName("Прочий principal: один поиск по username на запрос, дальше из атрибута запроса")
+	void resolve_OtherPrincipal_LoadedOncePerRequest() {
+		User user = User.builder()
+						.id(9L)
+						.username("bob")
+						.build();
+		when(userRepository.findByUsername("bob")).thenReturn(Optional.of(user));
+		var auth = new UsernamePasswordAuthenticationToken("bob", null, AuthorityUtils.createAuthorityList("ROLE_USER"));
+		MockHttpServletRequest request = new MockHttpServletRequest();
+
+		assertEquals(9L, provider.resolve(auth, request)
+								 .orElseThrow()
+								 .id());
+		assertEquals(9L, provider.resolve(auth, request)
+								 .orElseThrow()
+								 .id());
+
+		verify(userRepository, times(1)).findByUsername("bob");
+		assertInstanceOf(CurrentUser.class, request.getAttribute(CurrentUser.REQUEST_ATTRIBUTE));
+	}
+
+	@Test
+	@DisplayName("Аноним и отсутствие аутентификации: пусто, в БД не ходим")
+	void resolve_Anonymous_Empty() {
+		var anonymous = new AnonymousAuthenticationToken("key", "anonymousUser",
+														 AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+
+		assertTrue(provider.resolve(anonymous, new MockHttpServletRequest())
+						   .isEmpty());
+		assertTrue(provider.resolve(null, null)
+						   .isEmpty());
+		verify(userRepository, never()).findByUsername(anyString());
+	}
+
+	@Test
+	@DisplayName("Кешированный пользователь другого username не переиспользуется")
+	void resolve_CachedForOtherUsername_Reloaded() {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setAttribute(CurrentUser.REQUEST_ATTRIBUTE, new CurrentUser(1L, "old", null, null, Set.of()));
+		when(userRepository.findByUsername("new")).thenReturn(Optional.of(User.builder()
+																			  .id(2L)
+																			  .username("new")
+																			  .build()));
+		var auth = new UsernamePasswordAuthenticationToken("new", null, AuthorityUtils.createAuthorityList("ROLE_USER"));
+
+		assertEquals(2L, provider.resolve(auth, request)
+								 .orElseThrow()
+								 .id());
+	}
+}
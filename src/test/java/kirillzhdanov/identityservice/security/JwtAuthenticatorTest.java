@@ -1,25 +1,36 @@
 package kirillzhdanov.identityservice.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import kirillzhdanov.identityservice.model.Role;
 import kirillzhdanov.identityservice.model.Token;
 import kirillzhdanov.identityservice.model.User;
+import kirillzhdanov.identityservice.model.master.RoleMembership;
+import kirillzhdanov.identityservice.model.master.UserMembership;
+import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
+import kirillzhdanov.identityservice.security.revocation.TokenRevocationBus;
 import kirillzhdanov.identityservice.service.TokenService;
+import kirillzhdanov.identityservice.tenant.TenantContext;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 
+import java.time.Instant;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -38,9 +49,17 @@ public class JwtAuthenticatorTest {
 	@Mock
 	private TokenService tokenService;
 
+	@Mock
+	private UserMembershipRepository userMembershipRepository;
+
 	@Mock
 	private HttpServletRequest request;
 
+	@Spy
+	private PrincipalCache principalCache = new PrincipalCache(new PrincipalCacheProperties(),
+															   new StaticListableBeanFactory().getBeanProvider(TokenRevocationBus.class),
+															   new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
 	@InjectMocks
 	private JwtAuthenticator jwtAuthenticator;
 
@@ -76,15 +95,29 @@ public class JwtAuthenticatorTest {
 		invalidToken = "invalid-token";
 	}
 
+	@AfterEach
+	void tearDown() {
+		TenantContext.clear();
+	}
+
+	private ParsedAccessToken.ParsedAccessTokenBuilder parsed(String token) {
+		return ParsedAccessToken.builder()
+								.token(token)
+								.jti("jti-1")
+								.username("testuser")
+								.tokenType(Token.TokenType.ACCESS)
+								.userId(1L)
+								.issuedAt(Instant.now())
+								.expiration(Instant.now().plusSeconds(3600));
+	}
+
 	@Test
 	@DisplayName("Обработка валидного JWT токена - успешно")
 	void processJwtToken_ValidToken_Success() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(validAccessToken)).thenReturn(Token.TokenType.ACCESS);
-		when(jwtUtils.extractUsername(validAccessToken)).thenReturn("testuser");
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken).build());
 		when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails);
-		when(jwtUtils.validateToken(validAccessToken, userDetails)).thenReturn(true);
-		when(tokenService.isTokenValid(validAccessToken)).thenReturn(true);
+		when(tokenService.isTokenValid(any(ParsedAccessToken.class))).thenReturn(true);
 		when(request.getRemoteAddr()).thenReturn("127.0.0.1");
 
 		// Выполнение
@@ -98,20 +131,57 @@ public class JwtAuthenticatorTest {
 															 .getAuthentication();
 		assertNotNull(authentication);
 		assertTrue(authentication.isAuthenticated());
-		assertEquals(userDetails, authentication.getPrincipal());
-
-		verify(jwtUtils).extractTokenType(validAccessToken);
-		verify(jwtUtils).extractUsername(validAccessToken);
+		CustomUserDetails principal = assertInstanceOf(CustomUserDetails.class, authentication.getPrincipal());
+		assertEquals(userDetails.getId(), principal.getId());
+		assertEquals(userDetails.getUsername(), principal.getUsername());
+		assertEquals(userDetails.getAuthorities(), principal.getAuthorities());
+		// В principal кешируется снимок без пароля
+		assertNull(principal.getPassword());
+
+		// Токен разбирается ровно один раз, отдельные extract* не вызываются
+		verify(jwtUtils).resolveParsedToken(request, validAccessToken);
+		verifyNoMoreInteractions(jwtUtils);
 		verify(userDetailsService).loadUserByUsername("testuser");
-		verify(jwtUtils).validateToken(validAccessToken, userDetails);
-		verify(tokenService).isTokenValid(validAccessToken);
+		verify(tokenService).isTokenValid(any(ParsedAccessToken.class));
+	}
+
+	@Test
+	@DisplayName("Обработка валидного JWT токена - TenantContext заполняется из клеймов")
+	void processJwtToken_ValidToken_FillsTenantContext() {
+		// Подготовка
+		UserMembership membership = new UserMembership();
+		membership.setRole(RoleMembership.ADMIN);
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken)
+				.membershipId(7L)
+				.masterId(3L)
+				.brandId(5L)
+				.locationId(9L)
+				.build());
+		when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails);
+		when(tokenService.isTokenValid(any(ParsedAccessToken.class))).thenReturn(true);
+		when(userMembershipRepository.findById(7L)).thenReturn(Optional.of(membership));
+
+		// Выполнение
+		boolean result = jwtAuthenticator.processJwtToken(request, validAccessToken);
+
+		// Проверка
+		assertTrue(result);
+		assertEquals(7L, TenantContext.getMembershipId());
+		assertEquals(3L, TenantContext.getMasterId());
+		assertEquals(5L, TenantContext.getBrandId());
+		assertEquals(9L, TenantContext.getLocationId());
+		assertEquals(RoleMembership.ADMIN, TenantContext.getRole());
+		verify(jwtUtils).resolveParsedToken(request, validAccessToken);
+		verifyNoMoreInteractions(jwtUtils);
 	}
 
 	@Test
 	@DisplayName("Обработка JWT токена - неверный тип токена")
 	void processJwtToken_WrongTokenType() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(refreshToken)).thenReturn(Token.TokenType.REFRESH);
+		when(jwtUtils.resolveParsedToken(request, refreshToken)).thenReturn(parsed(refreshToken)
+				.tokenType(Token.TokenType.REFRESH)
+				.build());
 
 		// Выполнение
 		boolean result = jwtAuthenticator.processJwtToken(request, refreshToken);
@@ -121,16 +191,15 @@ public class JwtAuthenticatorTest {
 		assertNull(SecurityContextHolder.getContext()
 										.getAuthentication());
 
-		verify(jwtUtils).extractTokenType(refreshToken);
-		verify(jwtUtils, never()).extractUsername(anyString());
+		verify(jwtUtils).resolveParsedToken(request, refreshToken);
 		verify(userDetailsService, never()).loadUserByUsername(anyString());
 	}
 
 	@Test
-	@DisplayName("Обработка JWT токена - ошибка при извлечении типа токена")
-	void processJwtToken_ErrorExtractingTokenType() {
+	@DisplayName("Обработка JWT токена - ошибка при разборе токена")
+	void processJwtToken_ErrorParsingToken() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(invalidToken)).thenThrow(new RuntimeException("Ошибка при извлечении типа токена"));
+		when(jwtUtils.resolveParsedToken(request, invalidToken)).thenThrow(new RuntimeException("Ошибка при разборе токена"));
 
 		// Выполнение
 		boolean result = jwtAuthenticator.processJwtToken(request, invalidToken);
@@ -140,8 +209,7 @@ public class JwtAuthenticatorTest {
 		assertNull(SecurityContextHolder.getContext()
 										.getAuthentication());
 
-		verify(jwtUtils).extractTokenType(invalidToken);
-		verify(jwtUtils, never()).extractUsername(anyString());
+		verify(jwtUtils).resolveParsedToken(request, invalidToken);
 		verify(userDetailsService, never()).loadUserByUsername(anyString());
 	}
 
@@ -149,8 +217,9 @@ public class JwtAuthenticatorTest {
 	@DisplayName("Обработка JWT токена - пустое имя пользователя")
 	void processJwtToken_EmptyUsername() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(validAccessToken)).thenReturn(Token.TokenType.ACCESS);
-		when(jwtUtils.extractUsername(validAccessToken)).thenReturn("");
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken)
+				.username("")
+				.build());
 
 		// Выполнение
 		boolean result = jwtAuthenticator.processJwtToken(request, validAccessToken);
@@ -160,17 +229,15 @@ public class JwtAuthenticatorTest {
 		assertNull(SecurityContextHolder.getContext()
 										.getAuthentication());
 
-		verify(jwtUtils).extractTokenType(validAccessToken);
-		verify(jwtUtils).extractUsername(validAccessToken);
 		verify(userDetailsService, never()).loadUserByUsername(anyString());
 	}
 
 	@Test
-	@DisplayName("Обработка JWT токена - ошибка при извлечении имени пользователя")
-	void processJwtToken_ErrorExtractingUsername() {
+	@DisplayName("Обработка JWT токена - пользователь не найден")
+	void processJwtToken_UserNotFound() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(validAccessToken)).thenReturn(Token.TokenType.ACCESS);
-		when(jwtUtils.extractUsername(validAccessToken)).thenThrow(new RuntimeException("Ошибка при извлечении имени пользователя"));
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken).build());
+		when(userDetailsService.loadUserByUsername("testuser")).thenThrow(new UsernameNotFoundException("Пользователь не найден"));
 
 		// Выполнение
 		boolean result = jwtAuthenticator.processJwtToken(request, validAccessToken);
@@ -180,39 +247,80 @@ public class JwtAuthenticatorTest {
 		assertNull(SecurityContextHolder.getContext()
 										.getAuthentication());
 
-		verify(jwtUtils).extractTokenType(validAccessToken);
-		verify(jwtUtils).extractUsername(validAccessToken);
-		verify(userDetailsService, never()).loadUserByUsername(anyString());
+		verify(userDetailsService).loadUserByUsername("testuser");
+		verify(tokenService, never()).isTokenValid(any(ParsedAccessToken.class));
 	}
 
 	@Test
-	@DisplayName("Обработка JWT токена - пользователь не найден")
-	void processJwtToken_UserNotFound() {
+	@DisplayName("Повторный запрос - principal и роль membership берутся из кеша")
+	void processJwtToken_SecondRequest_UsesPrincipalCache() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(validAccessToken)).thenReturn(Token.TokenType.ACCESS);
-		when(jwtUtils.extractUsername(validAccessToken)).thenReturn("testuser");
-		when(userDetailsService.loadUserByUsername("testuser")).thenThrow(new UsernameNotFoundException("Пользователь не найден"));
+		UserMembership membership = new UserMembership();
+		membership.setRole(RoleMembership.ADMIN);
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken).membershipId(7L)
+																										.build());
+		when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails);
+		when(tokenService.isTokenValid(any(ParsedAccessToken.class))).thenReturn(true);
+		when(userMembershipRepository.findById(7L)).thenReturn(Optional.of(membership));
 
 		// Выполнение
-		boolean result = jwtAuthenticator.processJwtToken(request, validAccessToken);
+		assertTrue(jwtAuthenticator.processJwtToken(request, validAccessToken));
+		SecurityContextHolder.clearContext();
+		TenantContext.clear();
+		assertTrue(jwtAuthenticator.processJwtToken(request, validAccessToken));
 
 		// Проверка
-		assertFalse(result);
-		assertNull(SecurityContextHolder.getContext()
-										.getAuthentication());
+		assertEquals(RoleMembership.ADMIN, TenantContext.getRole());
+		verify(userDetailsService, times(1)).loadUserByUsername("testuser");
+		verify(userMembershipRepository, times(1)).findById(7L);
+		verify(tokenService, times(2)).isTokenValid(any(ParsedAccessToken.class));
+	}
 
-		verify(jwtUtils).extractTokenType(validAccessToken);
-		verify(jwtUtils).extractUsername(validAccessToken);
-		verify(userDetailsService).loadUserByUsername("testuser");
-		verify(jwtUtils, never()).validateToken(anyString(), any());
+	@Test
+	@DisplayName("После сброса кеша principal загружается заново")
+	void processJwtToken_AfterEviction_ReloadsPrincipal() {
+		// Подготовка
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken).build());
+		when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails);
+		when(tokenService.isTokenValid(any(ParsedAccessToken.class))).thenReturn(true);
+
+		// Выполнение
+		assertTrue(jwtAuthenticator.processJwtToken(request, validAccessToken));
+		SecurityContextHolder.clearContext();
+		principalCache.evictUser("testuser");
+		assertTrue(jwtAuthenticator.processJwtToken(request, validAccessToken));
+
+		// Проверка
+		verify(userDetailsService, times(2)).loadUserByUsername("testuser");
+	}
+
+	@Test
+	@DisplayName("Сброс во время загрузки principal-а - следующий запрос перечитывает его")
+	void processJwtToken_EvictionDuringLoad_ReloadsPrincipal() {
+		// Подготовка: пока principal читается из БД, другой запрос меняет роли пользователя
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken).build());
+		when(userDetailsService.loadUserByUsername("testuser")).thenAnswer(invocation -> {
+			principalCache.evictLocally("testuser", null);
+			return userDetails;
+		}).thenReturn(userDetails);
+		when(tokenService.isTokenValid(any(ParsedAccessToken.class))).thenReturn(true);
+
+		// Выполнение
+		assertTrue(jwtAuthenticator.processJwtToken(request, validAccessToken));
+		SecurityContextHolder.clearContext();
+		assertTrue(jwtAuthenticator.processJwtToken(request, validAccessToken));
+		SecurityContextHolder.clearContext();
+		assertTrue(jwtAuthenticator.processJwtToken(request, validAccessToken));
+
+		// Проверка: загруженная до сброса запись перечитана один раз, дальше берётся из кеша
+		verify(userDetailsService, times(2)).loadUserByUsername("testuser");
 	}
 
 	@Test
 	@DisplayName("Обработка JWT токена - UserDetailsService вернул null")
 	void processJwtToken_UserDetailsServiceReturnsNull() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(validAccessToken)).thenReturn(Token.TokenType.ACCESS);
-		when(jwtUtils.extractUsername(validAccessToken)).thenReturn("testuser");
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken).build());
 		when(userDetailsService.loadUserByUsername("testuser")).thenReturn(null);
 
 		// Выполнение
@@ -223,20 +331,18 @@ public class JwtAuthenticatorTest {
 		assertNull(SecurityContextHolder.getContext()
 										.getAuthentication());
 
-		verify(jwtUtils).extractTokenType(validAccessToken);
-		verify(jwtUtils).extractUsername(validAccessToken);
 		verify(userDetailsService).loadUserByUsername("testuser");
-		verify(jwtUtils, never()).validateToken(anyString(), any());
+		verify(tokenService, never()).isTokenValid(any(ParsedAccessToken.class));
 	}
 
 	@Test
-	@DisplayName("Обработка JWT токена - невалидный JWT токен")
-	void processJwtToken_InvalidJwtToken() {
+	@DisplayName("Обработка JWT токена - истекший JWT токен")
+	void processJwtToken_ExpiredJwtToken() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(validAccessToken)).thenReturn(Token.TokenType.ACCESS);
-		when(jwtUtils.extractUsername(validAccessToken)).thenReturn("testuser");
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken)
+				.expiration(Instant.now().minusSeconds(60))
+				.build());
 		when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails);
-		when(jwtUtils.validateToken(validAccessToken, userDetails)).thenReturn(false);
 
 		// Выполнение
 		boolean result = jwtAuthenticator.processJwtToken(request, validAccessToken);
@@ -246,22 +352,37 @@ public class JwtAuthenticatorTest {
 		assertNull(SecurityContextHolder.getContext()
 										.getAuthentication());
 
-		verify(jwtUtils).extractTokenType(validAccessToken);
-		verify(jwtUtils).extractUsername(validAccessToken);
 		verify(userDetailsService).loadUserByUsername("testuser");
-		verify(jwtUtils).validateToken(validAccessToken, userDetails);
-		verify(tokenService, never()).isTokenValid(anyString());
+		verify(tokenService, never()).isTokenValid(any(ParsedAccessToken.class));
+	}
+
+	@Test
+	@DisplayName("Обработка JWT токена - токен выдан другому пользователю")
+	void processJwtToken_UsernameMismatch() {
+		// Подготовка
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken)
+				.username("otheruser")
+				.build());
+		when(userDetailsService.loadUserByUsername("otheruser")).thenReturn(userDetails);
+
+		// Выполнение
+		boolean result = jwtAuthenticator.processJwtToken(request, validAccessToken);
+
+		// Проверка
+		assertFalse(result);
+		assertNull(SecurityContextHolder.getContext()
+										.getAuthentication());
+
+		verify(tokenService, never()).isTokenValid(any(ParsedAccessToken.class));
 	}
 
 	@Test
 	@DisplayName("Обработка JWT токена - токен отозван в базе данных")
 	void processJwtToken_TokenRevokedInDatabase() {
 		// Подготовка
-		when(jwtUtils.extractTokenType(validAccessToken)).thenReturn(Token.TokenType.ACCESS);
-		when(jwtUtils.extractUsername(validAccessToken)).thenReturn("testuser");
+		when(jwtUtils.resolveParsedToken(request, validAccessToken)).thenReturn(parsed(validAccessToken).build());
 		when(userDetailsService.loadUserByUsername("testuser")).thenReturn(userDetails);
-		when(jwtUtils.validateToken(validAccessToken, userDetails)).thenReturn(true);
-		when(tokenService.isTokenValid(validAccessToken)).thenReturn(false);
+		when(tokenService.isTokenValid(any(ParsedAccessToken.class))).thenReturn(false);
 
 		// Выполнение
 		boolean result = jwtAuthenticator.processJwtToken(request, validAccessToken);
@@ -271,11 +392,8 @@ public class JwtAuthenticatorTest {
 		assertNull(SecurityContextHolder.getContext()
 										.getAuthentication());
 
-		verify(jwtUtils).extractTokenType(validAccessToken);
-		verify(jwtUtils).extractUsername(validAccessToken);
 		verify(userDetailsService).loadUserByUsername("testuser");
-		verify(jwtUtils).validateToken(validAccessToken, userDetails);
-		verify(tokenService).isTokenValid(validAccessToken);
+		verify(tokenService).isTokenValid(any(ParsedAccessToken.class));
 	}
 
 	@Test
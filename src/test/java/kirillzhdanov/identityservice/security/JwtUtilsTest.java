@@ -11,12 +11,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.security.Key;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -26,7 +27,8 @@ import static org.junit.jupiter.api.Assertions.*;
 @ExtendWith(MockitoExtension.class)
 public class JwtUtilsTest {
 
-	@InjectMocks
+	private final StatelessAccessProperties statelessAccess = new StatelessAccessProperties();
+
 	private JwtUtils jwtUtils;
 
 	private User testUser;
@@ -46,6 +48,7 @@ public class JwtUtilsTest {
 	@BeforeEach
 	void setUp() {
 		// Устанавливаем значения для полей JwtUtils
+		jwtUtils = new JwtUtils(statelessAccess);
 		String secret = "test_secret_key_for_jwt_token_that_is_long_enough";
 		ReflectionTestUtils.setField(jwtUtils, "secret", secret);
 		ReflectionTestUtils.setField(jwtUtils, "accessTokenExpiration", 3600000L); // 1 час
@@ -345,4 +348,110 @@ public class JwtUtilsTest {
 		assertNotNull(isExpired);
 		assertTrue(isExpired);
 	}
+
+	@Test
+	@DisplayName("Разбор токена в снимок - все клеймы за один проход")
+	void parseToken_Success() {
+		// Выполнение
+		ParsedAccessToken parsed = jwtUtils.parseToken(accessToken);
+
+		// Проверка
+		assertEquals(accessToken, parsed.token());
+		assertNotNull(parsed.jti());
+		assertEquals(testUser.getUsername(), parsed.username());
+		assertTrue(parsed.isAccess());
+		assertEquals(testUser.getId(), parsed.userId());
+		assertEquals(Set.of(1L, 2L), new HashSet<>(parsed.brandIds()));
+		assertEquals(Set.of("USER", "ADMIN"), new HashSet<>(parsed.roles()));
+		assertFalse(parsed.isExpired());
+		assertEquals(jwtUtils.extractExpiration(accessToken).toInstant(), parsed.expiration());
+	}
+
+	@Test
+	@DisplayName("Разбор токена в снимок - клеймы контекста")
+	void parseToken_ContextClaims() {
+		// Подготовка
+		String token = jwtUtils.generateAccessToken(customUserDetails, 11L, 22L, 33L, 44L);
+
+		// Выполнение
+		ParsedAccessToken parsed = jwtUtils.parseToken(token);
+
+		// Проверка
+		assertEquals(11L, parsed.membershipId());
+		assertEquals(22L, parsed.masterId());
+		assertEquals(33L, parsed.brandId());
+		assertEquals(44L, parsed.locationId());
+	}
+
+	@Test
+	@DisplayName("Разбор токена в снимок - истекший токен возвращается с признаком истечения")
+	void parseToken_ExpiredToken() {
+		// Выполнение
+		ParsedAccessToken parsed = jwtUtils.parseToken(expiredToken);
+
+		// Проверка
+		assertTrue(parsed.isExpired());
+		assertEquals(testUser.getUsername(), parsed.username());
+	}
+
+	@Test
+	@DisplayName("Разбор токена в снимок - неверная подпись")
+	void parseToken_InvalidSignature() {
+		// Выполнение и проверка
+		assertThrows(SignatureException.class, () -> jwtUtils.parseToken(invalidSignatureToken));
+	}
+
+	@Test
+	@DisplayName("Разбор токена в рамках запроса - повторный вызов переиспользует снимок")
+	void resolveParsedToken_ReusesRequestAttribute() {
+		// Подготовка
+		MockHttpServletRequest request = new MockHttpServletRequest();
+
+		// Выполнение
+		ParsedAccessToken first = jwtUtils.resolveParsedToken(request, accessToken);
+		ParsedAccessToken second = jwtUtils.resolveParsedToken(request, accessToken);
+		ParsedAccessToken other = jwtUtils.resolveParsedToken(request, refreshToken);
+
+		// Проверка
+		assertSame(first, second);
+		assertNotSame(first, other);
+		assertSame(other, request.getAttribute(ParsedAccessToken.REQUEST_ATTRIBUTE));
+	}
+
+	@Test
+	@DisplayName("Проверка подписи - истекший токен невалиден")
+	void validateTokenSignature_ExpiredToken() {
+		// Выполнение и проверка
+		assertTrue(jwtUtils.validateTokenSignature(accessToken));
+		assertFalse(jwtUtils.validateTokenSignature(expiredToken));
+		assertFalse(jwtUtils.validateTokenSignature(invalidSignatureToken));
+	}
+
+	@Test
+	@DisplayName("Stateless-режим - короткий срок жизни и claim tokenEpoch")
+	void generateAccessToken_StatelessMode() {
+		// Подготовка
+		statelessAccess.setEnabled(true);
+		statelessAccess.setExpiration(Duration.ofMinutes(15));
+		testUser.setTokenEpoch(7L);
+
+		// Выполнение
+		ParsedAccessToken parsed = jwtUtils.parseToken(jwtUtils.generateAccessToken(customUserDetails));
+		ParsedAccessToken withContext = jwtUtils.parseToken(jwtUtils.generateAccessToken(customUserDetails, 1L, 2L, 3L, 4L));
+
+		// Проверка
+		assertEquals(7L, parsed.tokenEpoch());
+		assertEquals(7L, withContext.tokenEpoch());
+		assertTrue(parsed.expiration().isBefore(parsed.issuedAt().plusSeconds(15 * 60 + 1)));
+	}
+
+	@Test
+	@DisplayName("Обычный режим - claim tokenEpoch отсутствует")
+	void generateAccessToken_StatefulMode_NoEpoch() {
+		// Выполнение
+		ParsedAccessToken parsed = jwtUtils.parseToken(accessToken);
+
+		// Проверка
+		assertNull(parsed.tokenEpoch());
+	}
 }
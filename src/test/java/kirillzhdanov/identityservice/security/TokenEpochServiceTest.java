@@ -0,0 +1,67 @@
+package kirillzhdanov.identityservice.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import kirillzhdanov.identityservice.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenEpochServiceTest {
+
+	@Mock
+	private UserRepository userRepository;
+
+	private TokenEpochService service;
+
+	@BeforeEach
+	void setUp() {
+		StatelessAccessProperties properties = new StatelessAccessProperties();
+		properties.setEnabled(true);
+		service = new TokenEpochService(properties, userRepository,
+										new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+	}
+
+	@Test
+	@DisplayName("Эпоха пользователя читается из БД один раз и далее берётся из кеша")
+	void currentEpoch_Cached() {
+		when(userRepository.findTokenEpochById(1L)).thenReturn(Optional.of(3L));
+
+		assertEquals(3L, service.currentEpoch(1L));
+		assertEquals(3L, service.currentEpoch(1L));
+
+		verify(userRepository, times(1)).findTokenEpochById(1L);
+	}
+
+	@Test
+	@DisplayName("Инкремент эпохи сбрасывает кеш и возвращает новое значение")
+	void bump_InvalidatesCache() {
+		when(userRepository.findTokenEpochById(1L)).thenReturn(Optional.of(3L), Optional.of(4L), Optional.of(4L));
+		assertEquals(3L, service.currentEpoch(1L));
+
+		long bumped = service.bump(1L);
+
+		assertEquals(4L, bumped);
+		assertEquals(4L, service.currentEpoch(1L));
+		verify(userRepository).incrementTokenEpoch(1L);
+	}
+
+	@Test
+	@DisplayName("Неизвестный пользователь - эпохи нет")
+	void currentEpoch_UnknownUser() {
+		when(userRepository.findTokenEpochById(9L)).thenReturn(Optional.empty());
+
+		assertNull(service.currentEpoch(9L));
+		assertNull(service.currentEpoch(null));
+	}
+}
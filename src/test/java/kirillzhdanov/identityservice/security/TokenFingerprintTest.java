@@ -0,0 +1,27 @@
+package kirillzhdanov.identityservice.security;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenFingerprintTest {
+
+	@Test
+	@DisplayName("Отпечаток - SHA-256 от UTF-8 строки токена (как sha256(convert_to(token, 'UTF8')) в БД)")
+	void of_MatchesSha256() {
+		byte[] hash = TokenFingerprint.of("abc");
+
+		assertEquals(TokenFingerprint.LENGTH, hash.length);
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", HexFormat.of()
+																								  .formatHex(hash));
+	}
+
+	@Test
+	@DisplayName("Отпечаток null-токена - исключение")
+	void of_Null_Throws() {
+		assertThrows(IllegalArgumentException.class, () -> TokenFingerprint.of(null));
+	}
+}
@@ -0,0 +1,130 @@
+package kirillzhdanov.identityservice.security;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenValidityCacheTest {
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private TokenValidityCache cache;
+
+	private final AtomicInteger dbCalls = new AtomicInteger();
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		cache = newCache(true);
+		dbCalls.set(0);
+	}
+
+	private TokenValidityCache newCache(boolean enabled) {
+		TokenValidityCacheProperties properties = new TokenValidityCacheProperties();
+		properties.setEnabled(enabled);
+		properties.setMaxSize(100);
+		StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+		beanFactory.addBean("meterRegistry", meterRegistry);
+		return new TokenValidityCache(properties, beanFactory.getBeanProvider(MeterRegistry.class));
+	}
+
+	private static ParsedAccessToken token(String jti, Long userId) {
+		return ParsedAccessToken.builder()
+								.token("t-" + jti)
+								.jti(jti)
+								.userId(userId)
+								.expiration(Instant.now().plusSeconds(3600))
+								.build();
+	}
+
+	private boolean db(boolean result) {
+		dbCalls.incrementAndGet();
+		return result;
+	}
+
+	@Test
+	@DisplayName("Повторная проверка валидного токена не идёт в БД")
+	void validToken_CachedUntilInvalidated() {
+		ParsedAccessToken t = token("a", 1L);
+
+		assertTrue(cache.isValid(t, () -> db(true)));
+		assertTrue(cache.isValid(t, () -> db(true)));
+		assertEquals(1, dbCalls.get());
+
+		cache.invalidate("a");
+		assertFalse(cache.isValid(t, () -> db(false)));
+		assertEquals(2, dbCalls.get());
+	}
+
+	@Test
+	@DisplayName("Отрицательный результат не кешируется")
+	void invalidToken_NotCached() {
+		ParsedAccessToken t = token("b", 1L);
+
+		assertFalse(cache.isValid(t, () -> db(false)));
+		assertFalse(cache.isValid(t, () -> db(false)));
+		assertEquals(2, dbCalls.get());
+	}
+
+	@Test
+	@DisplayName("Сброс по пользователю удаляет только его токены")
+	void invalidateUser_RemovesOnlyUserEntries() {
+		cache.isValid(token("u1-a", 1L), () -> db(true));
+		cache.isValid(token("u1-b", 1L), () -> db(true));
+		cache.isValid(token("u2-a", 2L), () -> db(true));
+
+		cache.invalidateUser(1L);
+
+		assertEquals(1, cache.size());
+		cache.isValid(token("u2-a", 2L), () -> db(true));
+		assertEquals(3, dbCalls.get());
+	}
+
+	@Test
+	@DisplayName("Истекший токен не попадает в кеш")
+	void expiredToken_NotCached() {
+		ParsedAccessToken expired = ParsedAccessToken.builder()
+													 .token("t")
+													 .jti("e")
+													 .expiration(Instant.now().minusSeconds(1))
+													 .build();
+
+		cache.isValid(expired, () -> db(true));
+
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	@DisplayName("Отключённый кеш всегда делегирует проверку")
+	void disabled_AlwaysDelegates() {
+		TokenValidityCache disabled = newCache(false);
+		ParsedAccessToken t = token("c", 1L);
+
+		disabled.isValid(t, () -> db(true));
+		disabled.isValid(t, () -> db(true));
+
+		assertFalse(disabled.isEnabled());
+		assertEquals(2, dbCalls.get());
+	}
+
+	@Test
+	@DisplayName("Метрики попаданий и промахов публикуются в MeterRegistry")
+	void metrics_HitsAndMisses() {
+		ParsedAccessToken t = token("m", 1L);
+		cache.isValid(t, () -> db(true));
+		cache.isValid(t, () -> db(true));
+
+		double hits = meterRegistry.get("cache.gets").tag("cache", "jwt.validity").tag("result", "hit").functionCounter().count();
+		double misses = meterRegistry.get("cache.gets").tag("cache", "jwt.validity").tag("result", "miss").functionCounter().count();
+		assertEquals(1.0, hits);
+		assertEquals(1.0, misses);
+	}
+}
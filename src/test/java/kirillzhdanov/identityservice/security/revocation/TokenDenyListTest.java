@@ -0,0 +1,89 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
+import kirillzhdanov.identityservice.security.PrincipalCache;
+import kirillzhdanov.identityservice.security.TokenEpochService;
+import kirillzhdanov.identityservice.security.TokenValidityCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class TokenDenyListTest {
+
+	@Mock
+	private TokenValidityCache tokenValidityCache;
+
+	@Mock
+	private TokenEpochService tokenEpochService;
+
+	@Mock
+	private PrincipalCache principalCache;
+
+	private TokenDenyList denyList;
+
+	@BeforeEach
+	void setUp() {
+		denyList = new TokenDenyList(tokenValidityCache, tokenEpochService, principalCache, new TokenRevocationProperties());
+	}
+
+	private static ParsedAccessToken token(String jti, Long userId, Instant issuedAt) {
+		return ParsedAccessToken.builder()
+								.token("t-" + jti)
+								.jti(jti)
+								.userId(userId)
+								.issuedAt(issuedAt)
+								.build();
+	}
+
+	@Test
+	@DisplayName("Отзыв по jti запрещает только этот токен и сбрасывает его запись в кеше")
+	void tokenEvent_DeniesJti() {
+		Instant iat = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+		denyList.apply(RevocationEvent.token("a", 1L, "node"));
+
+		assertTrue(denyList.isDenied(token("a", 1L, iat)));
+		assertFalse(denyList.isDenied(token("b", 1L, iat)));
+		verify(tokenValidityCache).invalidate("a");
+	}
+
+	@Test
+	@DisplayName("Отзыв по пользователю запрещает токены, выпущенные раньше (но не в ту же секунду), и сбрасывает кеш эпохи")
+	void userEvent_DeniesOlderTokens() {
+		RevocationEvent event = RevocationEvent.allUserTokens(7L, "node");
+		Instant cutoff = event.revokedBefore().truncatedTo(ChronoUnit.SECONDS);
+
+		denyList.apply(event);
+
+		assertTrue(denyList.isDenied(token("old", 7L, cutoff.minusSeconds(5))));
+		assertFalse(denyList.isDenied(token("same-second", 7L, cutoff)));
+		assertFalse(denyList.isDenied(token("other-user", 8L, cutoff.minusSeconds(5))));
+		verify(tokenValidityCache).invalidateUser(7L);
+		verify(tokenEpochService).invalidate(7L);
+	}
+
+	@Test
+	@DisplayName("Сброс principal-а с другой реплики чистит PrincipalCache и не запрещает токены пользователя")
+	void principalEvent_EvictsPrincipalCache() {
+		Instant iat = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+
+		denyList.apply(RevocationEvent.principalChanged("alice", 5L, "node"));
+
+		verify(principalCache).evictLocally("alice", 5L);
+		assertFalse(denyList.isDenied(token("a", 1L, iat.minusSeconds(5))));
+		verify(tokenValidityCache, never()).invalidateUser(any());
+	}
+}
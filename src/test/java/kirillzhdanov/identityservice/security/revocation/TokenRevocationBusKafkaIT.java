@@ -0,0 +1,173 @@
+package kirillzhdanov.identityservice.security.revocation;
+
+import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.model.master.RoleMembership;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
+import kirillzhdanov.identityservice.security.PrincipalCache;
+import kirillzhdanov.identityservice.security.PrincipalCacheProperties;
+import kirillzhdanov.identityservice.security.StatelessAccessProperties;
+import kirillzhdanov.identityservice.security.TokenEpochService;
+import kirillzhdanov.identityservice.security.TokenValidityCache;
+import kirillzhdanov.identityservice.security.TokenValidityCacheProperties;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaKraftBroker;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Две «реплики» (два независимых Spring-контекста) на одном встроенном Kafka-брокере:
+ * отзыв на узле A должен отклонять токен на узле B без обращения к БД.
+ */
+class TokenRevocationBusKafkaIT {
+
+	private static final String TOPIC = "identity.token-revocations.it";
+
+	private static EmbeddedKafkaKraftBroker broker;
+
+	private static ConfigurableApplicationContext nodeA;
+
+	private static ConfigurableApplicationContext nodeB;
+
+	@Configuration(proxyBeanMethods = false)
+	@ImportAutoConfiguration({KafkaAutoConfiguration.class, JacksonAutoConfiguration.class})
+	@EnableConfigurationProperties({TokenValidityCacheProperties.class, PrincipalCacheProperties.class, TokenRevocationProperties.class, StatelessAccessProperties.class})
+	@Import({TokenValidityCache.class, TokenEpochService.class, PrincipalCache.class, TokenDenyList.class, TokenRevocationBus.class, KafkaRevocationTransport.class})
+	static class NodeConfig {
+
+		@Bean
+		UserRepository userRepository() {
+			return mock(UserRepository.class);
+		}
+	}
+
+	@BeforeAll
+	static void startCluster() {
+		broker = new EmbeddedKafkaKraftBroker(1, 1, TOPIC);
+		broker.afterPropertiesSet();
+		nodeA = startNode();
+		nodeB = startNode();
+		awaitAssignment(nodeA);
+		awaitAssignment(nodeB);
+	}
+
+	@AfterAll
+	static void stopCluster() {
+		if (nodeA != null) {
+			nodeA.close();
+		}
+		if (nodeB != null) {
+			nodeB.close();
+		}
+		if (broker != null) {
+			broker.destroy();
+		}
+	}
+
+	private static ConfigurableApplicationContext startNode() {
+		return new SpringApplicationBuilder(NodeConfig.class)
+				.web(WebApplicationType.NONE)
+				.properties("spring.kafka.bootstrap-servers=" + broker.getBrokersAsString(),
+						"spring.kafka.consumer.key-deserializer=org.apache.kafka.common.serialization.StringDeserializer",
+						"spring.kafka.consumer.value-deserializer=org.apache.kafka.common.serialization.StringDeserializer",
+						"spring.main.banner-mode=off",
+						"token.revocation.transport=kafka",
+						"token.revocation.kafka.topic=" + TOPIC)
+				.run();
+	}
+
+	private static void awaitAssignment(ConfigurableApplicationContext node) {
+		MessageListenerContainer container = node.getBean(KafkaListenerEndpointRegistry.class)
+												 .getListenerContainer(KafkaRevocationTransport.LISTENER_ID);
+		ContainerTestUtils.waitForAssignment(container, 1);
+	}
+
+	private static ParsedAccessToken token(String jti, Long userId, Instant issuedAt) {
+		return ParsedAccessToken.builder()
+								.token("t-" + jti)
+								.jti(jti)
+								.userId(userId)
+								.issuedAt(issuedAt)
+								.expiration(Instant.now().plusSeconds(3600))
+								.build();
+	}
+
+	private static boolean await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (System.currentTimeMillis() < deadline) {
+			if (condition.getAsBoolean()) {
+				return true;
+			}
+			Thread.sleep(50);
+		}
+		return condition.getAsBoolean();
+	}
+
+	@Test
+	@DisplayName("Отзыв токена на узле A виден deny-листу узла B")
+	void tokenRevokedOnA_IsDeniedOnB() throws InterruptedException {
+		TokenDenyList denyListB = nodeB.getBean(TokenDenyList.class);
+		ParsedAccessToken parsed = token("jti-cluster-1", 1L, Instant.now());
+		assertFalse(denyListB.isDenied(parsed));
+
+		nodeA.getBean(TokenRevocationBus.class).publishTokenRevoked("jti-cluster-1", 1L);
+
+		assertTrue(await(() -> denyListB.isDenied(parsed)), "Узел B не получил событие отзыва");
+	}
+
+	@Test
+	@DisplayName("Отзыв всех токенов пользователя на узле A сбрасывает кеш валидности узла B")
+	void allUserTokensRevokedOnA_InvalidatesCacheOnB() throws InterruptedException {
+		TokenValidityCache cacheB = nodeB.getBean(TokenValidityCache.class);
+		TokenDenyList denyListB = nodeB.getBean(TokenDenyList.class);
+		ParsedAccessToken parsed = token("jti-cluster-2", 2L, Instant.now().minusSeconds(60));
+		assertTrue(cacheB.isValid(parsed, () -> true));
+
+		nodeA.getBean(TokenRevocationBus.class).publishAllUserTokensRevoked(2L);
+
+		assertTrue(await(() -> denyListB.isDenied(parsed)), "Узел B не получил событие отзыва");
+		// Без события кеш B продолжил бы отвечать «валиден»; после него запись сброшена и нужен поход в источник
+		assertFalse(cacheB.isValid(parsed, () -> false));
+	}
+
+	@Test
+	@DisplayName("Смена роли membership на узле A сбрасывает закешированную роль на узле B")
+	void membershipEvictedOnA_IsReloadedOnB() throws InterruptedException {
+		PrincipalCache cacheB = nodeB.getBean(PrincipalCache.class);
+		AtomicInteger loads = new AtomicInteger();
+		assertEquals(RoleMembership.ADMIN, cacheB.membershipRole(42L, id -> {
+			loads.incrementAndGet();
+			return RoleMembership.ADMIN;
+		}));
+
+		nodeA.getBean(PrincipalCache.class).evictMembership(42L);
+
+		assertTrue(await(() -> cacheB.membershipRole(42L, id -> {
+			loads.incrementAndGet();
+			return RoleMembership.CLIENT;
+		}) == RoleMembership.CLIENT), "Узел B не получил сброс роли");
+		assertEquals(2, loads.get());
+	}
+}
@@ -0,0 +1,108 @@
+package kirillzhdanov.identityservice.security.route;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.web.servlet.util.matcher.PathPatternRequestMatcher;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoutePolicyRegistryTest {
+
+	private final RoutePolicyRegistry registry = new RoutePolicyRegistry(RoutePolicyRegistry.DEFAULT_RULES, null);
+
+	@Test
+	@DisplayName("Пути, которые ContextEnforcementFilter пропускал раньше, по-прежнему не требуют контекста")
+	void legacyContextFreePaths() {
+		List<String> paths = List.of("/auth/v1/login", "/auth/v1/register", "/auth/v1/refresh", "/auth/v1/checkUsername",
+									 "/auth/v1/memberships", "/auth/v1/context", "/auth/v1/context/switch", "/auth/v1/revoke",
+									 "/auth/v1/revoke-all", "/auth/v1/logout", "/auth/v1/logout/all", "/auth/v1/brands",
+									 "/auth/v1/brands/5", "/user/v1/profile", "/oauth2/authorization/google",
+									 "/login/oauth2/code/google", "/notifications/longpoll", "/notifications/longpoll/ack",
+									 "/menu/v1/brands", "/doc/swagger", "/doc/swagger-ui/index.html", "/doc/api-docs",
+									 "/public/v1/brands/1", "/swagger-ui/index.html", "/swagger-ui.html", "/api-docs",
+									 "/v3/api-docs/public", "/auth/v1/whoami", "/order/v1/my", "/order/v1/orders", "/cart",
+									 "/cart/add", "/status");
+		for (String path : paths) {
+			assertTrue(registry.isContextFree("POST", path), path);
+		}
+		assertTrue(registry.isContextFree("GET", "/orders"));
+	}
+
+	@Test
+	@DisplayName("Защищённые пути и совпадения не по границе сегмента требуют контекста")
+	void protectedPaths() {
+		assertFalse(registry.isContextFree("GET", "/auth/v1/users"));
+		assertFalse(registry.isContextFree("POST", "/orders"));
+		assertFalse(registry.isContextFree("GET", "/cartoon"));
+		assertFalse(registry.isContextFree("GET", "/order/v1x"));
+		assertFalse(registry.isContextFree("GET", "/admin/v1/clients"));
+		assertFalse(registry.isContextFree("GET", "/"));
+		assertFalse(registry.isContextFree("GET", ""));
+		assertFalse(registry.isContextFree("GET", null));
+	}
+
+	@Test
+	@DisplayName("Побеждает самое длинное совпадение, затем точное правило, затем правило для метода")
+	void mostSpecificRuleWins() {
+		RouteRule any = RouteRule.contextFree("/**");
+		RouteRule menu = RouteRule.contextFree("/menu/**");
+		RouteRule menuGet = RouteRule.publicRoute(HttpMethod.GET, "/menu/v1/**");
+		RouteRule exact = RouteRule.publicRoute("/menu/v1");
+		RoutePolicyRegistry custom = new RoutePolicyRegistry(List.of(any, menu, menuGet, exact), null);
+
+		assertSame(any, custom.match("GET", "/other"));
+		assertSame(menu, custom.match("GET", "/menu/x"));
+		assertSame(menuGet, custom.match("GET", "/menu/v1/brands"));
+		assertSame(menu, custom.match("POST", "/menu/v1/brands"));
+		assertSame(exact, custom.match("POST", "/menu/v1"));
+	}
+
+	@Test
+	@DisplayName("Публичные правила реестра совпадают с тем, что пропускает Spring Security")
+	void publicRulesAgreeWithSecurityMatchers() {
+		var matchers = registry.publicRules()
+							   .stream()
+							   .map(rule -> PathPatternRequestMatcher.withDefaults().matcher(rule.method(), rule.pattern()))
+							   .toList();
+		for (RouteRule rule : registry.publicRules()) {
+			for (String method : List.of("GET", "POST")) {
+				for (String uri : List.of(rule.path(), rule.path() + "/x", rule.path() + "x")) {
+					MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+					boolean permittedBySecurity = matchers.stream().anyMatch(m -> m.matches(request));
+					RouteRule found = registry.match(method, uri);
+					boolean publicInTrie = found != null && found.access() == RouteAccess.PUBLIC;
+					assertEquals(permittedBySecurity, publicInTrie, method + " " + uri);
+				}
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("Счётчики совпадений ведутся по правилам и публикуются в Micrometer")
+	void hitCounters() {
+		SimpleMeterRegistry meters = new SimpleMeterRegistry();
+		RoutePolicyRegistry counted = new RoutePolicyRegistry(RoutePolicyRegistry.DEFAULT_RULES, meters);
+
+		counted.match("GET", "/cart");
+		counted.match("POST", "/cart/add");
+		counted.match("GET", "/menu/v1/brands");
+		counted.match("GET", "/admin/v1/clients");
+
+		assertEquals(2L, counted.hitCounts().get("* /cart/**"));
+		assertEquals(1L, counted.hitCounts().get("* /menu/v1/**"));
+		assertEquals(2.0, meters.get("route.policy.hits").tag("route", "* /cart/**").functionCounter().count());
+	}
+
+	@Test
+	@DisplayName("Шаблоны кроме точного пути и хвостового /** отклоняются")
+	void rejectsUnsupportedPatterns() {
+		assertThrows(IllegalArgumentException.class, () -> RouteRule.contextFree("/a/*/b"));
+		assertThrows(IllegalArgumentException.class, () -> RouteRule.contextFree("/a/{id}"));
+		assertThrows(IllegalArgumentException.class, () -> RouteRule.contextFree("no-slash"));
+	}
+}
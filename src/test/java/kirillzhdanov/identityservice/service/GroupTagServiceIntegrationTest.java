@@ -63,92 +63,6 @@ public class GroupTagServiceIntegrationTest extends IntegrationTestBase {
 
     private void ctx(Long brandId) { TenantContext.setBrandId(brandId); }
 
-    @Test
-    @DisplayName("Группа: hasVisibleProductsInSubtree - видимый товар в самой группе")
-    void hasVisible_in_current_group() {
-        ctx(brand1.getId());
-        CreateGroupTagRequest r = new CreateGroupTagRequest();
-        r.setName("R");
-        r.setBrandId(brand1.getId());
-        r.setParentId(0L);
-        GroupTagResponse root = groupTagService.createGroupTag(r);
-
-        ProductCreateRequest pr = new ProductCreateRequest();
-        pr.setName("VP");
-        pr.setPrice(new BigDecimal("1"));
-        pr.setBrandId(brand1.getId());
-        pr.setGroupTagId(root.getId());
-        pr.setVisible(true);
-        ctx(brand1.getId());
-        productService.create(pr);
-
-        assertTrue(groupTagService.hasVisibleProductsInSubtree(brand1.getId(), root.getId()));
-    }
-
-    @Test
-    @DisplayName("Группа: hasVisibleProductsInSubtree - видимый товар только в дочерней группе")
-    void hasVisible_in_child_group() {
-        ctx(brand1.getId());
-        CreateGroupTagRequest r = new CreateGroupTagRequest();
-        r.setName("R");
-        r.setBrandId(brand1.getId());
-        r.setParentId(0L);
-        GroupTagResponse root = groupTagService.createGroupTag(r);
-
-        CreateGroupTagRequest c = new CreateGroupTagRequest();
-        c.setName("C");
-        c.setBrandId(brand1.getId());
-        c.setParentId(root.getId());
-        GroupTagResponse child = groupTagService.createGroupTag(c);
-
-        ProductCreateRequest pr = new ProductCreateRequest();
-        pr.setName("VP");
-        pr.setPrice(new BigDecimal("1"));
-        pr.setBrandId(brand1.getId());
-        pr.setGroupTagId(child.getId());
-        pr.setVisible(true);
-        productService.create(pr);
-
-        assertTrue(groupTagService.hasVisibleProductsInSubtree(brand1.getId(), root.getId()));
-    }
-
-    @Test
-    @DisplayName("Группа: hasVisibleProductsInSubtree - нет видимых товаров")
-    void hasVisible_none() {
-        ctx(brand1.getId());
-        CreateGroupTagRequest r = new CreateGroupTagRequest();
-        r.setName("R");
-        r.setBrandId(brand1.getId());
-        r.setParentId(0L);
-        GroupTagResponse root = groupTagService.createGroupTag(r);
-
-        CreateGroupTagRequest c = new CreateGroupTagRequest();
-        c.setName("C");
-        c.setBrandId(brand1.getId());
-        c.setParentId(root.getId());
-        GroupTagResponse child = groupTagService.createGroupTag(c);
-
-        ProductCreateRequest p1 = new ProductCreateRequest();
-        p1.setName("P1");
-        p1.setPrice(new BigDecimal("2"));
-        p1.setBrandId(brand1.getId());
-        p1.setGroupTagId(root.getId());
-        p1.setVisible(false);
-        ctx(brand1.getId());
-        productService.create(p1);
-
-        ProductCreateRequest p2 = new ProductCreateRequest();
-        p2.setName("P2");
-        p2.setPrice(new BigDecimal("3"));
-        p2.setBrandId(brand1.getId());
-        p2.setGroupTagId(child.getId());
-        p2.setVisible(false);
-        ctx(brand1.getId());
-        productService.create(p2);
-
-        assertFalse(groupTagService.hasVisibleProductsInSubtree(brand1.getId(), root.getId()));
-    }
-
     @Test
     @DisplayName("Группа: deleteWithArchive архивирует продукты и группы, удаляет живые; последующее восстановление работает (smoke)")
     void deleteWithArchive_e2e_and_restore_smoke() {
@@ -103,7 +103,9 @@ public class MediaServiceTest {
         // Act
         Map<String, String> res = mediaService.uploadProductImage("prod999", bytes, "image/png");
 
-        String base = "product-images/prod999/";
+        String original = res.get("ORIGINAL");
+        assertTrue(original.startsWith("product-images/prod999/"));
+        String base = original.substring(0, original.length() - "original.png".length());
         assertEquals(base + "original.png", res.get("ORIGINAL"));
         assertEquals(base + "h256.jpg", res.get("H256"));
         assertEquals(base + "h512.jpg", res.get("H512"));
@@ -133,23 +135,37 @@ public class MediaServiceTest {
     }
 
     @Test
-    void uploadProductImage_secondUpload_overwritesSameKeys() throws Exception {
+    void uploadProductImage_secondUpload_usesNewKeys() throws Exception {
         doNothing().when(s3).upload(anyString(), any(byte[].class), anyString(), eq(false));
 
         byte[] img1 = TestImages.redPng(800, 600);
         byte[] img2 = TestImages.redPng(640, 360);
 
-        String base = "product-images/prodABC/";
-
         // First upload
-        mediaService.uploadProductImage("prodABC", img1, "image/png");
+        Map<String, String> first = mediaService.uploadProductImage("prodABC", img1, "image/png");
         // Second upload (replace)
-        mediaService.uploadProductImage("prodABC", img2, "image/png");
+        Map<String, String> second = mediaService.uploadProductImage("prodABC", img2, "image/png");
+
+        // Ключи не переиспользуются: подписанная ссылка на прежнее изображение не отдаст новое
+        for (String variant : new String[]{"ORIGINAL", "H256", "H512"}) {
+            assertTrue(first.get(variant).startsWith("product-images/prodABC/"));
+            assertNotEquals(first.get(variant), second.get(variant));
+            verify(s3).upload(eq(first.get(variant)), any(), anyString(), eq(false));
+            verify(s3).upload(eq(second.get(variant)), any(), anyString(), eq(false));
+        }
+    }
 
-        // Same keys should be uploaded at least twice across calls
-        verify(s3, atLeast(2)).upload(eq(base + "original.png"), any(), anyString(), eq(false));
-        verify(s3, atLeast(2)).upload(eq(base + "h256.jpg"), any(), anyString(), eq(false));
-        verify(s3, atLeast(2)).upload(eq(base + "h512.jpg"), any(), anyString(), eq(false));
+    @Test
+    void uploadUserAvatar_eachUploadGetsNewKey() throws Exception {
+        String first = mediaService.uploadUserAvatar("42", TestImages.redPng(64, 64), "image/png").get("key");
+        String second = mediaService.uploadUserAvatar("42", TestImages.redPng(64, 64), "image/png").get("key");
+
+        assertTrue(first.startsWith("user-avatars/42/") && first.endsWith(".png"));
+        assertTrue(second.startsWith("user-avatars/42/"));
+        assertNotEquals(first, second);
+        assertNotEquals(mediaService.getUserAvatarKey("42"), first);
+        verify(s3).upload(eq(first), any(), eq("image/png"), eq(false));
+        verify(s3).upload(eq(second), any(), eq("image/png"), eq(false));
     }
 
     // Helper inner class to generate simple images/bytes
@@ -8,6 +8,7 @@ import kirillzhdanov.identityservice.repository.BrandRepository;
 import kirillzhdanov.identityservice.repository.master.MasterAccountRepository;
 import kirillzhdanov.identityservice.repository.master.UserMembershipRepository;
 import kirillzhdanov.identityservice.repository.pickup.PickupPointRepository;
+import kirillzhdanov.identityservice.security.PrincipalCache;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -27,6 +28,7 @@ public class ProvisioningServiceTest {
     private BrandRepository brandRepository;
     private PickupPointRepository pickupPointRepository;
     private UserService userService;
+    private PrincipalCache principalCache;
 
     private ProvisioningService service;
 
@@ -37,7 +39,8 @@ public class ProvisioningServiceTest {
         brandRepository = mock(BrandRepository.class);
         pickupPointRepository = mock(PickupPointRepository.class);
         userService = mock(UserService.class);
-        service = new ProvisioningService(masterAccountRepository, userMembershipRepository, brandRepository, pickupPointRepository, userService);
+        principalCache = mock(PrincipalCache.class);
+        service = new ProvisioningService(masterAccountRepository, userMembershipRepository, brandRepository, pickupPointRepository, userService, principalCache);
     }
 
     @Test
@@ -0,0 +1,79 @@
+package kirillzhdanov.identityservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class S3StorageServiceTest {
+
+    private static final Duration WEEK = Duration.ofDays(7);
+
+    private static final String KEY = "product-images/1/h256.webp";
+
+    @Test
+    void urlIsStableWithinWindowAndAcrossReplicas() {
+        String morning = service("2026-10-17T08:00:00Z").buildPresignedGetUrl(KEY, WEEK).orElseThrow();
+        String evening = service("2026-10-17T23:59:59Z").buildPresignedGetUrl(KEY, WEEK).orElseThrow();
+        String nextDay = service("2026-10-18T00:00:00Z").buildPresignedGetUrl(KEY, WEEK).orElseThrow();
+
+        assertEquals(morning, evening);
+        assertNotEquals(morning, nextDay);
+        assertTrue(morning.startsWith("https://storage.yandexcloud.net/test-bucket/" + KEY + "?"));
+        // подписано в начале окна на 7 дней — ссылка действует не меньше 6 дней с момента выдачи
+        assertTrue(morning.contains("X-Amz-Date=20261017T000000Z"));
+        assertTrue(morning.contains("X-Amz-Expires=604800"));
+    }
+
+    @Test
+    void cachedUrlFollowsClock() {
+        S3StorageService service = service("2026-10-17T08:00:00Z");
+        String first = service.buildPresignedGetUrl(KEY, WEEK).orElseThrow();
+        assertSame(first, service.buildPresignedGetUrl(KEY, WEEK).orElseThrow());
+
+        service.clock = Clock.fixed(Instant.parse("2026-10-18T08:00:00Z"), ZoneOffset.UTC);
+        assertTrue(service.buildPresignedGetUrl(KEY, WEEK).orElseThrow().contains("X-Amz-Date=20261018T000000Z"));
+    }
+
+    @Test
+    void shortTtlNarrowsWindow() {
+        S3StorageService service = service("2026-10-17T08:59:00Z");
+        String url = service.buildPresignedGetUrl(KEY, Duration.ofHours(1)).orElseThrow();
+
+        // окно — полчаса, подпись на ttl + окно: ссылке остаётся не меньше часа
+        assertTrue(url.contains("X-Amz-Date=20261017T083000Z"));
+        assertTrue(url.contains("X-Amz-Expires=5400"));
+        assertEquals(Instant.parse("2026-10-17T09:00:00Z"),
+                service.presignWindowEnd(Instant.parse("2026-10-17T08:59:00Z"), Duration.ofHours(1)));
+    }
+
+    @Test
+    void deleteAfterCommitWithoutTransactionRunsNowAndSurvivesFailure() {
+        S3StorageService service = spy(service("2026-10-17T08:00:00Z"));
+        doThrow(new RuntimeException("boom")).when(service).delete("a");
+        doNothing().when(service).delete("b");
+
+        service.deleteAfterCommit(List.of("a", "b"));
+
+        verify(service).delete("a");
+        verify(service).delete("b");
+    }
+
+    private static S3StorageService service(String now) {
+        // подпись считается локально, обращений к хранилищу нет
+        S3StorageService service = new S3StorageService("https://storage.yandexcloud.net", "ru-central1", "ak", "sk",
+                Duration.ofDays(1), 100, new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        ReflectionTestUtils.setField(service, "bucket", "test-bucket");
+        service.clock = Clock.fixed(Instant.parse(now), ZoneOffset.UTC);
+        return service;
+    }
+}
@@ -0,0 +1,69 @@
+package kirillzhdanov.identityservice.service;
+
+import kirillzhdanov.identityservice.config.IntegrationTestBase;
+import kirillzhdanov.identityservice.model.Token;
+import kirillzhdanov.identityservice.model.User;
+import kirillzhdanov.identityservice.repository.TokenRepository;
+import kirillzhdanov.identityservice.repository.UserRepository;
+import kirillzhdanov.identityservice.security.TokenFingerprint;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка set-based SQL для таблицы tokens на реальном PostgreSQL.
+ */
+public class TokenPurgeIT extends IntegrationTestBase {
+
+    @Autowired
+    private TokenService tokenService;
+    @Autowired
+    private TokenRepository tokenRepository;
+    @Autowired
+    private UserRepository userRepository;
+
+    private Token token(User user, String value, LocalDateTime expiry) {
+        return tokenRepository.save(Token.builder()
+                .tokenHash(TokenFingerprint.of(value))
+                .tokenType(Token.TokenType.REFRESH)
+                .expiryDate(expiry)
+                .user(user)
+                .build());
+    }
+
+    @Test
+    @DisplayName("Истекшие токены удаляются порциями, действующие остаются")
+    void purgeExpiredTokens_InBatches() {
+        User user = userRepository.save(User.builder().username("purge_user").build());
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 5; i++) {
+            token(user, "expired-" + i, now.minusHours(1));
+        }
+        token(user, "alive", now.plusHours(1));
+
+        assertThat(tokenService.purgeExpiredTokens(now, 2)).isEqualTo(2);
+        assertThat(tokenService.purgeExpiredTokens(now, 2)).isEqualTo(2);
+        assertThat(tokenService.purgeExpiredTokens(now, 2)).isEqualTo(1);
+        assertThat(tokenService.purgeExpiredTokens(now, 2)).isZero();
+        assertThat(tokenRepository.findByTokenHash(TokenFingerprint.of("alive"))).isPresent();
+        assertThat(tokenRepository.tableSizeBytes()).isPositive();
+    }
+
+    @Test
+    @DisplayName("Отзыв всех токенов пользователя - один UPDATE")
+    void revokeAllUserTokens_SetBased() {
+        User user = userRepository.save(User.builder().username("revoke_user").build());
+        token(user, "a", LocalDateTime.now().plusHours(1));
+        token(user, "b", LocalDateTime.now().plusHours(1));
+
+        tokenService.revokeAllUserTokens(user);
+
+        assertThat(tokenRepository.findAll())
+                .filteredOn(t -> t.getUser().getId().equals(user.getId()))
+                .allMatch(Token::isRevoked);
+    }
+}
@@ -5,6 +5,12 @@ import kirillzhdanov.identityservice.model.Token;
 import kirillzhdanov.identityservice.model.User;
 import kirillzhdanov.identityservice.repository.TokenRepository;
 import kirillzhdanov.identityservice.security.JwtUtils;
+import kirillzhdanov.identityservice.security.ParsedAccessToken;
+import kirillzhdanov.identityservice.security.TokenEpochService;
+import kirillzhdanov.identityservice.security.TokenFingerprint;
+import kirillzhdanov.identityservice.security.TokenValidityCache;
+import kirillzhdanov.identityservice.security.revocation.TokenDenyList;
+import kirillzhdanov.identityservice.security.revocation.TokenRevocationBus;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -12,11 +18,13 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import java.time.LocalDateTime;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.AdditionalMatchers.aryEq;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -29,6 +37,18 @@ public class TokenServiceTest {
 	@Mock
 	private JwtUtils jwtUtils;
 
+	@Mock
+	private TokenValidityCache tokenValidityCache;
+
+	@Mock
+	private TokenDenyList tokenDenyList;
+
+	@Mock
+	private TokenRevocationBus tokenRevocationBus;
+
+	@Mock
+	private TokenEpochService tokenEpochService;
+
 	@InjectMocks
 	private TokenService tokenService;
 
@@ -102,7 +122,7 @@ public class TokenServiceTest {
 	void saveToken_NewToken_Success() {
 		// Подготовка
 		String tokenValue = "new-token-123";
-		when(tokenRepository.findByToken(tokenValue)).thenReturn(Optional.empty());
+		when(tokenRepository.findByTokenHash(fingerprint(tokenValue))).thenReturn(Optional.empty());
 		when(jwtUtils.extractExpirationAsLocalDateTime(tokenValue)).thenReturn(LocalDateTime.now()
 																							.plusHours(1));
 		when(tokenRepository.save(any(Token.class))).thenAnswer(invocation -> invocation.getArgument(0));
@@ -111,10 +131,28 @@ public class TokenServiceTest {
 		tokenService.saveToken(tokenValue, Token.TokenType.ACCESS, testUser);
 
 		// Проверка
-		verify(tokenRepository).findByToken(tokenValue);
+		verify(tokenRepository).findByTokenHash(fingerprint(tokenValue));
 		verify(jwtUtils).extractExpirationAsLocalDateTime(tokenValue);
-		verify(tokenRepository).save(argThat(token -> token.getToken()
-														   .equals(tokenValue) && token.getTokenType() == Token.TokenType.ACCESS && token.getUser() == testUser && !token.isRevoked()));
+		verify(tokenRepository).save(argThat(token -> Arrays.equals(token.getTokenHash(), TokenFingerprint.of(tokenValue)) && token.getToken() == null
+													  && token.getTokenType() == Token.TokenType.ACCESS && token.getUser() == testUser && !token.isRevoked()));
+	}
+
+	@Test
+	@DisplayName("Сохранение нового токена с store-raw - исходная строка дублируется")
+	void saveToken_StoreRaw_KeepsRawToken() {
+		// Подготовка
+		String tokenValue = "new-token-123";
+		ReflectionTestUtils.setField(tokenService, "storeRawToken", true);
+		when(tokenRepository.findByTokenHash(fingerprint(tokenValue))).thenReturn(Optional.empty());
+		when(jwtUtils.extractExpirationAsLocalDateTime(tokenValue)).thenReturn(LocalDateTime.now()
+																							.plusHours(1));
+
+		// Выполнение
+		tokenService.saveToken(tokenValue, Token.TokenType.ACCESS, testUser);
+
+		// Проверка
+		verify(tokenRepository).save(argThat(token -> tokenValue.equals(token.getToken())
+													  && Arrays.equals(token.getTokenHash(), TokenFingerprint.of(tokenValue))));
 	}
 
 	@Test
@@ -125,7 +163,7 @@ public class TokenServiceTest {
 		LocalDateTime newExpiry = LocalDateTime.now()
 											   .plusHours(1);
 
-		when(tokenRepository.findByToken(tokenValue)).thenReturn(Optional.of(revokedToken));
+		when(tokenRepository.findByTokenHash(fingerprint(tokenValue))).thenReturn(Optional.of(revokedToken));
 		when(jwtUtils.extractExpirationAsLocalDateTime(tokenValue)).thenReturn(newExpiry);
 		when(tokenRepository.save(any(Token.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
@@ -133,7 +171,7 @@ public class TokenServiceTest {
 		tokenService.saveToken(tokenValue, Token.TokenType.ACCESS, testUser);
 
 		// Проверка
-		verify(tokenRepository).findByToken(tokenValue);
+		verify(tokenRepository).findByTokenHash(fingerprint(tokenValue));
 		verify(jwtUtils).extractExpirationAsLocalDateTime(tokenValue);
 		verify(tokenRepository).save(argThat(token -> token.getToken()
 														   .equals(tokenValue) && !token.isRevoked() && token.getExpiryDate()
@@ -145,13 +183,13 @@ public class TokenServiceTest {
 	void saveToken_ExistingValidToken_NoChange() {
 		// Подготовка
 		String tokenValue = "access-token-123";
-		when(tokenRepository.findByToken(tokenValue)).thenReturn(Optional.of(accessToken));
+		when(tokenRepository.findByTokenHash(fingerprint(tokenValue))).thenReturn(Optional.of(accessToken));
 
 		// Выполнение
 		tokenService.saveToken(tokenValue, Token.TokenType.ACCESS, testUser);
 
 		// Проверка
-		verify(tokenRepository).findByToken(tokenValue);
+		verify(tokenRepository).findByTokenHash(fingerprint(tokenValue));
 		verify(jwtUtils, never()).extractExpirationAsLocalDateTime(anyString());
 		verify(tokenRepository, never()).save(any(Token.class));
 	}
@@ -164,7 +202,7 @@ public class TokenServiceTest {
 		assertThrows(IllegalArgumentException.class, () -> tokenService.saveToken("token", null, testUser));
 		assertThrows(IllegalArgumentException.class, () -> tokenService.saveToken("token", Token.TokenType.ACCESS, null));
 
-		verify(tokenRepository, never()).findByToken(anyString());
+		verify(tokenRepository, never()).findByTokenHash(any());
 		verify(tokenRepository, never()).save(any(Token.class));
 	}
 
@@ -172,7 +210,7 @@ public class TokenServiceTest {
 	@DisplayName("Поиск токена по значению - успешно")
 	void findByToken_Success() {
 		// Подготовка
-		when(tokenRepository.findByToken("access-token-123")).thenReturn(Optional.of(accessToken));
+		when(tokenRepository.findByTokenHash(fingerprint("access-token-123"))).thenReturn(Optional.of(accessToken));
 
 		// Выполнение
 		Optional<Token> result = tokenService.findByToken("access-token-123");
@@ -180,49 +218,67 @@ public class TokenServiceTest {
 		// Проверка
 		assertTrue(result.isPresent());
 		assertEquals(accessToken, result.get());
-		verify(tokenRepository).findByToken("access-token-123");
+		verify(tokenRepository).findByTokenHash(fingerprint("access-token-123"));
 	}
 
 	@Test
 	@DisplayName("Поиск токена по значению - токен не найден")
 	void findByToken_NotFound() {
 		// Подготовка
-		when(tokenRepository.findByToken("non-existent-token")).thenReturn(Optional.empty());
+		when(tokenRepository.findByTokenHash(fingerprint("non-existent-token"))).thenReturn(Optional.empty());
 
 		// Выполнение
 		Optional<Token> result = tokenService.findByToken("non-existent-token");
 
 		// Проверка
 		assertFalse(result.isPresent());
-		verify(tokenRepository).findByToken("non-existent-token");
+		verify(tokenRepository).findByTokenHash(fingerprint("non-existent-token"));
 	}
 
 	@Test
 	@DisplayName("Отзыв токена - успешно")
 	void revokeToken_Success() {
 		// Подготовка
-		when(tokenRepository.findByToken("access-token-123")).thenReturn(Optional.of(accessToken));
+		when(tokenRepository.findByTokenHash(fingerprint("access-token-123"))).thenReturn(Optional.of(accessToken));
 		when(tokenRepository.save(any(Token.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
 		// Выполнение
 		tokenService.revokeToken("access-token-123");
 
 		// Проверка
-		verify(tokenRepository).findByToken("access-token-123");
+		verify(tokenRepository).findByTokenHash(fingerprint("access-token-123"));
 		verify(tokenRepository).save(argThat(Token::isRevoked));
 	}
 
+	@Test
+	@DisplayName("Отзыв токена - запись кеша валидности сбрасывается по jti")
+	void revokeToken_InvalidatesCache() {
+		// Подготовка
+		when(tokenRepository.findByTokenHash(fingerprint("access-token-123"))).thenReturn(Optional.of(accessToken));
+		when(jwtUtils.parseToken("access-token-123")).thenReturn(ParsedAccessToken.builder()
+																				  .token("access-token-123")
+																				  .jti("jti-123")
+																				  .build());
+
+		// Выполнение
+		tokenService.revokeToken("access-token-123");
+
+		// Проверка
+		verify(tokenValidityCache).invalidate("jti-123");
+		verify(tokenRevocationBus).publishTokenRevoked("jti-123", 1L);
+	}
+
 	@Test
 	@DisplayName("Отзыв токена - токен не найден")
 	void revokeToken_NotFound() {
 		// Подготовка
-		when(tokenRepository.findByToken("non-existent-token")).thenReturn(Optional.empty());
+		when(tokenRepository.findByTokenHash(fingerprint("non-existent-token"))).thenReturn(Optional.empty());
 
 		// Выполнение
 		tokenService.revokeToken("non-existent-token");
 
 		// Проверка
-		verify(tokenRepository).findByToken("non-existent-token");
+		verify(tokenRepository).findByTokenHash(fingerprint("non-existent-token"));
 		verify(tokenRepository, never()).save(any(Token.class));
 	}
 
@@ -230,29 +286,29 @@ public class TokenServiceTest {
 	@DisplayName("Отзыв всех токенов пользователя - успешно")
 	void revokeAllUserTokens_Success() {
 		// Подготовка
-		List<Token> validTokens = Arrays.asList(accessToken, refreshToken);
-		when(tokenRepository.findAllValidTokensByUser(1L)).thenReturn(validTokens);
-		when(tokenRepository.save(any(Token.class))).thenAnswer(invocation -> invocation.getArgument(0));
+		when(tokenRepository.revokeAllByUserId(1L)).thenReturn(2);
 
 		// Выполнение
 		tokenService.revokeAllUserTokens(testUser);
 
-		// Проверка
-		verify(tokenRepository).findAllValidTokensByUser(1L);
-		verify(tokenRepository, times(2)).save(argThat(Token::isRevoked));
+		// Проверка - один UPDATE вместо загрузки и сохранения каждой строки
+		verify(tokenRepository).revokeAllByUserId(1L);
+		verify(tokenRepository, never()).save(any(Token.class));
+		verify(tokenValidityCache).invalidateUser(1L);
+		verify(tokenRevocationBus).publishAllUserTokensRevoked(1L);
 	}
 
 	@Test
 	@DisplayName("Отзыв всех токенов пользователя - нет действительных токенов")
 	void revokeAllUserTokens_NoValidTokens() {
 		// Подготовка
-		when(tokenRepository.findAllValidTokensByUser(1L)).thenReturn(Collections.emptyList());
+		when(tokenRepository.revokeAllByUserId(1L)).thenReturn(0);
 
 		// Выполнение
 		tokenService.revokeAllUserTokens(testUser);
 
 		// Проверка
-		verify(tokenRepository).findAllValidTokensByUser(1L);
+		verify(tokenRepository).revokeAllByUserId(1L);
 		verify(tokenRepository, never()).save(any(Token.class));
 	}
 
@@ -260,86 +316,197 @@ public class TokenServiceTest {
 	@DisplayName("Проверка валидности токена - действительный токен")
 	void isTokenValid_ValidToken() {
 		// Подготовка
-		when(tokenRepository.findByToken("access-token-123")).thenReturn(Optional.of(accessToken));
+		when(tokenRepository.findByTokenHash(fingerprint("access-token-123"))).thenReturn(Optional.of(accessToken));
 
 		// Выполнение
 		boolean result = tokenService.isTokenValid("access-token-123");
 
 		// Проверка
 		assertTrue(result);
-		verify(tokenRepository).findByToken("access-token-123");
+		verify(tokenRepository).findByTokenHash(fingerprint("access-token-123"));
 	}
 
 	@Test
 	@DisplayName("Проверка валидности токена - отозванный токен")
 	void isTokenValid_RevokedToken() {
 		// Подготовка
-		when(tokenRepository.findByToken("revoked-token-123")).thenReturn(Optional.of(revokedToken));
+		when(tokenRepository.findByTokenHash(fingerprint("revoked-token-123"))).thenReturn(Optional.of(revokedToken));
 
 		// Выполнение
 		boolean result = tokenService.isTokenValid("revoked-token-123");
 
 		// Проверка
 		assertFalse(result);
-		verify(tokenRepository).findByToken("revoked-token-123");
+		verify(tokenRepository).findByTokenHash(fingerprint("revoked-token-123"));
 	}
 
 	@Test
 	@DisplayName("Проверка валидности токена - истекший токен")
 	void isTokenValid_ExpiredToken() {
 		// Подготовка
-		when(tokenRepository.findByToken("expired-token-123")).thenReturn(Optional.of(expiredToken));
+		when(tokenRepository.findByTokenHash(fingerprint("expired-token-123"))).thenReturn(Optional.of(expiredToken));
 
 		// Выполнение
 		boolean result = tokenService.isTokenValid("expired-token-123");
 
 		// Проверка
 		assertFalse(result);
-		verify(tokenRepository).findByToken("expired-token-123");
+		verify(tokenRepository).findByTokenHash(fingerprint("expired-token-123"));
 	}
 
 	@Test
 	@DisplayName("Проверка валидности токена - токен не найден")
 	void isTokenValid_TokenNotFound() {
 		// Подготовка
-		when(tokenRepository.findByToken("non-existent-token")).thenReturn(Optional.empty());
+		when(tokenRepository.findByTokenHash(fingerprint("non-existent-token"))).thenReturn(Optional.empty());
 
 		// Выполнение
 		boolean result = tokenService.isTokenValid("non-existent-token");
 
 		// Проверка
 		assertFalse(result);
-		verify(tokenRepository).findByToken("non-existent-token");
+		verify(tokenRepository).findByTokenHash(fingerprint("non-existent-token"));
 	}
 
 	@Test
-	@DisplayName("Очистка истекших токенов - успешно")
-	void cleanupExpiredTokens_Success() {
+	@DisplayName("Проверка валидности разобранного токена - через кеш валидности")
+	void isTokenValid_ParsedToken_UsesCache() {
 		// Подготовка
-		List<Token> expiredTokens = Collections.singletonList(expiredToken);
-		when(tokenRepository.findAllByExpiryDateBefore(any(LocalDateTime.class))).thenReturn(expiredTokens);
-		doNothing().when(tokenRepository)
-				   .deleteAll(anyList());
+		ParsedAccessToken parsed = ParsedAccessToken.builder()
+													.token("access-token-123")
+													.jti("jti-123")
+													.build();
+		when(tokenRepository.findByTokenHash(fingerprint("access-token-123"))).thenReturn(Optional.of(accessToken));
+		when(tokenValidityCache.isValid(eq(parsed), any())).thenAnswer(invocation ->
+				invocation.<java.util.function.BooleanSupplier>getArgument(1).getAsBoolean());
 
 		// Выполнение
-		tokenService.cleanupExpiredTokens();
+		boolean result = tokenService.isTokenValid(parsed);
 
 		// Проверка
-		verify(tokenRepository).findAllByExpiryDateBefore(any(LocalDateTime.class));
-		verify(tokenRepository).deleteAll(expiredTokens);
+		assertTrue(result);
+		verify(tokenValidityCache).isValid(eq(parsed), any());
+		verify(tokenRepository).findByTokenHash(fingerprint("access-token-123"));
+	}
+
+	@Test
+	@DisplayName("Проверка валидности разобранного токена - отозван по deny-листу, без запроса в БД")
+	void isTokenValid_ParsedToken_DeniedWithoutDb() {
+		// Подготовка
+		ParsedAccessToken parsed = ParsedAccessToken.builder()
+													.token("access-token-123")
+													.jti("jti-123")
+													.build();
+		when(tokenDenyList.isDenied(parsed)).thenReturn(true);
+
+		// Выполнение
+		boolean result = tokenService.isTokenValid(parsed);
+
+		// Проверка
+		assertFalse(result);
+		verifyNoInteractions(tokenRepository, tokenValidityCache);
+	}
+
+	@Test
+	@DisplayName("Очистка истекших токенов - одна порция удаляется одним DELETE")
+	void purgeExpiredTokens_Success() {
+		// Подготовка
+		LocalDateTime before = LocalDateTime.now();
+		when(tokenRepository.deleteExpiredBatch(before, 500)).thenReturn(3);
+
+		// Выполнение
+		int deleted = tokenService.purgeExpiredTokens(before, 500);
+
+		// Проверка
+		assertEquals(3, deleted);
+		verify(tokenRepository).deleteExpiredBatch(before, 500);
+		verify(tokenRepository, never()).deleteAll(anyList());
 	}
 
 	@Test
 	@DisplayName("Очистка истекших токенов - нет истекших токенов")
-	void cleanupExpiredTokens_NoExpiredTokens() {
+	void purgeExpiredTokens_NoExpiredTokens() {
 		// Подготовка
-		when(tokenRepository.findAllByExpiryDateBefore(any(LocalDateTime.class))).thenReturn(Collections.emptyList());
+		when(tokenRepository.deleteExpiredBatch(any(LocalDateTime.class), anyInt())).thenReturn(0);
 
 		// Выполнение
-		tokenService.cleanupExpiredTokens();
+		int deleted = tokenService.purgeExpiredTokens(LocalDateTime.now(), 500);
 
 		// Проверка
-		verify(tokenRepository).findAllByExpiryDateBefore(any(LocalDateTime.class));
-		verify(tokenRepository).deleteAll(Collections.emptyList());
+		assertEquals(0, deleted);
+	}
+
+	@Test
+	@DisplayName("Stateless-режим - access-токен не сохраняется в БД")
+	void saveToken_StatelessAccess_NotPersisted() {
+		// Подготовка
+		when(tokenEpochService.isEnabled()).thenReturn(true);
+
+		// Выполнение
+		tokenService.saveToken("access-token-123", Token.TokenType.ACCESS, testUser);
+
+		// Проверка
+		verifyNoInteractions(tokenRepository, jwtUtils);
+	}
+
+	@Test
+	@DisplayName("Stateless-режим - refresh-токен по-прежнему сохраняется в БД")
+	void saveToken_StatelessRefresh_Persisted() {
+		// Подготовка
+		lenient().when(tokenEpochService.isEnabled()).thenReturn(true);
+		when(tokenRepository.findByTokenHash(fingerprint("refresh-token-123"))).thenReturn(Optional.empty());
+		when(jwtUtils.extractExpirationAsLocalDateTime("refresh-token-123")).thenReturn(LocalDateTime.now()
+																									 .plusDays(7));
+
+		// Выполнение
+		tokenService.saveToken("refresh-token-123", Token.TokenType.REFRESH, testUser);
+
+		// Проверка
+		verify(tokenRepository).save(argThat(token -> token.getTokenType() == Token.TokenType.REFRESH));
+	}
+
+	@Test
+	@DisplayName("Stateless-режим - отзыв всех токенов увеличивает эпоху пользователя")
+	void revokeAllUserTokens_Stateless_BumpsEpoch() {
+		// Подготовка
+		when(tokenEpochService.isEnabled()).thenReturn(true);
+		when(tokenEpochService.bump(1L)).thenReturn(5L);
+
+		// Выполнение
+		tokenService.revokeAllUserTokens(testUser);
+
+		// Проверка
+		verify(tokenEpochService).bump(1L);
+		assertEquals(5L, testUser.getTokenEpoch());
+	}
+
+	@Test
+	@DisplayName("Stateless-режим - access-токен проверяется по эпохе без запроса в БД")
+	void isTokenValid_Stateless_ChecksEpoch() {
+		// Подготовка
+		ParsedAccessToken current = ParsedAccessToken.builder()
+													 .token("access-token-123")
+													 .tokenType(Token.TokenType.ACCESS)
+													 .userId(1L)
+													 .tokenEpoch(3L)
+													 .build();
+		ParsedAccessToken stale = ParsedAccessToken.builder()
+												   .token("access-token-456")
+												   .tokenType(Token.TokenType.ACCESS)
+												   .userId(1L)
+												   .tokenEpoch(2L)
+												   .build();
+		when(tokenEpochService.isEnabled()).thenReturn(true);
+		when(tokenEpochService.currentEpoch(1L)).thenReturn(3L);
+
+		// Выполнение и проверка
+		assertTrue(tokenService.isTokenValid(current));
+		assertFalse(tokenService.isTokenValid(stale));
+		verifyNoInteractions(tokenRepository, tokenValidityCache);
+	}
+
+	private static byte[] fingerprint(String tokenValue) {
+
+		return aryEq(TokenFingerprint.of(tokenValue));
 	}
 }
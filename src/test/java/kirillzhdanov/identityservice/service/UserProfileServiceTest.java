@@ -1,11 +1,14 @@
 package kirillzhdanov.identityservice.service;
 
+import kirillzhdanov.identityservice.dto.AvatarUploadResponse;
 import kirillzhdanov.identityservice.dto.EmailVerificationRequest;
 import kirillzhdanov.identityservice.dto.EmailVerifiedResponse;
 import kirillzhdanov.identityservice.dto.UpdateUserRequest;
 import kirillzhdanov.identityservice.dto.UserResponse;
 import kirillzhdanov.identityservice.exception.BadRequestException;
+import kirillzhdanov.identityservice.model.StorageFile;
 import kirillzhdanov.identityservice.model.User;
+import kirillzhdanov.identityservice.repository.StorageFileRepository;
 import kirillzhdanov.identityservice.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -15,9 +18,12 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -35,6 +41,15 @@ class UserProfileServiceTest {
     @Mock
     private MailService mailService;
 
+    @Mock
+    private MediaService mediaService;
+
+    @Mock
+    private StorageFileRepository storageFileRepository;
+
+    @Mock
+    private S3StorageService s3StorageService;
+
     @InjectMocks
     private UserProfileService service;
 
@@ -168,4 +183,44 @@ class UserProfileServiceTest {
         assertThat(resp.getEmail()).isEqualTo("new@example.com");
         assertThat(resp.getEmailVerified()).isFalse();
     }
+
+    @Test
+    @DisplayName("getAvatarBytes: читает аватар по ключу из storage_files, а не по фиксированному")
+    void getAvatarBytes_usesStoredKey() {
+        StorageFile avatar = StorageFile.builder().ownerType("USER").ownerId(1L).purpose("USER_AVATAR")
+                .path("user-avatars/1/v2.png").build();
+        when(storageFileRepository.findByOwnerTypeAndOwnerId("USER", 1L)).thenReturn(List.of(avatar));
+        when(s3StorageService.getObjectBytes("user-avatars/1/v2.png")).thenReturn(new byte[]{2});
+
+        assertThat(service.getAvatarBytes(1L)).containsExactly(2);
+    }
+
+    @Test
+    @DisplayName("getAvatarBytes: без записи в storage_files — прежний фиксированный ключ")
+    void getAvatarBytes_fallsBackToLegacyKey() {
+        when(storageFileRepository.findByOwnerTypeAndOwnerId("USER", 1L)).thenReturn(List.of());
+        when(mediaService.getUserAvatarKey("1")).thenReturn("user-avatars/1/avatar.png");
+        when(s3StorageService.getObjectBytes("user-avatars/1/avatar.png")).thenReturn(new byte[]{1});
+
+        assertThat(service.getAvatarBytes(1L)).containsExactly(1);
+    }
+
+    @Test
+    @DisplayName("uploadAvatar: новый ключ в storage_files, старый объект удаляется")
+    void uploadAvatar_replacesKeyAndDeletesPrevious() throws Exception {
+        StorageFile avatar = StorageFile.builder().ownerType("USER").ownerId(1L).purpose("USER_AVATAR")
+                .path("user-avatars/1/v1.png").build();
+        when(userRepository.findByUsername("user1")).thenReturn(Optional.of(user));
+        when(storageFileRepository.findByOwnerTypeAndOwnerId("USER", 1L)).thenReturn(List.of(avatar));
+        when(mediaService.uploadUserAvatar(eq("1"), any(), eq("image/png"))).thenReturn(Map.of("key", "user-avatars/1/v2.png"));
+        when(s3StorageService.buildPresignedGetUrl(eq("user-avatars/1/v2.png"), any())).thenReturn(Optional.of("https://signed/v2"));
+
+        AvatarUploadResponse resp = service.uploadAvatar("user1",
+                new MockMultipartFile("file", "a.png", "image/png", new byte[]{1}));
+
+        assertThat(resp.getAvatarUrl()).isEqualTo("https://signed/v2");
+        assertThat(avatar.getPath()).isEqualTo("user-avatars/1/v2.png");
+        verify(storageFileRepository).save(avatar);
+        verify(s3StorageService).deleteAfterCommit(List.of("user-avatars/1/v1.png"));
+    }
 }
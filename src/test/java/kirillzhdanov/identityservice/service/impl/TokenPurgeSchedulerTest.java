@@ -0,0 +1,78 @@
+package kirillzhdanov.identityservice.service.impl;
+
+import kirillzhdanov.identityservice.repository.TokenRepository;
+import kirillzhdanov.identityservice.security.TokenValidityCache;
+import kirillzhdanov.identityservice.service.TokenService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenPurgeSchedulerTest {
+
+    @Mock
+    private TokenService tokenService;
+    @Mock
+    private TokenRepository tokenRepository;
+    @Mock
+    private TokenValidityCache tokenValidityCache;
+
+    private TokenPurgeProperties properties;
+    private TokenPurgeScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        properties = new TokenPurgeProperties();
+        properties.setBatchSize(100);
+        properties.setPause(Duration.ZERO);
+        scheduler = new TokenPurgeScheduler(tokenService, tokenRepository, tokenValidityCache, properties);
+    }
+
+    @Test
+    @DisplayName("Удаляет порциями, пока порция не окажется неполной")
+    void purge_LoopsUntilPartialBatch() {
+        LocalDateTime before = LocalDateTime.now();
+        when(tokenService.purgeExpiredTokens(before, 100)).thenReturn(100, 100, 40);
+        when(tokenRepository.tableSizeBytes()).thenReturn(8192L, 4096L);
+
+        long deleted = scheduler.purge(before);
+
+        assertEquals(240, deleted);
+        verify(tokenService, times(3)).purgeExpiredTokens(before, 100);
+        verify(tokenRepository, times(2)).tableSizeBytes();
+        verify(tokenValidityCache).evictExpired();
+    }
+
+    @Test
+    @DisplayName("Не превышает лимит порций за запуск")
+    void purge_RespectsMaxBatches() {
+        properties.setMaxBatchesPerRun(2);
+        when(tokenService.purgeExpiredTokens(any(LocalDateTime.class), eq(100))).thenReturn(100);
+
+        long deleted = scheduler.purge(LocalDateTime.now());
+
+        assertEquals(200, deleted);
+        verify(tokenService, times(2)).purgeExpiredTokens(any(LocalDateTime.class), eq(100));
+    }
+
+    @Test
+    @DisplayName("Выключенная очистка ничего не делает")
+    void purgeExpiredTokens_Disabled() {
+        properties.setEnabled(false);
+
+        scheduler.purgeExpiredTokens();
+
+        verifyNoInteractions(tokenService, tokenRepository, tokenValidityCache);
+    }
+}
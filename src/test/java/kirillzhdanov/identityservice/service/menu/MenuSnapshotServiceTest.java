@@ -0,0 +1,270 @@
+package kirillzhdanov.identityservice.service.menu;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import kirillzhdanov.identityservice.dto.menu.PublicGroupTagResponse;
+import kirillzhdanov.identityservice.dto.menu.PublicProductResponse;
+import kirillzhdanov.identityservice.exception.ResourceNotFoundException;
+import kirillzhdanov.identityservice.model.Brand;
+import kirillzhdanov.identityservice.model.StorageFile;
+import kirillzhdanov.identityservice.model.product.Product;
+import kirillzhdanov.identityservice.model.tags.GroupTag;
+import kirillzhdanov.identityservice.repository.BrandRepository;
+import kirillzhdanov.identityservice.repository.GroupTagRepository;
+import kirillzhdanov.identityservice.repository.ProductRepository;
+import kirillzhdanov.identityservice.repository.StorageFileRepository;
+import kirillzhdanov.identityservice.service.S3StorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MenuSnapshotServiceTest {
+
+    private final BrandRepository brandRepository = mock(BrandRepository.class);
+
+    private final GroupTagRepository groupTagRepository = mock(GroupTagRepository.class);
+
+    private final ProductRepository productRepository = mock(ProductRepository.class);
+
+    private final StorageFileRepository storageFileRepository = mock(StorageFileRepository.class);
+
+    private final S3StorageService s3 = mock(S3StorageService.class);
+
+    private MenuSnapshotService service;
+
+    private Brand brand;
+
+    private GroupTag drinks;
+
+    private GroupTag hot;
+
+    private Product tea;
+
+    private Product bread;
+
+    private StorageFile image;
+
+    @BeforeEach
+    void setUp() {
+        brand = Brand.builder().id(1L).name("b").build();
+        drinks = tag(10L, "Напитки", null);
+        hot = tag(11L, "Горячие", drinks);
+        GroupTag empty = tag(12L, "Пустая", null);
+        tea = product(100L, "Чай", hot);
+        bread = product(101L, "Хлеб", null);
+
+        when(brandRepository.findById(1L)).thenReturn(Optional.of(brand));
+        when(groupTagRepository.findAllByBrandOrdered(brand)).thenReturn(List.of(drinks, empty, hot));
+        when(productRepository.findByBrandAndVisibleIsTrue(brand)).thenReturn(List.of(tea, bread));
+        image = StorageFile.builder().ownerType("PRODUCT").ownerId(100L)
+                .purpose("PRODUCT_IMAGE").usageType("H256").path("product-images/100/h256.webp")
+                .createdAt(LocalDateTime.of(2026, 10, 1, 12, 0)).build();
+        when(storageFileRepository.findByOwnerTypeAndOwnerIdInAndPurposeAndUsageType(eq("PRODUCT"), anyCollection(), eq("PRODUCT_IMAGE"), eq("H256")))
+                .thenAnswer(inv -> inv.<Collection<Long>>getArgument(1).contains(100L) ? List.of(image) : List.of());
+        when(s3.buildPresignedGetUrl(anyString(), any())).thenAnswer(inv -> Optional.of("https://s3/" + inv.getArgument(0) + "?sig=" + System.nanoTime()));
+        when(s3.presignWindowEnd(any(), any())).thenAnswer(inv -> inv.<Instant>getArgument(0).plus(Duration.ofHours(1)));
+
+        service = replica(new StaticListableBeanFactory());
+    }
+
+    @Test
+    void snapshotHidesEmptyGroupsAndIsServedFromMemory() {
+        MenuSnapshot snapshot = service.get(1L);
+
+        assertEquals(List.of(10L), snapshot.tags(0L).stream().map(PublicGroupTagResponse::getId).toList());
+        assertEquals(List.of(11L), snapshot.tags(10L).stream().map(PublicGroupTagResponse::getId).toList());
+        assertEquals(List.of(101L), snapshot.products(0L).stream().map(PublicProductResponse::getId).toList());
+        assertTrue(snapshot.products(11L).getFirst().getImageUrl().startsWith("https://s3/product-images/100/"));
+        assertTrue(snapshot.products(999L).isEmpty());
+        assertTrue(snapshot.expiresAt().isBefore(Instant.now().plus(Duration.ofHours(2))));
+
+        clearInvocations(brandRepository, groupTagRepository, productRepository, storageFileRepository, s3);
+        assertSame(snapshot, service.get(1L));
+        verifyNoInteractions(brandRepository, groupTagRepository, productRepository, storageFileRepository, s3);
+    }
+
+    @Test
+    void changedProductIsPatchedWithoutFullRebuild() {
+        MenuSnapshot first = service.get(1L);
+        String imageUrl = first.products(11L).getFirst().getImageUrl();
+
+        tea.setPrice(new BigDecimal("150.00"));
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(tea));
+        service.productChanged(1L, 100L);
+        MenuSnapshot second = service.get(1L);
+
+        assertNotEquals(first.version(), second.version());
+        assertNotEquals(first.etag(), second.etag());
+        assertEquals(new BigDecimal("150.00"), second.products(11L).getFirst().getPrice());
+        // изображение не менялось — подписанная ссылка переиспользована
+        assertEquals(imageUrl, second.products(11L).getFirst().getImageUrl());
+        verify(productRepository, times(1)).findByBrandAndVisibleIsTrue(brand);
+        verify(s3, times(1)).buildPresignedGetUrl(anyString(), any());
+    }
+
+    @Test
+    void reuploadUnderSameKeyIsSignedAgain() {
+        MenuSnapshot first = service.get(1L);
+        String imageUrl = first.products(11L).getFirst().getImageUrl();
+
+        image.setUpdatedAt(LocalDateTime.of(2026, 10, 2, 12, 0));
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(tea));
+        service.productChanged(1L, 100L);
+        MenuSnapshot second = service.get(1L);
+
+        assertNotEquals(imageUrl, second.products(11L).getFirst().getImageUrl());
+        assertNotEquals(first.etag(), second.etag());
+        verify(s3, times(2)).buildPresignedGetUrl(eq("product-images/100/h256.webp"), any());
+    }
+
+    @Test
+    void unchangedContentKeepsVersion() {
+        MenuSnapshot first = service.get(1L);
+
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(tea));
+        service.productChanged(1L, 100L);
+
+        assertEquals(first.etag(), service.get(1L).etag());
+    }
+
+    @Test
+    void sameContentHasSameValidatorsOnEveryReplicaAndRebuild() {
+        // подпись ссылок детерминирована в пределах окна, как в S3StorageService
+        when(s3.buildPresignedGetUrl(anyString(), any())).thenAnswer(inv -> Optional.of("https://s3/" + inv.getArgument(0) + "?sig=w1"));
+        doAnswer(inv -> inv.<Instant>getArgument(0).minusSeconds(1)).when(s3).presignWindowEnd(any(), any());
+        tea.setUpdatedAt(LocalDateTime.of(2026, 10, 3, 9, 0));
+        bread.setUpdatedAt(LocalDateTime.of(2026, 10, 2, 9, 0));
+
+        MenuSnapshot first = service.get(1L);
+        // снимок устарел и собран заново, на другой реплике — свой кеш
+        MenuSnapshot rebuilt = service.get(1L);
+        MenuSnapshot other = replica(new StaticListableBeanFactory()).get(1L);
+
+        assertNotSame(first, rebuilt);
+        assertEquals(first.etag(), rebuilt.etag());
+        assertEquals(first.etag(), other.etag());
+        assertEquals(first.version(), other.version());
+        // время изменения — по содержимому, а не по сборке
+        assertEquals(LocalDateTime.of(2026, 10, 3, 9, 0).atZone(ZoneId.systemDefault()).toInstant(), other.lastModified());
+    }
+
+    @Test
+    void hiddenProductHidesItsEmptyBranch() {
+        service.get(1L);
+
+        tea.setVisible(false);
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(tea));
+        service.productChanged(1L, 100L);
+        MenuSnapshot snapshot = service.get(1L);
+
+        assertTrue(snapshot.tags(0L).isEmpty());
+        assertTrue(snapshot.products(11L).isEmpty());
+    }
+
+    @Test
+    void productInUnknownGroupTriggersFullRebuild() {
+        service.get(1L);
+
+        GroupTag created = tag(13L, "Новая", null);
+        Product cake = product(102L, "Торт", created);
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(cake));
+        when(groupTagRepository.findAllByBrandOrdered(brand)).thenReturn(List.of(drinks, created, hot));
+        when(productRepository.findByBrandAndVisibleIsTrue(brand)).thenReturn(List.of(tea, bread, cake));
+        service.productChanged(1L, 102L);
+        MenuSnapshot snapshot = service.get(1L);
+
+        assertEquals(List.of(10L, 13L), snapshot.tags(0L).stream().map(PublicGroupTagResponse::getId).toList());
+        verify(productRepository, times(2)).findByBrandAndVisibleIsTrue(brand);
+    }
+
+    @Test
+    void brandChangeRebuildsSnapshot() {
+        service.get(1L);
+
+        when(groupTagRepository.findAllByBrandOrdered(brand)).thenReturn(List.of());
+        tea.setGroupTag(null);
+        service.brandChanged(1L);
+        MenuSnapshot snapshot = service.get(1L);
+
+        assertTrue(snapshot.tags(0L).isEmpty());
+        assertEquals(List.of(100L, 101L), snapshot.products(0L).stream().map(PublicProductResponse::getId).toList());
+    }
+
+    @Test
+    void snapshotExpiresWithPresignWindow() {
+        // окно подписи ссылок заканчивается сразу — каждое чтение собирает снимок заново
+        doAnswer(inv -> inv.<Instant>getArgument(0).minusSeconds(1)).when(s3).presignWindowEnd(any(), any());
+        service.get(1L);
+        service.get(1L);
+
+        verify(productRepository, times(2)).findByBrandAndVisibleIsTrue(brand);
+    }
+
+    @Test
+    void marksAreBroadcastToOtherReplicas() {
+        List<MenuSnapshotService> replicas = new ArrayList<>();
+        MenuSnapshotTransport transport = event -> replicas.forEach(r -> r.apply(event));
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(Map.of("menuSnapshotTransport", transport));
+        MenuSnapshotService first = replica(beans);
+        MenuSnapshotService second = replica(beans);
+        replicas.addAll(List.of(first, second));
+        first.get(1L);
+        second.get(1L);
+
+        tea.setPrice(new BigDecimal("150.00"));
+        when(productRepository.findAllById(anyIterable())).thenReturn(List.of(tea));
+        first.productChanged(1L, 100L);
+        assertEquals(new BigDecimal("150.00"), second.get(1L).products(11L).getFirst().getPrice());
+
+        when(groupTagRepository.findAllByBrandOrdered(brand)).thenReturn(List.of());
+        tea.setGroupTag(null);
+        second.brandChanged(1L);
+        assertTrue(first.get(1L).tags(0L).isEmpty());
+    }
+
+    @Test
+    void missingBrandIsNotCached() {
+        when(brandRepository.findById(2L)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> service.get(2L));
+        assertThrows(ResourceNotFoundException.class, () -> service.get(2L));
+        verify(brandRepository, times(2)).findById(2L);
+    }
+
+    private MenuSnapshotService replica(StaticListableBeanFactory beans) {
+        return new MenuSnapshotService(brandRepository, groupTagRepository, productRepository, storageFileRepository, s3,
+                new MenuSnapshotProperties(), beans.getBeanProvider(MenuSnapshotTransport.class),
+                beans.getBeanProvider(MeterRegistry.class));
+    }
+
+    private GroupTag tag(Long id, String name, GroupTag parent) {
+        GroupTag tag = new GroupTag(name, brand, parent);
+        tag.setId(id);
+        return tag;
+    }
+
+    private Product product(Long id, String name, GroupTag group) {
+        Product product = new Product();
+        product.setId(id);
+        product.setName(name);
+        product.setPrice(new BigDecimal("100.00"));
+        product.setBrand(brand);
+        product.setGroupTag(group);
+        product.setVisible(true);
+        return product;
+    }
+}
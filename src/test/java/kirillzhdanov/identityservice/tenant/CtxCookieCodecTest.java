@@ -0,0 +1,70 @@
+package kirillzhdanov.identityservice.tenant;
+
+import kirillzhdanov.identityservice.util.HmacSigner;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CtxCookieCodecTest {
+
+    private final HmacSigner signer = new HmacSigner("change-me");
+
+    private static ContextResolver.Ctx parse(String json) {
+        return CtxCookieCodec.parse(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("encode/decode: значения возвращаются без изменений, отсутствующие поля — null")
+    void roundTrip() {
+        String value = CtxCookieCodec.encode(signer, 1L, null, 3L, 1700000000000L);
+
+        ContextResolver.Ctx ctx = CtxCookieCodec.decode(signer, value);
+
+        assertThat(ctx).isNotNull();
+        assertThat(ctx.masterId()).isEqualTo(1L);
+        assertThat(ctx.brandId()).isNull();
+        assertThat(ctx.pickupPointId()).isEqualTo(3L);
+        assertThat(ctx.issuedAt()).isEqualTo(1700000000000L);
+    }
+
+    @Test
+    @DisplayName("decode: подпись другим секретом или испорченная подпись — null")
+    void decode_rejectsForeignSignature() {
+        String value = CtxCookieCodec.encode(new HmacSigner("other"), 1L, 2L, 3L, 4L);
+
+        assertThat(CtxCookieCodec.decode(signer, value)).isNull();
+        assertThat(CtxCookieCodec.decode(signer, value.substring(0, value.length() - 2) + "!!")).isNull();
+        assertThat(CtxCookieCodec.decode(signer, "no-dot")).isNull();
+        assertThat(CtxCookieCodec.decode(signer, null)).isNull();
+    }
+
+    @Test
+    @DisplayName("parse: пробелы, null-значения, отрицательные числа и неизвестные поля")
+    void parse_tolerantFormats() {
+        ContextResolver.Ctx ctx = parse(" { \"masterId\" : 10 ,\"brandId\":null,\"note\":\"a\\\"b\",\"extra\":7,\"issuedAt\":-5 } ");
+
+        assertThat(ctx).isNotNull();
+        assertThat(ctx.masterId()).isEqualTo(10L);
+        assertThat(ctx.brandId()).isNull();
+        assertThat(ctx.pickupPointId()).isNull();
+        assertThat(ctx.issuedAt()).isEqualTo(-5L);
+        assertThat(parse("{}")).isNotNull();
+    }
+
+    @Test
+    @DisplayName("parse: всё, что не плоский объект с числами, отклоняется")
+    void parse_rejectsUnexpected() {
+        assertThat(parse("")).isNull();
+        assertThat(parse("[]")).isNull();
+        assertThat(parse("{\"masterId\":1")).isNull();
+        assertThat(parse("{\"masterId\":1.5}")).isNull();
+        assertThat(parse("{\"masterId\":\"1\"}")).isNull();
+        assertThat(parse("{\"masterId\":{}}")).isNull();
+        assertThat(parse("{\"masterId\":1234567890123456789012}")).isNull();
+        assertThat(parse("{\"masterId\":1} trailing")).isNull();
+        assertThat(parse("{\"masterId\":nul}")).isNull();
+    }
+}
@@ -34,12 +34,8 @@ class CtxCookieFilterTest {
 
     @Test
     @DisplayName("Фильтр устанавливает контекст при валидной подписи ctx")
-    void filter_setsContext_onValidCookie() throws ServletException, IOException, NoSuchFieldException, IllegalAccessException {
-        CtxCookieFilter filter = new CtxCookieFilter();
-        // проставим секрет через reflection (используется значение по умолчанию change-me, но зададим явно)
-        var f = CtxCookieFilter.class.getDeclaredField("secret");
-        f.setAccessible(true);
-        f.set(filter, "change-me");
+    void filter_setsContext_onValidCookie() throws ServletException, IOException {
+        CtxCookieFilter filter = new CtxCookieFilter(new HmacSigner("change-me"));
 
         String value = buildCtxValue(100L, 200L, 300L, "change-me");
         MockHttpServletRequest req = new MockHttpServletRequest();
@@ -62,11 +58,8 @@ class CtxCookieFilterTest {
 
     @Test
     @DisplayName("Фильтр игнорирует ctx при неверной подписи")
-    void filter_ignores_onBadSignature() throws ServletException, IOException, NoSuchFieldException, IllegalAccessException {
-        CtxCookieFilter filter = new CtxCookieFilter();
-        var f = CtxCookieFilter.class.getDeclaredField("secret");
-        f.setAccessible(true);
-        f.set(filter, "change-me");
+    void filter_ignores_onBadSignature() throws ServletException, IOException {
+        CtxCookieFilter filter = new CtxCookieFilter(new HmacSigner("change-me"));
 
         // подпишем другим секретом
         String value = buildCtxValue(1L, 2L, 3L, "wrong-secret");
@@ -87,10 +80,7 @@ class CtxCookieFilterTest {
     @Test
     @DisplayName("Фильтр игнорирует ctx при некорректном формате: без точки")
     void filter_ignores_onNoDot() throws Exception {
-        CtxCookieFilter filter = new CtxCookieFilter();
-        var f = CtxCookieFilter.class.getDeclaredField("secret");
-        f.setAccessible(true);
-        f.set(filter, "change-me");
+        CtxCookieFilter filter = new CtxCookieFilter(new HmacSigner("change-me"));
 
         MockHttpServletRequest req = new MockHttpServletRequest();
         // value без точки
@@ -107,10 +97,7 @@ class CtxCookieFilterTest {
     @Test
     @DisplayName("Фильтр игнорирует ctx при невалидном Base64 payload")
     void filter_ignores_onBadBase64() throws Exception {
-        CtxCookieFilter filter = new CtxCookieFilter();
-        var f = CtxCookieFilter.class.getDeclaredField("secret");
-        f.setAccessible(true);
-        f.set(filter, "change-me");
+        CtxCookieFilter filter = new CtxCookieFilter(new HmacSigner("change-me"));
 
         // Подпишем не-Base64 строку (verify пройдёт, но decode упадёт и будет проигнорировано)
         String payload = "%%%not-base64%%%";
@@ -132,10 +119,7 @@ class CtxCookieFilterTest {
     @Test
     @DisplayName("Фильтр очищает ThreadLocal контекст в finally даже при исключении в цепочке")
     void filter_clears_context_onFinally() throws Exception {
-        CtxCookieFilter filter = new CtxCookieFilter();
-        var f = CtxCookieFilter.class.getDeclaredField("secret");
-        f.setAccessible(true);
-        f.set(filter, "change-me");
+        CtxCookieFilter filter = new CtxCookieFilter(new HmacSigner("change-me"));
 
         String value = buildCtxValue(1L, 2L, 3L, "change-me");
         MockHttpServletRequest req = new MockHttpServletRequest();
@@ -0,0 +1,74 @@
+package kirillzhdanov.identityservice.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HmacSignerTest {
+
+    private static String reference(String secret, String payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(mac.doFinal(payload.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @DisplayName("Подпись совпадает с эталонным HmacSHA256 и не зависит от предыдущих вызовов")
+    void sign_matchesReference() throws Exception {
+        HmacSigner signer = new HmacSigner("secret");
+
+        assertEquals(reference("secret", "a"), signer.signBase64Url("a"));
+        assertEquals(reference("secret", "payload"), signer.signBase64Url("payload"));
+        assertEquals(reference("secret", "a"), signer.signBase64Url("a"));
+    }
+
+    @Test
+    @DisplayName("verify: верная подпись принимается, чужая/битая/пустая — нет")
+    void verify() {
+        HmacSigner signer = new HmacSigner("secret");
+        String sig = signer.signBase64Url("payload");
+
+        assertTrue(signer.verifyBase64Url("payload", sig));
+        assertFalse(signer.verifyBase64Url("payload2", sig));
+        assertFalse(signer.verifyBase64Url("payload", new HmacSigner("other").signBase64Url("payload")));
+        assertFalse(signer.verifyBase64Url("payload", "%%%"));
+        assertFalse(signer.verifyBase64Url("payload", sig.substring(1)));
+        assertFalse(signer.verifyBase64Url("payload", null));
+    }
+
+    @Test
+    @DisplayName("Один экземпляр безопасно используется из нескольких потоков")
+    void sign_concurrent() throws Exception {
+        HmacSigner signer = new HmacSigner("secret");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Boolean>> results = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                results.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        String payload = "p-" + thread + "-" + i;
+                        if (!reference("secret", payload).equals(signer.signBase64Url(payload))) return false;
+                    }
+                    return true;
+                }));
+            }
+            for (Future<Boolean> r : results) {
+                assertTrue(r.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}